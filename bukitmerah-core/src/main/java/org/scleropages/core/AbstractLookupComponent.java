@@ -26,6 +26,7 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -176,8 +177,17 @@ public abstract class AbstractLookupComponent<K, V> implements /*FactoryBean,*/
 
 
     protected V determineTargetComponent() {
+        return resolveComponent(determineCurrentLookupKey());
+    }
+
+    /**
+     * resolve component by given key without current lookup key. fallback to default component if lenient.
+     *
+     * @param lookupKey
+     * @return
+     */
+    protected V resolveComponent(Object lookupKey) {
         Assert.notNull(this.resolvedComponents, " components not initialized");
-        Object lookupKey = determineCurrentLookupKey();
         V component = this.resolvedComponents.get(lookupKey);
         if (component == null && (this.lenientFallback || lookupKey == null)) {
             component = this.resolvedDefaultComponent;
@@ -210,6 +220,17 @@ public abstract class AbstractLookupComponent<K, V> implements /*FactoryBean,*/
         return componentClass;
     }
 
+    /**
+     * @return resolved components (unmodifiable) or null if not initialized.
+     */
+    protected Map<K, V> getResolvedComponents() {
+        return null != resolvedComponents ? Collections.unmodifiableMap(resolvedComponents) : null;
+    }
+
+    protected V getResolvedDefaultComponent() {
+        return resolvedDefaultComponent;
+    }
+
     protected Map<K, V> createResolvedComponents() {
         return new HashMap<>(targetComponents.size());
     }
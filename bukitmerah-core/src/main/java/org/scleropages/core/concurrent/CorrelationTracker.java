@@ -0,0 +1,455 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.core.concurrent;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并发环境下按 long 类型 correlation id 关联请求与结果(如 publisher confirm、rpc 响应)，可替代基于 guava cache 的 {@link GuavaFutures.IdObservable}:
+ * <ul>
+ * <li>correlation id 为自增序列(无字符串分配)，按低位分散到多个 stripe，每个 stripe 为 open-addressing(线性探测)表，
+ * 连续的 id 落在不同的 stripe 及相邻的 slot，stripe 内临界区极短且几乎无竞争.</li>
+ * <li>超时由 hashed timing wheel 驱动(单一 daemon 线程按 tick 推进)，bucket 为侵入式双向链表，注册时链入、完成时即摘除(不再持有结果)，
+ * 超时的 correlation 以 {@link TimeoutException} 失败.</li>
+ * </ul>
+ * 一次注册一次完成，完成(complete/fail/超时)后即移除.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class CorrelationTracker<V> implements AutoCloseable {
+
+    public static final int DEFAULT_STRIPES = 16;
+
+    public static final long DEFAULT_TICK_MILLIS = 100;
+
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Stripe<V>[] stripes;
+
+    private final int stripeMask;
+
+    private final int stripeShift;
+
+    private final long defaultTimeoutMillis;
+
+    private final long tickNanos;
+
+    private final Bucket<V>[] wheel;
+
+    private final int wheelMask;
+
+    private final long startNanos = System.nanoTime();
+
+    private final ScheduledExecutorService ticker;
+
+    /*last tick processed by ticker*/
+    private volatile long processedTick;
+
+    private volatile boolean closed;
+
+
+    /**
+     * @param defaultTimeout timeout of correlations registered without timeout. not timeout if 0.
+     * @param timeUnit
+     */
+    public CorrelationTracker(long defaultTimeout, TimeUnit timeUnit) {
+        this(defaultTimeout, timeUnit, DEFAULT_STRIPES, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param defaultTimeout timeout of correlations registered without timeout. not timeout if 0.
+     * @param timeUnit
+     * @param stripes        number of stripes (rounded up to power of 2).
+     * @param tickMillis     precision of timeouts.
+     * @param wheelSize      number of buckets of timing wheel (rounded up to power of 2).
+     */
+    public CorrelationTracker(long defaultTimeout, TimeUnit timeUnit, int stripes, long tickMillis, int wheelSize) {
+        Assert.isTrue(defaultTimeout >= 0, "defaultTimeout must not be negative.");
+        Assert.isTrue(stripes > 0 && tickMillis > 0 && wheelSize > 0, "stripes, tickMillis and wheelSize must be positive.");
+        this.defaultTimeoutMillis = timeUnit.toMillis(defaultTimeout);
+        int stripeCount = powerOfTwo(stripes);
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new Stripe<>();
+        }
+        this.stripeMask = stripeCount - 1;
+        this.stripeShift = Integer.numberOfTrailingZeros(stripeCount);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int buckets = powerOfTwo(wheelSize);
+        this.wheel = new Bucket[buckets];
+        for (int i = 0; i < buckets; i++) {
+            this.wheel[i] = new Bucket<>();
+        }
+        this.wheelMask = buckets - 1;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "correlation-tracker-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * @return next correlation id (increasing from 1).
+     */
+    public long nextId() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * register a correlation of next id with default timeout.
+     *
+     * @return
+     */
+    public Correlation<V> register() {
+        return register(nextId());
+    }
+
+    /**
+     * register a correlation with default timeout.
+     *
+     * @param id
+     * @return
+     */
+    public Correlation<V> register(long id) {
+        return register(id, defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * register a correlation.
+     *
+     * @param id
+     * @param timeout  not timeout if 0.
+     * @param timeUnit
+     * @return
+     * @throws IllegalStateException if given id already registered.
+     */
+    public Correlation<V> register(long id, long timeout, TimeUnit timeUnit) {
+        Assert.state(!closed, "tracker closed.");
+        Correlation<V> correlation = new Correlation<>(id);
+        if (!stripeOf(id).putIfAbsent(id >>> stripeShift, correlation))
+            throw new IllegalStateException("correlation already registered: " + id);
+        if (timeout > 0) {
+            long deadlineTick = currentTick() + Math.max(1, (timeUnit.toNanos(timeout) + tickNanos - 1) / tickNanos);
+            correlation.deadlineTick = Math.max(deadlineTick, processedTick + 1);
+            Bucket<V> bucket = wheel[(int) (correlation.deadlineTick & wheelMask)];
+            bucket.add(correlation);
+            // completed before linked.
+            if (correlation.isDone())
+                bucket.remove(correlation);
+        }
+        return correlation;
+    }
+
+    /**
+     * @param id
+     * @return correlation of given id. null if not registered or already completed.
+     */
+    public Correlation<V> get(long id) {
+        return stripeOf(id).get(id >>> stripeShift);
+    }
+
+    /**
+     * @param id
+     * @param value
+     * @return true if correlation of given id completed by this.
+     */
+    public boolean complete(long id, V value) {
+        Correlation<V> correlation = stripeOf(id).remove(id >>> stripeShift, null);
+        if (null == correlation)
+            return false;
+        unlink(correlation);
+        return correlation.complete(value);
+    }
+
+    /**
+     * @param id
+     * @param cause
+     * @return true if correlation of given id completed exceptionally by this.
+     */
+    public boolean fail(long id, Throwable cause) {
+        Correlation<V> correlation = stripeOf(id).remove(id >>> stripeShift, null);
+        if (null == correlation)
+            return false;
+        unlink(correlation);
+        return correlation.completeExceptionally(cause);
+    }
+
+    /**
+     * @return number of correlations registered and not completed.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * stop ticker and fail all correlations registered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ticker.shutdownNow();
+        IllegalStateException cause = new IllegalStateException("tracker closed.");
+        for (Stripe<V> stripe : stripes) {
+            stripe.drain().forEach(correlation -> {
+                unlink(correlation);
+                correlation.completeExceptionally(cause);
+            });
+        }
+    }
+
+    protected long currentTick() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    /**
+     * expire correlations of buckets from last processed tick to current tick.
+     */
+    protected void tick() {
+        long current = currentTick();
+        List<Correlation<V>> expired = new ArrayList<>();
+        for (long tick = processedTick + 1; tick <= current; tick++) {
+            wheel[(int) (tick & wheelMask)].expire(tick, expired);
+            for (Correlation<V> correlation : expired) {
+                if (null != stripeOf(correlation.id).remove(correlation.id >>> stripeShift, correlation))
+                    correlation.completeExceptionally(new TimeoutException("correlation timeout: " + correlation.id));
+            }
+            expired.clear();
+            processedTick = tick;
+        }
+    }
+
+    private void unlink(Correlation<V> correlation) {
+        Bucket<V> bucket = correlation.bucket;
+        if (null != bucket)
+            bucket.remove(correlation);
+    }
+
+    private Stripe<V> stripeOf(long id) {
+        return stripes[(int) (id & stripeMask)];
+    }
+
+    private static int powerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+
+    /**
+     * future of a correlation.
+     */
+    public static class Correlation<V> extends CompletableFuture<V> {
+
+        private final long id;
+
+        private long deadlineTick;
+
+        /*links of wheel bucket, guarded by bucket.*/
+        private volatile Bucket<V> bucket;
+
+        private Correlation<V> prev;
+
+        private Correlation<V> next;
+
+        protected Correlation(long id) {
+            this.id = id;
+        }
+
+        public long getId() {
+            return id;
+        }
+    }
+
+
+    /**
+     * bucket of timing wheel. intrusive doubly linked list of correlations.
+     */
+    private static class Bucket<V> {
+
+        private Correlation<V> head;
+
+        private Correlation<V> tail;
+
+        synchronized void add(Correlation<V> correlation) {
+            correlation.bucket = this;
+            correlation.prev = tail;
+            correlation.next = null;
+            if (null == tail)
+                head = correlation;
+            else
+                tail.next = correlation;
+            tail = correlation;
+        }
+
+        synchronized void remove(Correlation<V> correlation) {
+            if (correlation.bucket != this)
+                return;
+            if (null == correlation.prev)
+                head = correlation.next;
+            else
+                correlation.prev.next = correlation.next;
+            if (null == correlation.next)
+                tail = correlation.prev;
+            else
+                correlation.next.prev = correlation.prev;
+            correlation.prev = correlation.next = null;
+            correlation.bucket = null;
+        }
+
+        /**
+         * unlink correlations deadline reached at given tick into expired.
+         */
+        synchronized void expire(long tick, List<Correlation<V>> expired) {
+            Correlation<V> correlation = head;
+            while (null != correlation) {
+                Correlation<V> next = correlation.next;
+                if (correlation.deadlineTick <= tick) {
+                    remove(correlation);
+                    expired.add(correlation);
+                }
+                correlation = next;
+            }
+        }
+    }
+
+
+    /**
+     * open-addressing (linear probing, backward shift deletion) table of keys in stripe.
+     */
+    private static class Stripe<V> {
+
+        private long[] keys = new long[INITIAL_STRIPE_CAPACITY];
+
+        private Correlation<V>[] values = new Correlation[INITIAL_STRIPE_CAPACITY];
+
+        private int size;
+
+        synchronized boolean putIfAbsent(long key, Correlation<V> value) {
+            if ((size + 1) << 1 > values.length)
+                resize(values.length << 1);
+            int mask = values.length - 1;
+            int index = (int) key & mask;
+            while (null != values[index]) {
+                if (keys[index] == key)
+                    return false;
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = value;
+            size++;
+            return true;
+        }
+
+        synchronized Correlation<V> get(long key) {
+            int index = indexOf(key);
+            return index < 0 ? null : values[index];
+        }
+
+        /**
+         * @param key
+         * @param expected remove only if mapped to expected, any if null.
+         * @return removed value.
+         */
+        synchronized Correlation<V> remove(long key, Correlation<V> expected) {
+            int index = indexOf(key);
+            if (index < 0 || (null != expected && values[index] != expected))
+                return null;
+            Correlation<V> removed = values[index];
+            int mask = values.length - 1;
+            int hole = index;
+            values[hole] = null;
+            int next = hole;
+            while (true) {
+                next = (next + 1) & mask;
+                if (null == values[next])
+                    break;
+                int home = (int) keys[next] & mask;
+                // move back if home not in (hole, next] cyclically
+                boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+                if (!stays) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    values[next] = null;
+                    hole = next;
+                }
+            }
+            size--;
+            return removed;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized List<Correlation<V>> drain() {
+            List<Correlation<V>> drained = new ArrayList<>(size);
+            for (int i = 0; i < values.length; i++) {
+                if (null != values[i]) {
+                    drained.add(values[i]);
+                    values[i] = null;
+                }
+            }
+            size = 0;
+            return drained;
+        }
+
+        private int indexOf(long key) {
+            int mask = values.length - 1;
+            int index = (int) key & mask;
+            while (null != values[index]) {
+                if (keys[index] == key)
+                    return index;
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Correlation<V>[] oldValues = values;
+            keys = new long[capacity];
+            values = new Correlation[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (null != oldValues[i]) {
+                    int index = (int) oldKeys[i] & mask;
+                    while (null != values[index]) {
+                        index = (index + 1) & mask;
+                    }
+                    keys[index] = oldKeys[i];
+                    values[index] = oldValues[i];
+                }
+            }
+        }
+    }
+}
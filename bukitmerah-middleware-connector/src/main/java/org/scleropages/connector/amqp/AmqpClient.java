@@ -26,6 +26,7 @@ import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
 import org.springframework.amqp.rabbit.listener.RabbitListenerEndpoint;
 
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 
@@ -69,6 +70,18 @@ public interface AmqpClient {
     void send(String exchange, String routingKey,
               Object message, MessageProperties messageProperties, GuavaFutures.IdObservable<String, Publication> publicationObservable);
 
+    /**
+     * 异步发布(publisher confirm 窗口)，窗口已满时阻塞直至收到确认或超时
+     *
+     * @param exchange   exchange name
+     * @param routingKey routing key bindings from exchange to queue(or other exchanges)
+     * @param message    the spring amqp-message
+     * @return future completed by confirm of broker.
+     */
+    CompletableFuture<Confirm> sendAsync(String exchange, String routingKey, Message message);
+
+    CompletableFuture<Confirm> sendAsync(String exchange, String routingKey, Object message, MessageProperties messageProperties);
+
     Message exchange(String exchange, String routingKey,
                      Message message);
 
@@ -84,6 +97,23 @@ public interface AmqpClient {
 
     RabbitListenerEndpoint createRabbitListenerEndpoint(String id, String[] queueNames, boolean autoStartup, boolean exclusive, String concurrency, MessageListener messageListener);
 
+    /**
+     * 创建批量消费 endpoint，一次回调最多 batchSize 条消息，等待下一条消息超过 receiveTimeout 即交付当前批次，整批以一次 ack 确认.
+     * 投递量随队列深度伸缩: 存在积压时批次填满至 batchSize，队列空闲时由 receiveTimeout 提前结束.
+     *
+     * @param id             endpoint id
+     * @param queueNames     queues to consume
+     * @param autoStartup    auto startup or not
+     * @param exclusive      exclusive consumer or not
+     * @param concurrency    consumers concurrency
+     * @param batchSize      max messages per batch (prefetch raised to it if less)
+     * @param receiveTimeout max millis waiting next message before current batch delivered
+     * @param batchListener  callback of message batches
+     * @return
+     */
+    <T> RabbitListenerEndpoint createBatchRabbitListenerEndpoint(String id, String[] queueNames, boolean autoStartup, boolean exclusive, String concurrency,
+                                                                 int batchSize, long receiveTimeout, BatchListener<T> batchListener);
+
     void registerMessageListenerContainer(RabbitListenerEndpoint rabbitListenerEndpoint, boolean startImmediately);
 
     MessageListenerContainer getMessageListenerContainer(String id);
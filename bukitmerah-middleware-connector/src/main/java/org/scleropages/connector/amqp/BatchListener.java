@@ -0,0 +1,30 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.amqp;
+
+import java.util.List;
+
+/**
+ * 批量消费回调，一次调用接收一批已反序列化的消息(最多 batch size 条)，方法正常返回后整批以一次 basicAck(multiple) 确认，
+ * 抛出异常则整批拒绝(按容器配置决定是否 requeue). 适用于按批次提交事务(如批量入库)的消费者.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+@FunctionalInterface
+public interface BatchListener<T> {
+
+    void onMessages(List<T> messages) throws Exception;
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.amqp;
+
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 将 container 投递的一批 {@link Message} 一次性转换后交由 {@link BatchListener} 处理.
+ * <p>
+ * batch size 在 container 启动前一次性设置({@link BatchRabbitListenerEndpoint})，运行期间不再修改(container batch size 非线程安全).
+ * 投递量随队列深度自然伸缩: 存在积压时批次被填满至 batch size，队列空闲时因 receive timeout 提前结束并交付已接收的消息.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class BatchMessageListenerAdapter<T> implements BatchMessageListener {
+
+    private final BatchListener<T> batchListener;
+
+    private final MessageConverter messageConverter;
+
+    private final int batchSize;
+
+
+    public BatchMessageListenerAdapter(BatchListener<T> batchListener, MessageConverter messageConverter, int batchSize) {
+        Assert.notNull(batchListener, "batchListener must not be null.");
+        Assert.notNull(messageConverter, "messageConverter must not be null.");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive.");
+        this.batchListener = batchListener;
+        this.messageConverter = messageConverter;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        onMessageBatch(Collections.singletonList(message));
+    }
+
+    @Override
+    public void onMessageBatch(List<Message> messages) {
+        List<T> payloads = fromMessages(messages);
+        try {
+            batchListener.onMessages(payloads);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("failure to process message batch.", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<T> fromMessages(List<Message> messages) throws MessageConversionException {
+        if (messageConverter instanceof ContentTypeDelegatingMessageConverter)
+            return (List<T>) ((ContentTypeDelegatingMessageConverter) messageConverter).fromMessages(messages);
+        if (messageConverter instanceof SerializerMessageConverter)
+            return (List<T>) ((SerializerMessageConverter) messageConverter).fromMessages(messages);
+        List<T> payloads = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            payloads.add((T) messageConverter.fromMessage(message));
+        }
+        return payloads;
+    }
+
+    /**
+     * @return max messages per batch.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+}
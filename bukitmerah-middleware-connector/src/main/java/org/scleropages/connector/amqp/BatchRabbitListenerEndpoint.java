@@ -0,0 +1,71 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.amqp;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.util.Assert;
+
+/**
+ * 批量消费 endpoint，仅支持 {@link SimpleMessageListenerContainer}(consumer batch):
+ * consumer 连续接收最多 batch size 条消息，任意一次等待超过 receive timeout 即结束当前批次并交付，
+ * 处理成功后以一次 basicAck(lastTag, multiple=true) 确认整批.
+ * batch size 在 container 启动前一次性设置. prefetch 不小于 batch size，确保一个批次可以被填满:
+ * 指定 prefetch 时取其与 batch size 较大者，否则保留 container 现有 prefetch(如 factory 配置)，仅在小于 batch size 时提升.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class BatchRabbitListenerEndpoint extends SimpleRabbitListenerEndpoint {
+
+    public static final long DEFAULT_RECEIVE_TIMEOUT = 100;
+
+    private long receiveTimeout = DEFAULT_RECEIVE_TIMEOUT;
+
+    private int prefetch;
+
+    @Override
+    public void setupListenerContainer(MessageListenerContainer listenerContainer) {
+        Assert.isInstanceOf(SimpleMessageListenerContainer.class, listenerContainer, "batch listener only supported by SimpleMessageListenerContainer.");
+        Assert.isInstanceOf(BatchMessageListenerAdapter.class, getMessageListener(), "messageListener must be BatchMessageListenerAdapter.");
+        SimpleMessageListenerContainer container = (SimpleMessageListenerContainer) listenerContainer;
+        BatchMessageListenerAdapter<?> adapter = (BatchMessageListenerAdapter<?>) getMessageListener();
+        super.setupListenerContainer(container);
+        container.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        container.setDeBatchingEnabled(true);
+        container.setConsumerBatchEnabled(true);
+        container.setBatchSize(adapter.getBatchSize());
+        container.setReceiveTimeout(receiveTimeout);
+        int current = prefetch > 0 ? prefetch : (Integer) new DirectFieldAccessor(container).getPropertyValue("prefetchCount");
+        container.setPrefetchCount(Math.max(current, adapter.getBatchSize()));
+    }
+
+    /**
+     * @param receiveTimeout max millis waiting next message before current batch delivered.
+     */
+    public void setReceiveTimeout(long receiveTimeout) {
+        this.receiveTimeout = receiveTimeout;
+    }
+
+    /**
+     * @param prefetch prefetch of consumers (overrides prefetch of container). raised to batch size if less.
+     */
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+}
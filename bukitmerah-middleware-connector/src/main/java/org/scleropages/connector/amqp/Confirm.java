@@ -0,0 +1,94 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.amqp;
+
+import org.springframework.amqp.core.Message;
+
+/**
+ * confirm of a message published by {@link ConfirmPublisher}.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class Confirm implements Publication {
+
+    private final Message message;
+
+    private final boolean ack;
+
+    private final String reason;
+
+    private final String returnedText;
+
+    public Confirm(Message message, boolean ack, String reason, String returnedText) {
+        this.message = message;
+        this.ack = ack;
+        this.reason = reason;
+        this.returnedText = returnedText;
+    }
+
+    @Override
+    public Message message() {
+        return message;
+    }
+
+    /**
+     * @return true if acked by broker and not returned.
+     */
+    @Override
+    public boolean isSuccess() {
+        return ack && null == returnedText;
+    }
+
+    @Override
+    public Object source() {
+        return null;
+    }
+
+    @Override
+    public Throwable cause() {
+        if (!ack)
+            return new IllegalStateException(null != reason ? reason : "nacked by broker.");
+        if (null != returnedText)
+            return new IllegalStateException("returned by broker: " + returnedText);
+        return null;
+    }
+
+    /**
+     * @return true if acked by broker (message may be returned if published as mandatory).
+     */
+    public boolean isAck() {
+        return ack;
+    }
+
+    /**
+     * @return true if returned by broker (unroutable mandatory message).
+     */
+    public boolean isReturned() {
+        return null != returnedText;
+    }
+
+    /**
+     * @return reply text of returned message, null if not returned.
+     */
+    public String getReturnedText() {
+        return returnedText;
+    }
+
+    @Override
+    public String toString() {
+        return "Confirm{" + "ack=" + ack + ", reason='" + reason + '\'' + ", returnedText='" + returnedText + '\'' + '}';
+    }
+}
@@ -0,0 +1,499 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.amqp;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * asynchronous publisher with windowed publisher confirms over a dedicated channel (not cached by spring and not in confirm mode of spring).
+ * <p>
+ * at most window size messages published but not confirmed (in flight). publish blocked if window full until confirms arrived
+ * or window timeout elapsed (backpressure). in flight messages tracked by delivery tag in a ring buffer,
+ * a confirm (multiple or not) completes confirmed entries and advances lowest unconfirmed tag, each entry visited once.
+ * window is distance from lowest unconfirmed tag to next tag, so ring (power of 2 not less than window size) never overflow.
+ * <p>
+ * future of publish completed by {@link Confirm} of broker (ack or nack, returned if mandatory and unroutable).
+ * completed exceptionally by {@link PublicationException} if window timeout elapsed or channel failed (channel recreated by next publish).
+ * if confirm timeout set, messages in flight not confirmed in time also completed exceptionally (swept periodically, so
+ * expired up to a quarter of confirm timeout late) and a late confirm of them ignored.
+ * <p>
+ * thread safe. publishes serialized on channel.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class ConfirmPublisher implements DisposableBean {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1000;
+
+    public static final long DEFAULT_WINDOW_TIMEOUT = 30000;
+
+    /**
+     * header of delivery tag set on published properties of mandatory messages (not on given message), used to correlate returned messages.
+     * also delivered to consumers: removed by {@link ContentTypeDelegatingMessageConverter} before conversion
+     * ({@link #removePublishTag(Message)}), listeners of raw messages see it.
+     */
+    public static final String PUBLISH_TAG_HEADER = "x-publish-tag";
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConnectionFactory connectionFactory;
+
+    private final int windowSize;
+
+    private final Semaphore window;
+
+    private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+
+    private final Object publishMonitor = new Object();
+
+    private boolean mandatory;
+
+    private long windowTimeout = DEFAULT_WINDOW_TIMEOUT;
+
+    private long confirmTimeout;
+
+    private String encoding = "UTF-8";
+
+    /*written under publishMonitor*/
+    private volatile Tracker tracker;
+
+    /*guarded by publishMonitor, created by first publish if confirm timeout set*/
+    private ScheduledExecutorService sweeper;
+
+    private volatile boolean closed;
+
+
+    public ConfirmPublisher(ConnectionFactory connectionFactory) {
+        this(connectionFactory, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param connectionFactory publisher connection factory used if present.
+     * @param windowSize        max messages in flight.
+     */
+    public ConfirmPublisher(ConnectionFactory connectionFactory, int windowSize) {
+        Assert.notNull(connectionFactory, "connectionFactory must not be null.");
+        Assert.isTrue(windowSize > 0, "windowSize must be positive.");
+        this.connectionFactory = null != connectionFactory.getPublisherConnectionFactory() ? connectionFactory.getPublisherConnectionFactory() : connectionFactory;
+        this.windowSize = windowSize;
+        this.window = new Semaphore(windowSize);
+    }
+
+
+    /**
+     * @param exchange
+     * @param routingKey
+     * @param message
+     * @return future completed by confirm of broker.
+     */
+    public CompletableFuture<Confirm> publish(String exchange, String routingKey, Message message) {
+        return publish(exchange, routingKey, message, new CompletableFuture<>());
+    }
+
+    /**
+     * @param exchange
+     * @param routingKey
+     * @param message
+     * @param future     completed by confirm of broker.
+     * @return given future.
+     */
+    public CompletableFuture<Confirm> publish(String exchange, String routingKey, Message message, CompletableFuture<Confirm> future) {
+        try {
+            Assert.state(!closed, "publisher closed.");
+            if (!window.tryAcquire(windowTimeout, TimeUnit.MILLISECONDS)) {
+                fail(future, message, new TimeoutException("confirm window full in " + windowTimeout + "ms."));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(future, message, e);
+            return future;
+        } catch (RuntimeException e) {
+            fail(future, message, e);
+            return future;
+        }
+        Pending pending = new Pending(message, future);
+        Tracker current = null;
+        synchronized (publishMonitor) {
+            try {
+                current = obtainTracker();
+                pending.tag = current.channel.getNextPublishSeqNo();
+                AMQP.BasicProperties properties = messagePropertiesConverter.fromMessageProperties(message.getMessageProperties(), encoding);
+                if (mandatory)// on converted properties, message of caller may be published again
+                    properties = withPublishTag(properties, pending.tag);
+                current.register(pending);
+                current.channel.basicPublish(exchange, routingKey, mandatory, properties, message.getBody());
+            } catch (Exception e) {
+                if (null == current || !current.fail(pending.tag, e)) {
+                    window.release();
+                    fail(future, message, e);
+                }
+            }
+        }
+        return future;
+    }
+
+    /**
+     * @return number of messages published but not confirmed.
+     */
+    public int getInFlight() {
+        return windowSize - window.availablePermits();
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+        synchronized (publishMonitor) {
+            if (null != tracker) {
+                try {
+                    tracker.channel.close();
+                } catch (Exception e) {
+                    logger.warn("failure to close publisher channel.", e);
+                }
+                tracker.failAll(new IllegalStateException("publisher closed."));
+                tracker = null;
+            }
+            if (null != sweeper) {
+                sweeper.shutdownNow();
+                sweeper = null;
+            }
+        }
+    }
+
+    protected Tracker obtainTracker() throws IOException {
+        if (null == tracker || !tracker.channel.isOpen()) {
+            if (null != tracker)
+                tracker.failAll(new IllegalStateException("publisher channel closed."));
+            Channel channel = connectionFactory.createConnection().getDelegate().createChannel();
+            Assert.state(null != channel, "no channel available.");
+            channel.confirmSelect();
+            Tracker created = new Tracker(channel);
+            channel.addConfirmListener(created);
+            channel.addReturnListener(created);
+            channel.addShutdownListener(created);
+            tracker = created;
+        }
+        if (confirmTimeout > 0 && null == sweeper)
+            sweeper = createSweeper();
+        return tracker;
+    }
+
+    protected ScheduledExecutorService createSweeper() {
+        ScheduledExecutorService created = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "confirm-publisher-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, confirmTimeout / 4);
+        created.scheduleWithFixedDelay(this::expire, interval, interval, TimeUnit.MILLISECONDS);
+        return created;
+    }
+
+    /**
+     * fail messages in flight not confirmed in confirm timeout.
+     */
+    protected void expire() {
+        Tracker current = tracker;
+        if (null != current)
+            current.expire(System.currentTimeMillis() - confirmTimeout, new TimeoutException("not confirmed in " + confirmTimeout + "ms."));
+    }
+
+    protected AMQP.BasicProperties withPublishTag(AMQP.BasicProperties properties, long tag) {
+        Map<String, Object> headers = new HashMap<>(null != properties.getHeaders() ? properties.getHeaders() : Collections.emptyMap());
+        headers.put(PUBLISH_TAG_HEADER, tag);
+        return properties.builder().headers(headers).build();
+    }
+
+    /**
+     * remove {@link #PUBLISH_TAG_HEADER} from properties of given message.
+     *
+     * @param message
+     * @return given message.
+     */
+    public static Message removePublishTag(Message message) {
+        message.getMessageProperties().getHeaders().remove(PUBLISH_TAG_HEADER);
+        return message;
+    }
+
+    protected void fail(CompletableFuture<Confirm> future, Message message, Throwable cause) {
+        future.completeExceptionally(new PublicationException(cause, new Confirm(message, false, cause.getMessage(), null)));
+    }
+
+
+    /**
+     * message in flight.
+     */
+    protected static class Pending {
+
+        private final Message message;
+
+        private final CompletableFuture<Confirm> future;
+
+        private long tag;
+
+        private long publishedAt;
+
+        private String returnedText;
+
+        protected Pending(Message message, CompletableFuture<Confirm> future) {
+            this.message = message;
+            this.future = future;
+        }
+    }
+
+
+    /**
+     * tracks messages in flight of a channel.
+     */
+    protected class Tracker implements ConfirmListener, ReturnListener, ShutdownListener {
+
+        private final Channel channel;
+
+        private final Pending[] ring;
+
+        private final int mask;
+
+        /*guarded by this*/
+        private long lowest = -1;
+
+        private long next = -1;
+
+        protected Tracker(Channel channel) {
+            this.channel = channel;
+            int capacity = Integer.highestOneBit(Math.max(1, windowSize - 1)) << 1;
+            this.ring = new Pending[capacity];
+            this.mask = capacity - 1;
+        }
+
+        protected synchronized void register(Pending pending) {
+            pending.publishedAt = System.currentTimeMillis();
+            if (lowest < 0 || pending.tag < lowest)
+                lowest = pending.tag;
+            ring[(int) (pending.tag & mask)] = pending;
+            next = pending.tag + 1;
+        }
+
+        @Override
+        public void handleAck(long deliveryTag, boolean multiple) {
+            confirm(deliveryTag, multiple, true);
+        }
+
+        @Override
+        public void handleNack(long deliveryTag, boolean multiple) {
+            confirm(deliveryTag, multiple, false);
+        }
+
+        @Override
+        public void handleReturn(int replyCode, String replyText, String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+            Object tag = null != properties.getHeaders() ? properties.getHeaders().get(PUBLISH_TAG_HEADER) : null;
+            if (!(tag instanceof Number)) {
+                logger.warn("returned message without publish tag: {}/{} {}", exchange, routingKey, replyText);
+                return;
+            }
+            synchronized (this) {
+                Pending pending = ring[(int) (((Number) tag).longValue() & mask)];
+                if (null != pending && pending.tag == ((Number) tag).longValue())
+                    pending.returnedText = replyCode + " " + replyText;// confirmed with given message (without publish tag), not returned properties
+            }
+        }
+
+        @Override
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            failAll(cause);
+        }
+
+        protected void confirm(long tag, boolean multiple, boolean ack) {
+            List<Pending> confirmed = new ArrayList<>(multiple ? 8 : 1);
+            int released;
+            synchronized (this) {
+                if (lowest < 0)
+                    return;
+                for (long t = multiple ? lowest : tag; t <= tag; t++) {
+                    take(t, confirmed);
+                }
+                released = advance();
+            }
+            if (released > 0)
+                window.release(released);
+            for (Pending pending : confirmed) {
+                pending.future.complete(new Confirm(pending.message, ack, ack ? null : "nacked by broker.", pending.returnedText));
+            }
+        }
+
+        /**
+         * @param tag
+         * @param cause
+         * @return true if pending of given tag failed by this.
+         */
+        protected boolean fail(long tag, Throwable cause) {
+            List<Pending> failed = new ArrayList<>(1);
+            int released;
+            synchronized (this) {
+                if (lowest < 0)
+                    return false;
+                take(tag, failed);
+                released = advance();
+            }
+            if (released > 0)
+                window.release(released);
+            failed.forEach(pending -> ConfirmPublisher.this.fail(pending.future, pending.message, cause));
+            return !failed.isEmpty();
+        }
+
+        protected void failAll(Throwable cause) {
+            List<Pending> failed;
+            int released;
+            synchronized (this) {
+                if (lowest < 0)
+                    return;
+                failed = new ArrayList<>((int) (next - lowest));
+                for (long t = lowest; t < next; t++) {
+                    take(t, failed);
+                }
+                released = (int) (next - lowest);
+                lowest = next;
+            }
+            if (released > 0)
+                window.release(released);
+            if (!failed.isEmpty())
+                logger.warn("{} messages in flight failed by: {}", failed.size(), cause.getMessage());
+            failed.forEach(pending -> ConfirmPublisher.this.fail(pending.future, pending.message, cause));
+        }
+
+        /**
+         * fail messages in flight published before given deadline (pending ordered by publish time from lowest tag).
+         *
+         * @param deadline
+         * @param cause
+         */
+        protected void expire(long deadline, Throwable cause) {
+            List<Pending> expired = new ArrayList<>();
+            int released;
+            synchronized (this) {
+                if (lowest < 0)
+                    return;
+                for (long t = lowest; t < next; t++) {
+                    Pending pending = ring[(int) (t & mask)];
+                    if (null == pending)
+                        continue;
+                    if (pending.publishedAt > deadline)
+                        break;
+                    take(t, expired);
+                }
+                released = advance();
+            }
+            if (released > 0)
+                window.release(released);
+            if (!expired.isEmpty())
+                logger.warn("{} messages in flight failed by: {}", expired.size(), cause.getMessage());
+            expired.forEach(pending -> ConfirmPublisher.this.fail(pending.future, pending.message, cause));
+        }
+
+        private void take(long tag, List<Pending> taken) {
+            int index = (int) (tag & mask);
+            Pending pending = ring[index];
+            if (null != pending && pending.tag == tag) {
+                ring[index] = null;
+                taken.add(pending);
+            }
+        }
+
+        /**
+         * @return number of tags advanced by lowest unconfirmed tag.
+         */
+        private int advance() {
+            long from = lowest;
+            while (lowest < next && null == ring[(int) (lowest & mask)]) {
+                lowest++;
+            }
+            return (int) (lowest - from);
+        }
+    }
+
+
+    public boolean isMandatory() {
+        return mandatory;
+    }
+
+    /**
+     * publish as mandatory. unroutable messages returned and confirmed as returned.
+     *
+     * @param mandatory
+     */
+    public void setMandatory(boolean mandatory) {
+        this.mandatory = mandatory;
+    }
+
+    public long getWindowTimeout() {
+        return windowTimeout;
+    }
+
+    /**
+     * max millis blocked if window full.
+     *
+     * @param windowTimeout
+     */
+    public void setWindowTimeout(long windowTimeout) {
+        this.windowTimeout = windowTimeout;
+    }
+
+    public long getConfirmTimeout() {
+        return confirmTimeout;
+    }
+
+    /**
+     * max millis message in flight waiting confirm of broker. not timeout if 0 (default).
+     *
+     * @param confirmTimeout
+     */
+    public void setConfirmTimeout(long confirmTimeout) {
+        this.confirmTimeout = confirmTimeout;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+}
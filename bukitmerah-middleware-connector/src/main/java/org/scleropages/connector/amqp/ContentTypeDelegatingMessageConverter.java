@@ -28,10 +28,18 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.util.Assert;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A composite {@link MessageConverter} that delegates to an actual {@link MessageConverter}
@@ -39,6 +47,12 @@ import java.util.Map;
  * Note: the {@link MessageProperties} requires a content type header to select a converter
  * when used for outbound conversion, but the converter will (generally) override it to match
  * the actual conversion.
+ * <p>
+ * delegates compiled into an immutable dispatch table (recompiled on changes of delegates): content type of message
+ * matched by hash lookup of declared content types first, then by type and subtype of parsed {@link MimeType}
+ * (results of mime type matching cached per content type of dispatch table).
+ * messages with {@link SerializerMessageConverter#CODEC_HEADER} dispatched to serializer converter directly.
+ * {@link ConfirmPublisher#PUBLISH_TAG_HEADER} of messages published by {@link ConfirmPublisher} removed before converted.
  *
  * @author Eric Rizzo
  * @author Gary Russell
@@ -54,10 +68,19 @@ public class ContentTypeDelegatingMessageConverter implements MessageConverter,
 
     private MessageConverter defaultConverter;
 
+    private volatile DispatchTable dispatchTable = new DispatchTable(Collections.emptyMap(), null);
+
+    private static final int MAX_CACHED_MIME_TYPES = 256;
+
+    private static final MimeType INVALID_MIME_TYPE = new MimeType("invalid");
+
+    private final Map<String, MimeType> mimeTypes = new ConcurrentHashMap<>();
+
 
     public void setDelegates(Map<String, MessageConverter> delegatesByContentType) {
         this.delegates.clear();
         this.delegates.putAll(delegatesByContentType);
+        compile();
     }
 
     public Map<String, MessageConverter> getDelegates() {
@@ -74,6 +97,7 @@ public class ContentTypeDelegatingMessageConverter implements MessageConverter,
      */
     public void addDelegate(String contentType, MessageConverter messageConverter) {
         this.delegates.put(contentType, messageConverter);
+        compile();
     }
 
     /**
@@ -83,13 +107,43 @@ public class ContentTypeDelegatingMessageConverter implements MessageConverter,
      * @return the remove {@link MessageConverter}.
      */
     public MessageConverter removeDelegate(String contentType) {
-        return this.delegates.remove(contentType);
+        MessageConverter removed = this.delegates.remove(contentType);
+        compile();
+        return removed;
     }
 
     @Override
     public Object fromMessage(Message message) throws MessageConversionException {
-        String contentType = message.getMessageProperties().getContentType();
-        return getConverterForContentType(contentType).fromMessage(message);
+        ConfirmPublisher.removePublishTag(message);
+        return getConverterForMessage(message).fromMessage(message);
+    }
+
+    /**
+     * convert messages of a consumer batch in one pass. delegate converter resolved once per run of same content type.
+     *
+     * @param messages
+     * @return
+     * @throws MessageConversionException
+     */
+    public List<Object> fromMessages(List<Message> messages) throws MessageConversionException {
+        List<Object> payloads = new ArrayList<>(messages.size());
+        String contentType = null;
+        MessageConverter delegate = null;
+        for (Message message : messages) {
+            ConfirmPublisher.removePublishTag(message);
+            MessageProperties messageProperties = message.getMessageProperties();
+            if (messageProperties.getHeaders().containsKey(SerializerMessageConverter.CODEC_HEADER)) {
+                payloads.add(getConverterForMessage(message).fromMessage(message));
+                continue;
+            }
+            String messageContentType = messageProperties.getContentType();
+            if (null == delegate || !Objects.equals(contentType, messageContentType)) {
+                contentType = messageContentType;
+                delegate = getConverterForContentType(contentType);
+            }
+            payloads.add(delegate.fromMessage(message));
+        }
+        return payloads;
     }
 
     @Override
@@ -98,11 +152,64 @@ public class ContentTypeDelegatingMessageConverter implements MessageConverter,
         return getConverterForContentType(contentType).toMessage(object, messageProperties);
     }
 
+    /**
+     * convert body of given content type directly. no message(properties) created if target is {@link SerializerMessageConverter}.
+     *
+     * @param contentType
+     * @param body
+     * @return
+     * @throws MessageConversionException
+     */
+    public Object fromBody(String contentType, byte[] body) throws MessageConversionException {
+        MessageConverter delegate = getConverterForContentType(contentType);
+        if (delegate instanceof SerializerMessageConverter)
+            return ((SerializerMessageConverter) delegate).fromBody(body);
+        return delegate.fromMessage(new Message(body, newMessageProperties(contentType)));
+    }
+
+    /**
+     * convert body of given content type directly. position of body advanced by read bytes.
+     * no message(properties) created if target is {@link SerializerMessageConverter}.
+     *
+     * @param contentType
+     * @param body
+     * @return
+     * @throws MessageConversionException
+     */
+    public Object fromBody(String contentType, ByteBuffer body) throws MessageConversionException {
+        MessageConverter delegate = getConverterForContentType(contentType);
+        if (delegate instanceof SerializerMessageConverter)
+            return ((SerializerMessageConverter) delegate).fromBody(body);
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return delegate.fromMessage(new Message(bytes, newMessageProperties(contentType)));
+    }
+
+    /**
+     * convert object to body of given content type directly. no message(properties) created if target is {@link SerializerMessageConverter}.
+     *
+     * @param object
+     * @param contentType
+     * @return
+     * @throws MessageConversionException
+     */
+    public byte[] toBody(Object object, String contentType) throws MessageConversionException {
+        MessageConverter delegate = getConverterForContentType(contentType);
+        if (delegate instanceof SerializerMessageConverter)
+            return ((SerializerMessageConverter) delegate).toBody(object);
+        return delegate.toMessage(object, newMessageProperties(contentType)).getBody();
+    }
+
+    protected MessageConverter getConverterForMessage(Message message) {
+        DispatchTable table = this.dispatchTable;
+        MessageProperties messageProperties = message.getMessageProperties();
+        if (null != table.codecConverter && messageProperties.getHeaders().containsKey(SerializerMessageConverter.CODEC_HEADER))
+            return table.codecConverter;
+        return getConverterForContentType(messageProperties.getContentType());
+    }
+
     protected MessageConverter getConverterForContentType(String contentType) {
-        MessageConverter delegate = getDelegates().get(contentType);
-        if (delegate == null) {
-            delegate = this.defaultConverter;
-        }
+        MessageConverter delegate = this.dispatchTable.lookup(contentType, this);
 
         if (delegate == null) {
             throw new MessageConversionException("No delegate converter is specified for content type " + contentType);
@@ -111,6 +218,106 @@ public class ContentTypeDelegatingMessageConverter implements MessageConverter,
         }
     }
 
+    /**
+     * parse content type to {@link MimeType}, parsed result cached.
+     *
+     * @param contentType
+     * @return null if invalid.
+     */
+    protected MimeType getMimeType(String contentType) {
+        MimeType mimeType = mimeTypes.get(contentType);
+        if (null == mimeType) {
+            try {
+                mimeType = MimeTypeUtils.parseMimeType(contentType);
+            } catch (InvalidMimeTypeException e) {
+                mimeType = INVALID_MIME_TYPE;
+            }
+            if (mimeTypes.size() < MAX_CACHED_MIME_TYPES)
+                mimeTypes.put(contentType, mimeType);
+        }
+        return mimeType != INVALID_MIME_TYPE ? mimeType : null;
+    }
+
+    /**
+     * compile delegates into dispatch table.
+     */
+    protected void compile() {
+        this.dispatchTable = new DispatchTable(this.delegates, this.defaultConverter);
+    }
+
+    private static MessageProperties newMessageProperties(String contentType) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(contentType);
+        return messageProperties;
+    }
+
+
+    /**
+     * immutable dispatch table of delegates.
+     */
+    private static final class DispatchTable {
+
+        private final Map<String, MessageConverter> exactConverters;
+
+        private final Map<String, MessageConverter> resolvedConverters = new ConcurrentHashMap<>();
+
+        private final MimeType[] mimeTypes;
+
+        private final MessageConverter[] converters;
+
+        private final MessageConverter defaultConverter;
+
+        private final MessageConverter codecConverter;
+
+        private DispatchTable(Map<String, MessageConverter> delegates, MessageConverter defaultConverter) {
+            int size = delegates.size();
+            this.exactConverters = new HashMap<>(delegates);
+            this.mimeTypes = new MimeType[size];
+            this.converters = new MessageConverter[size];
+            MessageConverter serializerConverter = defaultConverter instanceof SerializerMessageConverter ? defaultConverter : null;
+            int i = 0;
+            for (Map.Entry<String, MessageConverter> entry : delegates.entrySet()) {
+                try {
+                    mimeTypes[i] = MimeTypeUtils.parseMimeType(entry.getKey());
+                } catch (InvalidMimeTypeException e) {
+                    mimeTypes[i] = null;
+                }
+                converters[i] = entry.getValue();
+                if (null == serializerConverter && entry.getValue() instanceof SerializerMessageConverter)
+                    serializerConverter = entry.getValue();
+                i++;
+            }
+            this.defaultConverter = defaultConverter;
+            this.codecConverter = serializerConverter;
+        }
+
+        private MessageConverter lookup(String contentType, ContentTypeDelegatingMessageConverter owner) {
+            if (null == contentType)
+                return defaultConverter;
+            MessageConverter converter = exactConverters.get(contentType);
+            if (null != converter)
+                return converter;
+            converter = resolvedConverters.get(contentType);
+            if (null != converter)
+                return converter;
+            converter = resolve(contentType, owner);
+            if (null != converter && resolvedConverters.size() < MAX_CACHED_MIME_TYPES)
+                resolvedConverters.put(contentType, converter);
+            return converter;
+        }
+
+        private MessageConverter resolve(String contentType, ContentTypeDelegatingMessageConverter owner) {
+            MimeType mimeType = owner.getMimeType(contentType);
+            if (null != mimeType) {
+                for (int i = 0; i < mimeTypes.length; i++) {
+                    if (null != mimeTypes[i] && mimeTypes[i].equalsTypeAndSubtype(mimeType))
+                        return converters[i];
+                }
+            }
+            return defaultConverter;
+        }
+    }
+
     private String defaultConverterBeanName;
 
 
@@ -152,5 +359,6 @@ public class ContentTypeDelegatingMessageConverter implements MessageConverter,
                 logger.warn("no mapping found for [{}]. ignore to process.", messageConverter.getClass().getName());
             }
         });
+        compile();
     }
 }
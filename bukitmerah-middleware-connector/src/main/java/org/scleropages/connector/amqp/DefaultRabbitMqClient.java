@@ -17,6 +17,7 @@ package org.scleropages.connector.amqp;
 
 
 import org.scleropages.core.concurrent.Blocking;
+import org.scleropages.core.concurrent.CorrelationTracker;
 import org.scleropages.core.concurrent.GuavaFutures;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,10 +34,12 @@ import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
 import org.springframework.amqp.rabbit.listener.adapter.AbstractAdaptableMessageListener;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.util.Assert;
@@ -45,17 +48,19 @@ import org.springframework.util.concurrent.ListenableFutureCallback;
 
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  *
  */
 @ManagedResource(objectName = "org.scleropages.connector:name=rabbitmq", description = "rabbitmq client instance.")
-public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, ApplicationContextAware {
+public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, DisposableBean, ApplicationContextAware {
+
+    public static final long DEFAULT_PUBLISH_TIMEOUT = 30000;
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -75,6 +80,16 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
 
     private RabbitTemplate.ConfirmCallback confirmCallback;
 
+    private ConfirmPublisher confirmPublisher;
+
+    private ShardedPublisher shardedPublisher;
+
+    private long publishTimeout = DEFAULT_PUBLISH_TIMEOUT;
+
+    private boolean templateCallbacks = true;
+
+    private CorrelationTracker<Publication> correlationTracker;
+
 
     public DefaultRabbitMqClient(RabbitAdmin amqpAdmin, RabbitTemplate amqpTemplate, MessageConverter messageConverter) {
         this.admin = amqpAdmin;
@@ -90,14 +105,38 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
      * @param routingKey          routing key bindings from exchange to queue(or other exchanges)
      * @param message             the spring amqp-message
      * @param publicationCallback callback method for message confirm(or returned).if null use global publicationCallback set on initialize.
+     * @throws IllegalStateException if template callbacks disabled (see {@link #setTemplateCallbacks(boolean)}) and publicationCallback present.
+     * @throws org.springframework.amqp.AmqpException if failure to send, publicationCallback not invoked.
      */
     @Override
     public void send(final String exchange, final String routingKey,
                      final Message message, final FutureCallback<Publication> publicationCallback) {
-        String returnedId = generateDefaultCorrelationIdIfNecessary(message.getMessageProperties());
-        final CorrelationData correlationData = null != publicationCallback ?
-                new InvocationCorrelationData(returnedId, message, null, publicationCallback) : new DefaultCorrelationData(returnedId, message, null);
-        template.send(exchange, routingKey, message, correlationData);
+        long sequence = correlationTracker.nextId();
+        String returnedId = generateDefaultCorrelationIdIfNecessary(message.getMessageProperties(), sequence);
+        if (null == publicationCallback) {
+            template.send(exchange, routingKey, message, new DefaultCorrelationData(returnedId, message, null));
+            return;
+        }
+        Assert.state(templateCallbacks, "template callbacks disabled. publication callback not supported.");
+        final InvocationCorrelationData correlationData = new InvocationCorrelationData(returnedId, sequence, message, null);
+        CorrelationTracker.Correlation<Publication> correlation = correlationTracker.register(sequence);
+        try {
+            template.send(exchange, routingKey, message, correlationData);
+        } catch (RuntimeException e) {
+            // signal caller by exception only, callback not attached yet.
+            correlationTracker.fail(sequence, e);
+            throw e;
+        }
+        correlation.whenComplete((publication, throwable) -> {
+            if (null == throwable) {
+                publicationCallback.onSuccess(publication);
+                return;
+            }
+            if (throwable instanceof PublicationException)
+                publicationCallback.onFailure(throwable.getCause(), ((PublicationException) throwable).getPublication());
+            else
+                publicationCallback.onFailure(throwable, new PublicationImpl(correlationData, throwable));
+        });
     }
 
     /**
@@ -115,7 +154,7 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
     @Override
     public boolean send(final String exchange, final String routingKey,
                         final Message message, final Blocking blocking) throws ExecutionException, InterruptedException, TimeoutException {
-        final CorrelationData correlationData = new DefaultCorrelationData(generateDefaultCorrelationIdIfNecessary(message.getMessageProperties()), message, null);
+        final CorrelationData correlationData = new DefaultCorrelationData(generateDefaultCorrelationIdIfNecessary(message.getMessageProperties(), correlationTracker.nextId()), message, null);
         template.send(exchange, routingKey, message, correlationData);
         if (Blocking.isBlocking(blocking)) {
             if (Blocking.isPermanentBlocking(blocking)) {
@@ -135,26 +174,32 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
      * @param routingKey            routing key bindings from exchange to queue(or other exchanges)
      * @param message               the spring amqp-message
      * @param publicationObservable publication observable
+     * @deprecated correlations of publications tracked by {@link CorrelationTracker}, use {@link #send(String, String, Message, FutureCallback)} or {@link #sendAsync(String, String, Message)} instead.
      */
+    @Deprecated
     @Override
     public void send(final String exchange, final String routingKey,
                      final Message message, GuavaFutures.IdObservable<String, Publication> publicationObservable) {
 
-        String subscribeId = generateDefaultCorrelationIdIfNecessary(message.getMessageProperties());
-
+        String subscribeId = message.getMessageProperties().getMessageId();
+        if (null == subscribeId) {
+            subscribeId = DEFAULT_CORRELATION_ID_PREFIX + correlationTracker.nextId();
+            message.getMessageProperties().setMessageId(subscribeId);
+        }
+        final String observableId = subscribeId;
+        publicationObservable.subscribe(observableId);
         send(exchange, routingKey, message, new FutureCallback<Publication>() {
 
             @Override
             public void onSuccess(Publication result) {
-                publicationObservable.done(subscribeId, result);
+                publicationObservable.done(observableId, result);
             }
 
             @Override
             public void onFailure(Throwable t, Publication result) {
-                publicationObservable.fault(subscribeId, new PublicationException(t, result), false);
+                publicationObservable.fault(observableId, new PublicationException(t, result), false);
             }
         });
-        publicationObservable.subscribe(subscribeId);
     }
 
 
@@ -170,12 +215,35 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
         return send(exchange, routingKey, toMessage(message, messageProperties), blocking);
     }
 
+    @Deprecated
     @Override
     public void send(final String exchange, final String routingKey,
                      final Object message, MessageProperties messageProperties, GuavaFutures.IdObservable<String, Publication> publicationObservable) {
         send(exchange, routingKey, toMessage(message, messageProperties), publicationObservable);
     }
 
+    /**
+     * 异步发布(publisher confirm 窗口)，发布结果通过future获取，不经过 {@link RabbitTemplate} 的 channel 缓存与 confirm 处理.
+     * 如启用了 {@link ShardedPublisher} 则按 routing key 分散到多个 channel 发布.
+     *
+     * @param exchange   exchange name
+     * @param routingKey routing key bindings from exchange to queue(or other exchanges)
+     * @param message    the spring amqp-message
+     * @return future completed by confirm of broker.
+     */
+    @Override
+    public CompletableFuture<Confirm> sendAsync(final String exchange, final String routingKey, final Message message) {
+        if (null != shardedPublisher)
+            return shardedPublisher.publish(exchange, routingKey, message);
+        return getConfirmPublisher().publish(exchange, routingKey, message);
+    }
+
+    @Override
+    public CompletableFuture<Confirm> sendAsync(final String exchange, final String routingKey,
+                                                final Object message, MessageProperties messageProperties) {
+        return sendAsync(exchange, routingKey, toMessage(message, messageProperties));
+    }
+
     @Override
     public Message exchange(final String exchange, final String routingKey,
                             final Message message) {
@@ -252,6 +320,22 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
         return simpleRabbitListenerEndpoint;
     }
 
+    @Override
+    public <T> RabbitListenerEndpoint createBatchRabbitListenerEndpoint(String id, String[] queueNames, boolean autoStartup, boolean exclusive, String concurrency,
+                                                                        int batchSize, long receiveTimeout, BatchListener<T> batchListener) {
+        BatchRabbitListenerEndpoint batchRabbitListenerEndpoint = new BatchRabbitListenerEndpoint();
+        batchRabbitListenerEndpoint.setId(id);
+        batchRabbitListenerEndpoint.setQueueNames(queueNames);
+        batchRabbitListenerEndpoint.setAutoStartup(autoStartup);
+        batchRabbitListenerEndpoint.setExclusive(exclusive);
+        batchRabbitListenerEndpoint.setMessageConverter(messageConverter);
+        batchRabbitListenerEndpoint.setAdmin(admin);
+        batchRabbitListenerEndpoint.setConcurrency(concurrency);
+        batchRabbitListenerEndpoint.setReceiveTimeout(receiveTimeout);
+        batchRabbitListenerEndpoint.setMessageListener(new BatchMessageListenerAdapter<>(batchListener, messageConverter, batchSize));
+        return batchRabbitListenerEndpoint;
+    }
+
     protected void processMessageListener(MessageListener messageListener) {
         if (messageListener instanceof AbstractAdaptableMessageListener) {
             AbstractAdaptableMessageListener adaptableMessageListenerMessageListener = (AbstractAdaptableMessageListener) messageListener;
@@ -294,20 +378,20 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
         logger.info("successfully started message listener container for id: [{}]", id);
     }
 
-    private AtomicInteger currentCorrelationId = new AtomicInteger();
-
     private static final String DEFAULT_CORRELATION_ID_PREFIX = "sys_";
 
     /**
      * implementation this method to generate a default correlationId if no message id provided from message properties.
      * must make sure unique. otherwise the returned message can not obtain from CorrelationData.
-     * by default use thread-safety number auto incrementer and with prefix "sys_"
+     * by default use sequence of {@link CorrelationTracker} with prefix "sys_"
      *
+     * @param messageProperties
+     * @param sequence          correlation sequence allocated from {@link CorrelationTracker}
      * @return
      */
-    protected String generateDefaultCorrelationIdIfNecessary(MessageProperties messageProperties) {
+    protected String generateDefaultCorrelationIdIfNecessary(MessageProperties messageProperties, long sequence) {
         String messageId = null != messageProperties ? messageProperties.getMessageId() : null;
-        return null != messageId ? messageId : DEFAULT_CORRELATION_ID_PREFIX + currentCorrelationId.incrementAndGet();
+        return null != messageId ? messageId : DEFAULT_CORRELATION_ID_PREFIX + sequence;
     }
 
 
@@ -347,17 +431,17 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
 
 
     protected void invokeCorrelationData(InvocationCorrelationData invocationCorrelationData, boolean ack, String cause) {
+        long sequence = invocationCorrelationData.getSequence();
         if (ack) {
             if (invocationCorrelationData.getReturnedMessage() == null)
-                invocationCorrelationData.getPublicationCallback().onSuccess(
-                        new PublicationImpl(invocationCorrelationData));
+                correlationTracker.complete(sequence, new PublicationImpl(invocationCorrelationData));
             else {
                 Throwable throwable = new IllegalStateException("returned by broker.");
-                invocationCorrelationData.getPublicationCallback().onFailure(throwable, new PublicationImpl(invocationCorrelationData, throwable));
+                correlationTracker.fail(sequence, new PublicationException(throwable, new PublicationImpl(invocationCorrelationData, throwable)));
             }
         } else {
             Throwable throwable = new IllegalStateException(cause);
-            invocationCorrelationData.getPublicationCallback().onFailure(throwable, new PublicationImpl(invocationCorrelationData, throwable));
+            correlationTracker.fail(sequence, new PublicationException(throwable, new PublicationImpl(invocationCorrelationData, throwable)));
         }
     }
 
@@ -369,6 +453,12 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
         this.applicationContext = applicationContext;
     }
 
+    public ConfirmPublisher getConfirmPublisher() {
+        if (null == confirmPublisher)
+            throw new IllegalStateException("confirmPublisher not enabled.");
+        return confirmPublisher;
+    }
+
     public AsyncRabbitTemplate getAsyncAmqpTemplate() {
         if (null == asyncAmqpTemplate)
             throw new IllegalStateException("asyncAmqpTemplate not enabled.");
@@ -422,15 +512,15 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
 
     private class InvocationCorrelationData extends DefaultCorrelationData {
 
-        private final FutureCallback<Publication> publicationCallback;
+        private final long sequence;
 
-        public InvocationCorrelationData(String id, Message message, Object source, FutureCallback<Publication> publicationCallback) {
+        public InvocationCorrelationData(String id, long sequence, Message message, Object source) {
             super(id, message, source);
-            this.publicationCallback = publicationCallback;
+            this.sequence = sequence;
         }
 
-        protected FutureCallback<Publication> getPublicationCallback() {
-            return publicationCallback;
+        protected long getSequence() {
+            return sequence;
         }
     }
 
@@ -456,7 +546,21 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        if (null == correlationTracker)
+            correlationTracker = new CorrelationTracker<>(publishTimeout, TimeUnit.MILLISECONDS);
+        if (templateCallbacks)
+            setupCallbacks();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (null != correlationTracker)
+            correlationTracker.close();
+    }
 
+    @ManagedAttribute(description = "Number of publications waiting for broker confirm")
+    public int getPendingCorrelations() {
+        return null != correlationTracker ? correlationTracker.size() : 0;
     }
 
     @Autowired
@@ -519,4 +623,31 @@ public class DefaultRabbitMqClient implements AmqpClient, InitializingBean, Appl
     public void setAsyncAmqpTemplate(AsyncRabbitTemplate asyncAmqpTemplate) {
         this.asyncAmqpTemplate = asyncAmqpTemplate;
     }
+
+    public void setConfirmPublisher(ConfirmPublisher confirmPublisher) {
+        this.confirmPublisher = confirmPublisher;
+    }
+
+    public void setShardedPublisher(ShardedPublisher shardedPublisher) {
+        this.shardedPublisher = shardedPublisher;
+    }
+
+    /**
+     * confirm and return callback of {@link RabbitTemplate} installed by this client on initialize if true (default).
+     * a template accepts only one confirm callback: disable it if application installs callbacks to template itself,
+     * or prefer {@link #setConfirmCallback(RabbitTemplate.ConfirmCallback)} and {@link #setReturnCallback(RabbitTemplate.ReturnCallback)} of this client.
+     * publish with {@link FutureCallback} not supported if disabled.
+     *
+     * @param templateCallbacks
+     */
+    public void setTemplateCallbacks(boolean templateCallbacks) {
+        this.templateCallbacks = templateCallbacks;
+    }
+
+    /**
+     * @param publishTimeout millis waiting broker confirm before publication callback failure with {@link TimeoutException}. not timeout if 0.
+     */
+    public void setPublishTimeout(long publishTimeout) {
+        this.publishTimeout = publishTimeout;
+    }
 }
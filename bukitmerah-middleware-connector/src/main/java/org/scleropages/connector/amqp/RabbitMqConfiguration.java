@@ -17,18 +17,25 @@ package org.scleropages.connector.amqp;
 
 import com.google.common.collect.Maps;
 import com.rabbitmq.client.Channel;
+import org.scleropages.serialize.LookupSerializerFactory;
 import org.scleropages.serialize.SerializerFactory;
 import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.AmqpTemplate;
 import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.AsyncRabbitTemplate;
+import org.springframework.amqp.rabbit.connection.AbstractConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionNameStrategy;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2XmlMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -36,7 +43,11 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.util.Assert;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -49,6 +60,9 @@ public class RabbitMqConfiguration {
     @Value("#{ @environment['rabbitmq.serialize.default'] ?: 'serialize' }")
     private String defaultProvider;
 
+    @Value("#{ @environment['rabbitmq.serialize.factory'] ?: '' }")
+    private String boundFactoryId;
+
     @ConditionalOnProperty(name = "rabbitmq.serialize.jackson-json.enabled")
     @ConditionalOnMissingBean
     @Bean
@@ -73,11 +87,16 @@ public class RabbitMqConfiguration {
         return simpleMessageConverter;
     }
 
+    @Value("#{ @environment['rabbitmq.serialize.codec-header'] ?: false }")
+    private boolean codecHeader;
+
     @ConditionalOnProperty(name = "rabbitmq.serialize.serialize.enabled")
     @ConditionalOnMissingBean
     @Bean
     public SerializerMessageConverter serializerMessageConverter(SerializerFactory serializerFactory) {
-        SerializerMessageConverter serializerMessageConverter = new SerializerMessageConverter(serializerFactory);
+        SerializerMessageConverter serializerMessageConverter = new SerializerMessageConverter(LookupSerializerFactory.bindIfNecessary(serializerFactory, boundFactoryId),
+                serializerFactory instanceof LookupSerializerFactory ? (LookupSerializerFactory) serializerFactory : null);
+        serializerMessageConverter.setCodecHeader(codecHeader);
         return serializerMessageConverter;
     }
 
@@ -120,11 +139,108 @@ public class RabbitMqConfiguration {
         return asyncAmqpTemplate;
     }
 
+    @Value("#{ @environment['rabbitmq.publisher.confirm-window'] ?: " + ConfirmPublisher.DEFAULT_WINDOW_SIZE + " }")
+    private int confirmWindow;
+
+    @Value("#{ @environment['rabbitmq.publisher.confirm-window-timeout'] ?: " + ConfirmPublisher.DEFAULT_WINDOW_TIMEOUT + " }")
+    private long confirmWindowTimeout;
+
+    @Value("#{ @environment['rabbitmq.publisher.mandatory'] ?: false }")
+    private boolean mandatory;
+
+    /*broker confirm timeout of template publishes and async (sharded) publishers, not timeout if 0.*/
+    @Value("#{ @environment['rabbitmq.publisher.confirm-timeout'] ?: " + DefaultRabbitMqClient.DEFAULT_PUBLISH_TIMEOUT + " }")
+    private long publishTimeout;
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "rabbitmq.publisher.async.enabled")
+    public ConfirmPublisher confirmPublisher(ConnectionFactory connectionFactory) {
+        ConfirmPublisher confirmPublisher = new ConfirmPublisher(connectionFactory, confirmWindow);
+        confirmPublisher.setWindowTimeout(confirmWindowTimeout);
+        confirmPublisher.setConfirmTimeout(publishTimeout);
+        confirmPublisher.setMandatory(mandatory);
+        return confirmPublisher;
+    }
+
+    @Value("#{ @environment['rabbitmq.publisher.shards'] ?: T(java.lang.Runtime).getRuntime().availableProcessors() }")
+    private int publisherShards;
+
+    @Value("#{ @environment['rabbitmq.publisher.connections'] ?: 1 }")
+    private int publisherConnections;
+
+    @Value("#{ @environment['rabbitmq.publisher.shard-buffer'] ?: " + ShardedPublisher.DEFAULT_BUFFER_SIZE + " }")
+    private int publisherShardBuffer;
+
+    @Value("#{ @environment['rabbitmq.publisher.enqueue-timeout'] ?: " + ShardedPublisher.DEFAULT_ENQUEUE_TIMEOUT + " }")
+    private long publisherEnqueueTimeout;
+
+    /**
+     * 'rabbitmq.publisher.confirm-window' applied to each shard, so max messages in flight is shards * confirm-window
+     * (shards default to available processors).
+     * extra connections ('rabbitmq.publisher.connections' > 1) created by {@link #createPublisherConnectionFactory(ConnectionFactory, RabbitProperties, ConnectionNameStrategy)}.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "rabbitmq.publisher.sharded.enabled")
+    public ShardedPublisher shardedPublisher(ConnectionFactory connectionFactory, ObjectProvider<RabbitProperties> rabbitProperties,
+                                             ObjectProvider<ConnectionNameStrategy> connectionNameStrategy) {
+        List<ConnectionFactory> connectionFactories = new ArrayList<>();
+        List<CachingConnectionFactory> createdConnectionFactories = new ArrayList<>();
+        connectionFactories.add(connectionFactory);
+        for (int i = 1; i < publisherConnections; i++) {
+            CachingConnectionFactory created = createPublisherConnectionFactory(connectionFactory, rabbitProperties.getIfAvailable(), connectionNameStrategy.getIfAvailable());
+            connectionFactories.add(created);
+            createdConnectionFactories.add(created);
+        }
+        ShardedPublisher shardedPublisher = new ShardedPublisher(connectionFactories, publisherShards, confirmWindow, publisherShardBuffer);
+        shardedPublisher.setOwnedConnectionFactories(createdConnectionFactories);
+        shardedPublisher.setWindowTimeout(confirmWindowTimeout);
+        shardedPublisher.setEnqueueTimeout(publisherEnqueueTimeout);
+        shardedPublisher.setConfirmTimeout(publishTimeout);
+        shardedPublisher.setMandatory(mandatory);
+        return shardedPublisher;
+    }
+
+    /**
+     * create a connection factory sharing rabbit connection factory (host, credentials, ssl, heartbeat and connection timeout) of given.
+     * addresses and channel checkout timeout applied from rabbit properties, close timeout and connection name strategy copied.
+     *
+     * @param connectionFactory
+     * @param rabbitProperties       null if not present.
+     * @param connectionNameStrategy null if not present.
+     * @return
+     */
+    protected CachingConnectionFactory createPublisherConnectionFactory(ConnectionFactory connectionFactory, RabbitProperties rabbitProperties,
+                                                                        ConnectionNameStrategy connectionNameStrategy) {
+        Assert.isInstanceOf(AbstractConnectionFactory.class, connectionFactory, "multiple publisher connections requires AbstractConnectionFactory.");
+        AbstractConnectionFactory source = (AbstractConnectionFactory) connectionFactory;
+        CachingConnectionFactory created = new CachingConnectionFactory(source.getRabbitConnectionFactory());
+        created.setCloseTimeout(source.getCloseTimeout());
+        if (null != rabbitProperties) {
+            created.setAddresses(rabbitProperties.determineAddresses());
+            Duration checkoutTimeout = rabbitProperties.getCache().getChannel().getCheckoutTimeout();
+            if (null != checkoutTimeout)
+                created.setChannelCheckoutTimeout(checkoutTimeout.toMillis());
+        }
+        if (null != connectionNameStrategy)
+            created.setConnectionNameStrategy(connectionNameStrategy);
+        return created;
+    }
+
+    @Value("#{ @environment['rabbitmq.publisher.template-callbacks'] ?: true }")
+    private boolean templateCallbacks;
+
     @Bean
     @ConditionalOnMissingBean
-    public DefaultRabbitMqClient rabbitMqClient(AmqpAdmin admin, AmqpTemplate template, MessageConverter messageConverter, AsyncRabbitTemplate asyncAmqpTemplate) {
+    public DefaultRabbitMqClient rabbitMqClient(AmqpAdmin admin, AmqpTemplate template, MessageConverter messageConverter, AsyncRabbitTemplate asyncAmqpTemplate,
+                                                ObjectProvider<ConfirmPublisher> confirmPublisher, ObjectProvider<ShardedPublisher> shardedPublisher) {
         DefaultRabbitMqClient client = new DefaultRabbitMqClient((RabbitAdmin) admin, (RabbitTemplate) template, messageConverter);
         client.setAsyncAmqpTemplate(asyncAmqpTemplate);
+        client.setConfirmPublisher(confirmPublisher.getIfAvailable());
+        client.setShardedPublisher(shardedPublisher.getIfAvailable());
+        client.setPublishTimeout(publishTimeout);
+        client.setTemplateCallbacks(templateCallbacks);
         return client;
     }
 
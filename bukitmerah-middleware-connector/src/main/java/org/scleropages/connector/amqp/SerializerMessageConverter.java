@@ -15,52 +15,208 @@
  */
 package org.scleropages.connector.amqp;
 
+import org.scleropages.serialize.LookupSerializerFactory;
 import org.scleropages.serialize.SerializerFactory;
 import org.scleropages.serialize.SerializerFactoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.support.converter.AbstractMessageConverter;
 import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * {@link org.springframework.amqp.support.converter.MessageConverter} based on {@link SerializerFactory}.
+ * <p>
+ * a {@link LookupSerializerFactory} resolved per message by current lookup key (thread local), factories bound by
+ * {@link LookupSerializerFactory#bind(String)} cached per key (no component resolution per message).
+ * a factory bound up front (e.g. by property rabbitmq.serialize.factory) can be given with its lookup factory for codec dispatch.
+ * if codec header enabled, {@link SerializerFactory#factoryId()} of factory set as {@link #CODEC_HEADER} of outbound messages,
+ * inbound messages with codec header decoded by factory of that id (array lookup of {@link LookupSerializerFactory}).
+ *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public class SerializerMessageConverter extends AbstractMessageConverter {
 
     public static final String DEFAULT_CONTENT_TYPE = "application/scleropages-stream";
 
+    /**
+     * 1-byte header of factory id of serializer factory.
+     */
+    public static final String CODEC_HEADER = "x-codec";
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final Object DEFAULT_KEY = new Object();
+
+    /*bound factory, null if resolved per message by lookup factory.*/
     private final SerializerFactory<InputStream, OutputStream> serializerFactory;
 
+    /*for per message resolution and codec dispatch, null if not provided.*/
+    private final LookupSerializerFactory lookupSerializerFactory;
+
+    /*factory id of bound factory, null if not provided.*/
+    private final Byte codec;
+
+    private final Map<Object, SerializerFactory<InputStream, OutputStream>> boundFactories = new ConcurrentHashMap<>();
+
+    private boolean codecHeader;
+
 
     public SerializerMessageConverter(SerializerFactory<InputStream, OutputStream> serializerFactory) {
+        this(serializerFactory, serializerFactory instanceof LookupSerializerFactory ? (LookupSerializerFactory) serializerFactory : null);
+    }
+
+    /**
+     * @param serializerFactory       bound factory. resolved per message by lookup factory if null or a {@link LookupSerializerFactory}.
+     * @param lookupSerializerFactory lookup factory for per message resolution and dispatch of {@link #CODEC_HEADER}. optional if bound factory given.
+     */
+    public SerializerMessageConverter(SerializerFactory<InputStream, OutputStream> serializerFactory, LookupSerializerFactory lookupSerializerFactory) {
+        if (serializerFactory instanceof LookupSerializerFactory) {
+            lookupSerializerFactory = (LookupSerializerFactory) serializerFactory;
+            serializerFactory = null;
+        }
+        Assert.isTrue(null != serializerFactory || null != lookupSerializerFactory, "serializerFactory or lookupSerializerFactory required.");
         this.serializerFactory = serializerFactory;
+        this.lookupSerializerFactory = lookupSerializerFactory;
+        this.codec = null != serializerFactory ? resolveCodec(serializerFactory) : null;
     }
 
     @Override
     protected Message createMessage(Object object, MessageProperties messageProperties) {
+        SerializerFactory<InputStream, OutputStream> factory = getSerializerFactory();
+        byte[] payload = toBody(factory, object);
+        if (messageProperties.getContentLength() == 0)
+            messageProperties.setContentLength(payload.length);
+        if (!StringUtils.hasText(messageProperties.getContentType()))
+            messageProperties.setContentType(DEFAULT_CONTENT_TYPE);
+        if (codecHeader) {
+            Byte factoryId = factory == serializerFactory ? codec : resolveCodec(factory);
+            if (null != factoryId)
+                messageProperties.setHeader(CODEC_HEADER, factoryId);
+        }
+        return new Message(payload, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        Object codecId = message.getMessageProperties().getHeaders().get(CODEC_HEADER);
+        SerializerFactory factory = codecId instanceof Number ? getFactory(((Number) codecId).byteValue()) : getSerializerFactory();
+        try {
+            return SerializerFactoryUtil.deserialize(factory, message.getBody());
+        } catch (Exception e) {
+            throw new IllegalStateException("failure to deserialize message.", e);
+        }
+    }
+
+    /**
+     * deserialize messages of a consumer batch in one pass.
+     *
+     * @param messages
+     * @return
+     * @throws MessageConversionException
+     */
+    public List<Object> fromMessages(List<Message> messages) throws MessageConversionException {
+        List<Object> payloads = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            payloads.add(fromMessage(message));
+        }
+        return payloads;
+    }
+
+    /**
+     * serialize object to message body directly (without message properties).
+     *
+     * @param object
+     * @return
+     */
+    public byte[] toBody(Object object) {
+        return toBody(getSerializerFactory(), object);
+    }
+
+    protected byte[] toBody(SerializerFactory<InputStream, OutputStream> factory, Object object) {
         try {
-            byte[] payload = SerializerFactoryUtil.serialize(serializerFactory, object);
-            if (messageProperties.getContentLength() == 0)
-                messageProperties.setContentLength(payload.length);
-            if (!StringUtils.hasText(messageProperties.getContentType()))
-                messageProperties.setContentType(DEFAULT_CONTENT_TYPE);
-            return new Message(payload, messageProperties);
+            return SerializerFactoryUtil.serialize(factory, object);
         } catch (IOException e) {
             throw new IllegalStateException("failure to serialize message.", e);
         }
     }
 
-    @Override
-    public Object fromMessage(Message message) throws MessageConversionException {
+    /**
+     * deserialize message body directly (without message properties).
+     *
+     * @param body
+     * @return
+     */
+    public Object fromBody(byte[] body) {
+        try {
+            return SerializerFactoryUtil.deserialize(getSerializerFactory(), body);
+        } catch (Exception e) {
+            throw new IllegalStateException("failure to deserialize message.", e);
+        }
+    }
+
+    /**
+     * deserialize message body directly (without message properties). position of body advanced by read bytes.
+     *
+     * @param body
+     * @return
+     */
+    public Object fromBody(ByteBuffer body) {
         try {
-            return SerializerFactoryUtil.deserialize(serializerFactory, message.getBody());
+            return SerializerFactoryUtil.deserialize(getSerializerFactory(), body);
         } catch (Exception e) {
             throw new IllegalStateException("failure to deserialize message.", e);
         }
     }
+
+    protected SerializerFactory getFactory(byte codecId) {
+        if (null != codec && codec == codecId)
+            return serializerFactory;
+        if (null == lookupSerializerFactory)
+            throw new MessageConversionException("unsupported codec: " + codecId);
+        return lookupSerializerFactory.getFactory(codecId);
+    }
+
+    private static Byte resolveCodec(SerializerFactory serializerFactory) {
+        try {
+            return serializerFactory.factoryId();
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return bound factory, or factory of current lookup key (bound once per key).
+     */
+    public SerializerFactory<InputStream, OutputStream> getSerializerFactory() {
+        if (null != serializerFactory)
+            return serializerFactory;
+        Object lookupKey = lookupSerializerFactory.getCurrentLookupKey();
+        Object key = null != lookupKey ? lookupKey : DEFAULT_KEY;
+        SerializerFactory<InputStream, OutputStream> factory = boundFactories.get(key);
+        if (null == factory) {
+            factory = lookupSerializerFactory.bind(null != lookupKey ? String.valueOf(lookupKey) : null);
+            boundFactories.put(key, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * @param codecHeader set {@link #CODEC_HEADER} of outbound messages or not.
+     */
+    public void setCodecHeader(boolean codecHeader) {
+        this.codecHeader = codecHeader;
+    }
 }
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.amqp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.AbstractConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * high throughput publisher spreads publishes over a fixed set of shards (optionally over several connection factories).
+ * <p>
+ * each shard owns a dedicated confirm channel ({@link ConfirmPublisher}), a bounded ring buffer and a single writer thread,
+ * callers only enqueue into ring buffer of shard and never contend on channel checkout or confirm bookkeeping of other shards.
+ * shard selected by hash of routing key, messages of same routing key always published in order by same writer and channel.
+ * <p>
+ * publish blocked if ring buffer full until space available or enqueue timeout elapsed (backpressure from confirm window of shard).
+ * future of publish completed by {@link Confirm} of broker, completed exceptionally by {@link PublicationException} on failure.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class ShardedPublisher implements DisposableBean {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    public static final long DEFAULT_ENQUEUE_TIMEOUT = 30000;
+
+    private static final int DRAIN_BATCH = 256;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Shard[] shards;
+
+    private final int shardMask;
+
+    /*connection factories created for this only, destroyed with this.*/
+    private List<? extends AbstractConnectionFactory> ownedConnectionFactories = Collections.emptyList();
+
+    private long enqueueTimeout = DEFAULT_ENQUEUE_TIMEOUT;
+
+    private volatile boolean closed;
+
+
+    /**
+     * @param connectionFactory publisher connection factory used if present.
+     * @param shards            number of channels (rounded up to power of 2).
+     * @param windowSize        confirm window of each shard (max in flight of this is shards * windowSize).
+     * @param bufferSize        ring buffer size of each shard.
+     */
+    public ShardedPublisher(ConnectionFactory connectionFactory, int shards, int windowSize, int bufferSize) {
+        this(Collections.singletonList(connectionFactory), shards, windowSize, bufferSize);
+    }
+
+    /**
+     * @param connectionFactories connection factories (one connection each) channels spread over, in round robin.
+     * @param shards              number of channels (rounded up to power of 2).
+     * @param windowSize          confirm window of each shard (max in flight of this is shards * windowSize).
+     * @param bufferSize          ring buffer size of each shard.
+     */
+    public ShardedPublisher(List<? extends ConnectionFactory> connectionFactories, int shards, int windowSize, int bufferSize) {
+        Assert.notEmpty(connectionFactories, "connectionFactories must not be empty.");
+        Assert.isTrue(shards > 0 && bufferSize > 0, "shards and bufferSize must be positive.");
+        int shardCount = shards <= 1 ? 1 : Integer.highestOneBit(shards - 1) << 1;
+        this.shards = new Shard[shardCount];
+        this.shardMask = shardCount - 1;
+        for (int i = 0; i < shardCount; i++) {
+            ConnectionFactory connectionFactory = connectionFactories.get(i % connectionFactories.size());
+            Assert.notNull(connectionFactory, "connectionFactory must not be null.");
+            this.shards[i] = new Shard(i, new ConfirmPublisher(connectionFactory, windowSize), bufferSize);
+        }
+        for (Shard shard : this.shards) {
+            shard.writer.start();
+        }
+    }
+
+
+    /**
+     * @param exchange
+     * @param routingKey
+     * @param message
+     * @return future completed by confirm of broker.
+     */
+    public CompletableFuture<Confirm> publish(String exchange, String routingKey, Message message) {
+        CompletableFuture<Confirm> future = new CompletableFuture<>();
+        try {
+            Assert.state(!closed, "publisher closed.");
+            Shard shard = shardOf(routingKey);
+            Publish publish = new Publish(exchange, routingKey, message, future);
+            if (!shard.buffer.offer(publish, enqueueTimeout, TimeUnit.MILLISECONDS))
+                fail(future, message, new TimeoutException("publish buffer full in " + enqueueTimeout + "ms."));
+            else if (closed && shard.buffer.remove(publish))// enqueued after (or while) buffer drained by destroy
+                fail(future, message, new IllegalStateException("publisher closed."));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(future, message, e);
+        } catch (RuntimeException e) {
+            fail(future, message, e);
+        }
+        return future;
+    }
+
+    /**
+     * @return number of messages published but not confirmed.
+     */
+    public int getInFlight() {
+        int inFlight = 0;
+        for (Shard shard : shards) {
+            inFlight += shard.publisher.getInFlight();
+        }
+        return inFlight;
+    }
+
+    /**
+     * @return number of messages waiting in ring buffers.
+     */
+    public int getBuffered() {
+        int buffered = 0;
+        for (Shard shard : shards) {
+            buffered += shard.buffer.size();
+        }
+        return buffered;
+    }
+
+    public int getShards() {
+        return shards.length;
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+        for (Shard shard : shards) {
+            shard.writer.interrupt();
+        }
+        IllegalStateException cause = new IllegalStateException("publisher closed.");
+        for (Shard shard : shards) {
+            try {
+                shard.writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Publish publish;
+            while (null != (publish = shard.buffer.poll())) {
+                fail(publish.future, publish.message, cause);
+            }
+            shard.publisher.destroy();
+        }
+        ownedConnectionFactories.forEach(AbstractConnectionFactory::destroy);
+    }
+
+    protected Shard shardOf(String routingKey) {
+        int hash = null != routingKey ? routingKey.hashCode() : 0;
+        return shards[(hash ^ (hash >>> 16)) & shardMask];
+    }
+
+    protected void fail(CompletableFuture<Confirm> future, Message message, Throwable cause) {
+        future.completeExceptionally(new PublicationException(cause, new Confirm(message, false, cause.getMessage(), null)));
+    }
+
+    /**
+     * connection factories created for this publisher only, destroyed with this.
+     *
+     * @param ownedConnectionFactories
+     */
+    public void setOwnedConnectionFactories(List<? extends AbstractConnectionFactory> ownedConnectionFactories) {
+        Assert.notNull(ownedConnectionFactories, "ownedConnectionFactories must not be null.");
+        this.ownedConnectionFactories = ownedConnectionFactories;
+    }
+
+    /**
+     * max millis publish blocked if ring buffer of shard full.
+     *
+     * @param enqueueTimeout
+     */
+    public void setEnqueueTimeout(long enqueueTimeout) {
+        this.enqueueTimeout = enqueueTimeout;
+    }
+
+    /**
+     * @param windowTimeout window timeout of confirm publisher of each shard.
+     */
+    public void setWindowTimeout(long windowTimeout) {
+        for (Shard shard : shards) {
+            shard.publisher.setWindowTimeout(windowTimeout);
+        }
+    }
+
+    /**
+     * @param confirmTimeout confirm timeout of confirm publisher of each shard.
+     */
+    public void setConfirmTimeout(long confirmTimeout) {
+        for (Shard shard : shards) {
+            shard.publisher.setConfirmTimeout(confirmTimeout);
+        }
+    }
+
+    public void setMandatory(boolean mandatory) {
+        for (Shard shard : shards) {
+            shard.publisher.setMandatory(mandatory);
+        }
+    }
+
+
+    protected static class Publish {
+
+        private final String exchange;
+        private final String routingKey;
+        private final Message message;
+        private final CompletableFuture<Confirm> future;
+
+        protected Publish(String exchange, String routingKey, Message message, CompletableFuture<Confirm> future) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.message = message;
+            this.future = future;
+        }
+    }
+
+
+    /**
+     * ring buffer, single writer thread and dedicated confirm channel.
+     */
+    protected class Shard implements Runnable {
+
+        private final ConfirmPublisher publisher;
+
+        private final ArrayBlockingQueue<Publish> buffer;
+
+        private final Thread writer;
+
+        protected Shard(int index, ConfirmPublisher publisher, int bufferSize) {
+            this.publisher = publisher;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+            this.writer = new Thread(this, "amqp-publisher-shard-" + index);
+            this.writer.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Publish> drained = new ArrayList<>(DRAIN_BATCH);
+            while (!closed) {
+                try {
+                    Publish first = buffer.take();
+                    drained.add(first);
+                    buffer.drainTo(drained, DRAIN_BATCH - 1);
+                    for (Publish publish : drained) {
+                        publisher.publish(publish.exchange, publish.routingKey, publish.message, publish.future);
+                    }
+                } catch (InterruptedException e) {
+                    if (!closed)
+                        logger.warn("publisher shard writer interrupted.");
+                    break;
+                } catch (RuntimeException e) {
+                    logger.error("unexpected failure of publisher shard writer.", e);
+                } finally {
+                    drained.clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.autoconfigure;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import org.scleropages.connector.redis.DefaultRedisMetrics;
+import org.scleropages.connector.redis.RedisCommandLatencyCollector;
+import org.scleropages.connector.redis.RedisMetrics;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * redis metrics (opt-in by 'redis.metrics.enabled') and lettuce client resources recording command latencies by them.
+ * <p>
+ * applied before {@link RedisAutoConfiguration}, so default client resources of spring boot backed off only if metrics present.
+ * client resources defined by application are kept (no latencies recorded).
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+@Configuration
+@ConditionalOnClass(RedisClient.class)
+@AutoConfigureBefore(RedisAutoConfiguration.class)
+public class RedisClientResourcesAutoConfiguration {
+
+    /**
+     * default metrics enabled if 'redis.metrics.enabled' is true (command stats overlap with those of redis server
+     * exposed by {@link org.scleropages.connector.redis.RedisClusterManager}). custom {@link RedisMetrics} bean replaces it.
+     */
+    @ConditionalOnProperty(name = "redis.metrics.enabled", havingValue = "true")
+    @ConditionalOnMissingBean(RedisMetrics.class)
+    @Bean
+    public DefaultRedisMetrics defaultRedisMetrics() {
+        return new DefaultRedisMetrics();
+    }
+
+    @ConditionalOnBean(RedisMetrics.class)
+    @ConditionalOnMissingBean(ClientResources.class)
+    @Bean(destroyMethod = "shutdown")
+    public DefaultClientResources redisClientResources(RedisMetrics redisMetrics) {
+        return DefaultClientResources.builder().commandLatencyCollector(new RedisCommandLatencyCollector(redisMetrics)).build();
+    }
+}
@@ -16,9 +16,15 @@
 package org.scleropages.connector.redis;
 
 import com.google.common.collect.Maps;
+import io.lettuce.core.ReadFrom;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.util.Assert;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
@@ -26,15 +32,69 @@ import java.util.function.Function;
 /**
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
-public class DefaultRedisClient extends SpringRedisClientSupport implements RedisClient {
+public class DefaultRedisClient extends SpringRedisClientSupport implements RedisClient, InitializingBean {
+
+    public static final String SCRIPT_LPUSH_AND_TRIM = "lpush_and_trim";
+
+    public static final String SCRIPT_INCR_BY_AND_EXPIRE = "incr_by_and_expire";
+
+    public static final String SCRIPT_COMPARE_AND_SET = "compare_and_set";
+
+    public static final String SCRIPT_TOKEN_BUCKET = "token_bucket";
+
+    /*KEYS[1]=list, ARGV[1]=value, ARGV[2]=keep size. returns size of list*/
+    private static final String LPUSH_AND_TRIM = "redis.call('LPUSH', KEYS[1], ARGV[1]) "
+            + "redis.call('LTRIM', KEYS[1], 0, tonumber(ARGV[2]) - 1) "
+            + "return redis.call('LLEN', KEYS[1])";
+
+    /*KEYS[1]=counter, ARGV[1]=delta, ARGV[2]=expire millis (applied if counter has no expiry). returns value after increment*/
+    private static final String INCR_BY_AND_EXPIRE = "local v = redis.call('INCRBY', KEYS[1], ARGV[1]) "
+            + "if tonumber(ARGV[2]) > 0 and redis.call('PTTL', KEYS[1]) == -1 then redis.call('PEXPIRE', KEYS[1], ARGV[2]) end "
+            + "return v";
+
+    /*KEYS[1]=key, ARGV[1]=expect, ARGV[2]=update, ARGV[3]='1' if expect absent. returns 1 if updated*/
+    private static final String COMPARE_AND_SET = "local v = redis.call('GET', KEYS[1]) "
+            + "if (ARGV[3] == '1' and not v) or (ARGV[3] ~= '1' and v == ARGV[1]) then redis.call('SET', KEYS[1], ARGV[2]) return 1 end "
+            + "return 0";
+
+    /*KEYS[1]=bucket, ARGV[1]=capacity, ARGV[2]=refill tokens per second, ARGV[3]=requested tokens. returns 1 if acquired*/
+    private static final String TOKEN_BUCKET = "redis.replicate_commands() "
+            + "local capacity = tonumber(ARGV[1]) "
+            + "local rate = tonumber(ARGV[2]) "
+            + "local requested = tonumber(ARGV[3]) "
+            + "local t = redis.call('TIME') "
+            + "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) "
+            + "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts') "
+            + "local tokens = tonumber(bucket[1]) "
+            + "local ts = tonumber(bucket[2]) "
+            + "if tokens == nil or ts == nil then tokens = capacity ts = now end "
+            + "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000) "
+            + "local acquired = 0 "
+            + "if tokens >= requested then tokens = tokens - requested acquired = 1 end "
+            + "redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now) "
+            + "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate * 1000) + 1000) "
+            + "return acquired";
 
 
     /*记录各种key condition状态, 如counter达到指定值，on-off开关...，默认初始状态false*/
     private final Map<RedisKey, AtomicBoolean> redisKeyConditionStates = Maps.newConcurrentMap();
 
 
+    private final RedisScriptRegistry scriptRegistry;
+
+
     public DefaultRedisClient(RedisTemplate<RedisKey, String> stringRedisTemplate, RedisTemplate<RedisKey, Object> objectRedisTemplate) {
         super(stringRedisTemplate, objectRedisTemplate);
+        scriptRegistry = new RedisScriptRegistry(stringRedisTemplate);
+        scriptRegistry.register(SCRIPT_LPUSH_AND_TRIM, LPUSH_AND_TRIM, Long.class);
+        scriptRegistry.register(SCRIPT_INCR_BY_AND_EXPIRE, INCR_BY_AND_EXPIRE, Long.class);
+        scriptRegistry.register(SCRIPT_COMPARE_AND_SET, COMPARE_AND_SET, Long.class);
+        scriptRegistry.register(SCRIPT_TOKEN_BUCKET, TOKEN_BUCKET, Long.class);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scriptRegistry.loadAll();
     }
 
 
@@ -78,7 +138,9 @@ public class DefaultRedisClient extends SpringRedisClientSupport implements Redi
             return false;
         if (condition.compareAndSet(true, false)) {
             redisKeyConditionStates.remove(redisKey);
-            return stringValueTemplate().delete(redisKey);
+            Boolean deleted = stringValueTemplate().delete(redisKey);
+            afterWrite(redisKey);
+            return deleted;
         }
         return false;
     }
@@ -120,20 +182,18 @@ public class DefaultRedisClient extends SpringRedisClientSupport implements Redi
     }
 
     /**
-     * top N
+     * top N. push and trim performed atomically by script.
      *
      * @param key
      * @param value
-     * @param count
+     * @param keepSize
      */
     public void lpushAndTrim(RedisKey key, Object value, int keepSize) {
-        if (value instanceof String) {
-            stringListOperations().leftPush(key, value.toString());
-            stringListOperations().trim(key, 0, keepSize - 1);
-        } else {
-            objectListOperations().leftPush(key, value);
-            objectListOperations().trim(key, 0, keepSize - 1);
-        }
+        byte[] bytes = value instanceof String ?
+                ((RedisSerializer<String>) stringValueTemplate().getValueSerializer()).serialize((String) value) :
+                ((RedisSerializer<Object>) objectValueTemplate().getValueSerializer()).serialize(value);
+        scriptRegistry.execute(SCRIPT_LPUSH_AND_TRIM, key, bytes, keepSize);
+        afterWrite(key);
     }
 
 
@@ -153,6 +213,154 @@ public class DefaultRedisClient extends SpringRedisClientSupport implements Redi
     }
 
 
+    /**
+     * same as {@link #incrAndGetBy(RedisKey, long)}. expiry applied (atomically) if counter has no expiry (such as created by this call).
+     *
+     * @param counterKey
+     * @param incrBy
+     * @param expire
+     * @return [0]=incrByBefore,[1]=incrByAfter
+     */
+    public long[] incrAndGetBy(RedisKey counterKey, long incrBy, Duration expire) {
+        long rangeLast = scriptRegistry.<Long>execute(SCRIPT_INCR_BY_AND_EXPIRE, counterKey, incrBy, expire.toMillis());
+        afterWrite(counterKey);
+        return new long[]{rangeLast - incrBy, rangeLast};
+    }
+
+    /**
+     * set string value to update if current value equals to expect.
+     *
+     * @param key
+     * @param expect null if expect key absent.
+     * @param update
+     * @return true if updated.
+     */
+    public boolean compareAndSet(RedisKey key, String expect, String update) {
+        Assert.notNull(update, "update must not be null.");
+        Long updated = scriptRegistry.execute(SCRIPT_COMPARE_AND_SET, key, null != expect ? expect : "", update, null == expect ? "1" : "0");
+        if (updated == 1)
+            afterWrite(key);
+        return updated == 1;
+    }
+
+    /**
+     * token bucket rate limiter. bucket refilled by server time.
+     *
+     * @param bucketKey
+     * @param capacity        max tokens of bucket (burst size).
+     * @param refillPerSecond tokens refilled per second.
+     * @param permits         tokens to acquire.
+     * @return true if acquired.
+     */
+    public boolean tryAcquire(RedisKey bucketKey, long capacity, double refillPerSecond, long permits) {
+        Assert.isTrue(capacity > 0 && refillPerSecond > 0 && permits > 0, "capacity, refillPerSecond and permits must positive.");
+        Long acquired = scriptRegistry.execute(SCRIPT_TOKEN_BUCKET, bucketKey, capacity, refillPerSecond, permits);
+        afterWrite(bucketKey);
+        return acquired == 1;
+    }
+
+    /**
+     * get string values of given keys. keys grouped by slot in cluster mode.
+     *
+     * @param keys
+     * @return values in order of given keys.
+     */
+    public List<String> mget(List<RedisKey> keys) {
+        return (List<String>) executeSingle(batch().mget(keys));
+    }
+
+    /**
+     * get object values of given keys. keys grouped by slot in cluster mode.
+     *
+     * @param keys
+     * @return values in order of given keys.
+     */
+    public List<Object> mgetObjects(List<RedisKey> keys) {
+        return (List<Object>) executeSingle(batch().mgetObjects(keys));
+    }
+
+    /**
+     * get string value read from given policy.
+     *
+     * @param key
+     * @param readFrom
+     * @return
+     */
+    public String get(RedisKey key, ReadFrom readFrom) {
+        return (String) executeSingle(batch(readFrom).get(key));
+    }
+
+    /**
+     * get object value read from given policy.
+     *
+     * @param key
+     * @param readFrom
+     * @return
+     */
+    public Object getObject(RedisKey key, ReadFrom readFrom) {
+        return executeSingle(batch(readFrom).getObject(key));
+    }
+
+    /**
+     * get string values of given keys read from given policy.
+     *
+     * @param keys
+     * @param readFrom
+     * @return values in order of given keys.
+     */
+    public List<String> mget(List<RedisKey> keys, ReadFrom readFrom) {
+        return (List<String>) executeSingle(batch(readFrom).mget(keys));
+    }
+
+    /**
+     * get object values of given keys read from given policy.
+     *
+     * @param keys
+     * @param readFrom
+     * @return values in order of given keys.
+     */
+    public List<Object> mgetObjects(List<RedisKey> keys, ReadFrom readFrom) {
+        return (List<Object>) executeSingle(batch(readFrom).mgetObjects(keys));
+    }
+
+    /**
+     * set values (string if value is {@link String}, otherwise object). keys grouped by slot in cluster mode (not atomic across slots).
+     *
+     * @param values
+     */
+    public void mset(Map<RedisKey, ?> values) {
+        executeSingle(batch().mset(values));
+    }
+
+    /**
+     * @param keys
+     * @return number of keys deleted.
+     */
+    public long delete(Collection<RedisKey> keys) {
+        return (Long) executeSingle(batch().delete(keys));
+    }
+
+    /**
+     * @param keys
+     * @return number of keys exist.
+     */
+    public long exists(Collection<RedisKey> keys) {
+        return (Long) executeSingle(batch().exists(keys));
+    }
+
+    protected Object executeSingle(RedisBatch batch) {
+        return batch.executeAndWait().get(0);
+    }
+
+    /**
+     * registry of scripts. custom scripts registered after startup loaded on first use.
+     *
+     * @return
+     */
+    public RedisScriptRegistry getScriptRegistry() {
+        return scriptRegistry;
+    }
+
     protected AtomicBoolean getConditionState(RedisKey redisKey) {
         return redisKeyConditionStates.computeIfAbsent(redisKey, key -> new AtomicBoolean(false));
     }
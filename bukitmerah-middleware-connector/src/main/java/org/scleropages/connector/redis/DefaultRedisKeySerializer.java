@@ -17,6 +17,7 @@ package org.scleropages.connector.redis;
 
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.Assert;
 
 /**
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
@@ -25,14 +26,24 @@ public class DefaultRedisKeySerializer implements RedisSerializer<RedisKey> {
 
     private final RedisSerializer<String> stringRedisSerializer = RedisSerializer.string();
 
+    private RedisMetrics redisMetrics = RedisMetrics.NOOP;
+
 
     @Override
     public byte[] serialize(RedisKey redisKey) throws SerializationException {
-        return null != redisKey ? stringRedisSerializer.serialize(redisKey.evalKey()) : null;
+        if (null == redisKey)
+            return null;
+        redisMetrics.recordKey(redisKey);
+        return redisKey.getBytes();
     }
 
     @Override
     public RedisKey deserialize(byte[] bytes) throws SerializationException {
         return null != bytes ? RedisKey.RedisKeyBuilder.fromKey(stringRedisSerializer.deserialize(bytes)).build() : null;
     }
+
+    public void setRedisMetrics(RedisMetrics redisMetrics) {
+        Assert.notNull(redisMetrics, "redisMetrics must not be null.");
+        this.redisMetrics = redisMetrics;
+    }
 }
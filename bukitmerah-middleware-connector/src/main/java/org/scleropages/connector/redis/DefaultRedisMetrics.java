@@ -0,0 +1,365 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import com.google.common.collect.Maps;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.Assert;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * default {@link RedisMetrics} without metrics library dependencies. latencies recorded by hdr histograms (in microseconds, 2 significant digits).
+ * <p>
+ * metrics aggregated per interval (default 10 seconds) and published as jmx attributes of last interval:
+ * <ul>
+ * <li>command stats: ops/s and p50/p99/p999/max of network latency per command type.</li>
+ * <li>node stats: ops/s per redis node.</li>
+ * <li>serialization stats: time of values encoded/decoded, payload bytes/s out/in and pipeline depth.
+ * compare with command latencies to tell whether time spent by client or by server (and network).</li>
+ * <li>hot keys and hot slots: top accessed keys (sampled 1 of sample rate) and slots.</li>
+ * </ul>
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+@ManagedResource(objectName = "org.scleropages.connector:name=redis-metrics", description = "redis client metrics.")
+public class DefaultRedisMetrics implements RedisMetrics, InitializingBean, DisposableBean {
+
+    public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(10);
+
+    public static final int DEFAULT_SAMPLE_RATE = 100;
+
+    public static final int DEFAULT_MAX_SAMPLED_KEYS = 10000;
+
+    public static final int DEFAULT_TOP_N = 20;
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private static final int SLOTS = 16384;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, Meter> commandMeters = Maps.newConcurrentMap();
+
+    private final ConcurrentMap<String, LongAdder> nodeCounters = Maps.newConcurrentMap();
+
+    private final Meter serializeMeter = new Meter();
+
+    private final Meter deserializeMeter = new Meter();
+
+    private final Recorder pipelineRecorder = new Recorder(Integer.MAX_VALUE, SIGNIFICANT_DIGITS);
+
+    private final LongAdder bytesOut = new LongAdder();
+
+    private final LongAdder bytesIn = new LongAdder();
+
+    private final ConcurrentMap<String, LongAdder> sampledKeys = Maps.newConcurrentMap();
+
+    private final AtomicLongArray sampledSlots = new AtomicLongArray(SLOTS);
+
+    private Duration interval = DEFAULT_INTERVAL;
+
+    private int sampleRate = DEFAULT_SAMPLE_RATE;
+
+    private int maxSampledKeys = DEFAULT_MAX_SAMPLED_KEYS;
+
+    private int topN = DEFAULT_TOP_N;
+
+    private ScheduledExecutorService scheduler;
+
+    private long lastRollNanos = System.nanoTime();
+
+    /*snapshots of last interval*/
+    private volatile Map<String, Object> commandStats = Collections.emptyMap();
+
+    private volatile Map<String, Object> nodeStats = Collections.emptyMap();
+
+    private volatile Map<String, Object> serializationStats = Collections.emptyMap();
+
+    private volatile Map<String, Object> hotKeys = Collections.emptyMap();
+
+    private volatile Map<String, Object> hotSlots = Collections.emptyMap();
+
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastRollNanos = System.nanoTime();
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                roll();
+            } catch (Exception e) {
+                logger.warn("failure to roll redis metrics.", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler)
+            scheduler.shutdownNow();
+    }
+
+
+    @Override
+    public void recordCommand(String command, SocketAddress node, long firstResponseNanos, long completionNanos) {
+        commandMeters.computeIfAbsent(command, key -> new Meter()).record(completionNanos);
+        if (null != node)
+            nodeCounters.computeIfAbsent(nodeName(node), key -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void recordSerialize(long nanos, int bytes) {
+        serializeMeter.record(nanos);
+        bytesOut.add(bytes);
+    }
+
+    @Override
+    public void recordDeserialize(long nanos, int bytes) {
+        deserializeMeter.record(nanos);
+        bytesIn.add(bytes);
+    }
+
+    @Override
+    public void recordKey(RedisKey key) {
+        if (ThreadLocalRandom.current().nextInt(sampleRate) != 0)
+            return;
+        sampledSlots.incrementAndGet(key.computeSlot());
+        String evalKey = key.evalKey();
+        LongAdder counter = sampledKeys.get(evalKey);
+        if (null == counter) {
+            if (sampledKeys.size() >= maxSampledKeys)
+                return;
+            counter = sampledKeys.computeIfAbsent(evalKey, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    @Override
+    public void recordPipeline(int depth) {
+        pipelineRecorder.recordValue(depth);
+    }
+
+
+    /**
+     * aggregate metrics since last roll as snapshots of current interval. called by scheduler.
+     */
+    protected synchronized void roll() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastRollNanos) / 1e9;
+        lastRollNanos = now;
+
+        Map<String, Object> commandStats = new LinkedHashMap<>();
+        commandMeters.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> {
+            Map<String, Object> stats = entry.getValue().roll(seconds);
+            if (null != stats)
+                commandStats.put(entry.getKey(), stats);
+        });
+        this.commandStats = commandStats;
+
+        Map<String, Object> nodeStats = new LinkedHashMap<>();
+        nodeCounters.forEach((node, counter) -> nodeStats.put(node, Math.round(counter.sumThenReset() / seconds)));
+        this.nodeStats = nodeStats;
+
+        Map<String, Object> serializationStats = new LinkedHashMap<>();
+        putIfNotNull(serializationStats, "serialize", serializeMeter.roll(seconds));
+        putIfNotNull(serializationStats, "deserialize", deserializeMeter.roll(seconds));
+        serializationStats.put("bytesOut/s", Math.round(bytesOut.sumThenReset() / seconds));
+        serializationStats.put("bytesIn/s", Math.round(bytesIn.sumThenReset() / seconds));
+        Histogram pipeline = pipelineRecorder.getIntervalHistogram();
+        if (pipeline.getTotalCount() > 0) {
+            Map<String, Object> pipelineStats = new LinkedHashMap<>();
+            pipelineStats.put("count", pipeline.getTotalCount());
+            pipelineStats.put("mean", Math.round(pipeline.getMean()));
+            pipelineStats.put("p99", pipeline.getValueAtPercentile(99));
+            pipelineStats.put("max", pipeline.getMaxValue());
+            serializationStats.put("pipeline", pipelineStats);
+        }
+        this.serializationStats = serializationStats;
+
+        Map<String, Long> keys = Maps.newHashMap();
+        sampledKeys.forEach((key, counter) -> keys.put(key, counter.sum()));
+        sampledKeys.clear();
+        this.hotKeys = top(keys);
+
+        Map<String, Long> slots = Maps.newHashMap();
+        for (int i = 0; i < SLOTS; i++) {
+            long count = sampledSlots.getAndSet(i, 0);
+            if (count > 0)
+                slots.put(String.valueOf(i), count);
+        }
+        this.hotSlots = top(slots);
+    }
+
+    protected Map<String, Object> top(Map<String, Long> counts) {
+        List<Map.Entry<String, Long>> entries = counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(topN).collect(Collectors.toList());
+        Map<String, Object> top = new LinkedHashMap<>();
+        entries.forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    protected String nodeName(SocketAddress node) {
+        if (node instanceof InetSocketAddress) {
+            InetSocketAddress address = (InetSocketAddress) node;
+            return address.getHostString() + ":" + address.getPort();
+        }
+        return node.toString();
+    }
+
+    private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+        if (null != value)
+            map.put(key, value);
+    }
+
+
+    @ManagedAttribute(description = "ops/s and network latencies(us) per command type of last interval.")
+    public Map<String, Object> getCommandStats() {
+        return commandStats;
+    }
+
+    @ManagedAttribute(description = "ops/s per redis node of last interval.")
+    public Map<String, Object> getNodeStats() {
+        return nodeStats;
+    }
+
+    @ManagedAttribute(description = "serialization latencies(us), payload bytes/s and pipeline depth of last interval.")
+    public Map<String, Object> getSerializationStats() {
+        return serializationStats;
+    }
+
+    @ManagedAttribute(description = "sampled top accessed keys of last interval.")
+    public Map<String, Object> getHotKeys() {
+        return hotKeys;
+    }
+
+    @ManagedAttribute(description = "sampled top accessed slots of last interval.")
+    public Map<String, Object> getHotSlots() {
+        return hotSlots;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    /**
+     * interval of metrics aggregated. must set before initialized.
+     *
+     * @param interval
+     */
+    public void setInterval(Duration interval) {
+        Assert.isTrue(!interval.isZero() && !interval.isNegative(), "interval must be positive.");
+        this.interval = interval;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * one of sample rate keys sampled for hot keys.
+     *
+     * @param sampleRate
+     */
+    public void setSampleRate(int sampleRate) {
+        Assert.isTrue(sampleRate > 0, "sampleRate must be positive.");
+        this.sampleRate = sampleRate;
+    }
+
+    public int getMaxSampledKeys() {
+        return maxSampledKeys;
+    }
+
+    /**
+     * max distinct keys sampled per interval. keys beyond not sampled (slots still sampled).
+     *
+     * @param maxSampledKeys
+     */
+    public void setMaxSampledKeys(int maxSampledKeys) {
+        this.maxSampledKeys = maxSampledKeys;
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    public void setTopN(int topN) {
+        this.topN = topN;
+    }
+
+
+    /**
+     * count and latency histogram.
+     */
+    protected static class Meter {
+
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+
+        private Histogram recycle;
+
+        protected void record(long nanos) {
+            recorder.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS, Math.max(0, nanos / 1000)));
+        }
+
+        /**
+         * @param seconds of interval.
+         * @return stats of interval, null if nothing recorded.
+         */
+        protected Map<String, Object> roll(double seconds) {
+            Histogram histogram = recorder.getIntervalHistogram(recycle);
+            recycle = histogram;
+            long count = histogram.getTotalCount();
+            if (count == 0)
+                return null;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("ops/s", Math.round(count / seconds));
+            stats.put("p50", histogram.getValueAtPercentile(50));
+            stats.put("p99", histogram.getValueAtPercentile(99));
+            stats.put("p999", histogram.getValueAtPercentile(99.9));
+            stats.put("max", histogram.getMaxValue());
+            return stats;
+        }
+    }
+}
@@ -16,42 +16,59 @@
 package org.scleropages.connector.redis;
 
 import org.scleropages.serialize.SerializerFactory;
-import org.scleropages.serialize.SerializerFactoryUtil;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.Assert;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
+ * values encoded by {@link RedisObjectCodec} (buffer of each value sized by hint of its type).
+ *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public class DefaultRedisValueSerializer implements RedisSerializer<Object> {
 
 
-    private final SerializerFactory<InputStream, OutputStream> serializerFactory;
+    private final RedisObjectCodec redisObjectCodec;
+
+    private RedisMetrics redisMetrics = RedisMetrics.NOOP;
 
 
     public DefaultRedisValueSerializer(SerializerFactory<InputStream, OutputStream> serializerFactory) {
-        this.serializerFactory = serializerFactory;
+        this(new RedisObjectCodec(serializerFactory));
+    }
+
+    public DefaultRedisValueSerializer(RedisObjectCodec redisObjectCodec) {
+        Assert.notNull(redisObjectCodec, "redisObjectCodec must not be null.");
+        this.redisObjectCodec = redisObjectCodec;
     }
 
     @Override
     public byte[] serialize(Object o) throws SerializationException {
-        try {
-            return null != o ? SerializerFactoryUtil.serialize(serializerFactory, o) : null;
-        } catch (IOException e) {
-            throw new SerializationException("failure to serialize.", e);
-        }
+        if (null == o)
+            return null;
+        long start = System.nanoTime();
+        byte[] bytes = redisObjectCodec.serializeValue(o);
+        if (redisMetrics != RedisMetrics.NOOP)
+            redisMetrics.recordSerialize(System.nanoTime() - start, bytes.length);
+        return bytes;
     }
 
     @Override
     public Object deserialize(byte[] bytes) throws SerializationException {
-        try {
-            return null != bytes ? SerializerFactoryUtil.deserialize(serializerFactory, bytes) : null;
-        } catch (Exception e) {
-            throw new SerializationException("failure to deserialize.", e);
-        }
+        if (null == bytes)
+            return null;
+        long start = System.nanoTime();
+        Object o = redisObjectCodec.deserializeValue(bytes);
+        if (redisMetrics != RedisMetrics.NOOP)
+            redisMetrics.recordDeserialize(System.nanoTime() - start, bytes.length);
+        return o;
+    }
+
+    public void setRedisMetrics(RedisMetrics redisMetrics) {
+        Assert.notNull(redisMetrics, "redisMetrics must not be null.");
+        this.redisMetrics = redisMetrics;
     }
 }
@@ -0,0 +1,420 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * batch of redis commands executed over a single lettuce pipeline.
+ * keys and values encoded by same serializers of {@link RedisClient} templates.
+ * <pre>
+ * redisClient.batch().get(k1).incrBy(k2, 5).lpushAndTrim(k3, v, 100).execute()
+ *      .thenAccept(results -> ...);
+ * </pre>
+ * one result per batch operation in order of declared.
+ * <p>
+ * if native connection not shared ({@link LettuceConnectionFactory#setShareNativeConnection(boolean)}), auto flush disabled
+ * during batch and commands flushed once. otherwise commands written to shared connection without waiting replies one by one.
+ * in cluster mode, commands routed (and flushed) per node by lettuce cluster connection.
+ * if created with a {@link ReadFrom} policy and connection factory supports read routing ({@link RoutingLettuceConnectionFactory}),
+ * batch executed over shared connection of that policy: reads routed by policy (e.g. to replicas), writes still to masters.
+ * otherwise if batch writes keys, executed over shard selected by first written key ({@link RoutingLettuceConnectionFactory#getConnection(RedisKey)}),
+ * so writes of same key (include scripts of {@link RedisScriptRegistry}) executed in order.
+ * multi-key operations (mget, mset, delete, exists) split into sub-commands per slot ({@link RedisKey#computeSlot()}),
+ * dispatched concurrently and results reassembled in order of given keys.
+ * <p>
+ * not thread safe and can execute only once.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisBatch {
+
+    private final RedisConnectionFactory connectionFactory;
+
+    private final RedisSerializer<String> stringSerializer;
+
+    private final RedisSerializer<Object> objectSerializer;
+
+    private final List<Function<RedisClusterAsyncCommands<byte[], byte[]>, CompletionStage<?>>> operations = new ArrayList<>();
+
+    private final boolean clusterAware;
+
+    private final RedisMetrics redisMetrics;
+
+    private final ReadFrom readFrom;
+
+    private final List<RedisKey> writtenKeys = new ArrayList<>();
+
+    private Consumer<Collection<RedisKey>> writeListener;
+
+    private boolean executed;
+
+
+    public RedisBatch(RedisConnectionFactory connectionFactory, RedisSerializer<String> stringSerializer, RedisSerializer<Object> objectSerializer) {
+        this(connectionFactory, stringSerializer, objectSerializer, RedisMetrics.NOOP, null);
+    }
+
+    /**
+     * @param connectionFactory
+     * @param stringSerializer
+     * @param objectSerializer
+     * @param redisMetrics
+     * @param readFrom          optional. read from policy of batch.
+     */
+    public RedisBatch(RedisConnectionFactory connectionFactory, RedisSerializer<String> stringSerializer, RedisSerializer<Object> objectSerializer,
+                      RedisMetrics redisMetrics, ReadFrom readFrom) {
+        Assert.isInstanceOf(LettuceConnectionFactory.class, connectionFactory, "batch only supported by lettuce connection factory.");
+        this.connectionFactory = connectionFactory;
+        this.stringSerializer = stringSerializer;
+        this.objectSerializer = objectSerializer;
+        this.clusterAware = ((LettuceConnectionFactory) connectionFactory).isClusterAware();
+        this.redisMetrics = redisMetrics;
+        this.readFrom = readFrom;
+    }
+
+
+    public RedisBatch get(RedisKey key) {
+        return add(commands -> commands.get(key.getBytes()).thenApply(stringSerializer::deserialize));
+    }
+
+    public RedisBatch getObject(RedisKey key) {
+        return add(commands -> commands.get(key.getBytes()).thenApply(objectSerializer::deserialize));
+    }
+
+    /**
+     * set string value if value is {@link String}, otherwise object value.
+     *
+     * @param key
+     * @param value
+     * @return
+     */
+    public RedisBatch set(RedisKey key, Object value) {
+        byte[] bytes = serializeValue(value);
+        return write(key).add(commands -> commands.set(key.getBytes(), bytes).thenApply("OK"::equals));
+    }
+
+    public RedisBatch set(RedisKey key, Object value, Duration timeout) {
+        byte[] bytes = serializeValue(value);
+        return write(key).add(commands -> commands.psetex(key.getBytes(), timeout.toMillis(), bytes).thenApply("OK"::equals));
+    }
+
+    public RedisBatch incrBy(RedisKey key, long delta) {
+        return write(key).add(commands -> commands.incrby(key.getBytes(), delta));
+    }
+
+    public RedisBatch decrBy(RedisKey key, long delta) {
+        return write(key).add(commands -> commands.decrby(key.getBytes(), delta));
+    }
+
+    public RedisBatch hget(RedisKey key, String field) {
+        return add(commands -> commands.hget(key.getBytes(), stringSerializer.serialize(field)).thenApply(stringSerializer::deserialize));
+    }
+
+    public RedisBatch hgetObject(RedisKey key, String field) {
+        return add(commands -> commands.hget(key.getBytes(), stringSerializer.serialize(field)).thenApply(objectSerializer::deserialize));
+    }
+
+    public RedisBatch hset(RedisKey key, String field, Object value) {
+        byte[] bytes = serializeValue(value);
+        return write(key).add(commands -> commands.hset(key.getBytes(), stringSerializer.serialize(field), bytes));
+    }
+
+    /**
+     * top N. result is size of list after push.
+     *
+     * @param key
+     * @param value
+     * @param keepSize
+     * @return
+     */
+    public RedisBatch lpushAndTrim(RedisKey key, Object value, int keepSize) {
+        byte[] bytes = serializeValue(value);
+        return write(key).add(commands -> {
+            byte[] keyBytes = key.getBytes();
+            CompletionStage<Long> pushed = commands.lpush(keyBytes, bytes);
+            return pushed.thenCombine(commands.ltrim(keyBytes, 0, keepSize - 1), (size, trimmed) -> size);
+        });
+    }
+
+    public RedisBatch expire(RedisKey key, Duration timeout) {
+        return add(commands -> commands.pexpire(key.getBytes(), timeout.toMillis()));
+    }
+
+    public RedisBatch exists(RedisKey key) {
+        return add(commands -> commands.exists(key.getBytes()).thenApply(count -> count > 0));
+    }
+
+    public RedisBatch delete(RedisKey key) {
+        return write(key).add(commands -> commands.del(key.getBytes()).thenApply(count -> count > 0));
+    }
+
+    /**
+     * result is list of string values in order of given keys.
+     *
+     * @param keys
+     * @return
+     */
+    public RedisBatch mget(List<RedisKey> keys) {
+        return mget(keys, stringSerializer);
+    }
+
+    /**
+     * result is list of object values in order of given keys.
+     *
+     * @param keys
+     * @return
+     */
+    public RedisBatch mgetObjects(List<RedisKey> keys) {
+        return mget(keys, objectSerializer);
+    }
+
+    /**
+     * set string value if value is {@link String}, otherwise object value. result is true if all sub-commands succeed.
+     *
+     * @param values
+     * @return
+     */
+    public RedisBatch mset(Map<RedisKey, ?> values) {
+        Map<Integer, Map<byte[], byte[]>> groups = new HashMap<>();
+        writtenKeys.addAll(values.keySet());
+        values.forEach((key, value) -> groups.computeIfAbsent(slotOf(key), slot -> new LinkedHashMap<>()).put(key.getBytes(), serializeValue(value)));
+        return add(commands -> {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+            int i = 0;
+            for (Map<byte[], byte[]> group : groups.values()) {
+                futures[i++] = commands.mset(group).toCompletableFuture();
+            }
+            return CompletableFuture.allOf(futures).thenApply(v -> {
+                for (CompletableFuture<?> future : futures) {
+                    if (!"OK".equals(future.getNow(null)))// all completed
+                        return false;
+                }
+                return true;
+            });
+        });
+    }
+
+    /**
+     * result is number of keys deleted.
+     *
+     * @param keys
+     * @return
+     */
+    public RedisBatch delete(Collection<RedisKey> keys) {
+        writtenKeys.addAll(keys);
+        return sumBySlot(keys, RedisClusterAsyncCommands::del);
+    }
+
+    /**
+     * result is number of keys exist.
+     *
+     * @param keys
+     * @return
+     */
+    public RedisBatch exists(Collection<RedisKey> keys) {
+        return sumBySlot(keys, RedisClusterAsyncCommands::exists);
+    }
+
+    /**
+     * @return number of operations in this batch.
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * execute batch.
+     *
+     * @return results of each operation in order of declared. completed exceptionally if any of them failed.
+     */
+    public CompletableFuture<List<Object>> execute() {
+        Assert.state(!executed, "batch already executed.");
+        executed = true;
+        if (operations.isEmpty())
+            return CompletableFuture.completedFuture(new ArrayList<>(0));
+        redisMetrics.recordPipeline(operations.size());
+        RedisClusterAsyncCommands<byte[], byte[]> readCommands = null != readFrom && connectionFactory instanceof RoutingLettuceConnectionFactory ?
+                ((RoutingLettuceConnectionFactory) connectionFactory).getReadCommands(readFrom) : null;
+        RedisConnection connection = null != readCommands ? null : connectionFactory instanceof RoutingLettuceConnectionFactory && !writtenKeys.isEmpty() ?
+                ((RoutingLettuceConnectionFactory) connectionFactory).getConnection(writtenKeys.get(0)) : connectionFactory.getConnection();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[operations.size()];
+        try {
+            RedisClusterAsyncCommands<byte[], byte[]> commands = null != readCommands ? readCommands :
+                    (RedisClusterAsyncCommands<byte[], byte[]>) connection.getNativeConnection();
+            boolean dedicated = null == readCommands && !((LettuceConnectionFactory) connectionFactory).getShareNativeConnection();
+            if (dedicated)
+                commands.setAutoFlushCommands(false);
+            try {
+                for (int i = 0; i < futures.length; i++) {
+                    futures[i] = operations.get(i).apply(commands).toCompletableFuture();
+                }
+            } finally {
+                if (dedicated) {
+                    commands.flushCommands();
+                    commands.setAutoFlushCommands(true);
+                }
+            }
+        } catch (RuntimeException e) {
+            if (null != connection)
+                connection.close();
+            throw e;
+        }
+        return CompletableFuture.allOf(futures).whenComplete((v, e) -> {
+            if (null != connection)
+                connection.close();
+            if (null != writeListener && !writtenKeys.isEmpty())// even if failed, some of them may be written
+                writeListener.accept(writtenKeys);
+        }).thenApply(v -> {
+            List<Object> results = new ArrayList<>(futures.length);
+            for (CompletableFuture<?> future : futures) {
+                results.add(future.getNow(null));// all completed
+            }
+            return results;
+        });
+    }
+
+    /**
+     * execute batch and wait results up to command timeout of connection factory.
+     *
+     * @return results of each operation in order of declared.
+     * @throws QueryTimeoutException if not completed in command timeout.
+     */
+    public List<Object> executeAndWait() {
+        CompletableFuture<List<Object>> future = execute();
+        long timeout = ((LettuceConnectionFactory) connectionFactory).getClientConfiguration().getCommandTimeout().toMillis();
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new QueryTimeoutException("batch not completed in " + timeout + "ms.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisSystemException("interrupted while waiting batch.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RedisSystemException("failure to execute batch.", e.getCause());
+        }
+    }
+
+    protected RedisBatch write(RedisKey key) {
+        writtenKeys.add(key);
+        return this;
+    }
+
+    protected RedisBatch add(Function<RedisClusterAsyncCommands<byte[], byte[]>, CompletionStage<?>> operation) {
+        if (executed)
+            throw new InvalidDataAccessApiUsageException("batch already executed.");
+        operations.add(operation);
+        return this;
+    }
+
+    protected RedisBatch mget(List<RedisKey> keys, RedisSerializer<?> serializer) {
+        Map<Integer, List<Integer>> groups = groupBySlot(keys);
+        return add(commands -> {
+            Object[] results = new Object[keys.size()];
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+            int i = 0;
+            for (List<Integer> indexes : groups.values()) {
+                byte[][] group = new byte[indexes.size()][];
+                for (int j = 0; j < group.length; j++) {
+                    group[j] = keys.get(indexes.get(j)).getBytes();
+                }
+                futures[i++] = commands.mget(group).thenAccept(values -> {
+                    for (int j = 0; j < values.size(); j++) {
+                        results[indexes.get(j)] = serializer.deserialize(values.get(j).getValueOrElse(null));
+                    }
+                }).toCompletableFuture();
+            }
+            return CompletableFuture.allOf(futures).thenApply(v -> Arrays.asList(results));
+        });
+    }
+
+    protected RedisBatch sumBySlot(Collection<RedisKey> keys, BiFunction<RedisClusterAsyncCommands<byte[], byte[]>, byte[][], CompletionStage<Long>> command) {
+        List<RedisKey> keyList = keys instanceof List ? (List<RedisKey>) keys : new ArrayList<>(keys);
+        Map<Integer, List<Integer>> groups = groupBySlot(keyList);
+        return add(commands -> {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+            int i = 0;
+            for (List<Integer> indexes : groups.values()) {
+                byte[][] group = new byte[indexes.size()][];
+                for (int j = 0; j < group.length; j++) {
+                    group[j] = keyList.get(indexes.get(j)).getBytes();
+                }
+                futures[i++] = command.apply(commands, group).toCompletableFuture();
+            }
+            return CompletableFuture.allOf(futures).thenApply(v -> {
+                long sum = 0;
+                for (CompletableFuture<?> future : futures) {
+                    sum += (Long) future.getNow(null);// all completed
+                }
+                return sum;
+            });
+        });
+    }
+
+    /**
+     * @param keys
+     * @return indexes of given keys grouped by slot (single group if not cluster aware).
+     */
+    protected Map<Integer, List<Integer>> groupBySlot(List<RedisKey> keys) {
+        Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            groups.computeIfAbsent(slotOf(keys.get(i)), slot -> new ArrayList<>()).add(i);
+        }
+        return groups;
+    }
+
+    protected int slotOf(RedisKey key) {
+        return clusterAware ? key.computeSlot() : 0;
+    }
+
+    /**
+     * @param writeListener receives keys written by this batch after executed.
+     */
+    public void setWriteListener(Consumer<Collection<RedisKey>> writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    protected byte[] serializeValue(Object value) {
+        return value instanceof String ? stringSerializer.serialize((String) value) : objectSerializer.serialize(value);
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.scleropages.connector.redis;
 
+import io.lettuce.core.ReadFrom;
 import org.springframework.data.redis.core.ClusterOperations;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.ListOperations;
@@ -53,4 +54,23 @@ public interface RedisClient {
     ZSetOperations<RedisKey, Object> objectZSetOperations();
 
     RedisTemplate<RedisKey, Object> objectValueTemplate();
+
+    /**
+     * @return a new batch executed over a single pipeline.
+     */
+    RedisBatch batch();
+
+    /**
+     * @param readFrom read from policy of batch (e.g. {@link ReadFrom#REPLICA_PREFERRED}).
+     * @return a new batch executed over a single pipeline, reads routed by given policy.
+     */
+    RedisBatch batch(ReadFrom readFrom);
+
+    /**
+     * @param stream
+     * @param group
+     * @return a durable queue over given stream consumed by given consumer group. same queue returned for same stream and group,
+     * owned by this client (consumer connections released when client destroyed), callers should not close it.
+     */
+    RedisStreamQueue streamQueue(RedisKey stream, String group);
 }
@@ -17,7 +17,14 @@ package org.scleropages.connector.redis;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
 import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.MigrateArgs;
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
 import io.lettuce.core.cluster.RedisClusterClient;
 import org.apache.commons.lang3.ArrayUtils;
 import org.scleropages.core.util.Reflections;
@@ -33,16 +40,28 @@ import org.springframework.data.redis.connection.RedisServerCommands;
 import org.springframework.data.redis.connection.lettuce.LettuceClusterConnection;
 import org.springframework.data.redis.core.RedisClusterCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
 import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 将redis cluster各管理各功能以mbean形式暴露出去
@@ -58,6 +77,18 @@ public class RedisClusterManager {
 
     private final StringRedisTemplate stringRedisTemplate;
 
+    public static final int DEFAULT_MIGRATE_PAGE_SIZE = 1000;
+
+    public static final long DEFAULT_MIGRATE_TIMEOUT = 5000;
+
+    /*keys of each MIGRATE command, commands of a page pipelined.*/
+    public static final int MIGRATE_KEYS_PER_COMMAND = 100;
+
+    private volatile SlotMigrationProgress slotMigrationProgress;
+
+    private RedisMetrics redisMetrics = RedisMetrics.NOOP;
+
+
     public RedisClusterManager(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
         this.redisConnectionFactory = stringRedisTemplate.getRequiredConnectionFactory();
@@ -179,6 +210,10 @@ public class RedisClusterManager {
         });
     }
 
+    /**
+     * @deprecated keys copied (MIGRATE COPY) one by one to source node. use {@link #migratingSlotProcess(String, String, int, int, long)}.
+     */
+    @Deprecated
     @ManagedOperation(description = "执行redis cluster slot 迁移，可多次执行直至完毕")
     public void migratingSlotProcess(String sourceId, int slot, int size, long timeout) {
 
@@ -195,6 +230,225 @@ public class RedisClusterManager {
         });
     }
 
+    @ManagedOperation(description = "执行redis cluster slot 迁移(批量MIGRATE KEYS)，可多次执行直至完毕，返回本次迁移key数量")
+    public int migratingSlotProcess(String sourceId, String targetId, int slot, int size, long timeout) {
+        int _size = -1 == size ? DEFAULT_MIGRATE_PAGE_SIZE : size;
+        long _timeout = -1 == timeout ? DEFAULT_MIGRATE_TIMEOUT : timeout;
+        return execute((RedisClusterCallback<Integer>) connection -> {
+            ClusterCommandExecutor executor = getClusterCommandExecutor(connection);
+            RedisClusterNode target = lookupNode(connection, targetId);
+            return migrateKeysInSlot(executor, fromId(sourceId), target, slot, _size, _timeout, null);
+        });
+    }
+
+    /**
+     * migrate slots [start, end] from source to target in background. each slot: set importing(migrating) state, migrate keys by pages
+     * (CLUSTER GETKEYSINSLOT + pipelined MIGRATE KEYS REPLACE), then assign slot to target (CLUSTER SETSLOT NODE sent to target,
+     * source and all other masters). partitions reloaded after all slots migrated.
+     * progress reported by {@link #getSlotMigrationProgress()}.
+     * <p>
+     * bandwidth limited by approximate bytes of migrated keys (MEMORY USAGE, requires redis 4.0+) if max bytes per second positive.
+     */
+    @ManagedOperation(description = "后台并行批量迁移slot区间[start,end]至目标节点，concurrency=并行slot数，pageSize=每批key数量(-1默认1000)，maxBytesPerSecond=按key内存占用(MEMORY USAGE)限速字节数/秒(-1不限)，timeout=MIGRATE超时毫秒(-1默认5000)")
+    public synchronized void migrateSlots(String sourceId, String targetId, int start, int end, int concurrency, int pageSize, long maxBytesPerSecond, long timeout) {
+        Assert.isTrue(start >= 0 && end >= start && end < 16384, "invalid slot range.");
+        Assert.state(null == slotMigrationProgress || !slotMigrationProgress.running, "slot migration in progress.");
+        int _concurrency = Math.max(1, concurrency);
+        int _pageSize = -1 == pageSize ? DEFAULT_MIGRATE_PAGE_SIZE : pageSize;
+        long _timeout = -1 == timeout ? DEFAULT_MIGRATE_TIMEOUT : timeout;
+        RateLimiter rateLimiter = maxBytesPerSecond > 0 ? RateLimiter.create(maxBytesPerSecond) : null;
+        RedisClusterNode source = fromId(sourceId);
+        RedisClusterNode target = execute(connection -> lookupNode(connection, targetId));
+        List<RedisClusterNode> otherMasters = execute(connection -> {
+            List<RedisClusterNode> masters = new ArrayList<>();
+            for (RedisClusterNode node : connection.clusterGetNodes()) {
+                if (node.isMaster() && !sourceId.equals(node.getId()) && !targetId.equals(node.getId()))
+                    masters.add(node);
+            }
+            return masters;
+        });
+        SlotMigrationProgress progress = new SlotMigrationProgress(sourceId, targetId, end - start + 1);
+        slotMigrationProgress = progress;
+        ExecutorService executorService = Executors.newFixedThreadPool(_concurrency, r -> {
+            Thread thread = new Thread(r, "redis-slot-migration");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[end - start + 1];
+        for (int slot = start; slot <= end; slot++) {
+            int _slot = slot;
+            futures[slot - start] = CompletableFuture.runAsync(() -> {
+                try {
+                    execute((RedisClusterCallback<Void>) connection -> {
+                        migrateSlot(getClusterCommandExecutor(connection), source, target, otherMasters, _slot, _pageSize, _timeout, rateLimiter, progress);
+                        return null;
+                    });
+                    progress.slotsCompleted.incrementAndGet();
+                } catch (RuntimeException e) {
+                    logger.warn("failure to migrate slot: " + _slot, e);
+                    progress.failures.add(_slot + ": " + e.getMessage());
+                }
+            }, executorService);
+        }
+        CompletableFuture.allOf(futures).whenComplete((v, e) -> {
+            executorService.shutdown();
+            progress.endTime = System.currentTimeMillis();
+            progress.running = false;
+            logger.info("slot migration finished: {}", progress.asMap());
+            reloadPartitions();
+        });
+    }
+
+    @ManagedAttribute(description = "slot迁移进度")
+    public Map<String, Object> getSlotMigrationProgress() {
+        SlotMigrationProgress progress = slotMigrationProgress;
+        return null != progress ? progress.asMap() : Collections.emptyMap();
+    }
+
+    @ManagedAttribute(description = "最近统计周期内各节点 ops/s")
+    public Map<String, Object> getNodeStats() {
+        return redisMetrics instanceof DefaultRedisMetrics ? ((DefaultRedisMetrics) redisMetrics).getNodeStats() : Collections.emptyMap();
+    }
+
+    @ManagedAttribute(description = "最近统计周期内采样的热点slot, 可作为slot迁移依据")
+    public Map<String, Object> getHotSlots() {
+        return redisMetrics instanceof DefaultRedisMetrics ? ((DefaultRedisMetrics) redisMetrics).getHotSlots() : Collections.emptyMap();
+    }
+
+    @ManagedAttribute(description = "最近统计周期内各命令 ops/s 及网络延迟(us)")
+    public Map<String, Object> getCommandStats() {
+        return redisMetrics instanceof DefaultRedisMetrics ? ((DefaultRedisMetrics) redisMetrics).getCommandStats() : Collections.emptyMap();
+    }
+
+    public void setRedisMetrics(RedisMetrics redisMetrics) {
+        Assert.notNull(redisMetrics, "redisMetrics must not be null.");
+        this.redisMetrics = redisMetrics;
+    }
+
+    protected void migrateSlot(ClusterCommandExecutor executor, RedisClusterNode source, RedisClusterNode target, Collection<RedisClusterNode> otherMasters,
+                               int slot, int pageSize, long timeout, RateLimiter rateLimiter, SlotMigrationProgress progress) {
+        executor.executeCommandOnSingleNode((LettuceClusterCommandCallback<String>) client -> client.clusterSetSlotImporting(slot, source.getId()), target);
+        executor.executeCommandOnSingleNode((LettuceClusterCommandCallback<String>) client -> client.clusterSetSlotMigrating(slot, target.getId()), source);
+        int migrated;
+        do {
+            migrated = migrateKeysInSlot(executor, source, target, slot, pageSize, timeout, rateLimiter);
+            progress.keysMigrated.add(migrated);
+        } while (migrated > 0);
+        executor.executeCommandOnSingleNode((LettuceClusterCommandCallback<String>) client -> client.clusterSetSlotNode(slot, target.getId()), target);
+        executor.executeCommandOnSingleNode((LettuceClusterCommandCallback<String>) client -> client.clusterSetSlotNode(slot, target.getId()), source);
+        if (!otherMasters.isEmpty())// not wait for propagation of cluster bus
+            executor.executeCommandAsyncOnNodes((LettuceClusterCommandCallback<String>) client -> client.clusterSetSlotNode(slot, target.getId()), otherMasters);
+    }
+
+    /**
+     * migrate one page of keys in slot. MIGRATE KEYS REPLACE of every {@link #MIGRATE_KEYS_PER_COMMAND} keys pipelined over connection of source.
+     * if rate limited, permits of each MIGRATE are approximate bytes of its keys (MEMORY USAGE of page pipelined before).
+     *
+     * @return number of keys migrated. 0 if no keys left in slot.
+     */
+    protected int migrateKeysInSlot(ClusterCommandExecutor executor, RedisClusterNode source, RedisClusterNode target, int slot,
+                                    int pageSize, long timeout, RateLimiter rateLimiter) {
+        return executor.executeCommandOnSingleNode((LettuceClusterCommandCallback<Integer>) client -> {
+            List<byte[]> keys = client.clusterGetKeysInSlot(slot, pageSize);
+            if (null == keys || keys.isEmpty())
+                return 0;
+            RedisAsyncCommands<byte[], byte[]> commands = ((RedisCommands<byte[], byte[]>) client).getStatefulConnection().async();
+            List<List<byte[]>> chunks = Lists.partition(keys, MIGRATE_KEYS_PER_COMMAND);
+            long[] bytes = null != rateLimiter ? bytesOf(commands, chunks, timeout) : null;
+            List<RedisFuture<String>> futures = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                if (null != bytes)
+                    rateLimiter.acquire((int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes[i])));
+                futures.add(commands.migrate(target.getHost(), target.getPort(), 0, timeout, MigrateArgs.Builder.keys(chunks.get(i)).replace()));
+            }
+            await(futures, timeout * chunks.size());// MIGRATE executed one by one by source
+            return keys.size();
+        }, source).getValue();
+    }
+
+    /**
+     * @return approximate bytes (MEMORY USAGE) of each chunk of keys. keys deleted since listed count as 0.
+     */
+    protected long[] bytesOf(RedisAsyncCommands<byte[], byte[]> commands, List<List<byte[]>> chunks, long timeout) {
+        List<RedisFuture<Long>> futures = new ArrayList<>();
+        for (List<byte[]> chunk : chunks) {
+            for (byte[] key : chunk) {
+                futures.add(commands.memoryUsage(key));
+            }
+        }
+        await(futures, timeout);
+        long[] bytes = new long[chunks.size()];
+        int i = 0;
+        for (int chunk = 0; chunk < bytes.length; chunk++) {
+            for (int key = 0; key < chunks.get(chunk).size(); key++) {
+                Long usage = futures.get(i++).toCompletableFuture().getNow(null);// all completed
+                bytes[chunk] += null != usage ? usage : 0;
+            }
+        }
+        return bytes;
+    }
+
+    private static void await(List<? extends Future<?>> futures, long timeout) {
+        if (!LettuceFutures.awaitAll(timeout, TimeUnit.MILLISECONDS, futures.toArray(new Future<?>[0])))
+            throw new RedisCommandTimeoutException("commands of slot migration not completed in " + timeout + "ms.");
+    }
+
+    protected ClusterCommandExecutor getClusterCommandExecutor(RedisClusterConnection connection) {
+        Assert.isInstanceOf(LettuceClusterConnection.class, connection, "lettuce cluster connection required.");
+        return ((LettuceClusterConnection) connection).getClusterCommandExecutor();
+    }
+
+    protected RedisClusterNode lookupNode(RedisClusterConnection connection, String nodeId) {
+        for (RedisClusterNode node : connection.clusterGetNodes()) {
+            if (nodeId.equals(node.getId()))
+                return node;
+        }
+        throw new IllegalArgumentException("no cluster node found by id: " + nodeId);
+    }
+
+    protected static class SlotMigrationProgress {
+
+        private final String sourceId;
+
+        private final String targetId;
+
+        private final int slotsTotal;
+
+        private final AtomicInteger slotsCompleted = new AtomicInteger();
+
+        private final LongAdder keysMigrated = new LongAdder();
+
+        private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+        private final long startTime = System.currentTimeMillis();
+
+        private volatile long endTime;
+
+        private volatile boolean running = true;
+
+        protected SlotMigrationProgress(String sourceId, String targetId, int slotsTotal) {
+            this.sourceId = sourceId;
+            this.targetId = targetId;
+            this.slotsTotal = slotsTotal;
+        }
+
+        protected Map<String, Object> asMap() {
+            long elapsed = (running ? System.currentTimeMillis() : endTime) - startTime;
+            long keys = keysMigrated.sum();
+            Map<String, Object> map = Maps.newLinkedHashMap();
+            map.put("sourceId", sourceId);
+            map.put("targetId", targetId);
+            map.put("running", running);
+            map.put("slotsTotal", slotsTotal);
+            map.put("slotsCompleted", slotsCompleted.get());
+            map.put("keysMigrated", keys);
+            map.put("elapsedMillis", elapsed);
+            map.put("keysPerSecond", elapsed > 0 ? keys * 1000 / elapsed : 0);
+            map.put("failures", Lists.newArrayList(failures));
+            return map;
+        }
+    }
+
     @ManagedOperation(description = "通知redis cluster 所有节点，slot已完成迁移至新节点")
     public void migratingSlotDone(String targetId, int slot) {
 
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import io.lettuce.core.metrics.CommandLatencyCollector;
+import io.lettuce.core.metrics.CommandLatencyId;
+import io.lettuce.core.metrics.CommandMetrics;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import org.springframework.util.Assert;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * adapts lettuce command latency events to {@link RedisMetrics}. registered to lettuce client resources.
+ * lettuce metrics publishing ({@link #retrieveMetrics()}) not supported, metrics published by {@link RedisMetrics} implementations.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisCommandLatencyCollector implements CommandLatencyCollector {
+
+    private final RedisMetrics redisMetrics;
+
+    public RedisCommandLatencyCollector(RedisMetrics redisMetrics) {
+        Assert.notNull(redisMetrics, "redisMetrics must not be null.");
+        this.redisMetrics = redisMetrics;
+    }
+
+    @Override
+    public void recordCommandLatency(SocketAddress local, SocketAddress remote, ProtocolKeyword commandType, long firstResponseLatency, long completionLatency) {
+        redisMetrics.recordCommand(commandType.name(), remote, firstResponseLatency, completionLatency);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public Map<CommandLatencyId, CommandMetrics> retrieveMetrics() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+}
@@ -15,16 +15,24 @@
  */
 package org.scleropages.connector.redis;
 
+import io.lettuce.core.RedisURI;
+import org.scleropages.serialize.LookupSerializerFactory;
 import org.scleropages.serialize.SerializerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.serializer.RedisSerializer;
 
+import java.time.Duration;
+
 /**
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
@@ -39,16 +47,45 @@ public class RedisConfiguration {
 
     private final DefaultRedisKeySerializer defaultRedisKeySerializer;
 
+    private final RedisObjectCodec redisObjectCodec;
+
     private final DefaultRedisValueSerializer defaultRedisValueSerializer;
 
+    private final RedisMetrics redisMetrics;
 
-    public RedisConfiguration(RedisConnectionFactory redisConnectionFactory, SerializerFactory serializerFactory) {
+
+    /**
+     * @param redisConnectionFactory
+     * @param serializerFactory
+     * @param boundFactoryId         optional. bind redis values to a fixed serializer factory (skip lookup per call).
+     * @param redisMetrics           optional (see {@link org.scleropages.connector.autoconfigure.RedisClientResourcesAutoConfiguration}).
+     */
+    public RedisConfiguration(RedisConnectionFactory redisConnectionFactory, SerializerFactory serializerFactory,
+                              @Value("#{ @environment['redis.serialize.factory'] ?: '' }") String boundFactoryId,
+                              ObjectProvider<RedisMetrics> redisMetrics) {
         this.redisConnectionFactory = redisConnectionFactory;
-        this.serializerFactory = serializerFactory;
+        this.serializerFactory = LookupSerializerFactory.bindIfNecessary(serializerFactory, boundFactoryId);
+        this.redisMetrics = redisMetrics.getIfAvailable(() -> RedisMetrics.NOOP);
         defaultRedisKeySerializer = new DefaultRedisKeySerializer();
-        defaultRedisValueSerializer = new DefaultRedisValueSerializer(this.serializerFactory);
+        defaultRedisKeySerializer.setRedisMetrics(this.redisMetrics);
+        redisObjectCodec = new RedisObjectCodec(this.serializerFactory);
+        defaultRedisValueSerializer = new DefaultRedisValueSerializer(redisObjectCodec);
+        defaultRedisValueSerializer.setRedisMetrics(this.redisMetrics);
+    }
+
+
+    /**
+     * wrap lettuce connection factory (created by spring boot) with {@link RoutingLettuceConnectionFactory}:
+     * 'redis.connection.shards' (default 1) native connections shared, selected by 'redis.connection.sharding' (round_robin or thread).
+     * read routing always available.
+     */
+    @Bean
+    public static RoutingLettuceConnectionFactoryPostProcessor routingLettuceConnectionFactoryPostProcessor(@Value("#{ @environment['redis.connection.shards'] ?: 1 }") int shards,
+                                                                                                            @Value("#{ @environment['redis.connection.sharding'] ?: 'round_robin' }") String sharding) {
+        return new RoutingLettuceConnectionFactoryPostProcessor(shards, RoutingLettuceConnectionFactory.Sharding.valueOf(sharding.toUpperCase()));
     }
 
+
     @Bean
     public RedisTemplate<RedisKey, String> defaultStringRedisTemplate() {
         RedisTemplate<RedisKey, String> redisTemplate = new RedisTemplate<>();
@@ -73,16 +110,57 @@ public class RedisConfiguration {
     }
 
 
+    /**
+     * codec for native lettuce connections. values encoded into pooled buffers of lettuce directly.
+     * same instance used by value serializer of {@link #defaultObjectRedisTemplate()} (size hints shared).
+     */
+    @Bean
+    public RedisObjectCodec redisObjectCodec() {
+        return redisObjectCodec;
+    }
+
+
     @Bean
     public DefaultRedisClient defaultRedisClient() {
         DefaultRedisClient defaultRedisClient = new DefaultRedisClient(defaultStringRedisTemplate(), defaultObjectRedisTemplate());
+        defaultRedisClient.setRedisMetrics(redisMetrics);
         return defaultRedisClient;
     }
 
 
+    /**
+     * near cache enabled if 'redis.near-cache.prefixes' present. tracking mode used if 'redis.near-cache.tracking' (default true)
+     * and connected to a standalone lettuce connection factory (client resources shared), otherwise polling mode.
+     * tracking not supported by cluster and sentinel.
+     */
+    @ConditionalOnProperty(name = "redis.near-cache.prefixes")
+    @Bean
+    public RedisNearCache redisNearCache(@Value("${redis.near-cache.prefixes}") String[] prefixes,
+                                         @Value("#{ @environment['redis.near-cache.tracking'] ?: true }") boolean tracking) {
+        RedisNearCache redisNearCache = new RedisNearCache(defaultRedisClient(), prefixes);
+        if (tracking && redisConnectionFactory instanceof LettuceConnectionFactory) {
+            LettuceConnectionFactory lettuceConnectionFactory = (LettuceConnectionFactory) redisConnectionFactory;
+            if (lettuceConnectionFactory.isClusterAware() || lettuceConnectionFactory.isRedisSentinelAware())
+                logger.warn("near cache tracking not supported by redis cluster or sentinel. polling mode used (set 'redis.near-cache.tracking' false to suppress).");
+            else {
+                RedisURI.Builder builder = RedisURI.Builder.redis(lettuceConnectionFactory.getHostName(), lettuceConnectionFactory.getPort())
+                        .withDatabase(lettuceConnectionFactory.getDatabase())
+                        .withSsl(lettuceConnectionFactory.isUseSsl())
+                        .withTimeout(Duration.ofMillis(lettuceConnectionFactory.getTimeout()));
+                if (null != lettuceConnectionFactory.getPassword())
+                    builder.withPassword(lettuceConnectionFactory.getPassword());
+                redisNearCache.setTrackingUri(builder.build());
+                lettuceConnectionFactory.getClientConfiguration().getClientResources().ifPresent(redisNearCache::setClientResources);
+            }
+        }
+        return redisNearCache;
+    }
+
+
     @Bean
     public RedisClusterManager redisClusterManager(StringRedisTemplate stringRedisTemplate) {
         RedisClusterManager redisClusterManager = new RedisClusterManager(stringRedisTemplate);
+        redisClusterManager.setRedisMetrics(redisMetrics);
         return redisClusterManager;
     }
 
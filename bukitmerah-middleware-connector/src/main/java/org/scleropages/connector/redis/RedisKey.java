@@ -19,11 +19,12 @@ import io.lettuce.core.cluster.SlotHash;
 import org.apache.commons.lang3.StringUtils;
 import org.scleropages.core.util.Namings;
 import org.springframework.util.Assert;
-import org.springframework.util.ClassUtils;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 规范redis key 命名 [catalog]/[type]:[id]:[property_name][{slot_key}]<br>
@@ -55,6 +56,13 @@ public interface RedisKey {
 
     String evalKey();
 
+    /**
+     * @return utf-8 encoded bytes of {@link #evalKey()}. returned array may be shared and must not be modified.
+     */
+    default byte[] getBytes() {
+        return evalKey().getBytes(StandardCharsets.UTF_8);
+    }
+
     String getCatalog();
 
     String getType();
@@ -92,8 +100,6 @@ public interface RedisKey {
 
         private String slotKey;
 
-        private String evalKey;
-
 
         private void checkField(String source) {
             if (StringUtils.containsAny(source, ILLEGAL_CHARACTERS))
@@ -201,103 +207,207 @@ public interface RedisKey {
         }
 
 
+        /**
+         * max keys kept in each intern table. keys built after table full are not interned.
+         */
+        public static final int DEFAULT_MAX_INTERNED_KEYS = 10000;
+
+        private static volatile int maxInternedKeys = DEFAULT_MAX_INTERNED_KEYS;
+
+        private static final ConcurrentMap<String, RedisKey> INTERNED_KEYS = new ConcurrentHashMap<>();
+
+        private static final ConcurrentMap<String, RedisKey> INTERNED_SNAKE_CASE_KEYS = new ConcurrentHashMap<>();
+
+
         public RedisKey build() {
             return build(true);
         }
 
 
+        /**
+         * build an immutable key. final key, utf-8 bytes, hash code and cluster slot computed once here.
+         *
+         * @param useSnakeCase
+         * @return
+         */
         public RedisKey build(boolean useSnakeCase) {
-            return new RedisKey() {
-                @Override
-                public String evalKey() {
-                    if (null != evalKey)
-                        return evalKey;
-                    StringBuilder sb = new StringBuilder();
-                    boolean hasPrefix = false;
-                    if (StringUtils.isNotBlank(catalog)) {
-                        hasPrefix = true;
-                        sb.append(catalog);
-                    }
-                    if (StringUtils.isNotBlank(type)) {
-                        if (hasPrefix) {
-                            sb.append('/');
-                        }
-                        sb.append(type);
-                        hasPrefix = true;
-                    }
-                    if (StringUtils.isNotBlank(id)) {
-                        if (hasPrefix) {
-                            sb.append(':');
-                        }
-                        sb.append(id);
-                        hasPrefix = true;
-                    }
-                    if (StringUtils.isNotBlank(propertyName)) {
-                        if (hasPrefix) {
-                            sb.append(':');
-                        }
-                        sb.append(propertyName);
-                    }
-                    if (StringUtils.isNotBlank(slotKey)) {
-                        sb.append(SLOT_KEY_START);
-                        sb.append(slotKey);
-                        sb.append(SLOT_KEY_END);
-                    }
-                    if (useSnakeCase) {
-                        return Namings.snakeCaseName(sb.toString());
-                    }
-                    evalKey = sb.toString();
-                    return evalKey;
-                }
+            String key = rawKey();
+            return new ImmutableRedisKey(catalog, type, id, propertyName, useSnakeCase ? Namings.snakeCaseName(key) : key);
+        }
 
-                @Override
-                public String getCatalog() {
-                    return catalog;
-                }
+        /**
+         * same as {@link #build()} but returns shared instance from intern table for hot keys.
+         *
+         * @return
+         */
+        public RedisKey intern() {
+            return intern(true);
+        }
 
-                @Override
-                public String getType() {
-                    return type;
-                }
+        /**
+         * same as {@link #build(boolean)} but returns shared instance from intern table for hot keys.
+         * snake-case conversion, encoding and slot computation skipped if key already interned.
+         * intern table keyed by rendered key, if interned key has other fields (e.g. other split of catalog/type/id rendered same key),
+         * a new key built (not interned).
+         *
+         * @param useSnakeCase
+         * @return
+         */
+        public RedisKey intern(boolean useSnakeCase) {
+            String key = rawKey();
+            ConcurrentMap<String, RedisKey> internedKeys = useSnakeCase ? INTERNED_SNAKE_CASE_KEYS : INTERNED_KEYS;
+            RedisKey redisKey = internedKeys.get(key);
+            if (null != redisKey)
+                return sameFields(redisKey) ? redisKey : build(useSnakeCase);
+            redisKey = new ImmutableRedisKey(catalog, type, id, propertyName, useSnakeCase ? Namings.snakeCaseName(key) : key);
+            if (internedKeys.size() >= maxInternedKeys)
+                return redisKey;
+            RedisKey exists = internedKeys.putIfAbsent(key, redisKey);
+            return null == exists || !sameFields(exists) ? redisKey : exists;
+        }
 
-                @Override
-                public String getId() {
-                    return id;
-                }
+        private boolean sameFields(RedisKey redisKey) {
+            return Objects.equals(catalog, redisKey.getCatalog()) && Objects.equals(type, redisKey.getType())
+                    && Objects.equals(id, redisKey.getId()) && Objects.equals(propertyName, redisKey.getPropertyName());
+        }
 
-                @Override
-                public String getPropertyName() {
-                    return propertyName;
-                }
+        /**
+         * set max keys kept in each intern table. default is {@link #DEFAULT_MAX_INTERNED_KEYS}
+         *
+         * @param maxInternedKeys
+         */
+        public static void setMaxInternedKeys(int maxInternedKeys) {
+            Assert.isTrue(maxInternedKeys >= 0, "maxInternedKeys must not negative.");
+            RedisKeyBuilder.maxInternedKeys = maxInternedKeys;
+        }
 
-                @Override
-                public int computeSlot() {
-                    try {
-                        return SlotHash.getSlot(evalKey().getBytes("utf-8"));
-                    } catch (UnsupportedEncodingException e) {
-                        throw new IllegalStateException(e);
-                    }
-                }
+        /**
+         * clear intern tables.
+         */
+        public static void clearInternedKeys() {
+            INTERNED_KEYS.clear();
+            INTERNED_SNAKE_CASE_KEYS.clear();
+        }
 
-                @Override
-                public int hashCode() {
-                    return evalKey().hashCode();
+        private String rawKey() {
+            StringBuilder sb = new StringBuilder();
+            boolean hasPrefix = false;
+            if (StringUtils.isNotBlank(catalog)) {
+                hasPrefix = true;
+                sb.append(catalog);
+            }
+            if (StringUtils.isNotBlank(type)) {
+                if (hasPrefix) {
+                    sb.append(TYPE_SEPARATOR);
                 }
-
-                @Override
-                public String toString() {
-                    return evalKey();
+                sb.append(type);
+                hasPrefix = true;
+            }
+            if (StringUtils.isNotBlank(id)) {
+                if (hasPrefix) {
+                    sb.append(FIELD_SEPARATOR);
                 }
-
-                @Override
-                public boolean equals(Object obj) {
-                    if (obj == null || !ClassUtils.isAssignableValue(this.getClass(), obj))
-                        return false;
-                    return Objects.equals(evalKey(), ((RedisKey) obj).evalKey());
+                sb.append(id);
+                hasPrefix = true;
+            }
+            if (StringUtils.isNotBlank(propertyName)) {
+                if (hasPrefix) {
+                    sb.append(FIELD_SEPARATOR);
                 }
-            };
+                sb.append(propertyName);
+            }
+            if (StringUtils.isNotBlank(slotKey)) {
+                sb.append(SLOT_KEY_START);
+                sb.append(slotKey);
+                sb.append(SLOT_KEY_END);
+            }
+            return sb.toString();
+        }
+
 
+        private static final class ImmutableRedisKey implements RedisKey {
 
+            private final String catalog;
+
+            private final String type;
+
+            private final String id;
+
+            private final String propertyName;
+
+            private final String key;
+
+            private final byte[] bytes;
+
+            private final int hash;
+
+            private final int slot;
+
+            private ImmutableRedisKey(String catalog, String type, String id, String propertyName, String key) {
+                this.catalog = catalog;
+                this.type = type;
+                this.id = id;
+                this.propertyName = propertyName;
+                this.key = key;
+                this.bytes = key.getBytes(StandardCharsets.UTF_8);
+                this.hash = key.hashCode();
+                this.slot = SlotHash.getSlot(bytes);// hash tag ({slot_key}) aware
+            }
+
+            @Override
+            public String evalKey() {
+                return key;
+            }
+
+            @Override
+            public byte[] getBytes() {
+                return bytes;
+            }
+
+            @Override
+            public String getCatalog() {
+                return catalog;
+            }
+
+            @Override
+            public String getType() {
+                return type;
+            }
+
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public String getPropertyName() {
+                return propertyName;
+            }
+
+            @Override
+            public int computeSlot() {
+                return slot;
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
+            @Override
+            public String toString() {
+                return key;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                if (this == obj)
+                    return true;
+                if (!(obj instanceof ImmutableRedisKey))
+                    return false;
+                ImmutableRedisKey other = (ImmutableRedisKey) obj;
+                return hash == other.hash && key.equals(other.key);
+            }
         }
 
         private static String format(Class type) {
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import java.net.SocketAddress;
+
+/**
+ * spi of redis client metrics. called on hot paths (including lettuce io threads), implementations must not block.
+ * all methods do nothing by default.
+ * <ul>
+ * <li>network time of each command recorded by lettuce ({@link RedisCommandLatencyCollector}).</li>
+ * <li>serialization time and payload bytes recorded by {@link DefaultRedisValueSerializer}.</li>
+ * <li>accessed keys (hot keys) recorded by {@link DefaultRedisKeySerializer}.</li>
+ * <li>pipeline depth recorded by {@link RedisBatch}.</li>
+ * </ul>
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public interface RedisMetrics {
+
+    RedisMetrics NOOP = new RedisMetrics() {
+    };
+
+    /**
+     * @param command            command type.
+     * @param node               remote address of command.
+     * @param firstResponseNanos from command written to first response received.
+     * @param completionNanos    from command written to command completed.
+     */
+    default void recordCommand(String command, SocketAddress node, long firstResponseNanos, long completionNanos) {
+    }
+
+    /**
+     * @param nanos time of value encoded.
+     * @param bytes encoded size (payload out).
+     */
+    default void recordSerialize(long nanos, int bytes) {
+    }
+
+    /**
+     * @param nanos time of value decoded.
+     * @param bytes encoded size (payload in).
+     */
+    default void recordDeserialize(long nanos, int bytes) {
+    }
+
+    /**
+     * no timing of keys: final key and bytes computed once by {@link RedisKey.RedisKeyBuilder}, not on serialization.
+     *
+     * @param key key sent to redis.
+     */
+    default void recordKey(RedisKey key) {
+    }
+
+    /**
+     * @param depth number of operations executed over a single pipeline.
+     */
+    default void recordPipeline(int depth) {
+    }
+}
@@ -0,0 +1,561 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.output.IntegerOutput;
+import io.lettuce.core.output.StatusOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.resource.ClientResources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * opt-in client side near cache of {@link RedisClient}. only keys start with one of configured prefixes are cached.
+ * <p>
+ * cached values bounded by size, weight (encoded bytes) and ttl. coherence kept by:
+ * <ul>
+ * <li>tracking mode (redis 6+): CLIENT TRACKING ON BCAST PREFIX ... REDIRECT to a pub/sub connection subscribed to {@link #INVALIDATE_CHANNEL}.
+ * resp2 pub/sub of lettuce decodes only last key of a multi-key invalidation message, so cached keys of every prefix
+ * matched by that key invalidated (see {@link #onInvalidation(byte[])}).
+ * cache bypassed and restarted if tracking connections lost. tracking connections (standalone only, cluster and sentinel
+ * rejected) created by a lettuce client sharing given {@link ClientResources} of application.</li>
+ * <li>polling mode (tracking unavailable): version of each prefix stored in redis and increased by writes through this cache
+ * and writes of {@link SpringRedisClientSupport} (such as {@link DefaultRedisClient}) of this cache (registered as write listener).
+ * versions polled periodically and cached keys of changed prefix invalidated.
+ * writes not through them (e.g. templates directly or other clients) not visible until ttl.</li>
+ * </ul>
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisNearCache implements InitializingBean, DisposableBean {
+
+    public static final String INVALIDATE_CHANNEL = "__redis__:invalidate";
+
+    /**
+     * same hash tag so that all version keys mapped to same slot (mget in cluster mode).
+     */
+    private static final String VERSION_KEY_PREFIX = "{near_cache_version}:";
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    public static final long DEFAULT_MAX_WEIGHT = 64 * 1024 * 1024;
+
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(60);
+
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(1);
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final RedisClient redisClient;
+
+    private final String[] prefixes;
+
+    private final RedisSerializer<String> stringSerializer;
+
+    private final RedisSerializer<Object> objectSerializer;
+
+    private RedisURI trackingUri;
+
+    private ClientResources clientResources;
+
+    private final Consumer<Collection<RedisKey>> writeListener = this::afterWrite;
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+
+    private long maxWeight = DEFAULT_MAX_WEIGHT;
+
+    private Duration ttl = DEFAULT_TTL;
+
+    private Duration pollInterval = DEFAULT_POLL_INTERVAL;
+
+    private Cache<RedisKey, CachedValue> cache;
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /*cache bypassed if not available (tracking lost or polling failed).*/
+    private volatile boolean available;
+
+    private volatile boolean tracking;
+
+    private byte[][] versionKeys;
+
+    private long[] versions;
+
+    private ScheduledExecutorService scheduler;
+
+    private io.lettuce.core.RedisClient trackingClient;
+
+    private StatefulRedisConnection<byte[], byte[]> trackingConnection;
+
+    private StatefulRedisPubSubConnection<byte[], byte[]> invalidationConnection;
+
+
+    public RedisNearCache(RedisClient redisClient, String... prefixes) {
+        Assert.notNull(redisClient, "redisClient must not be null.");
+        Assert.notEmpty(prefixes, "prefixes must not empty.");
+        this.redisClient = redisClient;
+        this.prefixes = prefixes;
+        this.stringSerializer = (RedisSerializer<String>) redisClient.stringValueTemplate().getValueSerializer();
+        this.objectSerializer = (RedisSerializer<Object>) redisClient.objectValueTemplate().getValueSerializer();
+    }
+
+
+    @Override
+    public void afterPropertiesSet() {
+        long minWeight = Math.max(1, maxWeight / maxSize);// each entry weighs at least this, so size bounded by maxSize
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((RedisKey key, CachedValue value) -> (int) Math.min(Integer.MAX_VALUE, Math.max(minWeight, key.getBytes().length + value.weight)))
+                .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        versionKeys = new byte[prefixes.length][];
+        versions = new long[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++) {
+            versionKeys[i] = (VERSION_KEY_PREFIX + prefixes[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-near-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (redisClient instanceof SpringRedisClientSupport)
+            ((SpringRedisClientSupport) redisClient).addWriteListener(writeListener);
+        if (null != trackingUri) {
+            assertStandalone(redisClient.stringValueTemplate().getRequiredConnectionFactory());
+            trackingClient = null != clientResources ? io.lettuce.core.RedisClient.create(clientResources, trackingUri)
+                    : io.lettuce.core.RedisClient.create(trackingUri);
+            trackingClient.addListener(new TrackingConnectionListener());
+            if (startTracking())
+                return;
+        }
+        startPolling();
+    }
+
+    @Override
+    public void destroy() {
+        tracking = false;
+        available = false;
+        if (redisClient instanceof SpringRedisClientSupport)
+            ((SpringRedisClientSupport) redisClient).removeWriteListener(writeListener);
+        if (null != scheduler)
+            scheduler.shutdownNow();
+        closeTrackingConnections();
+        if (null != trackingClient)
+            trackingClient.shutdown();// shared client resources not shut down
+        if (null != cache)
+            cache.invalidateAll();
+    }
+
+
+    public String get(RedisKey key) {
+        return (String) get(key, stringSerializer);
+    }
+
+    public Object getObject(RedisKey key) {
+        return get(key, objectSerializer);
+    }
+
+    /**
+     * set string value if value is {@link String}, otherwise object value. local entry invalidated.
+     *
+     * @param key
+     * @param value
+     */
+    public void set(RedisKey key, Object value) {
+        set(key, value, null);
+    }
+
+    public void set(RedisKey key, Object value, Duration timeout) {
+        byte[] bytes = value instanceof String ? stringSerializer.serialize((String) value) : objectSerializer.serialize(value);
+        redisClient.stringValueTemplate().execute((RedisCallback<Boolean>) connection -> connection.set(key.getBytes(), bytes,
+                null != timeout ? Expiration.from(timeout.toMillis(), TimeUnit.MILLISECONDS) : Expiration.persistent(),
+                RedisStringCommands.SetOption.upsert()));
+        afterWrite(key);
+    }
+
+    public boolean delete(RedisKey key) {
+        Boolean deleted = redisClient.stringValueTemplate().delete(key);
+        afterWrite(key);
+        return Boolean.TRUE.equals(deleted);
+    }
+
+    /**
+     * invalidate local entry of given key.
+     *
+     * @param key
+     */
+    public void invalidate(RedisKey key) {
+        invalidations.incrementAndGet();
+        cache.invalidate(key);
+    }
+
+    /**
+     * invalidate all local entries of given prefix.
+     *
+     * @param prefix
+     */
+    public void invalidatePrefix(String prefix) {
+        invalidations.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.evalKey().startsWith(prefix));
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return true if tracking mode enabled, false if polling mode.
+     */
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+
+    protected Object get(RedisKey key, RedisSerializer<?> serializer) {
+        if (!available || !matches(key.evalKey()))
+            return serializer.deserialize(fetch(key));
+        CachedValue cached = cache.getIfPresent(key);
+        if (null != cached && cached.serializer == serializer)
+            return cached.value;
+        long seq = invalidations.get();
+        byte[] bytes = fetch(key);
+        Object value = serializer.deserialize(bytes);
+        if (available && seq == invalidations.get()) {
+            cache.put(key, new CachedValue(value, serializer, null != bytes ? bytes.length : 0));
+            if (seq != invalidations.get())// invalidated during put
+                cache.invalidate(key);
+        }
+        return value;
+    }
+
+    protected byte[] fetch(RedisKey key) {
+        return redisClient.stringValueTemplate().execute((RedisCallback<byte[]>) connection -> connection.get(key.getBytes()));
+    }
+
+    protected void afterWrite(RedisKey key) {
+        afterWrite(Collections.singletonList(key));
+    }
+
+    /**
+     * invalidate local entries of given keys and (polling mode) increase versions of matched prefixes once.
+     * versions increased by scheduler of this cache, writers (may be io threads of lettuce if notified by batches) not blocked.
+     *
+     * @param keys written keys
+     */
+    protected void afterWrite(Collection<RedisKey> keys) {
+        boolean[] matched = new boolean[prefixes.length];
+        boolean any = false;
+        for (RedisKey key : keys) {
+            invalidate(key);
+            for (int i : prefixesOf(key.evalKey())) {
+                matched[i] = any = true;
+            }
+        }
+        if (!tracking && any && !scheduler.isShutdown())
+            scheduler.execute(() -> increaseVersions(matched));
+    }
+
+    protected void increaseVersions(boolean[] matched) {
+        try {
+            redisClient.stringValueTemplate().execute((RedisCallback<Void>) connection -> {
+                for (int i = 0; i < matched.length; i++) {
+                    if (matched[i])
+                        connection.incr(versionKeys[i]);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.warn("failure to increase near cache versions: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * tracking connections are standalone connections, keys of other nodes (cluster) or failover (sentinel) not tracked.
+     *
+     * @param connectionFactory
+     */
+    protected void assertStandalone(RedisConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof LettuceConnectionFactory) {
+            LettuceConnectionFactory lettuceConnectionFactory = (LettuceConnectionFactory) connectionFactory;
+            Assert.state(!lettuceConnectionFactory.isClusterAware() && !lettuceConnectionFactory.isRedisSentinelAware(),
+                    "near cache tracking not supported by redis cluster or sentinel. use polling mode (no tracking uri) instead.");
+        }
+    }
+
+    protected boolean matches(String evalKey) {
+        for (String prefix : prefixes) {
+            if (evalKey.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param evalKey
+     * @return indexes of all matched prefixes (prefixes may overlap), empty if not matched.
+     */
+    protected int[] prefixesOf(String evalKey) {
+        int[] matched = new int[prefixes.length];
+        int count = 0;
+        for (int i = 0; i < prefixes.length; i++) {
+            if (evalKey.startsWith(prefixes[i]))
+                matched[count++] = i;
+        }
+        return Arrays.copyOf(matched, count);
+    }
+
+    /**
+     * invalidate all local entries of given prefixes in one pass.
+     *
+     * @param indexes indexes of prefixes
+     */
+    protected void invalidatePrefixes(int[] indexes) {
+        invalidations.incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> {
+            String evalKey = key.evalKey();
+            for (int i : indexes) {
+                if (evalKey.startsWith(prefixes[i]))
+                    return true;
+            }
+            return false;
+        });
+    }
+
+
+    protected boolean startTracking() {
+        try {
+            invalidationConnection = trackingClient.connectPubSub(ByteArrayCodec.INSTANCE);
+            Long clientId = invalidationConnection.sync().dispatch(CommandType.CLIENT, new IntegerOutput<>(ByteArrayCodec.INSTANCE),
+                    new CommandArgs<>(ByteArrayCodec.INSTANCE).add("ID"));
+            invalidationConnection.addListener(new RedisPubSubAdapter<byte[], byte[]>() {
+                @Override
+                public void message(byte[] channel, byte[] message) {
+                    onInvalidation(message);
+                }
+            });
+            invalidationConnection.sync().subscribe(INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8));
+            trackingConnection = trackingClient.connect(ByteArrayCodec.INSTANCE);
+            CommandArgs<byte[], byte[]> args = new CommandArgs<>(ByteArrayCodec.INSTANCE).add("TRACKING").add("ON")
+                    .add("REDIRECT").add(clientId).add("BCAST");
+            for (String prefix : prefixes) {
+                args.add("PREFIX").add(prefix);
+            }
+            trackingConnection.sync().dispatch(CommandType.CLIENT, new StatusOutput<>(ByteArrayCodec.INSTANCE), args);
+            invalidateAll();
+            tracking = true;
+            available = true;
+            logger.info("near cache tracking enabled (redirect to client: {}) for prefixes: {}", clientId, prefixes);
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("unable to enable near cache tracking. fallback to polling mode: {}", e.getMessage());
+            closeTrackingConnections();
+            return false;
+        }
+    }
+
+    /**
+     * redis (bcast mode) batches invalidated keys of one registered prefix to a single message (*N array of keys), but
+     * {@link io.lettuce.core.pubsub.PubSubOutput} keeps only last element of the array. keys of batch unknown, all of them
+     * start with the registered prefix which is one of prefixes matched by the decoded key (shorter or longer one if overlapped),
+     * so local entries of every matched prefix invalidated.
+     *
+     * @param message last (or only) invalidated key, null if flushdb or flushall.
+     */
+    protected void onInvalidation(byte[] message) {
+        if (null == message) {// flushdb or flushall
+            invalidateAll();
+            return;
+        }
+        int[] matched = prefixesOf(new String(message, StandardCharsets.UTF_8));
+        if (matched.length > 0)
+            invalidatePrefixes(matched);
+        else
+            invalidateAll();
+    }
+
+    protected void restartTracking() {
+        closeTrackingConnections();
+        if (!startTracking())
+            startPolling();
+    }
+
+    protected void closeTrackingConnections() {
+        if (null != trackingConnection) {
+            trackingConnection.closeAsync();
+            trackingConnection = null;
+        }
+        if (null != invalidationConnection) {
+            invalidationConnection.closeAsync();
+            invalidationConnection = null;
+        }
+    }
+
+    protected void startPolling() {
+        tracking = false;
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    protected void poll() {
+        try {
+            List<byte[]> values = redisClient.stringValueTemplate().execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(versionKeys));
+            boolean wasAvailable = available;
+            int[] changed = new int[versionKeys.length];
+            int count = 0;
+            for (int i = 0; i < versionKeys.length; i++) {
+                byte[] value = null != values ? values.get(i) : null;
+                long version = null != value ? Long.parseLong(new String(value, StandardCharsets.UTF_8)) : 0;
+                if (wasAvailable && version != versions[i])
+                    changed[count++] = i;
+                versions[i] = version;
+            }
+            if (count > 0)
+                invalidatePrefixes(Arrays.copyOf(changed, count));
+            if (!wasAvailable) {
+                invalidateAll();
+                available = true;
+            }
+        } catch (RuntimeException e) {
+            if (available)
+                logger.warn("near cache bypassed, failure to poll versions: {}", e.getMessage());
+            available = false;
+            invalidateAll();
+        }
+    }
+
+
+    private class TrackingConnectionListener implements RedisConnectionStateListener {
+
+        @Override
+        public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+            if (!tracking || (connection != trackingConnection && connection != invalidationConnection))
+                return;
+            logger.warn("near cache tracking connection lost. bypass cache and restart tracking.");
+            tracking = false;
+            available = false;
+            invalidateAll();
+            scheduler.schedule(RedisNearCache.this::restartTracking, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void onRedisExceptionCaught(RedisChannelHandler<?, ?> connection, Throwable cause) {
+
+        }
+
+        @Override
+        public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+
+        }
+    }
+
+    private static final class CachedValue {
+
+        private final Object value;
+
+        private final RedisSerializer<?> serializer;
+
+        private final int weight;
+
+        private CachedValue(Object value, RedisSerializer<?> serializer, int weight) {
+            this.value = value;
+            this.serializer = serializer;
+            this.weight = weight;
+        }
+    }
+
+
+    /**
+     * enable tracking mode by a dedicated (standalone) connection to given uri.
+     *
+     * @param trackingUri
+     */
+    public void setTrackingUri(RedisURI trackingUri) {
+        Assert.isTrue(null == trackingUri || trackingUri.getSentinels().isEmpty(),
+                "near cache tracking not supported by redis sentinel. use polling mode (no tracking uri) instead.");
+        this.trackingUri = trackingUri;
+    }
+
+    /**
+     * client resources shared by tracking connections (not shut down by this). default resources created if not set.
+     *
+     * @param clientResources
+     */
+    public void setClientResources(ClientResources clientResources) {
+        this.clientResources = clientResources;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * max weight (encoded bytes of keys and values) of cache.
+     *
+     * @param maxWeight
+     */
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * max time to live of each entry after written.
+     *
+     * @param ttl
+     */
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public void setPollInterval(Duration pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.SerializerFactoryUtil;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * lettuce codec of {@link RedisKey} and object values for native connections (such as redisClient.connect(codec)).
+ * <p>
+ * keys encoded by cached {@link RedisKey#getBytes()}. values encoded directly into (pooled) buffer of lettuce by {@link ToByteBufEncoder}
+ * and decoded from response buffer without intermediate byte array. also used by {@link DefaultRedisValueSerializer}
+ * (values of redis templates) through {@link #serializeValue(Object)} and {@link #deserializeValue(byte[])}.
+ * <p>
+ * initial buffer capacity of value estimated per value type by size of last encoded values: grows to larger value at once,
+ * decays to smaller values slowly (1/8 of difference per value).
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisObjectCodec implements RedisCodec<RedisKey, Object>, ToByteBufEncoder<RedisKey, Object> {
+
+    public static final int DEFAULT_VALUE_SIZE = 256;
+
+    /*size hints kept for at most this number of value types, others use default size.*/
+    public static final int MAX_HINTED_TYPES = 1024;
+
+    private final SerializerFactory<InputStream, OutputStream> serializerFactory;
+
+    private final Map<Class<?>, Integer> valueSizeHints = new ConcurrentHashMap<>();
+
+
+    public RedisObjectCodec(SerializerFactory<InputStream, OutputStream> serializerFactory) {
+        this.serializerFactory = serializerFactory;
+    }
+
+
+    @Override
+    public void encodeKey(RedisKey key, ByteBuf target) {
+        if (null != key)
+            target.writeBytes(key.getBytes());
+    }
+
+    @Override
+    public void encodeValue(Object value, ByteBuf target) {
+        if (null == value)
+            return;
+        try {
+            updateSizeHint(value, SerializerFactoryUtil.serializeTo(serializerFactory, value, target));
+        } catch (IOException e) {
+            throw new SerializationException("failure to serialize.", e);
+        }
+    }
+
+    @Override
+    public int estimateSize(Object keyOrValue) {
+        if (null == keyOrValue)
+            return 0;
+        if (keyOrValue instanceof RedisKey)
+            return ((RedisKey) keyOrValue).getBytes().length;
+        return getSizeHint(keyOrValue);
+    }
+
+    @Override
+    public RedisKey decodeKey(ByteBuffer bytes) {
+        return RedisKey.RedisKeyBuilder.fromKey(StandardCharsets.UTF_8.decode(bytes).toString()).build();
+    }
+
+    @Override
+    public Object decodeValue(ByteBuffer bytes) {
+        if (null == bytes || !bytes.hasRemaining())
+            return null;
+        try {
+            return SerializerFactoryUtil.deserialize(serializerFactory, bytes);
+        } catch (Exception e) {
+            throw new SerializationException("failure to deserialize.", e);
+        }
+    }
+
+    @Override
+    public ByteBuffer encodeKey(RedisKey key) {
+        return null != key ? ByteBuffer.wrap(key.getBytes()) : ByteBuffer.allocate(0);
+    }
+
+    @Override
+    public ByteBuffer encodeValue(Object value) {
+        if (null == value)
+            return ByteBuffer.allocate(0);
+        return ByteBuffer.wrap(serializeValue(value));
+    }
+
+    /**
+     * @param value
+     * @return encoded value. null if given value is null.
+     */
+    public byte[] serializeValue(Object value) {
+        if (null == value)
+            return null;
+        try {
+            byte[] bytes = SerializerFactoryUtil.serialize(serializerFactory, value, getSizeHint(value));
+            updateSizeHint(value, bytes.length);
+            return bytes;
+        } catch (IOException e) {
+            throw new SerializationException("failure to serialize.", e);
+        }
+    }
+
+    /**
+     * @param bytes
+     * @return decoded value. null if given bytes is null or empty.
+     */
+    public Object deserializeValue(byte[] bytes) {
+        if (null == bytes)
+            return null;
+        return decodeValue(ByteBuffer.wrap(bytes));
+    }
+
+    protected int getSizeHint(Object value) {
+        Integer sizeHint = valueSizeHints.get(value.getClass());
+        return null != sizeHint ? sizeHint : DEFAULT_VALUE_SIZE;
+    }
+
+    protected void updateSizeHint(Object value, int size) {
+        Integer hint = valueSizeHints.get(value.getClass());
+        if (null == hint) {
+            if (valueSizeHints.size() < MAX_HINTED_TYPES)
+                valueSizeHints.put(value.getClass(), size);
+            return;
+        }
+        int next = size >= hint ? size : hint - ((hint - size) >> 3);
+        if (next != hint)
+            valueSizeHints.put(value.getClass(), next);// racy updates acceptable (only a hint), no write if unchanged.
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.DefaultScriptExecutor;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * registry of lua scripts. scripts loaded by SCRIPT LOAD ({@link #loadAll()}) and invoked by EVALSHA.
+ * if script not present on server (NOSCRIPT, such as server restarted or failover), script sent by EVAL and cached by server again.
+ * <p>
+ * script arguments: byte[] passed as is, others as utf-8 encoded {@link String#valueOf(Object)}.
+ * <p>
+ * if connected by {@link RoutingLettuceConnectionFactory}, script executed over shard selected by first key
+ * ({@link RoutingLettuceConnectionFactory#getConnection(RedisKey)}), so scripts of same key executed in order.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisScriptRegistry {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final RedisSerializer<Object> ARGS_SERIALIZER = new RedisSerializer<Object>() {
+        @Override
+        public byte[] serialize(Object arg) throws SerializationException {
+            if (null == arg)
+                return new byte[0];
+            return arg instanceof byte[] ? (byte[]) arg : String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) throws SerializationException {
+            return bytes;
+        }
+    };
+
+    private final RedisTemplate<RedisKey, String> redisTemplate;
+
+    private final Map<String, RedisScript<?>> scripts = new ConcurrentHashMap<>();
+
+    private final KeyRoutingScriptExecutor keyRoutingScriptExecutor;
+
+
+    public RedisScriptRegistry(RedisTemplate<RedisKey, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.keyRoutingScriptExecutor = redisTemplate.getConnectionFactory() instanceof RoutingLettuceConnectionFactory ?
+                new KeyRoutingScriptExecutor(redisTemplate, (RoutingLettuceConnectionFactory) redisTemplate.getConnectionFactory()) : null;
+    }
+
+
+    /**
+     * register script by given name.
+     *
+     * @param name
+     * @param scriptText
+     * @param resultType one of Long, Boolean, List or byte[] (bulk reply). null if status reply.
+     * @return
+     */
+    public <T> RedisScript<T> register(String name, String scriptText, Class<T> resultType) {
+        Assert.hasText(name, "name must not empty.");
+        Assert.hasText(scriptText, "scriptText must not empty.");
+        DefaultRedisScript<T> script = new DefaultRedisScript<>(scriptText, resultType);
+        Assert.isNull(scripts.putIfAbsent(name, script), "script already registered: " + name);
+        return script;
+    }
+
+    public <T> RedisScript<T> getScript(String name) {
+        RedisScript<T> script = (RedisScript<T>) scripts.get(name);
+        Assert.notNull(script, "no script found by name: " + name);
+        return script;
+    }
+
+    /**
+     * SCRIPT LOAD all registered scripts. failures logged only (scripts sent by EVAL on first use).
+     */
+    public void loadAll() {
+        try {
+            redisTemplate.execute((RedisCallback<Void>) connection -> {
+                scripts.forEach((name, script) -> {
+                    String sha1 = connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                    Assert.state(script.getSha1().equals(sha1), "sha1 mismatch of script: " + name);
+                    logger.debug("loaded script [{}] as [{}]", name, sha1);
+                });
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.warn("failure to load scripts, will be loaded on first use: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * invoke script by given name.
+     *
+     * @param name
+     * @param keys
+     * @param args
+     * @return
+     */
+    public <T> T execute(String name, List<RedisKey> keys, Object... args) {
+        RedisScript<T> script = getScript(name);
+        if (null != keyRoutingScriptExecutor && !keys.isEmpty())
+            return keyRoutingScriptExecutor.execute(script, ARGS_SERIALIZER, null, keys, args);
+        return redisTemplate.execute(script, ARGS_SERIALIZER, (RedisSerializer<T>) null, keys, args);
+    }
+
+    public <T> T execute(String name, RedisKey key, Object... args) {
+        return execute(name, Arrays.asList(key), args);
+    }
+
+
+    /**
+     * executes scripts over connection of shard selected by first key.
+     */
+    private static class KeyRoutingScriptExecutor extends DefaultScriptExecutor<RedisKey> {
+
+        private final RoutingLettuceConnectionFactory connectionFactory;
+
+        private KeyRoutingScriptExecutor(RedisTemplate<RedisKey, ?> template, RoutingLettuceConnectionFactory connectionFactory) {
+            super(template);
+            this.connectionFactory = connectionFactory;
+        }
+
+        @Override
+        public <T> T execute(RedisScript<T> script, RedisSerializer<?> argsSerializer, RedisSerializer<T> resultSerializer, List<RedisKey> keys, Object... args) {
+            byte[][] keysAndArgs = keysAndArgs(argsSerializer, keys, args);
+            RedisConnection connection = connectionFactory.getConnection(keys.get(0));
+            try {
+                return eval(connection, script, ReturnType.fromJavaType(script.getResultType()), keys.size(), keysAndArgs, resultSerializer);
+            } finally {
+                connection.close();
+            }
+        }
+    }
+}
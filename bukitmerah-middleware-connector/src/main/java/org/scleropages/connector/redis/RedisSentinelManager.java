@@ -95,5 +95,7 @@ public class RedisSentinelManager {
             sentinelConnection.failover(RedisNode.newRedisNode().withId(toMasterNodeId).build());
             return null;
         });
+        if (redisConnectionFactory instanceof RoutingLettuceConnectionFactory)
+            ((RoutingLettuceConnectionFactory) redisConnectionFactory).resetReadConnections();// re-discover topology for read routing.
     }
 }
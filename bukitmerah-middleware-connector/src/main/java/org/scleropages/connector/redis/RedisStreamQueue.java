@@ -0,0 +1,426 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import io.lettuce.core.Consumer;
+import io.lettuce.core.Limit;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.StreamMessage;
+import io.lettuce.core.XAddArgs;
+import io.lettuce.core.XGroupCreateArgs;
+import io.lettuce.core.XReadArgs;
+import io.lettuce.core.models.stream.PendingMessage;
+import io.lettuce.core.models.stream.PendingParser;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * durable work queue over a redis stream consumed by a consumer group.
+ * <pre>
+ * RedisStreamQueue queue = redisClient.streamQueue(stream, "workers");// owned by client, not closed by caller
+ * queue.createGroup();
+ * queue.addAll(payloads);
+ * List&lt;RedisStreamQueue.Message&gt; messages = queue.poll("worker-1");
+ * ... process
+ * queue.ack(messages);
+ * </pre>
+ * queues of {@link RedisClient#streamQueue(RedisKey, String)} cached per stream and group and closed by client.
+ * queues created by constructor owned by caller and must be closed:
+ * <pre>
+ * try (RedisStreamQueue queue = new RedisStreamQueue(redisClient, stream, "workers")) {
+ *     ...
+ * }
+ * </pre>
+ * each payload stored as single field of stream entry and encoded by object serializer of {@link RedisClient} (serializer factories).
+ * <ul>
+ * <li>XADD of {@link #addAll(Collection)} pipelined by {@link RedisBatch}, optionally trimmed by approximate max length.</li>
+ * <li>XREADGROUP of {@link #poll(String)} reads up to batch size new entries, blocking up to block timeout.
+ * blocking reads run on consumer connections kept by this queue (one per concurrent poller) instead of a dedicated
+ * connection per poll (opened and closed each time if lettuce connections not pooled). {@link #close()} releases them.</li>
+ * <li>entries not acknowledged stay in pending entries list and can be taken over by other consumers after min idle time ({@link #reclaim(String, Duration, int)}).</li>
+ * <li>XACK of {@link #ack(Collection)} acknowledges all given entries by one command.</li>
+ * </ul>
+ * thread safe. consumers are names in group, so multiple threads can poll as same or different consumers.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisStreamQueue implements Closeable {
+
+    public static final String PAYLOAD_FIELD = "payload";
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    public static final Duration DEFAULT_BLOCK_TIMEOUT = Duration.ofSeconds(2);
+
+    private static final byte[] PAYLOAD_FIELD_BYTES = PAYLOAD_FIELD.getBytes(StandardCharsets.UTF_8);
+
+    private final RedisClient redisClient;
+
+    private final RedisTemplate<RedisKey, Object> redisTemplate;
+
+    private final RedisSerializer<Object> objectSerializer;
+
+    private final RedisKey stream;
+
+    private final String group;
+
+    private final byte[] groupBytes;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private Duration blockTimeout = DEFAULT_BLOCK_TIMEOUT;
+
+    private long maxLength;
+
+    /*idle consumer connections for blocking reads.*/
+    private final Queue<RedisConnection> consumerConnections = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean closed;
+
+
+    public RedisStreamQueue(RedisClient redisClient, RedisKey stream, String group) {
+        Assert.notNull(redisClient, "redisClient must not be null.");
+        Assert.notNull(stream, "stream must not be null.");
+        Assert.hasText(group, "group must not empty.");
+        this.redisClient = redisClient;
+        this.redisTemplate = redisClient.objectValueTemplate();
+        this.objectSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        this.stream = stream;
+        this.group = group;
+        this.groupBytes = group.getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * create consumer group (and stream if not exists) start from first entry of stream.
+     *
+     * @return false if group already exists.
+     */
+    public boolean createGroup() {
+        try {
+            execute(redisClient.batch().add(commands -> commands.xgroupCreate(XReadArgs.StreamOffset.from(stream.getBytes(), "0"), groupBytes,
+                    XGroupCreateArgs.Builder.mkstream())));
+            return true;
+        } catch (RedisCommandExecutionException e) {
+            if (null != e.getMessage() && e.getMessage().startsWith("BUSYGROUP"))
+                return false;
+            throw e;
+        }
+    }
+
+    public String add(Object payload) {
+        return addAll(Collections.singletonList(payload)).get(0);
+    }
+
+    /**
+     * @param payloads
+     * @return ids of added entries in order of given payloads.
+     */
+    public List<String> addAll(Collection<?> payloads) {
+        if (payloads.isEmpty())
+            return Collections.emptyList();
+        XAddArgs args = maxLength > 0 ? new XAddArgs().maxlen(maxLength).approximateTrimming() : new XAddArgs();
+        RedisBatch batch = redisClient.batch();
+        for (Object payload : payloads) {
+            byte[] bytes = objectSerializer.serialize(payload);
+            batch.add(commands -> commands.xadd(stream.getBytes(), args, PAYLOAD_FIELD_BYTES, bytes));
+        }
+        List<String> ids = new ArrayList<>(payloads.size());
+        for (Object id : execute(batch)) {
+            ids.add((String) id);
+        }
+        return ids;
+    }
+
+    /**
+     * read new entries delivered to given consumer, up to batch size, blocking up to block timeout.
+     *
+     * @param consumer
+     * @return empty if no entries arrived in block timeout.
+     */
+    public List<Message> poll(String consumer) {
+        return poll(consumer, batchSize, blockTimeout);
+    }
+
+    /**
+     * @param consumer
+     * @param count
+     * @param blockTimeout not blocking if null or zero.
+     * @return
+     */
+    public List<Message> poll(String consumer, int count, Duration blockTimeout) {
+        StreamReadOptions options = StreamReadOptions.empty().count(count);
+        if (null != blockTimeout && !blockTimeout.isZero())
+            options = options.block(blockTimeout);
+        Assert.state(!closed, "queue closed.");
+        RedisConnection connection = obtainConsumerConnection();
+        List<ByteRecord> records;
+        try {
+            records = connection.xReadGroup(org.springframework.data.redis.connection.stream.Consumer.from(group, consumer), options,
+                    StreamOffset.create(stream.getBytes(), ReadOffset.lastConsumed()));
+        } catch (RuntimeException e) {
+            connection.close();// may be broken
+            throw e;
+        }
+        releaseConsumerConnection(connection);
+        if (null == records || records.isEmpty())
+            return Collections.emptyList();
+        List<Message> messages = new ArrayList<>(records.size());
+        for (ByteRecord record : records) {
+            messages.add(new Message(record.getId().getValue(), objectSerializer.deserialize(payloadOf(record.getValue()))));
+        }
+        return messages;
+    }
+
+    /**
+     * take over entries pending longer than min idle time from any consumer of group (oldest first).
+     * entries deleted (trimmed) from stream while pending are acknowledged and skipped
+ * (if XCLAIM replies nil for them, examined entries not claimed are checked by XRANGE).
+     *
+     * @param consumer new owner of reclaimed entries.
+     * @param minIdle
+     * @param count    max number of pending entries examined.
+     * @return reclaimed entries, delivered again to given consumer.
+     */
+    public List<Message> reclaim(String consumer, Duration minIdle, int count) {
+        List<Object> pending = (List<Object>) execute(redisClient.batch().add(commands -> commands.xpending(stream.getBytes(), groupBytes,
+                Range.unbounded(), Limit.from(count)))).get(0);
+        List<String> ids = new ArrayList<>();
+        for (PendingMessage pendingMessage : PendingParser.parseRange(pending)) {
+            if (pendingMessage.getMsSinceLastDelivery() >= minIdle.toMillis())
+                ids.add(pendingMessage.getId());
+        }
+        if (ids.isEmpty())
+            return Collections.emptyList();
+        List<StreamMessage<byte[], byte[]>> claimed = (List<StreamMessage<byte[], byte[]>>) execute(redisClient.batch().add(commands -> commands.xclaim(stream.getBytes(),
+                Consumer.from(groupBytes, consumer.getBytes(StandardCharsets.UTF_8)), minIdle.toMillis(), ids.toArray(new String[0])))).get(0);
+        List<Message> messages = new ArrayList<>(claimed.size());
+        Set<String> claimedIds = new HashSet<>();
+        List<String> deleted = new ArrayList<>();
+        boolean nilClaimed = false;
+        for (StreamMessage<byte[], byte[]> message : claimed) {
+            if (null == message.getId()) {// nil reply of deleted entry, id unknown
+                nilClaimed = true;
+                continue;
+            }
+            claimedIds.add(message.getId());
+            if (null == message.getBody() || message.getBody().isEmpty())
+                deleted.add(message.getId());
+            else
+                messages.add(new Message(message.getId(), objectSerializer.deserialize(payloadOf(message.getBody()))));
+        }
+        if (nilClaimed) {
+            List<String> unknown = new ArrayList<>(ids);
+            unknown.removeAll(claimedIds);
+            deleted.addAll(deletedOf(unknown));
+        }
+        if (!deleted.isEmpty())
+            ackIds(deleted);
+        return messages;
+    }
+
+    /**
+     * @param ids
+     * @return ids of given entries not present in stream (XRANGE of each id pipelined).
+     */
+    protected List<String> deletedOf(List<String> ids) {
+        if (ids.isEmpty())
+            return Collections.emptyList();
+        RedisBatch batch = redisClient.batch();
+        for (String id : ids) {
+            batch.add(commands -> commands.xrange(stream.getBytes(), Range.create(id, id)));
+        }
+        List<Object> ranges = execute(batch);
+        List<String> deleted = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (((List<?>) ranges.get(i)).isEmpty())
+                deleted.add(ids.get(i));
+        }
+        return deleted;
+    }
+
+    /**
+     * @param messages
+     * @return number of entries acknowledged.
+     */
+    public long ack(Collection<Message> messages) {
+        if (messages.isEmpty())
+            return 0;
+        List<String> ids = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            ids.add(message.getId());
+        }
+        return ackIds(ids);
+    }
+
+    /**
+     * @param ids
+     * @return number of entries acknowledged.
+     */
+    public long ackIds(Collection<String> ids) {
+        if (ids.isEmpty())
+            return 0;
+        Long acknowledged = redisTemplate.execute((RedisCallback<Long>) connection -> connection.xAck(stream.getBytes(), group, ids.toArray(new String[0])));
+        return null != acknowledged ? acknowledged : 0;
+    }
+
+    /**
+     * @return number of entries in stream.
+     */
+    public long size() {
+        Long size = redisTemplate.execute((RedisCallback<Long>) connection -> connection.xLen(stream.getBytes()));
+        return null != size ? size : 0;
+    }
+
+    /**
+     * close consumer connections kept by this queue. polls after closed rejected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        RedisConnection connection;
+        while (null != (connection = consumerConnections.poll())) {
+            connection.close();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    protected RedisConnection obtainConsumerConnection() {
+        RedisConnection connection = consumerConnections.poll();
+        return null != connection ? connection : redisTemplate.getRequiredConnectionFactory().getConnection();
+    }
+
+    protected void releaseConsumerConnection(RedisConnection connection) {
+        consumerConnections.offer(connection);
+        if (closed && consumerConnections.remove(connection))// closed while polling
+            connection.close();
+    }
+
+    protected byte[] payloadOf(Map<byte[], byte[]> body) {
+        for (Map.Entry<byte[], byte[]> entry : body.entrySet()) {
+            if (Arrays.equals(PAYLOAD_FIELD_BYTES, entry.getKey()))
+                return entry.getValue();
+        }
+        return null;
+    }
+
+    protected List<Object> execute(RedisBatch batch) {
+        return batch.executeAndWait();
+    }
+
+    public RedisKey getStream() {
+        return stream;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * max number of entries read by {@link #poll(String)}.
+     *
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be positive.");
+        this.batchSize = batchSize;
+    }
+
+    public Duration getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    /**
+     * max time blocked by {@link #poll(String)} if no entries available.
+     *
+     * @param blockTimeout
+     */
+    public void setBlockTimeout(Duration blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public long getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * stream approximately trimmed to max length by adds. not trimmed if 0 (default).
+     * note that trimmed entries are lost even if not acknowledged.
+     *
+     * @param maxLength
+     */
+    public void setMaxLength(long maxLength) {
+        this.maxLength = maxLength;
+    }
+
+
+    /**
+     * entry of stream.
+     */
+    public static class Message {
+
+        private final String id;
+
+        private final Object payload;
+
+        public Message(String id, Object payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public <T> T getPayload() {
+            return (T) payload;
+        }
+
+        @Override
+        public String toString() {
+            return "Message{" + "id='" + id + '\'' + ", payload=" + payload + '}';
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import com.google.common.collect.Maps;
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.masterslave.MasterSlave;
+import io.lettuce.core.masterslave.StatefulRedisMasterSlaveConnection;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionProvider;
+import org.springframework.data.redis.connection.lettuce.LettuceConverters;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * lettuce connection factory with:
+ * <ul>
+ * <li>sharded native connections: non-cluster connections ({@link #getConnection()}) share one of N native connections
+ * (round-robin or by thread) instead of a single multiplexed connection, so that large values not block all other commands.
+ * {@link #getConnection(RedisKey)} selects shard by slot of given key (commands of same key executed in order), used by
+ * scripts of {@link RedisScriptRegistry} and writes of {@link RedisBatch}. cluster connections not sharded (already connected per node by lettuce).</li>
+ * <li>read routing: native connections per {@link ReadFrom} policy ({@link #getReadCommands(ReadFrom)}) used by read operations of
+ * {@link RedisBatch} and {@link DefaultRedisClient}. supported by cluster, master/replica connections (client configured with
+ * a read from policy) and sentinel (master/replica connection over sentinel created by this if no read from policy configured),
+ * otherwise reads from master. {@link ReadFrom#NEAREST} reads from node with lowest latency.
+ * read connections re-created after failover triggered by {@link RedisSentinelManager} ({@link #resetReadConnections()}).</li>
+ * </ul>
+ * created by {@link RoutingLettuceConnectionFactoryPostProcessor} in place of lettuce connection factory of spring boot.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RoutingLettuceConnectionFactory extends LettuceConnectionFactory {
+
+    public enum Sharding {
+        ROUND_ROBIN, THREAD
+    }
+
+    private int shards = 1;
+
+    private Sharding sharding = Sharding.ROUND_ROBIN;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private LettuceConnectionProvider connectionProvider;
+
+    private AbstractRedisClient client;
+
+    /*read connections over sentinel created by this (not by connection provider)*/
+    private final Set<StatefulConnection<byte[], byte[]>> sentinelReadConnections = Collections.newSetFromMap(Maps.newConcurrentMap());
+
+    /*shard 0 is shared connection of super*/
+    private StatefulRedisConnection<byte[], byte[]>[] shardConnections;
+
+    private final Map<ReadFrom, StatefulConnection<byte[], byte[]>> readConnections = Maps.newConcurrentMap();
+
+
+    public RoutingLettuceConnectionFactory(RedisConfiguration redisConfiguration, LettuceClientConfiguration clientConfig) {
+        super(redisConfiguration, clientConfig);
+    }
+
+    /**
+     * @param connectionFactory source of configurations. only configurations copied, connections and client of it not used.
+     * @return routing factory with same configurations of given factory.
+     */
+    public static RoutingLettuceConnectionFactory from(LettuceConnectionFactory connectionFactory) {
+        RedisConfiguration redisConfiguration;
+        if (connectionFactory.isClusterAware())
+            redisConfiguration = connectionFactory.getClusterConfiguration();
+        else if (connectionFactory.isRedisSentinelAware())
+            redisConfiguration = connectionFactory.getSentinelConfiguration();
+        else if (null != connectionFactory.getSocketConfiguration())
+            redisConfiguration = connectionFactory.getSocketConfiguration();
+        else
+            redisConfiguration = connectionFactory.getStandaloneConfiguration();
+        RoutingLettuceConnectionFactory routingConnectionFactory = new RoutingLettuceConnectionFactory(redisConfiguration, connectionFactory.getClientConfiguration());
+        routingConnectionFactory.setShareNativeConnection(connectionFactory.getShareNativeConnection());
+        routingConnectionFactory.setValidateConnection(connectionFactory.getValidateConnection());
+        routingConnectionFactory.setEagerInitialization(connectionFactory.getEagerInitialization());
+        routingConnectionFactory.setConvertPipelineAndTxResults(connectionFactory.getConvertPipelineAndTxResults());
+        return routingConnectionFactory;
+    }
+
+
+    @Override
+    public void afterPropertiesSet() {
+        shardConnections = new StatefulRedisConnection[shards];
+        super.afterPropertiesSet();
+    }
+
+    @Override
+    public void destroy() {
+        releaseConnections();
+        super.destroy();
+    }
+
+    @Override
+    public void resetConnection() {
+        releaseConnections();
+        super.resetConnection();
+    }
+
+    /**
+     * @param key
+     * @return connection over shard selected by slot of given key.
+     */
+    public RedisConnection getConnection(RedisKey key) {
+        if (isClusterAware() || shards <= 1 || !getShareNativeConnection())
+            return getConnection();
+        return createConnection(getShardConnection(key.computeSlot() % shards));
+    }
+
+    /**
+     * @param readFrom
+     * @return native commands of connection reads from given policy. null if read routing not supported.
+     */
+    public RedisClusterAsyncCommands<byte[], byte[]> getReadCommands(ReadFrom readFrom) {
+        Assert.notNull(readFrom, "readFrom must not be null.");
+        if (!isReadRoutingSupported())
+            return null;
+        StatefulConnection<byte[], byte[]> connection = readConnections.computeIfAbsent(readFrom, this::createReadConnection);
+        if (connection instanceof StatefulRedisClusterConnection)
+            return ((StatefulRedisClusterConnection<byte[], byte[]>) connection).async();
+        return ((StatefulRedisConnection<byte[], byte[]>) connection).async();
+    }
+
+    /**
+     * @return true if connected to cluster, master/replica or sentinel.
+     */
+    public boolean isReadRoutingSupported() {
+        return isClusterAware() || isRedisSentinelAware() || getClientConfiguration().getReadFrom().isPresent();
+    }
+
+    /**
+     * release read connections, re-created (topology discovered again) on next use. such as after failover.
+     */
+    public void resetReadConnections() {
+        for (ReadFrom readFrom : readConnections.keySet()) {
+            StatefulConnection<byte[], byte[]> connection = readConnections.remove(readFrom);
+            if (null != connection)
+                releaseReadConnection(connection);
+        }
+    }
+
+    @Override
+    protected StatefulRedisConnection<byte[], byte[]> getSharedConnection() {
+        if (shards <= 1 || !getShareNativeConnection())
+            return super.getSharedConnection();
+        int shard = sharding == Sharding.THREAD ? (int) (Thread.currentThread().getId() % shards) : (counter.getAndIncrement() & Integer.MAX_VALUE) % shards;
+        return getShardConnection(shard);
+    }
+
+    @Override
+    protected LettuceConnectionProvider doCreateConnectionProvider(AbstractRedisClient client, RedisCodec<?, ?> codec) {
+        LettuceConnectionProvider connectionProvider = super.doCreateConnectionProvider(client, codec);
+        if (codec instanceof ByteArrayCodec) {
+            this.connectionProvider = connectionProvider;
+            this.client = client;
+        }
+        return connectionProvider;
+    }
+
+    protected StatefulRedisConnection<byte[], byte[]> getShardConnection(int shard) {
+        if (shard == 0)
+            return super.getSharedConnection();
+        StatefulRedisConnection<byte[], byte[]> connection = shardConnections[shard];
+        if (null != connection && connection.isOpen())
+            return connection;
+        synchronized (shardConnections) {
+            connection = shardConnections[shard];
+            if (null == connection || !connection.isOpen()) {
+                if (null != connection)
+                    connectionProvider.release(connection);
+                connection = connectionProvider.getConnection(StatefulRedisConnection.class);
+                shardConnections[shard] = connection;
+            }
+            return connection;
+        }
+    }
+
+    protected StatefulConnection<byte[], byte[]> createReadConnection(ReadFrom readFrom) {
+        if (isRedisSentinelAware() && !getClientConfiguration().getReadFrom().isPresent()) {
+            StatefulRedisMasterSlaveConnection<byte[], byte[]> connection = MasterSlave.connect((RedisClient) client, ByteArrayCodec.INSTANCE, sentinelUri());
+            connection.setReadFrom(readFrom);
+            sentinelReadConnections.add(connection);
+            return connection;
+        }
+        StatefulConnection<byte[], byte[]> connection = connectionProvider.getConnection(StatefulConnection.class);
+        if (connection instanceof StatefulRedisClusterConnection)
+            ((StatefulRedisClusterConnection<byte[], byte[]>) connection).setReadFrom(readFrom);
+        else if (connection instanceof StatefulRedisMasterSlaveConnection)
+            ((StatefulRedisMasterSlaveConnection<byte[], byte[]>) connection).setReadFrom(readFrom);
+        return connection;
+    }
+
+    protected RedisConnection createConnection(StatefulRedisConnection<byte[], byte[]> sharedConnection) {
+        LettuceConnection connection = doCreateLettuceConnection(sharedConnection, connectionProvider, getTimeout(), getDatabase());
+        connection.setConvertPipelineAndTxResults(getConvertPipelineAndTxResults());
+        return connection;
+    }
+
+    protected void releaseConnections() {
+        if (null != shardConnections) {
+            synchronized (shardConnections) {
+                for (int i = 1; i < shardConnections.length; i++) {
+                    if (null != shardConnections[i]) {
+                        connectionProvider.release(shardConnections[i]);
+                        shardConnections[i] = null;
+                    }
+                }
+            }
+        }
+        resetReadConnections();
+    }
+
+    protected void releaseReadConnection(StatefulConnection<byte[], byte[]> connection) {
+        if (sentinelReadConnections.remove(connection))
+            connection.closeAsync();
+        else
+            connectionProvider.release(connection);
+    }
+
+    protected RedisURI sentinelUri() {
+        RedisURI redisURI = LettuceConverters.sentinelConfigurationToRedisURI(getSentinelConfiguration());
+        redisURI.setDatabase(getDatabase());
+        redisURI.setSsl(isUseSsl());
+        redisURI.setTimeout(getClientConfiguration().getCommandTimeout());
+        return redisURI;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * number of native connections shared. must set before initialized.
+     *
+     * @param shards
+     */
+    public void setShards(int shards) {
+        Assert.isTrue(shards > 0, "shards must be positive.");
+        this.shards = shards;
+    }
+
+    public Sharding getSharding() {
+        return sharding;
+    }
+
+    /**
+     * how shard selected by {@link #getConnection()}. {@link Sharding#THREAD} keeps commands of same thread in order.
+     *
+     * @param sharding
+     */
+    public void setSharding(Sharding sharding) {
+        Assert.notNull(sharding, "sharding must not be null.");
+        this.sharding = sharding;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import com.google.common.collect.Maps;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.DestructionAwareBeanPostProcessor;
+import org.springframework.beans.factory.support.MergedBeanDefinitionPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.util.Assert;
+
+import java.util.Map;
+
+/**
+ * wrap lettuce connection factory (created by spring boot) with {@link RoutingLettuceConnectionFactory} before initialized.
+ * configurations copied from original instance (never initialized, no client or connections created), routing factory
+ * initialized and exposed by original bean name, destroyed with original bean.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RoutingLettuceConnectionFactoryPostProcessor implements MergedBeanDefinitionPostProcessor, DestructionAwareBeanPostProcessor {
+
+    private final int shards;
+
+    private final RoutingLettuceConnectionFactory.Sharding sharding;
+
+    private final Map<String, RoutingLettuceConnectionFactory> routingConnectionFactories = Maps.newConcurrentMap();
+
+    /**
+     * @param shards   number of native connections shared.
+     * @param sharding how shard selected.
+     */
+    public RoutingLettuceConnectionFactoryPostProcessor(int shards, RoutingLettuceConnectionFactory.Sharding sharding) {
+        Assert.isTrue(shards > 0, "shards must be positive.");
+        Assert.notNull(sharding, "sharding must not be null.");
+        this.shards = shards;
+        this.sharding = sharding;
+    }
+
+    @Override
+    public void postProcessMergedBeanDefinition(RootBeanDefinition beanDefinition, Class<?> beanType, String beanName) {
+        if (LettuceConnectionFactory.class == beanType)
+            beanDefinition.registerExternallyManagedDestroyMethod("destroy");// original instance never initialized, routing factory destroyed instead.
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (LettuceConnectionFactory.class != bean.getClass())
+            return bean;
+        RoutingLettuceConnectionFactory routingConnectionFactory = RoutingLettuceConnectionFactory.from((LettuceConnectionFactory) bean);
+        routingConnectionFactory.setShards(shards);
+        routingConnectionFactory.setSharding(sharding);
+        routingConnectionFactories.put(beanName, routingConnectionFactory);
+        return routingConnectionFactory;
+    }
+
+    @Override
+    public void postProcessBeforeDestruction(Object bean, String beanName) throws BeansException {
+        RoutingLettuceConnectionFactory routingConnectionFactory = routingConnectionFactories.remove(beanName);
+        if (null != routingConnectionFactory)
+            routingConnectionFactory.destroy();
+    }
+
+    @Override
+    public boolean requiresDestruction(Object bean) {
+        return LettuceConnectionFactory.class == bean.getClass();
+    }
+}
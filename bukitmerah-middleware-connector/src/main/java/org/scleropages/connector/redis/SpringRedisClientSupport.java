@@ -15,6 +15,8 @@
  */
 package org.scleropages.connector.redis;
 
+import io.lettuce.core.ReadFrom;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.data.redis.core.ClusterOperations;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.ListOperations;
@@ -22,16 +24,52 @@ import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.SetOperations;
 import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.Assert;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
+ * keys written by operations of this client (value, hash, list, set and zset operations, batches and commands of subclasses)
+ * passed to registered write listeners after written (e.g. {@link RedisNearCache} keeps coherent by them).
+ * writes through templates directly not notified.
+ * <p>
+ * stream queues ({@link #streamQueue(RedisKey, String)}) cached per stream and group, closed when this client destroyed.
+ *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
-public class SpringRedisClientSupport implements RedisClient {
+public class SpringRedisClientSupport implements RedisClient, DisposableBean {
+
+    /*read methods of value, hash, list, set and zset operations. others treated as write.*/
+    private static final Set<String> READ_METHODS = new HashSet<>(Arrays.asList(
+            "get", "multiGet", "size", "getBit", "getOperations",
+            "hasKey", "keys", "lengthOfValue", "values", "entries", "scan",
+            "range", "index",
+            "difference", "intersect", "union", "isMember", "members", "randomMember", "distinctRandomMembers", "randomMembers",
+            "rangeWithScores", "rangeByScore", "rangeByScoreWithScores", "rangeByLex", "reverseRange", "reverseRangeWithScores",
+            "reverseRangeByScore", "reverseRangeByScoreWithScores", "rank", "reverseRank", "count", "zCard", "score",
+            "equals", "hashCode", "toString"));
 
     private final RedisTemplate<RedisKey, String> stringRedisTemplate;
 
     private final RedisTemplate<RedisKey, Object> objectRedisTemplate;
 
+    /*stream queues by stream key and group*/
+    private final Map<String, Map<String, RedisStreamQueue>> streamQueues = new ConcurrentHashMap<>();
+
     private final ClusterOperations<RedisKey, String> clusterOperations;
 
     /*~~~string value operations */
@@ -56,23 +94,27 @@ public class SpringRedisClientSupport implements RedisClient {
 
     private final ZSetOperations<RedisKey, Object> objectZSetOperations;
 
+    private RedisMetrics redisMetrics = RedisMetrics.NOOP;
+
+    private final List<Consumer<Collection<RedisKey>>> writeListeners = new CopyOnWriteArrayList<>();
+
 
     public SpringRedisClientSupport(RedisTemplate<RedisKey, String> stringRedisTemplate, RedisTemplate<RedisKey, Object> objectRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
         this.objectRedisTemplate = objectRedisTemplate;
 
         this.clusterOperations = stringRedisTemplate.opsForCluster();
-        this.stringValueOperations = stringRedisTemplate.opsForValue();
-        this.stringHashOperations = stringRedisTemplate.opsForHash();
-        this.stringListOperations = stringRedisTemplate.opsForList();
-        this.stringSetOperations = stringRedisTemplate.opsForSet();
-        this.stringZSetOperations = stringRedisTemplate.opsForZSet();
-
-        this.objectValueOperations = objectRedisTemplate.opsForValue();
-        this.objectHashOperations = objectRedisTemplate.opsForHash();
-        this.objectListOperations = objectRedisTemplate.opsForList();
-        this.objectSetOperations = objectRedisTemplate.opsForSet();
-        this.objectZSetOperations = objectRedisTemplate.opsForZSet();
+        this.stringValueOperations = notifyWrites(ValueOperations.class, stringRedisTemplate.opsForValue());
+        this.stringHashOperations = notifyWrites(HashOperations.class, stringRedisTemplate.opsForHash());
+        this.stringListOperations = notifyWrites(ListOperations.class, stringRedisTemplate.opsForList());
+        this.stringSetOperations = notifyWrites(SetOperations.class, stringRedisTemplate.opsForSet());
+        this.stringZSetOperations = notifyWrites(ZSetOperations.class, stringRedisTemplate.opsForZSet());
+
+        this.objectValueOperations = notifyWrites(ValueOperations.class, objectRedisTemplate.opsForValue());
+        this.objectHashOperations = notifyWrites(HashOperations.class, objectRedisTemplate.opsForHash());
+        this.objectListOperations = notifyWrites(ListOperations.class, objectRedisTemplate.opsForList());
+        this.objectSetOperations = notifyWrites(SetOperations.class, objectRedisTemplate.opsForSet());
+        this.objectZSetOperations = notifyWrites(ZSetOperations.class, objectRedisTemplate.opsForZSet());
     }
 
 
@@ -154,4 +196,120 @@ public class SpringRedisClientSupport implements RedisClient {
     }
 
 
+    @Override
+    public RedisBatch batch() {
+        return batch(null);
+    }
+
+
+    @Override
+    public RedisBatch batch(ReadFrom readFrom) {
+        RedisBatch batch = new RedisBatch(stringRedisTemplate.getRequiredConnectionFactory(),
+                (RedisSerializer<String>) stringRedisTemplate.getValueSerializer(),
+                (RedisSerializer<Object>) objectRedisTemplate.getValueSerializer(), redisMetrics, readFrom);
+        if (!writeListeners.isEmpty())
+            batch.setWriteListener(this::afterWrite);
+        return batch;
+    }
+
+
+    /**
+     * @param writeListener receives keys written by this client (after written).
+     */
+    public void addWriteListener(Consumer<Collection<RedisKey>> writeListener) {
+        Assert.notNull(writeListener, "writeListener must not be null.");
+        writeListeners.add(writeListener);
+    }
+
+    public void removeWriteListener(Consumer<Collection<RedisKey>> writeListener) {
+        writeListeners.remove(writeListener);
+    }
+
+    /**
+     * notify write listeners given keys written.
+     *
+     * @param keys
+     */
+    protected void afterWrite(Collection<RedisKey> keys) {
+        if (keys.isEmpty())
+            return;
+        for (Consumer<Collection<RedisKey>> writeListener : writeListeners) {
+            writeListener.accept(keys);
+        }
+    }
+
+    protected void afterWrite(RedisKey key) {
+        if (!writeListeners.isEmpty())
+            afterWrite(Collections.singletonList(key));
+    }
+
+    /**
+     * @param type
+     * @param operations
+     * @param <T>
+     * @return operations notify keys (arguments) of write methods to write listeners after invoked.
+     */
+    protected <T> T notifyWrites(Class<T> type, T operations) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            Object result;
+            try {
+                result = method.invoke(operations, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+            if (!writeListeners.isEmpty() && isWrite(method))
+                afterWrite(keysOf(args));
+            return result;
+        }));
+    }
+
+    private static boolean isWrite(Method method) {
+        return !READ_METHODS.contains(method.getName());
+    }
+
+    private static Collection<RedisKey> keysOf(Object[] args) {
+        if (null == args)
+            return Collections.emptyList();
+        List<RedisKey> keys = new ArrayList<>(1);
+        for (Object arg : args) {
+            if (arg instanceof RedisKey)
+                keys.add((RedisKey) arg);
+            else if (arg instanceof Collection || arg instanceof Map) {
+                for (Object element : arg instanceof Map ? ((Map<?, ?>) arg).keySet() : (Collection<?>) arg) {
+                    if (element instanceof RedisKey)
+                        keys.add((RedisKey) element);
+                }
+            }
+        }
+        return keys;
+    }
+
+
+    public RedisMetrics getRedisMetrics() {
+        return redisMetrics;
+    }
+
+    public void setRedisMetrics(RedisMetrics redisMetrics) {
+        Assert.notNull(redisMetrics, "redisMetrics must not be null.");
+        this.redisMetrics = redisMetrics;
+    }
+
+
+    @Override
+    public RedisStreamQueue streamQueue(RedisKey stream, String group) {
+        Assert.notNull(stream, "stream must not be null.");
+        return streamQueues.computeIfAbsent(stream.evalKey(), key -> new ConcurrentHashMap<>()).compute(group,
+                (key, queue) -> null == queue || queue.isClosed() ? new RedisStreamQueue(this, stream, group) : queue);
+    }
+
+    /**
+     * close stream queues created by this client.
+     */
+    @Override
+    public void destroy() {
+        streamQueues.values().forEach(queues -> queues.values().forEach(RedisStreamQueue::close));
+        streamQueues.clear();
+    }
+
+
 }
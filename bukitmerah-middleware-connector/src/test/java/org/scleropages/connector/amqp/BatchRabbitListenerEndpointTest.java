@@ -0,0 +1,63 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.amqp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.beans.DirectFieldAccessor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * container settings applied by batch endpoint before start.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class BatchRabbitListenerEndpointTest {
+
+    @Test
+    public void prefetchOfContainerKeptIfNotLessThanBatchSize() {
+        SimpleMessageListenerContainer container = setup(250, 100, 0);
+        assertThat(property(container, "prefetchCount")).isEqualTo(250);
+        assertThat(property(container, "batchSize")).isEqualTo(100);
+        assertThat(property(container, "consumerBatchEnabled")).isEqualTo(true);
+    }
+
+    @Test
+    public void prefetchRaisedToBatchSize() {
+        assertThat(property(setup(250, 500, 0), "prefetchCount")).isEqualTo(500);
+        assertThat(property(setup(250, 100, 20), "prefetchCount")).isEqualTo(100);
+        assertThat(property(setup(250, 100, 400), "prefetchCount")).isEqualTo(400);
+    }
+
+
+    private static SimpleMessageListenerContainer setup(int containerPrefetch, int batchSize, int prefetch) {
+        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
+        container.setPrefetchCount(containerPrefetch);
+        BatchRabbitListenerEndpoint endpoint = new BatchRabbitListenerEndpoint();
+        endpoint.setQueueNames("q");
+        endpoint.setPrefetch(prefetch);
+        endpoint.setMessageListener(new BatchMessageListenerAdapter<>(messages -> {
+        }, new SimpleMessageConverter(), batchSize));
+        endpoint.setupListenerContainer(container);
+        return container;
+    }
+
+    private static Object property(SimpleMessageListenerContainer container, String name) {
+        return new DirectFieldAccessor(container).getPropertyValue(name);
+    }
+}
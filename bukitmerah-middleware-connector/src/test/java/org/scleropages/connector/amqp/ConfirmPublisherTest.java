@@ -0,0 +1,271 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.amqp;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ring/window bookkeeping of confirm publisher against a fake channel, confirms driven by test.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class ConfirmPublisherTest {
+
+    private FakeChannel fakeChannel;
+
+    private ConnectionFactory connectionFactory;
+
+    private final List<ConfirmPublisher> publishers = new ArrayList<>();
+
+
+    @BeforeEach
+    public void createChannel() {
+        fakeChannel = new FakeChannel();
+        com.rabbitmq.client.Connection rabbitConnection = proxy(com.rabbitmq.client.Connection.class,
+                name -> "createChannel".equals(name) ? fakeChannel.channel : null);
+        Connection connection = proxy(Connection.class, name -> "getDelegate".equals(name) ? rabbitConnection : null);
+        connectionFactory = proxy(ConnectionFactory.class, name -> "createConnection".equals(name) ? connection : null);
+    }
+
+    @AfterEach
+    public void destroy() {
+        publishers.forEach(ConfirmPublisher::destroy);
+    }
+
+    @Test
+    public void publishFailedIfWindowFull() {
+        ConfirmPublisher publisher = publisher(2);
+        publisher.setWindowTimeout(50);
+        CompletableFuture<Confirm> first = publisher.publish("x", "k", message("1"));
+        publisher.publish("x", "k", message("2"));
+        assertThat(publisher.getInFlight()).isEqualTo(2);
+
+        assertFailedBy(publisher.publish("x", "k", message("3")), TimeoutException.class);
+        assertThat(fakeChannel.published).hasSize(2);
+
+        fakeChannel.ack(1, false);
+        assertThat(first.join().isAck()).isTrue();
+        assertThat(publisher.getInFlight()).isEqualTo(1);
+        publisher.publish("x", "k", message("4"));
+        assertThat(fakeChannel.published).hasSize(3);
+    }
+
+    @Test
+    public void multipleConfirmCompletesAllUpToTag() {
+        ConfirmPublisher publisher = publisher(8);
+        List<CompletableFuture<Confirm>> futures = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            futures.add(publisher.publish("x", "k", message(String.valueOf(i))));
+        }
+        fakeChannel.ack(3, true);
+        for (int i = 0; i < 3; i++) {
+            assertThat(futures.get(i).join().isAck()).isTrue();
+            assertThat(new String(futures.get(i).join().message().getBody())).isEqualTo(String.valueOf(i + 1));
+        }
+        assertThat(futures.get(3)).isNotDone();
+        assertThat(futures.get(4)).isNotDone();
+        assertThat(publisher.getInFlight()).isEqualTo(2);
+
+        fakeChannel.nack(5, false);
+        assertThat(futures.get(4).join().isAck()).isFalse();
+        assertThat(publisher.getInFlight()).as("window not advanced over unconfirmed lowest tag").isEqualTo(2);
+
+        fakeChannel.ack(4, false);
+        assertThat(futures.get(3).join().isAck()).isTrue();
+        assertThat(publisher.getInFlight()).isZero();
+    }
+
+    @Test
+    public void ringReusedAcrossManyConfirms() {
+        ConfirmPublisher publisher = publisher(3);
+        publisher.setWindowTimeout(50);
+        List<CompletableFuture<Confirm>> futures = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            futures.add(publisher.publish("x", "k", message(String.valueOf(i))));
+            if (i % 3 == 0)
+                fakeChannel.ack(i, true);
+        }
+        fakeChannel.ack(100, false);
+        for (int i = 0; i < futures.size(); i++) {
+            Confirm confirm = futures.get(i).join();
+            assertThat(confirm.isAck()).isTrue();
+            assertThat(new String(confirm.message().getBody())).isEqualTo(String.valueOf(i + 1));
+        }
+        assertThat(publisher.getInFlight()).isZero();
+    }
+
+    @Test
+    public void publishTagOnlySetOnPublishedProperties() {
+        ConfirmPublisher publisher = publisher(4);
+        publisher.setMandatory(true);
+        Message message = message("1");
+        message.getMessageProperties().setHeader("h", "v");
+        CompletableFuture<Confirm> future = publisher.publish("x", "k", message);
+
+        AMQP.BasicProperties published = fakeChannel.published.get(0);
+        assertThat(published.getHeaders()).containsEntry(ConfirmPublisher.PUBLISH_TAG_HEADER, 1L).containsEntry("h", "v");
+        assertThat(message.getMessageProperties().getHeaders()).doesNotContainKey(ConfirmPublisher.PUBLISH_TAG_HEADER);
+
+        fakeChannel.returned(published);
+        fakeChannel.ack(1, false);
+        assertThat(future.join().isReturned()).isTrue();
+        assertThat(future.join().message().getMessageProperties().getHeaders()).doesNotContainKey(ConfirmPublisher.PUBLISH_TAG_HEADER);
+
+        publisher.publish("x", "k", message);
+        assertThat(fakeChannel.published.get(1).getHeaders()).containsEntry(ConfirmPublisher.PUBLISH_TAG_HEADER, 2L);
+    }
+
+    @Test
+    public void unconfirmedFailedAfterConfirmTimeout() {
+        ConfirmPublisher publisher = publisher(4);
+        publisher.setConfirmTimeout(50);
+        CompletableFuture<Confirm> first = publisher.publish("x", "k", message("1"));
+        CompletableFuture<Confirm> second = publisher.publish("x", "k", message("2"));
+        fakeChannel.ack(2, false);
+        assertThat(second.join().isAck()).isTrue();
+
+        assertFailedBy(first, TimeoutException.class);
+        assertThat(publisher.getInFlight()).isZero();
+        fakeChannel.ack(1, false);// late confirm ignored
+        assertThat(publisher.getInFlight()).isZero();
+    }
+
+    @Test
+    public void inFlightFailedIfChannelShutdown() {
+        ConfirmPublisher publisher = publisher(4);
+        CompletableFuture<Confirm> first = publisher.publish("x", "k", message("1"));
+        CompletableFuture<Confirm> second = publisher.publish("x", "k", message("2"));
+        fakeChannel.shutdown();
+        assertFailedBy(first, ShutdownSignalException.class);
+        assertFailedBy(second, ShutdownSignalException.class);
+        assertThat(publisher.getInFlight()).isZero();
+    }
+
+
+    private ConfirmPublisher publisher(int windowSize) {
+        ConfirmPublisher publisher = new ConfirmPublisher(connectionFactory, windowSize);
+        publishers.add(publisher);
+        return publisher;
+    }
+
+    private static Message message(String body) {
+        return new Message(body.getBytes(), new MessageProperties());
+    }
+
+    private static void assertFailedBy(CompletableFuture<Confirm> future, Class<? extends Throwable> cause) {
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(PublicationException.class)
+                .hasRootCauseInstanceOf(cause);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Function<String, Object> answer) {
+        return (T) Proxy.newProxyInstance(ConfirmPublisherTest.class.getClassLoader(), new Class[]{type}, (proxy, method, args) -> answer.apply(method.getName()));
+    }
+
+
+    /**
+     * channel in confirm mode records published properties, confirms sent by test.
+     */
+    private static class FakeChannel {
+
+        private final List<AMQP.BasicProperties> published = new ArrayList<>();
+
+        private final Channel channel;
+
+        private ConfirmListener confirmListener;
+
+        private ReturnListener returnListener;
+
+        private ShutdownListener shutdownListener;
+
+        private FakeChannel() {
+            channel = (Channel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Channel.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getNextPublishSeqNo":
+                        return published.size() + 1L;
+                    case "basicPublish":
+                        published.add((AMQP.BasicProperties) args[3]);
+                        return null;
+                    case "addConfirmListener":
+                        confirmListener = (ConfirmListener) args[0];
+                        return null;
+                    case "addReturnListener":
+                        returnListener = (ReturnListener) args[0];
+                        return null;
+                    case "addShutdownListener":
+                        shutdownListener = (ShutdownListener) args[0];
+                        return null;
+                    case "isOpen":
+                        return true;
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        private void ack(long tag, boolean multiple) {
+            try {
+                confirmListener.handleAck(tag, multiple);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void nack(long tag, boolean multiple) {
+            try {
+                confirmListener.handleNack(tag, multiple);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void returned(AMQP.BasicProperties properties) {
+            try {
+                returnListener.handleReturn(312, "NO_ROUTE", "x", "k", properties, new byte[0]);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void shutdown() {
+            shutdownListener.shutdownCompleted(new ShutdownSignalException(false, false, null, channel));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.amqp;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.scleropages.serialize.LookupSerializerFactory;
+import org.scleropages.serialize.jackson.JacksonSerializerFactory;
+import org.scleropages.serialize.kryo.PooledKryoSerializerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * factory resolution by lookup key and codec dispatch of serializer message converter.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class SerializerMessageConverterTest {
+
+    private static final byte KRYO = 0x01;
+
+    private static final byte JACKSON = 0x05;
+
+    private LookupSerializerFactory lookupSerializerFactory;
+
+    private PooledKryoSerializerFactory kryoSerializerFactory;
+
+
+    @BeforeEach
+    public void createLookupFactory() {
+        kryoSerializerFactory = new PooledKryoSerializerFactory();
+        kryoSerializerFactory.initFactory();
+        Map<Object, Object> factories = new HashMap<>();
+        factories.put("kryo", kryoSerializerFactory);
+        factories.put("jackson", new JacksonSerializerFactory());
+        lookupSerializerFactory = new LookupSerializerFactory();
+        lookupSerializerFactory.setAutoLookupComponents(false);
+        lookupSerializerFactory.setTargetComponents(factories);
+        lookupSerializerFactory.setDefaultComponent(kryoSerializerFactory);
+        lookupSerializerFactory.afterPropertiesSet();
+    }
+
+    @AfterEach
+    public void resetLookupKey() {
+        lookupSerializerFactory.resetCurrentLookupKey();
+    }
+
+    @Test
+    public void factoryResolvedByLookupKeyOfCurrentThread() {
+        SerializerMessageConverter converter = new SerializerMessageConverter(lookupSerializerFactory);
+        converter.setCodecHeader(true);
+        assertThat(codecOf(converter.toMessage("a", new MessageProperties()))).isEqualTo(KRYO);
+
+        lookupSerializerFactory.setCurrentLookupKey("jackson");
+        Message message = converter.toMessage("b", new MessageProperties());
+        assertThat(codecOf(message)).isEqualTo(JACKSON);
+        assertThat(converter.fromMessage(message)).isEqualTo("b");
+        assertThat(converter.fromBody(converter.toBody("c"))).isEqualTo("c");
+
+        lookupSerializerFactory.resetCurrentLookupKey();
+        assertThat(codecOf(converter.toMessage("d", new MessageProperties()))).isEqualTo(KRYO);
+    }
+
+    @Test
+    public void boundFactoryDispatchesOtherCodecByLookupFactory() {
+        SerializerMessageConverter converter = new SerializerMessageConverter(kryoSerializerFactory, lookupSerializerFactory);
+        converter.setCodecHeader(true);
+        lookupSerializerFactory.setCurrentLookupKey("jackson");
+        Message jacksonMessage = new SerializerMessageConverter(lookupSerializerFactory).toMessage("a", new MessageProperties());
+        jacksonMessage.getMessageProperties().setHeader(SerializerMessageConverter.CODEC_HEADER, JACKSON);
+        lookupSerializerFactory.resetCurrentLookupKey();
+
+        assertThat(converter.fromMessage(jacksonMessage)).isEqualTo("a");
+        assertThat(codecOf(converter.toMessage("b", new MessageProperties()))).isEqualTo(KRYO);
+    }
+
+    @Test
+    public void contentTypeOfBrokerDispatchedByEquality() {
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter();
+        SimpleMessageConverter textConverter = new SimpleMessageConverter();
+        converter.addDelegate(MessageProperties.CONTENT_TYPE_TEXT_PLAIN, textConverter);
+        converter.addDelegate(SerializerMessageConverter.DEFAULT_CONTENT_TYPE, new SerializerMessageConverter(lookupSerializerFactory));
+        assertThat(converter.getConverterForContentType(new String(MessageProperties.CONTENT_TYPE_TEXT_PLAIN))).isSameAs(textConverter);
+        assertThat(converter.getConverterForContentType("text/plain;charset=UTF-8")).isSameAs(textConverter);
+
+        Message message = new SerializerMessageConverter(lookupSerializerFactory).toMessage("a", new MessageProperties());
+        message.getMessageProperties().setContentType(new String(SerializerMessageConverter.DEFAULT_CONTENT_TYPE));
+        assertThat(converter.fromMessage(message)).isEqualTo("a");
+    }
+
+    @Test
+    public void publishTagRemovedBeforeConverted() {
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter();
+        converter.addDelegate(SerializerMessageConverter.DEFAULT_CONTENT_TYPE, new SerializerMessageConverter(lookupSerializerFactory));
+        Message message = new SerializerMessageConverter(lookupSerializerFactory).toMessage("a", new MessageProperties());
+        message.getMessageProperties().setContentType(new String(SerializerMessageConverter.DEFAULT_CONTENT_TYPE));
+        message.getMessageProperties().setHeader(ConfirmPublisher.PUBLISH_TAG_HEADER, 1L);
+        assertThat(converter.fromMessages(Collections.singletonList(message))).containsExactly("a");
+        assertThat(message.getMessageProperties().getHeaders()).doesNotContainKey(ConfirmPublisher.PUBLISH_TAG_HEADER);
+    }
+
+
+    private static Object codecOf(Message message) {
+        return message.getMessageProperties().getHeaders().get(SerializerMessageConverter.CODEC_HEADER);
+    }
+}
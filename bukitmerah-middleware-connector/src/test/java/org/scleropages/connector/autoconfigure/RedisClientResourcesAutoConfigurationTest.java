@@ -0,0 +1,76 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.autoconfigure;
+
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import org.junit.jupiter.api.Test;
+import org.scleropages.connector.redis.RedisMetrics;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * client resources of redis auto-configuration with and without metrics.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisClientResourcesAutoConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(RedisClientResourcesAutoConfiguration.class, RedisAutoConfiguration.class));
+
+    @Test
+    public void clientResourcesOfSpringBootKeptByDefault() {
+        contextRunner.run(context -> {
+            assertThat(context).doesNotHaveBean(RedisMetrics.class);
+            assertThat(context).hasSingleBean(ClientResources.class).hasBean("lettuceClientResources");
+        });
+    }
+
+    @Test
+    public void clientResourcesRecordLatenciesIfMetricsEnabled() {
+        contextRunner.withPropertyValues("redis.metrics.enabled=true").run(context -> {
+            assertThat(context).hasSingleBean(RedisMetrics.class);
+            assertThat(context).hasSingleBean(ClientResources.class).hasBean("redisClientResources");
+            assertThat(context.getBean(LettuceConnectionFactory.class).getClientConfiguration().getClientResources())
+                    .containsSame(context.getBean(ClientResources.class));
+        });
+    }
+
+    @Test
+    public void clientResourcesOfApplicationKept() {
+        contextRunner.withPropertyValues("redis.metrics.enabled=true").withUserConfiguration(ApplicationClientResources.class).run(context -> {
+            assertThat(context).hasSingleBean(RedisMetrics.class);
+            assertThat(context).hasSingleBean(ClientResources.class).hasBean("applicationClientResources");
+        });
+    }
+
+
+    @Configuration
+    static class ApplicationClientResources {
+
+        @Bean(destroyMethod = "shutdown")
+        public ClientResources applicationClientResources() {
+            return DefaultClientResources.create();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * intern table of redis key builder.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisKeyTest {
+
+    @AfterEach
+    public void clearInternedKeys() {
+        RedisKey.RedisKeyBuilder.clearInternedKeys();
+    }
+
+    @Test
+    public void internReturnsSharedInstanceOfSameFields() {
+        RedisKey first = RedisKey.RedisKeyBuilder.fromType("order").withIdAndProperty("1", "status").intern();
+        RedisKey second = RedisKey.RedisKeyBuilder.fromType("order").withIdAndProperty("1", "status").intern();
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void internKeepsFieldsOfSameRenderedKey() {
+        RedisKey id = RedisKey.RedisKeyBuilder.fromType("order").withId("1").intern();
+        RedisKey property = RedisKey.RedisKeyBuilder.fromType("order").withIdAndProperty(" ", "1").intern();// blank id not rendered
+        assertThat(property.evalKey()).isEqualTo(id.evalKey());
+        assertThat(property).isNotSameAs(id);
+        assertThat(property.getId()).isEqualTo(" ");
+        assertThat(property.getPropertyName()).isEqualTo("1");
+        assertThat(id.getId()).isEqualTo("1");
+        assertThat(id.getPropertyName()).isNull();
+        assertThat(RedisKey.RedisKeyBuilder.fromType("order").withId("1").intern()).isSameAs(id);
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.util.SocketUtils;
+import redis.embedded.RedisServer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * near cache against embedded redis (2.8, no client tracking), so polling mode, fallback of tracking mode and
+ * invalidation handling covered.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisNearCacheTest {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(20);
+
+    private static RedisServer redisServer;
+
+    private static int port;
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static DefaultRedisClient redisClient;
+
+    private final List<RedisNearCache> nearCaches = new ArrayList<>();
+
+
+    @BeforeAll
+    public static void startRedis() {
+        port = SocketUtils.findAvailableTcpPort();
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        redisClient = new DefaultRedisClient(template(RedisSerializer.string()), template(RedisSerializer.java()));
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        if (null != connectionFactory)
+            connectionFactory.destroy();
+        if (null != redisServer)
+            redisServer.stop();
+    }
+
+    @BeforeEach
+    public void flush() {
+        redisClient.stringValueTemplate().execute((RedisCallback<Void>) connection -> {
+            connection.flushDb();
+            return null;
+        });
+    }
+
+    @AfterEach
+    public void destroyNearCaches() {
+        nearCaches.forEach(RedisNearCache::destroy);
+        nearCaches.clear();
+    }
+
+
+    @Test
+    public void fallbackToPollingIfTrackingUnsupported() {
+        RedisNearCache nearCache = new RedisNearCache(redisClient, "member");
+        nearCache.setTrackingUri(RedisURI.create("localhost", port));
+        nearCache.setPollInterval(POLL_INTERVAL);
+        nearCache.afterPropertiesSet();
+        nearCaches.add(nearCache);
+
+        assertThat(nearCache.isTracking()).isFalse();
+        awaitAvailable(nearCache, "member");
+    }
+
+    @Test
+    public void cacheOnlyKeysOfConfiguredPrefixes() {
+        RedisNearCache nearCache = nearCache("member");
+        RedisKey member = key("member", "1");
+        RedisKey order = key("order", "1");
+        set(member, "m1");
+        set(order, "o1");
+
+        assertThat(nearCache.get(member)).isEqualTo("m1");
+        assertThat(nearCache.get(order)).isEqualTo("o1");
+        assertThat(nearCache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void fallbackToPollingSharesClientResources() {
+        ClientResources clientResources = DefaultClientResources.create();
+        try {
+            RedisNearCache nearCache = new RedisNearCache(redisClient, "member");
+            nearCache.setTrackingUri(RedisURI.create("localhost", port));
+            nearCache.setClientResources(clientResources);
+            nearCache.setPollInterval(POLL_INTERVAL);
+            nearCache.afterPropertiesSet();
+            nearCache.destroy();
+
+            assertThat(clientResources.eventExecutorGroup().isShuttingDown()).isFalse();
+        } finally {
+            clientResources.shutdown();
+        }
+    }
+
+    @Test
+    public void trackingRejectedBySentinel() {
+        RedisNearCache nearCache = new RedisNearCache(redisClient, "member");
+        assertThatThrownBy(() -> nearCache.setTrackingUri(RedisURI.Builder.sentinel("localhost", "master").build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void writesOfClientInvalidateCachedValue() {
+        RedisNearCache nearCache = nearCache("member");
+        RedisKey member = key("member", "1");
+        RedisKey other = key("member", "2");
+        set(member, "m1");
+        set(other, "m1");
+        assertThat(nearCache.get(member)).isEqualTo("m1");
+        assertThat(nearCache.get(other)).isEqualTo("m1");
+
+        redisClient.stringValueOperations().set(member, "m2");
+        assertThat(nearCache.get(member)).isEqualTo("m2");
+
+        redisClient.mset(Collections.singletonMap(other, "m2"));
+        assertThat(nearCache.get(other)).isEqualTo("m2");
+
+        redisClient.delete(Collections.singletonList(member));
+        assertThat(nearCache.get(member)).isNull();
+
+        nearCache.set(member, "m3");
+        assertThat(nearCache.get(member)).isEqualTo("m3");
+    }
+
+    @Test
+    public void pollingInvalidatesWritesOfOtherClient() {
+        RedisNearCache reader = nearCache("member");
+        DefaultRedisClient otherClient = new DefaultRedisClient(template(RedisSerializer.string()), template(RedisSerializer.java()));
+        RedisNearCache otherNearCache = new RedisNearCache(otherClient, "member");// other node
+        otherNearCache.setPollInterval(POLL_INTERVAL);
+        otherNearCache.afterPropertiesSet();
+        nearCaches.add(otherNearCache);
+        RedisKey member = key("member", "1");
+        set(member, "m1");
+        assertThat(reader.get(member)).isEqualTo("m1");
+
+        otherClient.stringValueOperations().set(member, "m2");
+        awaitValue(reader, member, "m2");
+
+        otherClient.batch().set(member, "m3").execute().join();
+        awaitValue(reader, member, "m3");
+    }
+
+    @Test
+    public void pollingInvalidatesWritesOfOtherInstance() {
+        RedisNearCache reader = nearCache("member");
+        RedisNearCache writer = nearCache("member");
+        RedisKey member = key("member", "1");
+        writer.set(member, "m1");
+        assertThat(reader.get(member)).isEqualTo("m1");
+
+        writer.set(member, "m2");
+        awaitValue(reader, member, "m2");
+    }
+
+    @Test
+    public void pollingInvalidatesEveryMatchedPrefix() {
+        RedisNearCache reader = nearCache("member", "member_vip");
+        RedisNearCache writer = nearCache("member_vip");
+        RedisKey member = key("member", "1");
+        RedisKey vip = key("member_vip", "1");
+        set(member, "m1");
+        set(vip, "v1");
+        assertThat(reader.get(member)).isEqualTo("m1");
+        assertThat(reader.get(vip)).isEqualTo("v1");
+
+        writer.set(vip, "v2");
+        awaitValue(reader, vip, "v2");
+
+        reader.set(key("member_vip", "2"), "v2");// versions of both 'member' and 'member_vip' increased
+        set(member, "m2");
+        awaitValue(reader, member, "m2");
+    }
+
+    @Test
+    public void invalidationMessageInvalidatesEveryMatchedPrefix() {
+        RedisNearCache nearCache = nearCache("member", "member_vip", "order");
+        RedisKey member = key("member", "1");
+        RedisKey vip = key("member_vip", "1");
+        RedisKey order = key("order", "1");
+        set(member, "m1");
+        set(vip, "v1");
+        set(order, "o1");
+        nearCache.get(member);
+        nearCache.get(vip);
+        nearCache.get(order);
+        assertThat(nearCache.size()).isEqualTo(3);
+
+        // last key of a batch of 'member' prefix (other keys of batch unknown)
+        nearCache.onInvalidation("member_vip:2".getBytes(StandardCharsets.UTF_8));
+        assertThat(nearCache.size()).isEqualTo(1);
+        assertThat(nearCache.get(order)).isEqualTo("o1");
+
+        nearCache.onInvalidation(null);// flushdb
+        assertThat(nearCache.size()).isZero();
+    }
+
+
+    private RedisNearCache nearCache(String... prefixes) {
+        RedisNearCache nearCache = new RedisNearCache(redisClient, prefixes);
+        nearCache.setPollInterval(POLL_INTERVAL);
+        nearCache.afterPropertiesSet();
+        nearCaches.add(nearCache);
+        awaitAvailable(nearCache, prefixes[0]);
+        return nearCache;
+    }
+
+    private static void set(RedisKey key, String value) {
+        redisClient.stringValueTemplate().opsForValue().set(key, value);
+    }
+
+    private static RedisKey key(String type, String id) {
+        return RedisKey.RedisKeyBuilder.fromType(type).withId(id).build(false);
+    }
+
+    private static <V> RedisTemplate<RedisKey, V> template(RedisSerializer<?> valueSerializer) {
+        RedisTemplate<RedisKey, V> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new DefaultRedisKeySerializer());
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.afterPropertiesSet();
+        return redisTemplate;
+    }
+
+    private static void awaitAvailable(RedisNearCache nearCache, String prefix) {
+        RedisKey probe = key(prefix, "probe");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            nearCache.get(probe);
+            if (nearCache.size() > 0) {
+                nearCache.invalidateAll();
+                return;
+            }
+            sleep();
+        }
+        throw new AssertionError("near cache not available.");
+    }
+
+    private static void awaitValue(RedisNearCache nearCache, RedisKey key, String expected) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            if (expected.equals(nearCache.get(key)))
+                return;
+            sleep();
+        }
+        assertThat(nearCache.get(key)).isEqualTo(expected);
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(POLL_INTERVAL.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
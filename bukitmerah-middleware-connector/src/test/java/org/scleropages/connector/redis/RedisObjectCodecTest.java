@@ -0,0 +1,65 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import org.junit.jupiter.api.Test;
+import org.scleropages.serialize.jackson.JacksonSerializerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * values of redis templates encoded by codec and size hints kept per value type.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisObjectCodecTest {
+
+    private final RedisObjectCodec codec = new RedisObjectCodec(new JacksonSerializerFactory());
+
+    @Test
+    public void valueSerializerEncodesByCodec() {
+        DefaultRedisValueSerializer serializer = new DefaultRedisValueSerializer(codec);
+        byte[] bytes = serializer.serialize("value");
+        assertThat(serializer.deserialize(bytes)).isEqualTo("value");
+        assertThat(codec.deserializeValue(bytes)).isEqualTo("value");
+        assertThat(serializer.serialize(null)).isNull();
+        assertThat(codec.getSizeHint("other")).isEqualTo(bytes.length);
+    }
+
+    @Test
+    public void sizeHintKeptPerTypeAndDecays() {
+        int large = codec.serializeValue(repeat(10000)).length;
+        assertThat(codec.getSizeHint("")).isEqualTo(large);
+        assertThat(codec.getSizeHint(1L)).isEqualTo(RedisObjectCodec.DEFAULT_VALUE_SIZE);// not inflated by other types
+        int small = codec.serializeValue("a").length;
+        assertThat(codec.getSizeHint("")).isEqualTo(large - ((large - small) >> 3));
+        for (int i = 0; i < 100; i++) {
+            codec.serializeValue("a");
+        }
+        assertThat(codec.getSizeHint("")).isLessThan(small + 8);
+        codec.serializeValue(repeat(10000));
+        assertThat(codec.getSizeHint("")).isEqualTo(large);// grows at once
+    }
+
+
+    private static String repeat(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append('x');
+        }
+        return builder.toString();
+    }
+}
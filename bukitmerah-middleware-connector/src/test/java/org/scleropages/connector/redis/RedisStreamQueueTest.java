@@ -0,0 +1,133 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import io.lettuce.core.StreamMessage;
+import org.junit.jupiter.api.Test;
+import org.mockito.Answers;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * replies of XPENDING, XCLAIM and XRANGE (not supported by embedded redis) stubbed in order of commands.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RedisStreamQueueTest {
+
+    private static final RedisKey STREAM = RedisKey.RedisKeyBuilder.fromType("jobs").build();
+
+    @Test
+    public void reclaimAcknowledgesEntriesDeletedWhilePending() {
+        StubbedQueue queue = new StubbedQueue(
+                reply(Arrays.asList(pending("1-0", 5000), pending("2-0", 5000), pending("3-0", 5000))),
+                reply(Arrays.asList(entry("1-0", "a"), new StreamMessage<>(STREAM.getBytes(), null, null))),// nil reply of deleted 2-0, 3-0 not claimed
+                Arrays.asList(Collections.emptyList(), Collections.singletonList(entry("3-0", "c"))));// XRANGE of 2-0 and 3-0
+        List<RedisStreamQueue.Message> messages = queue.reclaim("worker-1", Duration.ofSeconds(1), 10);
+        assertThat(messages).extracting(RedisStreamQueue.Message::getId).containsExactly("1-0");
+        assertThat(messages.get(0).<String>getPayload()).isEqualTo("a");
+        assertThat(queue.acknowledged).containsExactly("2-0");
+        assertThat(queue.replies).isEmpty();
+    }
+
+    @Test
+    public void reclaimAcknowledgesEntriesOfEmptyBodyWithoutLookup() {
+        StubbedQueue queue = new StubbedQueue(
+                reply(Arrays.asList(pending("1-0", 5000), pending("2-0", 10))),
+                reply(Collections.singletonList(new StreamMessage<>(STREAM.getBytes(), "1-0", Collections.emptyMap()))));
+        assertThat(queue.reclaim("worker-1", Duration.ofSeconds(1), 10)).isEmpty();
+        assertThat(queue.acknowledged).containsExactly("1-0");
+        assertThat(queue.replies).isEmpty();
+    }
+
+    @Test
+    public void streamQueueCachedPerStreamAndGroupAndClosedOnDestroy() {
+        SpringRedisClientSupport redisClient = new SpringRedisClientSupport(new RedisTemplate<>(), objectTemplate());
+        RedisStreamQueue queue = redisClient.streamQueue(STREAM, "workers");
+        assertThat(redisClient.streamQueue(STREAM, "workers")).isSameAs(queue);
+        assertThat(redisClient.streamQueue(STREAM, "auditors")).isNotSameAs(queue);
+        redisClient.destroy();
+        assertThat(queue.isClosed()).isTrue();
+        assertThat(redisClient.streamQueue(STREAM, "workers")).isNotSameAs(queue);
+    }
+
+
+    private static RedisTemplate<RedisKey, Object> objectTemplate() {
+        RedisTemplate<RedisKey, Object> template = new RedisTemplate<>();
+        template.setValueSerializer((RedisSerializer) RedisSerializer.string());
+        return template;
+    }
+
+    private static List<Object> reply(Object reply) {
+        return Collections.singletonList(reply);
+    }
+
+    private static List<Object> pending(String id, long idle) {
+        return Arrays.asList(id, "worker-0", idle, 1L);
+    }
+
+    private static StreamMessage<byte[], byte[]> entry(String id, String payload) {
+        return new StreamMessage<>(STREAM.getBytes(), id, Collections.singletonMap(
+                RedisStreamQueue.PAYLOAD_FIELD.getBytes(StandardCharsets.UTF_8), payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+
+    private static class StubbedQueue extends RedisStreamQueue {
+
+        /*results of each batch in order*/
+        private final Queue<List<Object>> replies;
+
+        private final List<String> acknowledged = new ArrayList<>();
+
+        @SafeVarargs
+        private StubbedQueue(List<Object>... replies) {
+            super(redisClient(), STREAM, "workers");
+            this.replies = new ArrayDeque<>(Arrays.asList(replies));
+        }
+
+        private static RedisClient redisClient() {
+            RedisClient redisClient = mock(RedisClient.class);
+            when(redisClient.objectValueTemplate()).thenReturn(objectTemplate());
+            when(redisClient.batch()).thenAnswer(invocation -> mock(RedisBatch.class, Answers.RETURNS_SELF));
+            return redisClient;
+        }
+
+        @Override
+        protected List<Object> execute(RedisBatch batch) {
+            return replies.remove();
+        }
+
+        @Override
+        public long ackIds(Collection<String> ids) {
+            acknowledged.addAll(ids);
+            return ids.size();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.connector.redis;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * lettuce connection factory of spring boot wrapped (not duplicated) by routing factory.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class RoutingLettuceConnectionFactoryPostProcessorTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
+            .withUserConfiguration(Routing.class);
+
+    @Test
+    public void connectionFactoryOfSpringBootWrapped() {
+        contextRunner.withPropertyValues("spring.redis.port=6380", "spring.redis.database=2").run(context -> {
+            assertThat(context).hasNotFailed();
+            assertThat(context.getBeanNamesForType(LettuceConnectionFactory.class)).containsExactly("redisConnectionFactory");
+            LettuceConnectionFactory connectionFactory = context.getBean(LettuceConnectionFactory.class);
+            assertThat(connectionFactory).isInstanceOf(RoutingLettuceConnectionFactory.class);
+            assertThat(connectionFactory.getPort()).isEqualTo(6380);
+            assertThat(connectionFactory.getDatabase()).isEqualTo(2);
+            assertThat(((RoutingLettuceConnectionFactory) connectionFactory).getShards()).isEqualTo(4);
+            assertThat(((RoutingLettuceConnectionFactory) connectionFactory).getSharding()).isEqualTo(RoutingLettuceConnectionFactory.Sharding.THREAD);
+        });
+    }
+
+
+    @Configuration
+    static class Routing {
+
+        @Bean
+        public static RoutingLettuceConnectionFactoryPostProcessor routingLettuceConnectionFactoryPostProcessor() {
+            return new RoutingLettuceConnectionFactoryPostProcessor(4, RoutingLettuceConnectionFactory.Sharding.THREAD);
+        }
+    }
+}
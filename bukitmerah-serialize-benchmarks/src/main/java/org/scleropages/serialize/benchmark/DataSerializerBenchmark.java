@@ -0,0 +1,131 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.scleropages.serialize.jdk.ByteBufferSerializer;
+import org.scleropages.serialize.netty.ByteBufSerializer;
+import org.scleropages.serialize.spi.DataSerializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * raw {@link ByteBufferSerializer} and {@link ByteBufSerializer} write(read) a record of primitives, string and bytes.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataSerializerBenchmark {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    @Param({"heap-nio", "direct-nio", "heap-netty", "direct-netty", "pooled-netty"})
+    private String buffer;
+
+    private ByteBuffer byteBuffer;
+
+    private ByteBuf byteBuf;
+
+    private DataSerializer<?, ?> serializer;
+
+    private final String text = "bukitmerah-serialize-benchmark";
+
+    private final byte[] bytes = new byte[64];
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        switch (buffer) {
+            case "heap-nio":
+                byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+                break;
+            case "direct-nio":
+                byteBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                break;
+            case "heap-netty":
+                byteBuf = Unpooled.buffer(BUFFER_SIZE);
+                break;
+            case "direct-netty":
+                byteBuf = Unpooled.directBuffer(BUFFER_SIZE);
+                break;
+            case "pooled-netty":
+                byteBuf = PooledByteBufAllocator.DEFAULT.directBuffer(BUFFER_SIZE);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown buffer: " + buffer);
+        }
+        serializer = null != byteBuffer ? new ByteBufferSerializer(byteBuffer) : new ByteBufSerializer(byteBuf);
+        write();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (null != byteBuf)
+            byteBuf.release();
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        if (null != byteBuffer)
+            byteBuffer.clear();
+        else
+            byteBuf.clear();
+        serializer.writeBool(true);
+        serializer.writeInt(42);
+        serializer.writeLong(System.nanoTime());
+        serializer.writeDouble(3.14d);
+        serializer.writeUTF(text);
+        serializer.writeBytes(bytes);
+        serializer.flushWrite();
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) throws IOException {
+        if (null != byteBuffer)
+            byteBuffer.rewind();
+        else
+            byteBuf.readerIndex(0);
+        blackhole.consume(serializer.readBool());
+        blackhole.consume(serializer.readInt());
+        blackhole.consume(serializer.readLong());
+        blackhole.consume(serializer.readDouble());
+        blackhole.consume(serializer.readUTF());
+        serializer.readBytes(bytes);
+        blackhole.consume(bytes);
+    }
+}
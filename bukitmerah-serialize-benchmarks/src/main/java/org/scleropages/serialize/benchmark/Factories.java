@@ -0,0 +1,107 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.benchmark;
+
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.compress.AirCompressionCodec;
+import org.scleropages.serialize.compress.CompressingSerializerFactory;
+import org.scleropages.serialize.compress.Lz4CompressionCodec;
+import org.scleropages.serialize.jackson.JacksonSerializerFactory;
+import org.scleropages.serialize.jdk.JdkSerializerFactory;
+import org.scleropages.serialize.kryo.PooledKryoSerializerFactory;
+import org.scleropages.serialize.msgpack.MsgPackSerializerFactory;
+import org.scleropages.serialize.msgpack.v8.MsgPackCoreSerializerFactory8;
+import org.scleropages.serialize.protobuf.ProtobufIdRegistry;
+import org.scleropages.serialize.protobuf.ProtobufSerializerFactory;
+
+/**
+ * serializer factories under benchmark, payload types registered.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public abstract class Factories {
+
+    public static final String KRYO = "kryo";
+
+    public static final String KRYO_LZ4 = "kryo-lz4";
+
+    public static final String KRYO_ZSTD = "kryo-zstd";
+
+    public static final String MSGPACK = "msgpack";
+
+    public static final String MSGPACK_STREAMING = "msgpack-streaming";
+
+    public static final String MSGPACK_CORE = "msgpack-core";
+
+    public static final String JACKSON = "jackson";
+
+    public static final String JDK = "jdk";
+
+    public static final String[] ALL = {KRYO, KRYO_LZ4, KRYO_ZSTD, MSGPACK, MSGPACK_STREAMING, MSGPACK_CORE, JACKSON, JDK};
+
+    private static final String BASE_PACKAGE = Factories.class.getPackage().getName();
+
+    /**
+     * @param factory one of {@link #ALL}
+     * @return
+     */
+    public static SerializerFactory<?, ?> create(String factory) {
+        switch (factory) {
+            case KRYO:
+                PooledKryoSerializerFactory kryo = new PooledKryoSerializerFactory();
+                kryo.setBasePackageToScan(BASE_PACKAGE);
+                kryo.initFactory();
+                return kryo;
+            case KRYO_LZ4:
+                return new CompressingSerializerFactory((SerializerFactory) create(KRYO), new Lz4CompressionCodec());
+            case KRYO_ZSTD:
+                return new CompressingSerializerFactory((SerializerFactory) create(KRYO), AirCompressionCodec.zstd());
+            case MSGPACK:
+            case MSGPACK_STREAMING:
+                MsgPackSerializerFactory msgPack = new MsgPackSerializerFactory();
+                msgPack.setBasePackageToScan(BASE_PACKAGE);
+                msgPack.setStreaming(MSGPACK_STREAMING.equals(factory));
+                msgPack.initFactory();
+                return msgPack;
+            case MSGPACK_CORE:
+                MsgPackCoreSerializerFactory8 msgPackCore = new MsgPackCoreSerializerFactory8();
+                msgPackCore.setBasePackageToScan(BASE_PACKAGE);
+                msgPackCore.initFactory();
+                return msgPackCore;
+            case JACKSON:
+                return new JacksonSerializerFactory();
+            case JDK:
+                return new JdkSerializerFactory();
+            default:
+                throw new IllegalArgumentException("unknown factory: " + factory);
+        }
+    }
+
+    /**
+     * @param lengthDelimited
+     * @return protobuf factory with payload message types of {@link Payloads#createProtobuf(String)} registered.
+     */
+    public static ProtobufSerializerFactory createProtobuf(boolean lengthDelimited) {
+        ProtobufSerializerFactory protobuf = new ProtobufSerializerFactory(BASE_PACKAGE);
+        protobuf.setLengthDelimited(lengthDelimited);
+        ProtobufIdRegistry registry = (ProtobufIdRegistry) protobuf.getClassRegistry();
+        registry.register(Struct.class, (short) 201);
+        registry.register(ListValue.class, (short) 202);
+        return protobuf;
+    }
+}
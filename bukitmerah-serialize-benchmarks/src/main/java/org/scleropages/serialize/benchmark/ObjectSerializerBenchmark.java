@@ -0,0 +1,93 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.SerializerFactoryUtil;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * object serialize(deserialize) round trip of each factory and payload by {@link SerializerFactoryUtil}.
+ * combination not supported by factory (e.g. nested-map of non-streaming msgpack) failed at setup and skipped.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectSerializerBenchmark {
+
+    @Param({Factories.KRYO, Factories.KRYO_LZ4, Factories.KRYO_ZSTD, Factories.MSGPACK, Factories.MSGPACK_STREAMING, Factories.MSGPACK_CORE, Factories.JACKSON, Factories.JDK})
+    private String factory;
+
+    @Param({Payloads.SMALL, Payloads.LARGE_LIST, Payloads.NESTED_MAP})
+    private String payload;
+
+    private SerializerFactory<?, ?> serializerFactory;
+
+    private Object object;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException, ClassNotFoundException {
+        serializerFactory = Factories.create(factory);
+        object = Payloads.create(payload);
+        try {
+            serialized = SerializerFactoryUtil.serialize(serializerFactory, object);
+            SerializerFactoryUtil.deserialize(serializerFactory, serialized);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(factory + " not support payload: " + payload, e);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return SerializerFactoryUtil.serialize(serializerFactory, object, serialized.length);
+    }
+
+    @Benchmark
+    public int serializeToPooled() throws IOException {
+        ByteBuf byteBuf = SerializerFactoryUtil.serializeToPooled(serializerFactory, object, serialized.length);
+        try {
+            return byteBuf.readableBytes();
+        } finally {
+            byteBuf.release();
+        }
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        return SerializerFactoryUtil.deserialize(serializerFactory, serialized);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.benchmark;
+
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * representative payloads of benchmarks.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public abstract class Payloads {
+
+    public static final String SMALL = "small";
+
+    public static final String LARGE_LIST = "large-list";
+
+    public static final String NESTED_MAP = "nested-map";
+
+    public static final String[] ALL = {SMALL, LARGE_LIST, NESTED_MAP};
+
+    public static final int LARGE_LIST_SIZE = 1000;
+
+    public static final int NESTED_MAP_SIZE = 50;
+
+    public static final int NESTED_MAP_ENTRY_SIZE = 10;
+
+    /**
+     * @param payload one of {@link #ALL}
+     * @return
+     */
+    public static Object create(String payload) {
+        switch (payload) {
+            case SMALL:
+                return smallPojo(1);
+            case LARGE_LIST:
+                List<SmallPojo> list = new ArrayList<>(LARGE_LIST_SIZE);
+                for (int i = 0; i < LARGE_LIST_SIZE; i++) {
+                    list.add(smallPojo(i));
+                }
+                return list;
+            case NESTED_MAP:
+                Map<String, Object> map = new HashMap<>();
+                for (int i = 0; i < NESTED_MAP_SIZE; i++) {
+                    Map<String, Object> entry = new HashMap<>();
+                    for (int j = 0; j < NESTED_MAP_ENTRY_SIZE; j++) {
+                        entry.put("key-" + j, j % 2 == 0 ? (Object) ("value-" + i + "-" + j) : (Object) (long) (i * j));
+                    }
+                    map.put("entry-" + i, entry);
+                }
+                return map;
+            default:
+                throw new IllegalArgumentException("unknown payload: " + payload);
+        }
+    }
+
+    /**
+     * protobuf equivalent of {@link #create(String)} build by well-known message types.
+     *
+     * @param payload one of {@link #ALL}
+     * @return
+     */
+    public static Object createProtobuf(String payload) {
+        switch (payload) {
+            case SMALL:
+                return smallStruct(1);
+            case LARGE_LIST:
+                ListValue.Builder list = ListValue.newBuilder();
+                for (int i = 0; i < LARGE_LIST_SIZE; i++) {
+                    list.addValues(Value.newBuilder().setStructValue(smallStruct(i)));
+                }
+                return list.build();
+            case NESTED_MAP:
+                Struct.Builder map = Struct.newBuilder();
+                for (int i = 0; i < NESTED_MAP_SIZE; i++) {
+                    Struct.Builder entry = Struct.newBuilder();
+                    for (int j = 0; j < NESTED_MAP_ENTRY_SIZE; j++) {
+                        entry.putFields("key-" + j, j % 2 == 0 ? Value.newBuilder().setStringValue("value-" + i + "-" + j).build()
+                                : Value.newBuilder().setNumberValue(i * j).build());
+                    }
+                    map.putFields("entry-" + i, Value.newBuilder().setStructValue(entry).build());
+                }
+                return map.build();
+            default:
+                throw new IllegalArgumentException("unknown payload: " + payload);
+        }
+    }
+
+    private static SmallPojo smallPojo(int i) {
+        return new SmallPojo(i, "name-" + i, 20 + i % 50, i * 1.5d, i % 2 == 0);
+    }
+
+    private static Struct smallStruct(int i) {
+        return Struct.newBuilder()
+                .putFields("id", Value.newBuilder().setNumberValue(i).build())
+                .putFields("name", Value.newBuilder().setStringValue("name-" + i).build())
+                .putFields("age", Value.newBuilder().setNumberValue(20 + i % 50).build())
+                .putFields("score", Value.newBuilder().setNumberValue(i * 1.5d).build())
+                .putFields("active", Value.newBuilder().setBoolValue(i % 2 == 0).build())
+                .build();
+    }
+}
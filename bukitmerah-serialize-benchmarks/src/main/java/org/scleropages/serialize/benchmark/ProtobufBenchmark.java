@@ -0,0 +1,77 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scleropages.serialize.SerializerFactoryUtil;
+import org.scleropages.serialize.protobuf.ProtobufObjectSerializer;
+import org.scleropages.serialize.protobuf.ProtobufSerializerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProtobufObjectSerializer} with protobuf equivalent of object payloads ({@link Payloads#createProtobuf(String)}).
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtobufBenchmark {
+
+    @Param({Payloads.SMALL, Payloads.LARGE_LIST, Payloads.NESTED_MAP})
+    private String payload;
+
+    @Param({"false", "true"})
+    private boolean lengthDelimited;
+
+    private ProtobufSerializerFactory serializerFactory;
+
+    private Object message;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        serializerFactory = Factories.createProtobuf(lengthDelimited);
+        message = Payloads.createProtobuf(payload);
+        serialized = SerializerFactoryUtil.serialize(serializerFactory, message);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return SerializerFactoryUtil.serialize(serializerFactory, message, serialized.length);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        return SerializerFactoryUtil.deserialize(serializerFactory, serialized);
+    }
+}
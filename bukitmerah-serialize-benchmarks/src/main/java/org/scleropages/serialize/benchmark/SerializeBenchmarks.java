@@ -0,0 +1,79 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.SerializerFactoryUtil;
+
+import java.io.IOException;
+
+/**
+ * entry of benchmarks jar. print serialized bytes per message of each factory and payload, then run benchmarks with
+ * gc profiler (allocation rate). accept JMH command line options, e.g. <code>java -jar benchmarks.jar ObjectSerializerBenchmark -p factory=kryo</code>
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class SerializeBenchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListProfilers()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        printSerializedSizes();
+        new Runner(new OptionsBuilder().parent(commandLineOptions).addProfiler(GCProfiler.class).build()).run();
+    }
+
+    public static void printSerializedSizes() {
+        System.out.printf("%-20s", "bytes/message");
+        for (String payload : Payloads.ALL) {
+            System.out.printf("%15s", payload);
+        }
+        System.out.println();
+        for (String factory : Factories.ALL) {
+            SerializerFactory<?, ?> serializerFactory = Factories.create(factory);
+            System.out.printf("%-20s", factory);
+            for (String payload : Payloads.ALL) {
+                System.out.printf("%15s", serializedSize(serializerFactory, Payloads.create(payload)));
+            }
+            System.out.println();
+        }
+        for (boolean lengthDelimited : new boolean[]{false, true}) {
+            SerializerFactory<?, ?> serializerFactory = Factories.createProtobuf(lengthDelimited);
+            System.out.printf("%-20s", lengthDelimited ? "protobuf-delimited" : "protobuf");
+            for (String payload : Payloads.ALL) {
+                System.out.printf("%15s", serializedSize(serializerFactory, Payloads.createProtobuf(payload)));
+            }
+            System.out.println();
+        }
+        System.out.println();
+    }
+
+    private static String serializedSize(SerializerFactory<?, ?> serializerFactory, Object payload) {
+        try {
+            return String.valueOf(SerializerFactoryUtil.serialize(serializerFactory, payload).length);
+        } catch (Exception e) {
+            return "n/a";
+        }
+    }
+}
@@ -17,11 +17,24 @@ package org.scleropages.serialize;
 
 import org.scleropages.core.AbstractLookupComponent;
 
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
+ * lookup serializer factory by current lookup key (thread local).
+ * <p>
+ * for hot paths (a channel with fixed codec), use {@link #bind(String)} once and hold returned factory as final field,
+ * or dispatch by leading factory id byte of payload via {@link #getFactory(byte)}, {@link #serializeTagged(byte, OutputStream)}
+ * and {@link #deserializeTagged(InputStream)}. both of them skip thread local lookup per call.
+ *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public class LookupSerializerFactory extends AbstractLookupComponent implements SerializerFactory<InputStream, OutputStream> {
@@ -30,6 +43,108 @@ public class LookupSerializerFactory extends AbstractLookupComponent implements
     private static final InheritableThreadLocal<Object> currentSerializerFactoryKey =
             new InheritableThreadLocal<>();
 
+    /**
+     * stream factories indexed by (factoryId &amp; 0xff).
+     */
+    private final SerializerFactory<InputStream, OutputStream>[] factoriesById = new SerializerFactory[256];
+
+    private SerializerFactory<InputStream, OutputStream> defaultFactory;
+
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        defaultFactory = (SerializerFactory<InputStream, OutputStream>) getResolvedDefaultComponent();
+        if (null != defaultFactory)
+            indexFactory("default", defaultFactory);
+        Map<String, SerializerFactory> sorted = new TreeMap<>(getResolvedComponents());
+        sorted.forEach((id, factory) -> indexFactory(id, factory));
+    }
+
+    private void indexFactory(String id, SerializerFactory factory) {
+        byte factoryId;
+        try {
+            factoryId = factory.factoryId();
+        } catch (UnsupportedOperationException e) {
+            logger.debug("serializer factory [{}] not provide factory id. ignore to index.", id);
+            return;
+        }
+        if (!factory.supportSerialize(OutputStream.class) || !factory.supportDeserialize(InputStream.class))
+            return;
+        SerializerFactory exists = factoriesById[factoryId & 0xff];
+        if (null == exists) {
+            factoriesById[factoryId & 0xff] = factory;
+        } else if (exists != factory) {
+            logger.warn("duplicate factory id [{}] found from serializer factory [{}]. keep [{}].", factoryId, id, exists.getClass().getName());
+        }
+    }
+
+    /**
+     * bind target factory by given id once. caller should hold returned factory (as final field) for subsequent calls.
+     *
+     * @param id factory id (see {@link org.scleropages.core.ComponentId}). default factory returned if null.
+     * @return
+     */
+    public SerializerFactory<InputStream, OutputStream> bind(String id) {
+        SerializerFactory<InputStream, OutputStream> factory = (SerializerFactory<InputStream, OutputStream>) resolveComponent(id);
+        Assert.notNull(factory, "no serializer factory found by id: " + id);
+        return factory;
+    }
+
+    /**
+     * bind target factory if given factory is a {@link LookupSerializerFactory} and id not empty. otherwise return given factory.
+     *
+     * @param serializerFactory
+     * @param id
+     * @return
+     */
+    public static SerializerFactory bindIfNecessary(SerializerFactory serializerFactory, String id) {
+        if (serializerFactory instanceof LookupSerializerFactory && StringUtils.hasText(id))
+            return ((LookupSerializerFactory) serializerFactory).bind(id);
+        return serializerFactory;
+    }
+
+    /**
+     * find stream factory by {@link SerializerFactory#factoryId()}. array lookup without allocation.
+     *
+     * @param factoryId
+     * @return
+     */
+    public SerializerFactory<InputStream, OutputStream> getFactory(byte factoryId) {
+        SerializerFactory<InputStream, OutputStream> factory = factoriesById[factoryId & 0xff];
+        if (null == factory)
+            throw new IllegalArgumentException("no serializer factory found by factory id: " + factoryId);
+        return factory;
+    }
+
+    /**
+     * write factory id as first byte of payload then returns writer of target factory.
+     *
+     * @param factoryId
+     * @param outputStream
+     * @return
+     * @throws IOException
+     */
+    public DataObjectWriter<OutputStream> serializeTagged(byte factoryId, OutputStream outputStream) throws IOException {
+        SerializerFactory<InputStream, OutputStream> factory = getFactory(factoryId);
+        outputStream.write(factoryId);
+        return factory.serialize(outputStream);
+    }
+
+    /**
+     * read first byte of payload as factory id and returns reader of target factory.
+     *
+     * @param inputStream
+     * @return
+     * @throws IOException
+     */
+    public DataObjectReader<InputStream> deserializeTagged(InputStream inputStream) throws IOException {
+        int factoryId = inputStream.read();
+        if (factoryId < 0)
+            throw new EOFException("no factory id present.");
+        return getFactory((byte) factoryId).deserialize(inputStream);
+    }
+
 
     @Override
     public Class getKeyClass() {
@@ -43,7 +158,17 @@ public class LookupSerializerFactory extends AbstractLookupComponent implements
 
     @Override
     protected SerializerFactory<InputStream, OutputStream> determineTargetComponent() {
-        return (SerializerFactory) super.determineTargetComponent();
+        Object lookupKey = determineCurrentLookupKey();
+        if (null == lookupKey && null != defaultFactory)
+            return defaultFactory;
+        return (SerializerFactory) resolveComponent(lookupKey);
+    }
+
+    /**
+     * @return lookup key of current thread. null if not set (default factory used).
+     */
+    public Object getCurrentLookupKey() {
+        return determineCurrentLookupKey();
     }
 
     @Override
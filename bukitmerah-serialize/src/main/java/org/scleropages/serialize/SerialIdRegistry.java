@@ -26,6 +26,7 @@ import org.springframework.util.NumberUtils;
 
 import java.io.Serializable;
 import java.lang.annotation.Annotation;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -33,18 +34,39 @@ import java.util.Set;
 /**
  * Used for serialize implementations. register serialId and class to this
  * registry.<br>
- * <b>NOTE: Thread none safety</b><br>
+ * registrations are collected under lock, lookups are lock free on an immutable snapshot rebuilt once per batch of
+ * registrations (on first lookup after them or on {@link #freeze()}): numeric id resolved by dense array index
+ * (id less than {@link #MAX_DENSE_ID}), class resolved by hash lookup ({@link ClassValue} once frozen).
+ * call {@link #freeze()} after startup to reject further registrations.
  *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public abstract class SerialIdRegistry<ID extends Serializable> {
 
+    /**
+     * numeric id not less than this resolved by hash lookup.
+     */
+    public static final int MAX_DENSE_ID = 1 << 16;
+
     protected Logger logger = LoggerFactory.getLogger(getClass());
 
     private final Map<ID, Class<?>> serialIds = Maps.newHashMap();
 
     private final Map<Class<?>, ID> serialIds_0 = Maps.newHashMap();
 
+    /*null if registrations changed since last built.*/
+    private volatile Snapshot<ID> snapshot;
+
+    private volatile boolean frozen;
+
+    /*registrations immutable once frozen, so computed values never stale.*/
+    private final ClassValue<ID> frozenClassIds = new ClassValue<ID>() {
+        @Override
+        protected ID computeValue(Class<?> type) {
+            return snapshot().serialIds_0.get(type);
+        }
+    };
+
     private volatile Class idType;
 
     protected Class getIdType() {
@@ -57,11 +79,11 @@ public abstract class SerialIdRegistry<ID extends Serializable> {
     protected abstract Class<? extends Annotation> annotation();
 
     public Set<Entry<ID, Class<?>>> entrySet() {
-        return serialIds.entrySet();
+        return snapshot().serialIds.entrySet();
     }
 
     public Set<Class<?>> classesSet() {
-        return serialIds_0.keySet();
+        return snapshot().serialIds_0.keySet();
     }
 
     protected abstract ID asId(Object annotationValue);
@@ -93,7 +115,9 @@ public abstract class SerialIdRegistry<ID extends Serializable> {
         };
     }
 
-    public void register(Class<?> clazz, ID id) {
+    public synchronized void register(Class<?> clazz, ID id) {
+        if (frozen)
+            throw new IllegalStateException("registry frozen. can not register class: " + clazz.getName());
         if (serialIds.containsKey(id))
             throw new IllegalStateException(id + " already registered from class: " + clazz.getName());
         Class idType = getIdType();
@@ -106,13 +130,99 @@ public abstract class SerialIdRegistry<ID extends Serializable> {
         }
         serialIds.put(id, clazz);
         serialIds_0.put(clazz, id);
+        snapshot = null;
+    }
+
+    /**
+     * reject further registrations and build final snapshot.
+     * <b>NOTE:</b> registrations after frozen throw {@link IllegalStateException}
+     * (earlier versions of this registry accepted registrations at any time).
+     */
+    public synchronized void freeze() {
+        snapshot();
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
     }
 
     public Class<?> get(ID key) {
-        return serialIds.get(key);
+        Snapshot<ID> current = snapshot();
+        if (key instanceof Number) {
+            long id = ((Number) key).longValue();
+            if (id >= 0 && id < current.denseSerialIds.length)
+                return current.denseSerialIds[(int) id];
+        }
+        return current.serialIds.get(key);
+    }
+
+    /**
+     * numeric id lookup without boxing.
+     *
+     * @param id
+     * @return
+     */
+    public Class<?> get(int id) {
+        Snapshot<ID> current = snapshot();
+        if (id >= 0 && id < current.denseSerialIds.length)
+            return current.denseSerialIds[id];
+        if (id < MAX_DENSE_ID || !ClassUtils.isAssignable(Number.class, getIdType()))
+            return null;
+        try {
+            return current.serialIds.get(NumberUtils.convertNumberToTargetClass(id, getIdType()));
+        } catch (IllegalArgumentException e) {//overflow of id type.
+            return null;
+        }
     }
 
     public ID get(Class<?> clazz) {
-        return serialIds_0.get(clazz);
+        return frozen ? frozenClassIds.get(clazz) : snapshot().serialIds_0.get(clazz);
+    }
+
+    private Snapshot<ID> snapshot() {
+        Snapshot<ID> current = snapshot;
+        return null != current ? current : buildSnapshot();
+    }
+
+    private synchronized Snapshot<ID> buildSnapshot() {
+        if (null == snapshot)
+            snapshot = new Snapshot<>(Maps.newHashMap(serialIds), Maps.newHashMap(serialIds_0));
+        return snapshot;
+    }
+
+
+    /**
+     * immutable view of registrations.
+     */
+    private static class Snapshot<ID extends Serializable> {
+
+        private final Map<ID, Class<?>> serialIds;
+
+        private final Map<Class<?>, ID> serialIds_0;
+
+        private final Class<?>[] denseSerialIds;
+
+        private Snapshot(Map<ID, Class<?>> serialIds, Map<Class<?>, ID> serialIds_0) {
+            this.serialIds = Collections.unmodifiableMap(serialIds);
+            this.serialIds_0 = Collections.unmodifiableMap(serialIds_0);
+            int maxId = -1;
+            for (ID id : serialIds.keySet()) {
+                if (id instanceof Number) {
+                    long value = ((Number) id).longValue();
+                    if (value >= 0 && value < MAX_DENSE_ID)
+                        maxId = Math.max(maxId, (int) value);
+                }
+            }
+            Class<?>[] dense = new Class<?>[maxId + 1];
+            for (Entry<ID, Class<?>> entry : serialIds.entrySet()) {
+                if (entry.getKey() instanceof Number) {
+                    long value = ((Number) entry.getKey()).longValue();
+                    if (value >= 0 && value <= maxId)
+                        dense[(int) value] = entry.getValue();
+                }
+            }
+            this.denseSerialIds = dense;
+        }
     }
 }
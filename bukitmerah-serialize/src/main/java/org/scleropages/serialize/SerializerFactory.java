@@ -18,12 +18,27 @@ package org.scleropages.serialize;
 import java.util.Set;
 
 /**
+ * factory of readers(writers) over given read(write) source.
+ * <p>
+ * returned reader(writer) may hold pooled resources (such as kryo sessions of {@link org.scleropages.serialize.kryo.PooledKryoSerializerFactory})
+ * until it released. caller who obtains reader(writer) directly must release it after use by {@link SerializerFactoryUtil#release(Object)}
+ * (or close it if it's {@link java.io.Closeable}), otherwise resources never returned to pool.
+ * helpers of {@link SerializerFactoryUtil} release them before return.
+ *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public interface SerializerFactory<R, W> {
 
+    /**
+     * @param r
+     * @return reader over given source. must be released after use ({@link SerializerFactoryUtil#release(Object)}).
+     */
     DataObjectReader<R> deserialize(R r);
 
+    /**
+     * @param w
+     * @return writer over given source. must be flushed and released after use ({@link SerializerFactoryUtil#release(Object)}).
+     */
     DataObjectWriter<W> serialize(W w);
 
     boolean supportSerialize(Class<?> clazz);
@@ -15,46 +15,336 @@
  */
 package org.scleropages.serialize;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.scleropages.serialize.jdk.ByteBufferInputStream;
+import org.scleropages.serialize.jdk.ByteBufferOutputStream;
+import org.springframework.util.Assert;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
+ * Utility methods of {@link SerializerFactory}.
+ * <p>
+ * {@link #serialize(SerializerFactory, Object)} encode into a per-thread growable buffer and copy out once,
+ * caller who owns a target buffer should use serializeTo(...) or {@link #serializeToPooled(SerializerFactory, Object)} to avoid the copy.
+ * buffers directly written (read) by factory if it supported, otherwise by stream view of buffer.
+ * <p>
+ * readers(writers) obtained by helpers always released (pooled resources returned to pool) before return, even if failure.
+ * caller who obtains them from factory directly must {@link #release(Object)} them.
+ *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public abstract class SerializerFactoryUtil {
 
-    private static final int DEFAULT_WRITE_BUFF_SIZE = 64;
+    private static final int DEFAULT_WRITE_BUFF_SIZE = 256;
+
+    /**
+     * per-thread write buffer larger than this will not be retained after use.
+     */
+    private static final int MAX_RETAINED_WRITE_BUFF_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<WriteBuffer> writeBuffers = ThreadLocal.withInitial(WriteBuffer::new);
+
+    private static final ThreadLocal<ReadBuffer> readBuffers = ThreadLocal.withInitial(ReadBuffer::new);
+
 
     public static byte[] serialize(SerializerFactory serializerFactory, Object object) throws IOException {
-        if (serializerFactory.supportSerialize(OutputStream.class)) {
-            ByteArrayOutputStream out = new ByteArrayOutputStream(DEFAULT_WRITE_BUFF_SIZE);
+        return serialize(serializerFactory, object, DEFAULT_WRITE_BUFF_SIZE);
+    }
+
+    /**
+     * serialize object to byte array.
+     *
+     * @param serializerFactory
+     * @param object
+     * @param sizeHint          expected size of serialized bytes. avoid buffer growing if given.
+     * @return
+     * @throws IOException
+     */
+    public static byte[] serialize(SerializerFactory serializerFactory, Object object, int sizeHint) throws IOException {
+        if (!serializerFactory.supportSerialize(OutputStream.class)) {
+            throw new IllegalStateException("not implementation or supported.");
+        }
+        WriteBuffer out = writeBuffers.get();
+        if (out.inUse) {//reentrant call (e.g. nested serialize in custom serializer), do not share buffer.
+            out = new WriteBuffer();
+        }
+        out.acquire(sizeHint);
+        try {
             serialize(serializerFactory, object, out);
             return out.toByteArray();
+        } finally {
+            out.release();
+        }
+    }
+
+    /**
+     * serialize object into given array start at offset.
+     *
+     * @param serializerFactory
+     * @param object
+     * @param dest
+     * @param offset
+     * @return number of bytes written.
+     * @throws IOException
+     * @throws java.nio.BufferOverflowException if remaining of dest not enough(kryo factory raise KryoException instead).
+     */
+    public static int serializeTo(SerializerFactory serializerFactory, Object object, byte[] dest, int offset) throws IOException {
+        Assert.notNull(dest, "dest must not be null.");
+        return serializeTo(serializerFactory, object, ByteBuffer.wrap(dest, offset, dest.length - offset));
+    }
+
+    /**
+     * serialize object into given buffer start at it's position. position advanced by written bytes.
+     *
+     * @param serializerFactory
+     * @param object
+     * @param dest
+     * @return number of bytes written.
+     * @throws IOException
+     * @throws java.nio.BufferOverflowException if remaining of dest not enough(kryo factory raise KryoException instead).
+     */
+    public static int serializeTo(SerializerFactory serializerFactory, Object object, ByteBuffer dest) throws IOException {
+        Assert.notNull(dest, "dest must not be null.");
+        int start = dest.position();
+        if (serializerFactory.supportSerialize(ByteBuffer.class)) {
+            writeAndRelease(serializerFactory.serialize(dest), object);
+        } else if (serializerFactory.supportSerialize(OutputStream.class)) {
+            serialize(serializerFactory, object, new ByteBufferOutputStream(dest));
         } else {
             throw new IllegalStateException("not implementation or supported.");
         }
+        return dest.position() - start;
+    }
+
+    /**
+     * serialize object into given buffer start at it's writer index. writer index advanced by written bytes (buffer expanded if necessary).
+     *
+     * @param serializerFactory
+     * @param object
+     * @param dest
+     * @return number of bytes written.
+     * @throws IOException
+     */
+    public static int serializeTo(SerializerFactory serializerFactory, Object object, ByteBuf dest) throws IOException {
+        Assert.notNull(dest, "dest must not be null.");
+        int start = dest.writerIndex();
+        if (serializerFactory.supportSerialize(ByteBuf.class)) {
+            writeAndRelease(serializerFactory.serialize(dest), object);
+        } else if (serializerFactory.supportSerialize(OutputStream.class)) {
+            serialize(serializerFactory, object, new ByteBufOutputStream(dest));
+        } else {
+            throw new IllegalStateException("not implementation or supported.");
+        }
+        return dest.writerIndex() - start;
+    }
+
+    public static ByteBuf serializeToPooled(SerializerFactory serializerFactory, Object object) throws IOException {
+        return serializeToPooled(serializerFactory, object, DEFAULT_WRITE_BUFF_SIZE);
+    }
+
+    public static ByteBuf serializeToPooled(SerializerFactory serializerFactory, Object object, int sizeHint) throws IOException {
+        return serializeToPooled(serializerFactory, object, PooledByteBufAllocator.DEFAULT, sizeHint);
+    }
+
+    /**
+     * serialize object into a buffer allocated from given allocator. caller must {@link ByteBuf#release()} returned buffer.
+     *
+     * @param serializerFactory
+     * @param object
+     * @param allocator
+     * @param sizeHint          initial capacity of allocated buffer.
+     * @return
+     * @throws IOException
+     */
+    public static ByteBuf serializeToPooled(SerializerFactory serializerFactory, Object object, ByteBufAllocator allocator, int sizeHint) throws IOException {
+        Assert.notNull(allocator, "allocator must not be null.");
+        if (!serializerFactory.supportSerialize(ByteBuf.class) && !serializerFactory.supportSerialize(OutputStream.class)) {
+            throw new IllegalStateException("not implementation or supported.");
+        }
+        ByteBuf byteBuf = allocator.buffer(sizeHint);
+        boolean success = false;
+        try {
+            serializeTo(serializerFactory, object, byteBuf);
+            success = true;
+            return byteBuf;
+        } finally {
+            if (!success)
+                byteBuf.release();
+        }
     }
 
     public static <T> T deserialize(SerializerFactory serializerFactory, byte[] payload) throws IOException, ClassNotFoundException {
-        if (serializerFactory.supportDeserialize(InputStream.class)) {
-            ByteArrayInputStream in = new ByteArrayInputStream(payload);
-            return deserialize(serializerFactory, in);
+        return deserialize(serializerFactory, payload, 0, payload.length);
+    }
+
+    public static <T> T deserialize(SerializerFactory serializerFactory, byte[] payload, int offset, int length) throws IOException, ClassNotFoundException {
+        Assert.notNull(payload, "payload must not be null.");
+        if (serializerFactory.supportDeserialize(ByteBuffer.class)) {
+            return readAndRelease(serializerFactory.deserialize(ByteBuffer.wrap(payload, offset, length)));
+        } else if (serializerFactory.supportDeserialize(InputStream.class)) {
+            ReadBuffer in = readBuffers.get();
+            if (in.inUse) {//reentrant call, do not share stream.
+                return deserialize(serializerFactory, new ByteArrayInputStream(payload, offset, length));
+            }
+            in.acquire(payload, offset, length);
+            try {
+                return deserialize(serializerFactory, in);
+            } finally {
+                in.release();
+            }
+        } else {
+            throw new IllegalStateException("not implementation or supported.");
+        }
+    }
+
+    /**
+     * deserialize object from given buffer start at it's position. position advanced by read bytes.
+     *
+     * @param serializerFactory
+     * @param payload
+     * @param <T>
+     * @return
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static <T> T deserialize(SerializerFactory serializerFactory, ByteBuffer payload) throws IOException, ClassNotFoundException {
+        Assert.notNull(payload, "payload must not be null.");
+        if (serializerFactory.supportDeserialize(ByteBuffer.class)) {
+            return readAndRelease(serializerFactory.deserialize(payload));
+        } else if (serializerFactory.supportDeserialize(InputStream.class)) {
+            return deserialize(serializerFactory, new ByteBufferInputStream(payload));
+        } else {
+            throw new IllegalStateException("not implementation or supported.");
+        }
+    }
+
+    /**
+     * deserialize object from given buffer start at it's reader index. reader index advanced by read bytes.
+     *
+     * @param serializerFactory
+     * @param payload
+     * @param <T>
+     * @return
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    public static <T> T deserialize(SerializerFactory serializerFactory, ByteBuf payload) throws IOException, ClassNotFoundException {
+        Assert.notNull(payload, "payload must not be null.");
+        if (serializerFactory.supportDeserialize(ByteBuf.class)) {
+            return readAndRelease(serializerFactory.deserialize(payload));
+        } else if (serializerFactory.supportDeserialize(InputStream.class)) {
+            return deserialize(serializerFactory, new ByteBufInputStream(payload));
         } else {
             throw new IllegalStateException("not implementation or supported.");
         }
     }
 
     public static <T> T deserialize(SerializerFactory serializerFactory, InputStream in) throws IOException, ClassNotFoundException {
-        DataObjectReader dataObjectReader = serializerFactory.deserialize(in);
-        return (T) dataObjectReader.readObject();
+        return readAndRelease(serializerFactory.deserialize(in));
     }
 
     public static void serialize(SerializerFactory serializerFactory, Object object, OutputStream out) throws IOException {
-        DataObjectWriter dataObjectWriter = serializerFactory.serialize(out);
-        dataObjectWriter.writeObject(object);
-        dataObjectWriter.flushWrite();
+        writeAndRelease(serializerFactory.serialize(out), object);
+    }
+
+    /**
+     * release pooled resources (such as kryo session) held by reader(writer). underlying stream will not be closed.
+     *
+     * @param readerOrWriter
+     * @throws IOException
+     */
+    public static void release(Object readerOrWriter) throws IOException {
+        if (readerOrWriter instanceof Closeable)
+            ((Closeable) readerOrWriter).close();
+    }
+
+
+    private static <T> T readAndRelease(DataObjectReader dataObjectReader) throws IOException, ClassNotFoundException {
+        try {
+            return (T) dataObjectReader.readObject();
+        } finally {
+            release(dataObjectReader);
+        }
+    }
+
+    private static void writeAndRelease(DataObjectWriter dataObjectWriter, Object object) throws IOException {
+        try {
+            dataObjectWriter.writeObject(object);
+            dataObjectWriter.flushWrite();
+        } finally {
+            release(dataObjectWriter);
+        }
+    }
+
+
+    /**
+     * stream view of payload reused by same thread.
+     */
+    private static class ReadBuffer extends ByteArrayInputStream {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        private boolean inUse;
+
+        private ReadBuffer() {
+            super(EMPTY);
+        }
+
+        private void acquire(byte[] payload, int offset, int length) {
+            inUse = true;
+            buf = payload;
+            pos = offset;
+            count = Math.min(offset + length, payload.length);
+            mark = offset;
+        }
+
+        private void release() {
+            inUse = false;
+            buf = EMPTY;
+            pos = count = mark = 0;
+        }
+    }
+
+    /**
+     * growable write buffer reused by same thread.
+     */
+    private static class WriteBuffer extends ByteArrayOutputStream {
+
+        private boolean inUse;
+
+        private WriteBuffer() {
+            super(DEFAULT_WRITE_BUFF_SIZE);
+        }
+
+        private void acquire(int sizeHint) {
+            inUse = true;
+            reset();
+            if (sizeHint > buf.length)
+                buf = new byte[sizeHint];
+        }
+
+        private void release() {
+            inUse = false;
+            reset();
+            if (buf.length > MAX_RETAINED_WRITE_BUFF_SIZE)
+                buf = new byte[DEFAULT_WRITE_BUFF_SIZE];
+        }
+
+        @Override
+        public synchronized byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
     }
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.compress;
+
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.snappy.SnappyCompressor;
+import io.airlift.compress.snappy.SnappyDecompressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import org.springframework.util.Assert;
+
+import java.util.function.Supplier;
+
+/**
+ * pure java zstd and snappy codecs (aircompressor). compressor(decompressor) not thread safe, used by thread local.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class AirCompressionCodec implements CompressionCodec {
+
+    private final byte id;
+
+    private final ThreadLocal<Compressor> compressors;
+
+    private final ThreadLocal<Decompressor> decompressors;
+
+    public AirCompressionCodec(byte id, Supplier<Compressor> compressor, Supplier<Decompressor> decompressor) {
+        Assert.notNull(compressor, "compressor must not be null.");
+        Assert.notNull(decompressor, "decompressor must not be null.");
+        this.id = id;
+        this.compressors = ThreadLocal.withInitial(compressor);
+        this.decompressors = ThreadLocal.withInitial(decompressor);
+    }
+
+    public static AirCompressionCodec zstd() {
+        return new AirCompressionCodec(ZSTD, ZstdCompressor::new, ZstdDecompressor::new);
+    }
+
+    public static AirCompressionCodec snappy() {
+        return new AirCompressionCodec(SNAPPY, SnappyCompressor::new, SnappyDecompressor::new);
+    }
+
+    @Override
+    public byte id() {
+        return id;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return compressors.get().maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int maxDestLength) {
+        return compressors.get().compress(src, srcOffset, length, dest, destOffset, maxDestLength);
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength) {
+        int decompressed = decompressors.get().decompress(src, srcOffset, length, dest, destOffset, originalLength);
+        if (decompressed != originalLength)
+            throw new IllegalStateException("corrupted frame. expected " + originalLength + " bytes but decompressed " + decompressed);
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.compress;
+
+import org.scleropages.core.ComponentId;
+import org.scleropages.serialize.DataObjectReader;
+import org.scleropages.serialize.DataObjectWriter;
+import org.scleropages.serialize.SerialIdRegistry;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.SerializerFactoryUtil;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * decorate a stream based {@link SerializerFactory}, bytes written by delegate framed and compressed if reached threshold.
+ * frame written when {@link DataObjectWriter#flushWrite()}. reader decode frames of any registered codec (lz4, zstd
+ * and snappy by default), so codec can be changed without breaking existing payloads.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class CompressingSerializerFactory implements SerializerFactory<InputStream, OutputStream>, ComponentId {
+
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * combined with factory id of delegate as factory id of this.
+     */
+    public static final byte COMPRESSED_FACTORY_ID_FLAG = 0x40;
+
+    private final SerializerFactory<InputStream, OutputStream> delegate;
+
+    private final CompressionCodec[] codecs = new CompressionCodec[Byte.MAX_VALUE + 1];
+
+    private final CompressionCodec codec;
+
+    private int threshold = DEFAULT_THRESHOLD;
+
+    private int maxFrameLength = DEFAULT_MAX_FRAME_LENGTH;
+
+    public CompressingSerializerFactory(SerializerFactory<InputStream, OutputStream> delegate) {
+        this(delegate, new Lz4CompressionCodec());
+    }
+
+    public CompressingSerializerFactory(SerializerFactory<InputStream, OutputStream> delegate, CompressionCodec codec) {
+        Assert.notNull(delegate, "delegate must not be null.");
+        Assert.notNull(codec, "codec must not be null.");
+        Assert.isTrue(delegate.supportSerialize(OutputStream.class) && delegate.supportDeserialize(InputStream.class),
+                "delegate must support stream serialize.");
+        this.delegate = delegate;
+        this.codec = codec;
+        registerCodec(codec.id() == CompressionCodec.LZ4 ? codec : new Lz4CompressionCodec());
+        registerCodec(AirCompressionCodec.zstd());
+        registerCodec(AirCompressionCodec.snappy());
+        registerCodec(codec);
+    }
+
+    /**
+     * register codec used for decompress.
+     *
+     * @param codec
+     */
+    public void registerCodec(CompressionCodec codec) {
+        Assert.isTrue(codec.id() > CompressionCodec.NONE, "codec id must be positive.");
+        codecs[codec.id()] = codec;
+    }
+
+    @Override
+    public DataObjectReader<InputStream> deserialize(InputStream r) {
+        return delegate.deserialize(new FrameInputStream(r, codecs, maxFrameLength));
+    }
+
+    @Override
+    public DataObjectWriter<OutputStream> serialize(OutputStream w) {
+        FrameOutputStream frameOutputStream = new FrameOutputStream(w, codec, threshold);
+        return new CompressingWriter(delegate.serialize(frameOutputStream), frameOutputStream, w);
+    }
+
+    @Override
+    public boolean supportSerialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(OutputStream.class, clazz);
+    }
+
+    @Override
+    public boolean supportDeserialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(InputStream.class, clazz);
+    }
+
+    @Override
+    public Set<Class<?>> serializableClassesSet() {
+        return delegate.serializableClassesSet();
+    }
+
+    @Override
+    public SerialIdRegistry getClassRegistry() {
+        return delegate.getClassRegistry();
+    }
+
+    @Override
+    public boolean supportClassRegistry() {
+        return delegate.supportClassRegistry();
+    }
+
+    @Override
+    public byte factoryId() {
+        return (byte) (COMPRESSED_FACTORY_ID_FLAG | delegate.factoryId());
+    }
+
+    @Override
+    public String id() {
+        return "compressed-" + (delegate instanceof ComponentId ? ((ComponentId) delegate).id() : delegate.getClass().getSimpleName());
+    }
+
+    public SerializerFactory<InputStream, OutputStream> getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * frames smaller than threshold written without compression.
+     *
+     * @param threshold
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * max original length of frame accepted by reader.
+     *
+     * @param maxFrameLength
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+
+    private static class CompressingWriter implements DataObjectWriter<OutputStream>, Closeable {
+
+        private final DataObjectWriter<OutputStream> writer;
+
+        private final FrameOutputStream frameOutputStream;
+
+        private final OutputStream out;
+
+        private CompressingWriter(DataObjectWriter<OutputStream> writer, FrameOutputStream frameOutputStream, OutputStream out) {
+            this.writer = writer;
+            this.frameOutputStream = frameOutputStream;
+            this.out = out;
+        }
+
+        @Override
+        public void writeBool(boolean v) throws IOException {
+            writer.writeBool(v);
+        }
+
+        @Override
+        public void writeByte(byte v) throws IOException {
+            writer.writeByte(v);
+        }
+
+        @Override
+        public void writeShort(short v) throws IOException {
+            writer.writeShort(v);
+        }
+
+        @Override
+        public void writeInt(int v) throws IOException {
+            writer.writeInt(v);
+        }
+
+        @Override
+        public void writeLong(long v) throws IOException {
+            writer.writeLong(v);
+        }
+
+        @Override
+        public void writeFloat(float v) throws IOException {
+            writer.writeFloat(v);
+        }
+
+        @Override
+        public void writeDouble(double v) throws IOException {
+            writer.writeDouble(v);
+        }
+
+        @Override
+        public void writeUTF(String v) throws IOException {
+            writer.writeUTF(v);
+        }
+
+        @Override
+        public void writeChar(char v) throws IOException {
+            writer.writeChar(v);
+        }
+
+        @Override
+        public void writeBytes(byte[] v) throws IOException {
+            writer.writeBytes(v);
+        }
+
+        @Override
+        public void writeObject(Object obj) throws IOException {
+            writer.writeObject(obj);
+        }
+
+        @Override
+        public OutputStream getWriteSource() {
+            return out;
+        }
+
+        @Override
+        public void flushWrite() throws IOException {
+            writer.flushWrite();
+            frameOutputStream.finishFrame();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            SerializerFactoryUtil.release(writer);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.compress;
+
+/**
+ * block compression codec used by {@link CompressingSerializerFactory}. implementations must be thread safe.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public interface CompressionCodec {
+
+    byte NONE = 0x00;
+
+    byte LZ4 = 0x01;
+
+    byte ZSTD = 0x02;
+
+    byte SNAPPY = 0x03;
+
+    /**
+     * @return codec id written to frame header.
+     */
+    byte id();
+
+    int maxCompressedLength(int length);
+
+    /**
+     * @return compressed length.
+     */
+    int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int maxDestLength);
+
+    void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength);
+}
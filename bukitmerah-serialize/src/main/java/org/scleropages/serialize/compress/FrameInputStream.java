@@ -0,0 +1,142 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.compress;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * read frames written by {@link FrameOutputStream}. compressed frame decompressed as a whole, stored frame read
+ * through from source stream. next frame read only if current one exhausted.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+class FrameInputStream extends InputStream {
+
+    private final InputStream in;
+
+    private final CompressionCodec[] codecs;
+
+    private final int maxFrameLength;
+
+    private final byte[] header = new byte[FrameOutputStream.COMPRESSED_HEADER_LENGTH];
+
+    private byte[] frame;
+
+    private int pos;
+
+    private int limit;
+
+    private int storedRemaining;
+
+    FrameInputStream(InputStream in, CompressionCodec[] codecs, int maxFrameLength) {
+        this.in = in;
+        this.codecs = codecs;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureFrame())
+            return -1;
+        if (storedRemaining > 0) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException("unexpected end of stored frame.");
+            storedRemaining--;
+            return b;
+        }
+        return frame[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!ensureFrame())
+            return -1;
+        if (storedRemaining > 0) {
+            int n = in.read(b, off, Math.min(len, storedRemaining));
+            if (n < 0)
+                throw new EOFException("unexpected end of stored frame.");
+            storedRemaining -= n;
+            return n;
+        }
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(frame, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (storedRemaining > 0)
+            return Math.min(in.available(), storedRemaining);
+        return limit - pos;
+    }
+
+    private boolean ensureFrame() throws IOException {
+        while (pos >= limit && storedRemaining == 0) {
+            if (!nextFrame())
+                return false;
+        }
+        return true;
+    }
+
+    private boolean nextFrame() throws IOException {
+        int codecId = in.read();
+        if (codecId < 0)
+            return false;
+        readFully(header, 1, 4);
+        int length = getInt(header, 1);
+        if (length < 0 || length > maxFrameLength)
+            throw new IOException("invalid frame length: " + length + ". max allowed: " + maxFrameLength);
+        if (codecId == CompressionCodec.NONE) {
+            storedRemaining = length;
+            return true;
+        }
+        CompressionCodec codec = codecId < codecs.length ? codecs[codecId] : null;
+        if (null == codec)
+            throw new IOException("unknown compression codec: " + codecId);
+        readFully(header, 5, 4);
+        int compressedLength = getInt(header, 5);
+        if (compressedLength < 0 || compressedLength > codec.maxCompressedLength(length))
+            throw new IOException("invalid compressed frame length: " + compressedLength);
+        byte[] compressed = new byte[compressedLength];
+        readFully(compressed, 0, compressedLength);
+        if (null == frame || frame.length < length)
+            frame = new byte[length];
+        codec.decompress(compressed, 0, compressedLength, frame, 0, length);
+        pos = 0;
+        limit = length;
+        return true;
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = in.read(b, off, len);
+            if (n < 0)
+                throw new EOFException("unexpected end of frame.");
+            off += n;
+            len -= n;
+        }
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+    }
+}
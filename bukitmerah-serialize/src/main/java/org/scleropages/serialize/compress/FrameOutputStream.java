@@ -0,0 +1,119 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * buffer written bytes and write them as one frame to target stream when {@link #finishFrame()}.
+ * <pre>
+ * compressed frame: codec id(1) | original length(4) | compressed length(4) | compressed bytes
+ * stored frame:     {@link CompressionCodec#NONE}(1) | length(4) | bytes
+ * </pre>
+ * frame compressed only if length reached threshold and compressed result smaller than original.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+class FrameOutputStream extends OutputStream {
+
+    static final int STORED_HEADER_LENGTH = 5;
+
+    static final int COMPRESSED_HEADER_LENGTH = 9;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+
+    private final CompressionCodec codec;
+
+    private final int threshold;
+
+    private byte[] buf = new byte[INITIAL_BUFFER_SIZE];
+
+    private int count;
+
+    FrameOutputStream(OutputStream out, CompressionCodec codec, int threshold) {
+        this.out = out;
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * frames only written by {@link #finishFrame()}.
+     */
+    @Override
+    public void flush() {
+    }
+
+    void finishFrame() throws IOException {
+        if (count == 0)
+            return;
+        try {
+            if (count >= threshold && writeCompressed())
+                return;
+            byte[] header = new byte[STORED_HEADER_LENGTH];
+            header[0] = CompressionCodec.NONE;
+            putInt(header, 1, count);
+            out.write(header);
+            out.write(buf, 0, count);
+        } finally {
+            count = 0;
+            if (buf.length > MAX_RETAINED_BUFFER_SIZE)
+                buf = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+
+    private boolean writeCompressed() throws IOException {
+        byte[] frame = new byte[COMPRESSED_HEADER_LENGTH + codec.maxCompressedLength(count)];
+        int compressedLength = codec.compress(buf, 0, count, frame, COMPRESSED_HEADER_LENGTH, frame.length - COMPRESSED_HEADER_LENGTH);
+        if (compressedLength >= count)
+            return false;
+        frame[0] = codec.id();
+        putInt(frame, 1, count);
+        putInt(frame, 5, compressedLength);
+        out.write(frame, 0, COMPRESSED_HEADER_LENGTH + compressedLength);
+        return true;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, minCapacity));
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+}
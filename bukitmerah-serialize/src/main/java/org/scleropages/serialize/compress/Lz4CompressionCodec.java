@@ -0,0 +1,64 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.compress;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * lz4 codec. use native lz4 if available, otherwise fallback to pure java implementation ({@link LZ4Factory#fastestInstance()}).
+ * decompression uses bounds checked {@link LZ4SafeDecompressor}, frames read from network or storage are untrusted.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class Lz4CompressionCodec implements CompressionCodec {
+
+    private final LZ4Compressor compressor;
+
+    private final LZ4SafeDecompressor decompressor;
+
+    public Lz4CompressionCodec() {
+        this(LZ4Factory.fastestInstance());
+    }
+
+    public Lz4CompressionCodec(LZ4Factory lz4Factory) {
+        this.compressor = lz4Factory.fastCompressor();
+        this.decompressor = lz4Factory.safeDecompressor();
+    }
+
+    @Override
+    public byte id() {
+        return LZ4;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return compressor.maxCompressedLength(length);
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int maxDestLength) {
+        return compressor.compress(src, srcOffset, length, dest, destOffset, maxDestLength);
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOffset, int length, byte[] dest, int destOffset, int originalLength) {
+        int decompressed = decompressor.decompress(src, srcOffset, length, dest, destOffset, originalLength);
+        if (decompressed != originalLength)
+            throw new IllegalStateException("corrupted frame. expected " + originalLength + " bytes but decompressed " + decompressed);
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.jdk;
+
+import org.springframework.util.Assert;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link InputStream} view of a {@link ByteBuffer}. reads advance the buffer position directly,
+ * no bytes copied into intermediate array.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer byteBuffer;
+
+    public ByteBufferInputStream(ByteBuffer byteBuffer) {
+        Assert.notNull(byteBuffer, "byteBuffer must not be null.");
+        this.byteBuffer = byteBuffer;
+    }
+
+    @Override
+    public int read() {
+        if (!byteBuffer.hasRemaining())
+            return -1;
+        return byteBuffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0)
+            return 0;
+        int remaining = byteBuffer.remaining();
+        if (remaining == 0)
+            return -1;
+        int read = Math.min(len, remaining);
+        byteBuffer.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.min(Math.max(n, 0), byteBuffer.remaining());
+        byteBuffer.position(byteBuffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return byteBuffer.remaining();
+    }
+
+    public ByteBuffer getByteBuffer() {
+        return byteBuffer;
+    }
+}
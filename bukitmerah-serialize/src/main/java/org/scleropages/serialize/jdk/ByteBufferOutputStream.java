@@ -0,0 +1,52 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.jdk;
+
+import org.springframework.util.Assert;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link OutputStream} view of a {@link ByteBuffer}. writes advance the buffer position directly,
+ * {@link BufferOverflowException} thrown if remaining of buffer not enough.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer byteBuffer;
+
+    public ByteBufferOutputStream(ByteBuffer byteBuffer) {
+        Assert.notNull(byteBuffer, "byteBuffer must not be null.");
+        this.byteBuffer = byteBuffer;
+    }
+
+    @Override
+    public void write(int b) {
+        byteBuffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        byteBuffer.put(b, off, len);
+    }
+
+    public ByteBuffer getByteBuffer() {
+        return byteBuffer;
+    }
+}
@@ -20,6 +20,7 @@ import org.scleropages.serialize.spi.DataSerializer;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * 
@@ -28,6 +29,8 @@ import java.nio.ByteBuffer;
  */
 public class ByteBufferSerializer implements DataSerializer<ByteBuffer,ByteBuffer> {
 
+	private static final int NULL_LENGTH = -1;
+
 	private final ByteBuffer byteBuffer;
 
 	public ByteBufferSerializer(ByteBuffer byteBuffer) {
@@ -70,11 +73,24 @@ public class ByteBufferSerializer implements DataSerializer<ByteBuffer,ByteBuffe
 		return byteBuffer.getDouble();
 	}
 
+	/**
+	 * read a length-prefixed(int) utf-8 string. -1 length as null.
+	 */
 	@Override
 	public String readUTF() throws IOException {
-		byte[] bytes = new byte[4];
+		int length = byteBuffer.getInt();
+		if (length == NULL_LENGTH)
+			return null;
+		if (byteBuffer.hasArray()) {
+			int position = byteBuffer.position();
+			String value = new String(byteBuffer.array(), byteBuffer.arrayOffset() + position, length,
+					StandardCharsets.UTF_8);
+			byteBuffer.position(position + length);
+			return value;
+		}
+		byte[] bytes = new byte[length];
 		byteBuffer.get(bytes);
-		return new String(bytes, "utf-8");
+		return new String(bytes, StandardCharsets.UTF_8);
 	}
 
 	@Override
@@ -114,9 +130,18 @@ public class ByteBufferSerializer implements DataSerializer<ByteBuffer,ByteBuffe
 
 
 
+	/**
+	 * write a length-prefixed(int) utf-8 string. null written as -1 length.
+	 */
 	@Override
 	public void writeUTF(String v) throws IOException {
-		byteBuffer.put(v.getBytes("utf-8"));
+		if (v == null) {
+			byteBuffer.putInt(NULL_LENGTH);
+			return;
+		}
+		byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+		byteBuffer.putInt(bytes.length);
+		byteBuffer.put(bytes);
 	}
 
 	public void close() throws IOException {
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.pool.KryoCallback;
+import com.esotericsoftware.kryo.pool.KryoPool;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import org.scleropages.serialize.spi.ObjectSerializer;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Kryo {@link ObjectSerializer} read from(write to) netty {@link ByteBuf} directly.
+ * kryo encode into nio view of writable region of {@link ByteBuf}(pooled heap or direct),
+ * if writable bytes not enough, the buffer will be expanded(double) and retry encode until reach max capacity.
+ * reader(writer) index synchronized after each read(write), so can be composite with
+ * {@link org.scleropages.serialize.netty.ByteBufSerializer} on same buffer.
+ * <br>
+ * <b>NOTE: composite buffer (more than one nio buffers) write through {@link ByteBufOutputStream} instead.</b>
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class KryoByteBufObjectSerializer implements ObjectSerializer<ByteBuf, ByteBuf> {
+
+	public static final int DEFAULT_INITIAL_WRITE_CAPACITY = 256;
+
+	private static final String BUFFER_OVERFLOW = "Buffer overflow";
+
+	private final ByteBuf byteBuf;
+	private final ByteBufferInput input;
+	private final ByteBufferOutput output;
+	private final KryoPool kryoPool;
+
+	private volatile boolean typeUnkown = true;
+
+	private int initialWriteCapacity = DEFAULT_INITIAL_WRITE_CAPACITY;
+
+	public KryoByteBufObjectSerializer(ByteBuf byteBuf, final KryoPool kryoPool) {
+		Assert.notNull(byteBuf, "byteBuf must not be null.");
+		this.byteBuf = byteBuf;
+		this.input = new ByteBufferInput();
+		this.output = new ByteBufferOutput();
+		this.kryoPool = kryoPool;
+	}
+
+	@Override
+	public Object readObject() throws IOException, ClassNotFoundException {
+		return readObject(Object.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T readObject(final Class<T> cls) throws IOException, ClassNotFoundException {
+		final int readerIndex = byteBuf.readerIndex();
+		input.setBuffer(byteBuf.nioBuffer(readerIndex, byteBuf.readableBytes()));
+		T result = kryoPool.run(new KryoCallback<T>() {
+			@Override
+			public T execute(Kryo kryo) {
+				if (typeUnkown)
+					return (T) kryo.readClassAndObject(input);
+				return kryo.readObject(input, cls);
+			}
+		});
+		byteBuf.readerIndex(readerIndex + input.position());
+		return result;
+	}
+
+	@Override
+	public void writeObject(final Object obj) throws IOException {
+		if (byteBuf.nioBufferCount() != 1) {
+			writeObjectToStream(obj);
+			return;
+		}
+		final int writerIndex = byteBuf.writerIndex();
+		int required = Math.max(initialWriteCapacity, byteBuf.writableBytes());
+		while (true) {
+			byteBuf.ensureWritable(required);
+			output.setBuffer(byteBuf.nioBuffer(writerIndex, byteBuf.writableBytes()));
+			try {
+				execute(obj, output);
+				byteBuf.writerIndex(writerIndex + output.position());
+				return;
+			} catch (KryoException e) {
+				if (!isBufferOverflow(e) || byteBuf.writableBytes() >= byteBuf.maxWritableBytes())
+					throw e;
+				required = (int) Math.min((long) byteBuf.writableBytes() << 1, byteBuf.maxWritableBytes());
+			}
+		}
+	}
+
+	protected void writeObjectToStream(final Object obj) throws IOException {
+		Output streamOutput = new Output(new ByteBufOutputStream(byteBuf), initialWriteCapacity);
+		execute(obj, streamOutput);
+		streamOutput.flush();
+	}
+
+	protected void execute(final Object obj, final Output output) {
+		kryoPool.run(new KryoCallback<Void>() {
+			@Override
+			public Void execute(Kryo kryo) {
+				if (typeUnkown)
+					kryo.writeClassAndObject(output, obj);
+				else
+					kryo.writeObject(output, obj);
+				return null;
+			}
+		});
+	}
+
+	private boolean isBufferOverflow(KryoException e) {
+		String message = e.getMessage();
+		return null != message && message.startsWith(BUFFER_OVERFLOW);
+	}
+
+	public void setTypeUnkown(boolean typeUnkown) {
+		this.typeUnkown = typeUnkown;
+	}
+
+	/**
+	 * initial writable bytes ensured before first encode attempt. default is {@link #DEFAULT_INITIAL_WRITE_CAPACITY}
+	 *
+	 * @param initialWriteCapacity
+	 */
+	public void setInitialWriteCapacity(int initialWriteCapacity) {
+		Assert.isTrue(initialWriteCapacity > 0, "initialWriteCapacity must greater than 0.");
+		this.initialWriteCapacity = initialWriteCapacity;
+	}
+
+	@Override
+	public ByteBuf getReadSource() {
+		return byteBuf;
+	}
+
+	@Override
+	public ByteBuf getWriteSource() {
+		return byteBuf;
+	}
+
+	@Override
+	public void flushWrite() throws IOException {
+	}
+}
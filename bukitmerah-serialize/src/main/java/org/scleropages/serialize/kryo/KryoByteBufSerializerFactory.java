@@ -0,0 +1,89 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.kryo;
+
+import io.netty.buffer.ByteBuf;
+import org.scleropages.core.ComponentId;
+import org.scleropages.serialize.DataObjectReader;
+import org.scleropages.serialize.DataObjectWriter;
+import org.scleropages.serialize.SerialIdRegistry;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.netty.ByteBufSerializer;
+import org.scleropages.serialize.spi.CompositeSerializer;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.util.Set;
+
+/**
+ * Kryo {@link SerializerFactory} read from(write to) netty {@link ByteBuf} directly. kryo pool and class registry
+ * shared with given {@link PooledKryoSerializerFactory}, data written by {@link ByteBufSerializer}.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class KryoByteBufSerializerFactory implements SerializerFactory<ByteBuf, ByteBuf>, ComponentId {
+
+    private final PooledKryoSerializerFactory kryoSerializerFactory;
+
+    public KryoByteBufSerializerFactory(PooledKryoSerializerFactory kryoSerializerFactory) {
+        Assert.notNull(kryoSerializerFactory, "kryoSerializerFactory must not be null.");
+        this.kryoSerializerFactory = kryoSerializerFactory;
+    }
+
+    @Override
+    public DataObjectReader<ByteBuf> deserialize(ByteBuf r) {
+        ByteBufSerializer dataSerializer = new ByteBufSerializer(r);
+        KryoByteBufObjectSerializer objectSerializer = new KryoByteBufObjectSerializer(r, kryoSerializerFactory.getKryoPool());
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    @Override
+    public DataObjectWriter<ByteBuf> serialize(ByteBuf w) {
+        ByteBufSerializer dataSerializer = new ByteBufSerializer(w);
+        KryoByteBufObjectSerializer objectSerializer = new KryoByteBufObjectSerializer(w, kryoSerializerFactory.getKryoPool());
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    @Override
+    public boolean supportSerialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(ByteBuf.class, clazz);
+    }
+
+    @Override
+    public boolean supportDeserialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(ByteBuf.class, clazz);
+    }
+
+    @Override
+    public Set<Class<?>> serializableClassesSet() {
+        return kryoSerializerFactory.serializableClassesSet();
+    }
+
+    @Override
+    public byte factoryId() {
+        return kryoSerializerFactory.factoryId();
+    }
+
+    @Override
+    public String id() {
+        return "kryo-netty";
+    }
+
+    @Override
+    public SerialIdRegistry getClassRegistry() {
+        return kryoSerializerFactory.getClassRegistry();
+    }
+}
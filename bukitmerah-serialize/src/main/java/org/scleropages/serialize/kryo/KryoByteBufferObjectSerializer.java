@@ -0,0 +1,110 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.pool.KryoCallback;
+import com.esotericsoftware.kryo.pool.KryoPool;
+import org.scleropages.serialize.spi.ObjectSerializer;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Kryo {@link ObjectSerializer} read from(write to) {@link ByteBuffer} (heap or direct) directly.
+ * buffer position always synchronized with kryo input(output) after each read(write), so can be composite with
+ * {@link org.scleropages.serialize.jdk.ByteBufferSerializer} on same buffer.<br>
+ * <b>NOTE: buffer will not be expanded, kryo exception(buffer overflow) thrown if remaining not enough.</b>
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class KryoByteBufferObjectSerializer implements ObjectSerializer<ByteBuffer, ByteBuffer> {
+
+	private final ByteBuffer byteBuffer;
+	private final ByteBufferInput input;
+	private final ByteBufferOutput output;
+	private final KryoPool kryoPool;
+
+	private volatile boolean typeUnkown = true;
+
+	public KryoByteBufferObjectSerializer(ByteBuffer byteBuffer, final KryoPool kryoPool) {
+		Assert.notNull(byteBuffer, "byteBuffer must not be null.");
+		this.byteBuffer = byteBuffer;
+		this.input = new ByteBufferInput();
+		this.output = new ByteBufferOutput();
+		this.kryoPool = kryoPool;
+	}
+
+	@Override
+	public Object readObject() throws IOException, ClassNotFoundException {
+		return readObject(Object.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T readObject(final Class<T> cls) throws IOException, ClassNotFoundException {
+		input.setBuffer(byteBuffer);
+		try {
+			return kryoPool.run(new KryoCallback<T>() {
+				@Override
+				public T execute(Kryo kryo) {
+					if (typeUnkown)
+						return (T) kryo.readClassAndObject(input);
+					return kryo.readObject(input, cls);
+				}
+			});
+		} finally {
+			byteBuffer.position(input.position());
+		}
+	}
+
+	@Override
+	public void writeObject(final Object obj) throws IOException {
+		output.setBuffer(byteBuffer);
+		kryoPool.run(new KryoCallback<Void>() {
+			@Override
+			public Void execute(Kryo kryo) {
+				if (typeUnkown)
+					kryo.writeClassAndObject(output, obj);
+				else
+					kryo.writeObject(output, obj);
+				return null;
+			}
+		});
+		byteBuffer.position(output.position());
+	}
+
+	public void setTypeUnkown(boolean typeUnkown) {
+		this.typeUnkown = typeUnkown;
+	}
+
+	@Override
+	public ByteBuffer getReadSource() {
+		return byteBuffer;
+	}
+
+	@Override
+	public ByteBuffer getWriteSource() {
+		return byteBuffer;
+	}
+
+	@Override
+	public void flushWrite() throws IOException {
+	}
+}
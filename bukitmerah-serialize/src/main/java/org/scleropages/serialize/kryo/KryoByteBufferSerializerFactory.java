@@ -0,0 +1,89 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.kryo;
+
+import org.scleropages.core.ComponentId;
+import org.scleropages.serialize.DataObjectReader;
+import org.scleropages.serialize.DataObjectWriter;
+import org.scleropages.serialize.SerialIdRegistry;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.jdk.ByteBufferSerializer;
+import org.scleropages.serialize.spi.CompositeSerializer;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * Kryo {@link SerializerFactory} read from(write to) {@link ByteBuffer} directly. kryo pool and class registry
+ * shared with given {@link PooledKryoSerializerFactory}, data written by {@link ByteBufferSerializer}.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class KryoByteBufferSerializerFactory implements SerializerFactory<ByteBuffer, ByteBuffer>, ComponentId {
+
+    private final PooledKryoSerializerFactory kryoSerializerFactory;
+
+    public KryoByteBufferSerializerFactory(PooledKryoSerializerFactory kryoSerializerFactory) {
+        Assert.notNull(kryoSerializerFactory, "kryoSerializerFactory must not be null.");
+        this.kryoSerializerFactory = kryoSerializerFactory;
+    }
+
+    @Override
+    public DataObjectReader<ByteBuffer> deserialize(ByteBuffer r) {
+        ByteBufferSerializer dataSerializer = new ByteBufferSerializer(r);
+        KryoByteBufferObjectSerializer objectSerializer = new KryoByteBufferObjectSerializer(r, kryoSerializerFactory.getKryoPool());
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    @Override
+    public DataObjectWriter<ByteBuffer> serialize(ByteBuffer w) {
+        ByteBufferSerializer dataSerializer = new ByteBufferSerializer(w);
+        KryoByteBufferObjectSerializer objectSerializer = new KryoByteBufferObjectSerializer(w, kryoSerializerFactory.getKryoPool());
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    @Override
+    public boolean supportSerialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(ByteBuffer.class, clazz);
+    }
+
+    @Override
+    public boolean supportDeserialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(ByteBuffer.class, clazz);
+    }
+
+    @Override
+    public Set<Class<?>> serializableClassesSet() {
+        return kryoSerializerFactory.serializableClassesSet();
+    }
+
+    @Override
+    public byte factoryId() {
+        return kryoSerializerFactory.factoryId();
+    }
+
+    @Override
+    public String id() {
+        return "kryo-nio";
+    }
+
+    @Override
+    public SerialIdRegistry getClassRegistry() {
+        return kryoSerializerFactory.getClassRegistry();
+    }
+}
@@ -21,18 +21,22 @@ import com.esotericsoftware.kryo.io.Output;
 import org.scleropages.serialize.spi.DataSerializer;
 import org.scleropages.serialize.spi.StreamSerializerSupport;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
- * 
+ * data serializer over kryo input(output). if input(output) shared by a {@link KryoSerializerSession}, must be closed
+ * with session (used after closed fails with {@link IllegalStateException}).
+ *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
-public class KryoDataSerializer extends StreamSerializerSupport implements DataSerializer<InputStream, OutputStream> {
+public class KryoDataSerializer extends StreamSerializerSupport implements DataSerializer<InputStream, OutputStream>, Closeable {
 
 	private final Input input;
 	private final Output output;
+	private boolean closed;
 
 	public KryoDataSerializer(InputStream in) {
 		super(in);
@@ -46,6 +50,30 @@ public class KryoDataSerializer extends StreamSerializerSupport implements DataS
 		input = null;
 	}
 
+	/**
+	 * perform deserialize with given input (buffer bound to in), such as shared input of {@link KryoSerializerSession}
+	 *
+	 * @param in
+	 * @param input
+	 */
+	public KryoDataSerializer(InputStream in, Input input) {
+		super(in);
+		this.input = input;
+		output = null;
+	}
+
+	/**
+	 * perform serialize with given output (buffer bound to out), such as shared output of {@link KryoSerializerSession}
+	 *
+	 * @param out
+	 * @param output
+	 */
+	public KryoDataSerializer(OutputStream out, Output output) {
+		super(out);
+		this.output = output;
+		input = null;
+	}
+
 	@Override
 	public boolean readBool() throws IOException {
 		assertInReadMode();
@@ -168,7 +196,33 @@ public class KryoDataSerializer extends StreamSerializerSupport implements DataS
 
 	@Override
 	public void flushWrite() throws IOException {
+		assertOpen();
 		output.flush();
 	}
 
+	/**
+	 * mark closed, input(output) no longer used by this. underlying stream will not be closed.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	@Override
+	protected void assertInReadMode() {
+		assertOpen();
+		super.assertInReadMode();
+	}
+
+	@Override
+	protected void assertInWriteMode() {
+		assertOpen();
+		super.assertInWriteMode();
+	}
+
+	protected void assertOpen() {
+		if (closed)
+			throw new IllegalStateException("serializer closed.");
+	}
+
 }
@@ -20,25 +20,37 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoCallback;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
 import com.esotericsoftware.kryo.pool.KryoPool;
+import org.scleropages.serialize.spi.ClassDictionary;
 import org.scleropages.serialize.spi.ObjectSerializer;
 import org.scleropages.serialize.spi.StreamSerializerSupport;
+import org.springframework.util.ClassUtils;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
- * 
+ * in dictionary mode (session only), type of each object written as varint handle of a {@link ClassDictionary}.
+ * first use of a class defined by handle of definition then kryo registration id (plus one) or 0 followed by class name
+ * (resolved by {@link ClassDictionary#resolve(String)}, never loaded by name).
  *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public class KryoObjectSerializer extends StreamSerializerSupport
-		implements ObjectSerializer<InputStream, OutputStream> {
+		implements ObjectSerializer<InputStream, OutputStream>, Closeable {
 
 	private final Input input;
 	private final Output output;
 	private final KryoPool kryoPool;
+	private final ClassDictionary classDictionary;
+	/*null after closed*/
+	private KryoSerializerSession session;
+	private final int generation;
+	private boolean closed;
 
 	private volatile boolean typeUnkown = true;
 
@@ -47,6 +59,9 @@ public class KryoObjectSerializer extends StreamSerializerSupport
 		input = new Input(in);
 		this.kryoPool = kryoPool;
 		output = null;
+		session = null;
+		generation = 0;
+		classDictionary = null;
 	}
 
 	public KryoObjectSerializer(OutputStream out, final KryoPool kryoPool) {
@@ -54,10 +69,73 @@ public class KryoObjectSerializer extends StreamSerializerSupport
 		output = new Output(out);
 		this.kryoPool = kryoPool;
 		input = null;
+		session = null;
+		generation = 0;
+		classDictionary = null;
+	}
+
+	/**
+	 * perform deserialize in session. input buffer and kryo instance provided by session.
+	 *
+	 * @param in
+	 * @param session
+	 */
+	public KryoObjectSerializer(InputStream in, final KryoSerializerSession session) {
+		this(in, session, null);
+	}
+
+	/**
+	 * perform deserialize in session with given class dictionary of stream.
+	 *
+	 * @param in
+	 * @param session
+	 * @param classDictionary
+	 */
+	public KryoObjectSerializer(InputStream in, final KryoSerializerSession session, final ClassDictionary classDictionary) {
+		super(in);
+		input = session.getInput();
+		this.session = session;
+		this.generation = session.getGeneration();
+		this.classDictionary = classDictionary;
+		kryoPool = null;
+		output = null;
+	}
+
+	/**
+	 * perform serialize in session. output buffer and kryo instance provided by session.
+	 *
+	 * @param out
+	 * @param session
+	 */
+	public KryoObjectSerializer(OutputStream out, final KryoSerializerSession session) {
+		this(out, session, null);
+	}
+
+	/**
+	 * perform serialize in session with given class dictionary of stream.
+	 *
+	 * @param out
+	 * @param session
+	 * @param classDictionary
+	 */
+	public KryoObjectSerializer(OutputStream out, final KryoSerializerSession session, final ClassDictionary classDictionary) {
+		super(out);
+		output = session.getOutput();
+		this.session = session;
+		this.generation = session.getGeneration();
+		this.classDictionary = classDictionary;
+		kryoPool = null;
+		input = null;
 	}
 
 	@Override
 	public Object readObject() throws IOException, ClassNotFoundException {
+		assertOpen();
+		if (null != classDictionary)
+			return readWithDictionary(Object.class);
+		if (null != session)
+			return typeUnkown ? session.getKryo().readClassAndObject(input)
+					: session.getKryo().readObject(input, Object.class);
 		return kryoPool.run(new KryoCallback<Object>() {
 			@Override
 			public Object execute(Kryo kryo) {
@@ -71,6 +149,11 @@ public class KryoObjectSerializer extends StreamSerializerSupport
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T readObject(final Class<T> cls) throws IOException, ClassNotFoundException {
+		assertOpen();
+		if (null != classDictionary)
+			return (T) readWithDictionary(cls);
+		if (null != session)
+			return typeUnkown ? (T) session.getKryo().readClassAndObject(input) : session.getKryo().readObject(input, cls);
 		return kryoPool.run(new KryoCallback<T>() {
 			@Override
 			public T execute(Kryo kryo) {
@@ -83,6 +166,18 @@ public class KryoObjectSerializer extends StreamSerializerSupport
 
 	@Override
 	public void writeObject(final Object obj) throws IOException {
+		assertOpen();
+		if (null != classDictionary) {
+			writeWithDictionary(obj);
+			return;
+		}
+		if (null != session) {
+			if (typeUnkown)
+				session.getKryo().writeClassAndObject(output, obj);
+			else
+				session.getKryo().writeObject(output, obj);
+			return;
+		}
 		kryoPool.run(new KryoCallback<Void>() {
 			@Override
 			public Void execute(Kryo kryo) {
@@ -96,13 +191,90 @@ public class KryoObjectSerializer extends StreamSerializerSupport
 
 	}
 
+	protected void writeWithDictionary(final Object obj) {
+		if (null == obj) {
+			output.writeVarInt(ClassDictionary.NULL_HANDLE, true);
+			return;
+		}
+		Kryo kryo = session.getKryo();
+		Class<?> type = obj.getClass();
+		int handle = classDictionary.handleOf(type);
+		if (handle < 0) {
+			output.writeVarInt(ClassDictionary.NEW_ENTRY, true);
+			output.writeVarInt(classDictionary.nextHandle(), true);
+			Registration registration = kryo.getClassResolver().getRegistration(type);
+			if (null != registration && registration.getId() >= 0) {
+				output.writeVarInt(registration.getId() + 1, true);
+			} else {
+				output.writeVarInt(0, true);
+				output.writeString(type.getName());
+			}
+			classDictionary.define(type);
+		} else
+			output.writeVarInt(handle, true);
+		kryo.writeObject(output, obj);
+	}
+
+	/**
+	 * read type handle (or definition) then object of that type.
+	 *
+	 * @param expectedType
+	 * @return
+	 * @throws KryoException if type read from stream not assignable to expected type.
+	 */
+	protected Object readWithDictionary(Class<?> expectedType) {
+		int handle = input.readVarInt(true);
+		if (handle == ClassDictionary.NULL_HANDLE)
+			return null;
+		Kryo kryo = session.getKryo();
+		Class<?> type;
+		if (handle == ClassDictionary.NEW_ENTRY) {
+			int definition = input.readVarInt(true);
+			int id = input.readVarInt(true);
+			if (id > 0) {
+				Registration registration = kryo.getRegistration(id - 1);
+				if (null == registration)
+					throw new KryoException("class not registered by id: " + (id - 1));
+				type = registration.getType();
+			} else
+				type = classDictionary.resolve(input.readString());
+			classDictionary.define(type, definition);
+		} else
+			type = classDictionary.classOf(handle);
+		if (!ClassUtils.isAssignable(expectedType, type))
+			throw new KryoException("expected type: " + expectedType.getName() + " but read: " + type.getName());
+		return kryo.readObject(input, type);
+	}
+
 	public void setTypeUnkown(boolean typeUnkown) {
 		this.typeUnkown = typeUnkown;
 	}
 
 	@Override
 	public void flushWrite() throws IOException {
+		assertOpen();
 		output.flush();
 	}
 
+	/**
+	 * close session (if in session mode) opened by this. underlying stream will not be closed.
+	 * closing again does nothing, used after closed fails with {@link IllegalStateException}
+	 * (buffers of session may be used by other stream).
+	 */
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		KryoSerializerSession opened = session;
+		session = null;
+		if (null != opened)
+			opened.close(generation);
+	}
+
+	protected void assertOpen() {
+		if (closed)
+			throw new IllegalStateException("serializer closed.");
+	}
+
 }
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.pool.KryoPool;
+import org.springframework.util.Assert;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+
+/**
+ * Pooled serializer session of {@link PooledKryoSerializerFactory}. holds one reusable {@link Input} and {@link Output}
+ * buffer shared by {@link KryoDataSerializer} and {@link KryoObjectSerializer} of same stream, and one {@link Kryo}
+ * instance borrowed from pool at first object read(write) and kept until session closed.<br>
+ * <b>NOTE: not thread safety, session must be closed after use, then kryo instance released to pool and session
+ * returned to session pool for reuse.</b>
+ * <p>
+ * generation of session increased by each close. holders close session by generation they opened ({@link #close(int)}),
+ * so that a stale holder (closed twice) never closes session reused by other stream.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class KryoSerializerSession implements Closeable {
+
+    private final KryoPool kryoPool;
+
+    private final Queue<KryoSerializerSession> sessionPool;
+
+    private final Input input;
+
+    private final Output output;
+
+    private Kryo kryo;
+
+    private boolean opened;
+
+    private int generation;
+
+    KryoSerializerSession(KryoPool kryoPool, Queue<KryoSerializerSession> sessionPool, int bufferSize) {
+        this.kryoPool = kryoPool;
+        this.sessionPool = sessionPool;
+        this.input = new Input(bufferSize);
+        this.output = new Output(bufferSize);
+    }
+
+    KryoSerializerSession open(InputStream in) {
+        Assert.state(!opened, "session already opened.");
+        input.setInputStream(in);
+        opened = true;
+        return this;
+    }
+
+    KryoSerializerSession open(OutputStream out) {
+        Assert.state(!opened, "session already opened.");
+        output.setOutputStream(out);
+        opened = true;
+        return this;
+    }
+
+    public Input getInput() {
+        return input;
+    }
+
+    public Output getOutput() {
+        return output;
+    }
+
+    /**
+     * kryo instance of this session, borrowed from pool at first call.
+     *
+     * @return
+     */
+    public Kryo getKryo() {
+        Assert.state(opened, "session closed.");
+        if (null == kryo)
+            kryo = kryoPool.borrow();
+        return kryo;
+    }
+
+    /**
+     * @return generation of this session, increased by each close.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * release borrowed kryo instance and return this session to pool. buffered output will not be flushed.
+     */
+    @Override
+    public void close() {
+        close(generation);
+    }
+
+    /**
+     * same as {@link #close()} if given generation is current generation, otherwise (closed already) ignored.
+     *
+     * @param generation generation of session when opened by caller.
+     */
+    public void close(int generation) {
+        if (!opened || generation != this.generation)
+            return;
+        opened = false;
+        this.generation++;
+        if (null != kryo) {
+            kryoPool.release(kryo);
+            kryo = null;
+        }
+        input.setInputStream(null);
+        output.setOutputStream(null);
+        sessionPool.offer(this);
+    }
+}
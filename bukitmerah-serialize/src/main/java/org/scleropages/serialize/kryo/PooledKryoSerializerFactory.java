@@ -26,6 +26,7 @@ import org.scleropages.serialize.DataObjectReader;
 import org.scleropages.serialize.DataObjectWriter;
 import org.scleropages.serialize.SerialIdRegistry;
 import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.spi.ClassDictionary;
 import org.scleropages.serialize.spi.CompositeSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,9 +43,12 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -71,8 +75,18 @@ public class PooledKryoSerializerFactory implements SerializerFactory<InputStrea
 
     private boolean references;
 
+    private boolean softReferences;
+
+    private int maxPoolSize = -1;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    private Queue<KryoSerializerSession> sessionPool;
+
     private AtomicBoolean initFlag = new AtomicBoolean(false);
 
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+
 
     public PooledKryoSerializerFactory() {
     }
@@ -96,6 +110,8 @@ public class PooledKryoSerializerFactory implements SerializerFactory<InputStrea
                 } catch (IOException e) {
                     throw new IllegalStateException(e);
                 }
+            /* pooled kryo instances created from registered entries, later registrations will not be visible to them. */
+            kryoRegistry.freeze();
             KryoFactory factory = new KryoFactory() {
                 public Kryo create() {
                     Kryo kryo = new Kryo();
@@ -107,7 +123,15 @@ public class PooledKryoSerializerFactory implements SerializerFactory<InputStrea
                 }
 
             };
-            this.kryoPool = new KryoPool.Builder(factory).build();
+            KryoPool.Builder builder = new KryoPool.Builder(factory);
+            if (softReferences)
+                builder.softReferences();
+            if (maxPoolSize > 0) {
+                builder.queue(new LinkedBlockingQueue<>(maxPoolSize));
+                this.sessionPool = new ArrayBlockingQueue<>(maxPoolSize);
+            } else
+                this.sessionPool = new ConcurrentLinkedQueue<>();
+            this.kryoPool = builder.build();
         }
     }
 
@@ -123,22 +147,86 @@ public class PooledKryoSerializerFactory implements SerializerFactory<InputStrea
         }
     }
 
+    /**
+     * returned reader served by a pooled {@link KryoSerializerSession}, must be closed ({@link java.io.Closeable}) after
+     * use to release session.
+     */
     @Override
     public DataObjectReader<InputStream> deserialize(InputStream r) {
-        if (!initFlag.get())
-            throw new IllegalStateException("call initFactory first.");
-        KryoDataSerializer dataSerializer = new KryoDataSerializer(r);
-        KryoObjectSerializer objectSerializer = new KryoObjectSerializer(r, kryoPool);
+        KryoSerializerSession session = openSession(r);
+        KryoDataSerializer dataSerializer = new KryoDataSerializer(r, session.getInput());
+        KryoObjectSerializer objectSerializer = new KryoObjectSerializer(r, session);
         return new CompositeSerializer<>(dataSerializer, objectSerializer);
     }
 
+    /**
+     * returned writer served by a pooled {@link KryoSerializerSession}, must be closed ({@link java.io.Closeable}) after
+     * use (and flushed) to release session.
+     */
     @Override
     public DataObjectWriter<OutputStream> serialize(OutputStream w) {
+        KryoSerializerSession session = openSession(w);
+        KryoDataSerializer dataSerializer = new KryoDataSerializer(w, session.getOutput());
+        KryoObjectSerializer objectSerializer = new KryoObjectSerializer(w, session);
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    /**
+     * same as {@link #deserialize(InputStream)} but object types resolved by given class dictionary of stream.
+     * dictionary must be kept by caller for whole life of stream (one per direction).
+     * unregistered types must be allowed by dictionary ({@link ClassDictionary#ClassDictionary(Class[])}).
+     *
+     * @param r
+     * @param classDictionary
+     * @return
+     */
+    public DataObjectReader<InputStream> deserialize(InputStream r, ClassDictionary classDictionary) {
+        KryoSerializerSession session = openSession(r);
+        KryoDataSerializer dataSerializer = new KryoDataSerializer(r, session.getInput());
+        KryoObjectSerializer objectSerializer = new KryoObjectSerializer(r, session, classDictionary);
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    /**
+     * same as {@link #serialize(OutputStream)} but object types written as handles of given class dictionary of stream.
+     * dictionary must be kept by caller for whole life of stream (one per direction).
+     *
+     * @param w
+     * @param classDictionary
+     * @return
+     */
+    public DataObjectWriter<OutputStream> serialize(OutputStream w, ClassDictionary classDictionary) {
+        KryoSerializerSession session = openSession(w);
+        KryoDataSerializer dataSerializer = new KryoDataSerializer(w, session.getOutput());
+        KryoObjectSerializer objectSerializer = new KryoObjectSerializer(w, session, classDictionary);
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    /**
+     * obtain a pooled session bound to given input stream.
+     *
+     * @param in
+     * @return
+     */
+    public KryoSerializerSession openSession(InputStream in) {
+        return obtainSession().open(in);
+    }
+
+    /**
+     * obtain a pooled session bound to given output stream.
+     *
+     * @param out
+     * @return
+     */
+    public KryoSerializerSession openSession(OutputStream out) {
+        return obtainSession().open(out);
+    }
+
+    protected KryoSerializerSession obtainSession() {
         if (!initFlag.get())
             throw new IllegalStateException("call initFactory first.");
-        KryoDataSerializer dataSerializer = new KryoDataSerializer(w);
-        KryoObjectSerializer objectSerializer = new KryoObjectSerializer(w, kryoPool);
-        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+        KryoSerializerSession session = sessionPool.poll();
+        return null != session ? session : new KryoSerializerSession(kryoPool, sessionPool, bufferSize);
     }
 
     @Override
@@ -233,6 +321,35 @@ public class PooledKryoSerializerFactory implements SerializerFactory<InputStrea
         this.references = references;
     }
 
+    /**
+     * if true, pooled kryo instances referenced by {@link java.lang.ref.SoftReference} and can be reclaimed under memory
+     * pressure. default is false.
+     *
+     * @param softReferences
+     */
+    public void setSoftReferences(boolean softReferences) {
+        this.softReferences = softReferences;
+    }
+
+    /**
+     * max idle kryo instances (and sessions) kept in pool. instances released to a full pool are discarded.
+     * default -1 (unbounded).
+     *
+     * @param maxPoolSize
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * input(output) buffer size of each session. default is {@link #DEFAULT_BUFFER_SIZE}
+     *
+     * @param bufferSize
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
     @Override
     public Set<Class<?>> serializableClassesSet() {
         return kryoRegistry.classesSet();
@@ -256,4 +373,16 @@ public class PooledKryoSerializerFactory implements SerializerFactory<InputStrea
     public SerialIdRegistry getClassRegistry() {
         return kryoRegistry;
     }
+
+    /**
+     * kryo pool of this factory. shared with other read(write) source type factories,
+     * such as {@link KryoByteBufferSerializerFactory} and {@link KryoByteBufSerializerFactory}.
+     *
+     * @return
+     */
+    public KryoPool getKryoPool() {
+        if (!initFlag.get())
+            throw new IllegalStateException("call initFactory first.");
+        return kryoPool;
+    }
 }
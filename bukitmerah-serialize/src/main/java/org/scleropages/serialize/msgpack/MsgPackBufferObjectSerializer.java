@@ -0,0 +1,102 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.msgpack;
+
+import org.scleropages.serialize.spi.ObjectSerializer;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * msgpack {@link ObjectSerializer} read from(write to) a buffer (jdk ByteBuffer or netty ByteBuf).
+ * packer(unpacker) bound to stream view of buffer, bytes encoded(decoded) into(from) buffer directly
+ * without intermediate byte array.
+ *
+ * @param <B> buffer type
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class MsgPackBufferObjectSerializer<B> implements ObjectSerializer<B, B> {
+
+    private final B buffer;
+
+    private final MsgPackObjectSerializer objectSerializer;
+
+    /**
+     * perform deserialize
+     *
+     * @param buffer          read source.
+     * @param in              stream view of buffer.
+     * @param msgPackRegistry
+     */
+    public MsgPackBufferObjectSerializer(B buffer, InputStream in, final MsgPackIdRegistry msgPackRegistry) {
+        this(buffer, in, msgPackRegistry, false);
+    }
+
+    public MsgPackBufferObjectSerializer(B buffer, InputStream in, final MsgPackIdRegistry msgPackRegistry, boolean streaming) {
+        Assert.notNull(buffer, "buffer must not be null.");
+        this.buffer = buffer;
+        this.objectSerializer = new MsgPackObjectSerializer(in, msgPackRegistry, streaming);
+    }
+
+    /**
+     * perform serialize
+     *
+     * @param buffer          write source.
+     * @param out             stream view of buffer.
+     * @param msgPackRegistry
+     */
+    public MsgPackBufferObjectSerializer(B buffer, OutputStream out, final MsgPackIdRegistry msgPackRegistry) {
+        this(buffer, out, msgPackRegistry, false);
+    }
+
+    public MsgPackBufferObjectSerializer(B buffer, OutputStream out, final MsgPackIdRegistry msgPackRegistry, boolean streaming) {
+        Assert.notNull(buffer, "buffer must not be null.");
+        this.buffer = buffer;
+        this.objectSerializer = new MsgPackObjectSerializer(out, msgPackRegistry, streaming);
+    }
+
+    @Override
+    public Object readObject() throws IOException, ClassNotFoundException {
+        return objectSerializer.readObject();
+    }
+
+    @Override
+    public <T> T readObject(Class<T> cls) throws IOException, ClassNotFoundException {
+        return objectSerializer.readObject(cls);
+    }
+
+    @Override
+    public void writeObject(Object obj) throws IOException {
+        objectSerializer.writeObject(obj);
+    }
+
+    @Override
+    public B getReadSource() {
+        return buffer;
+    }
+
+    @Override
+    public B getWriteSource() {
+        return buffer;
+    }
+
+    @Override
+    public void flushWrite() throws IOException {
+        objectSerializer.flushWrite();
+    }
+}
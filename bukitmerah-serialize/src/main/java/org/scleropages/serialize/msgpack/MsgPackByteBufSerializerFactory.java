@@ -0,0 +1,98 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.msgpack;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.scleropages.core.ComponentId;
+import org.scleropages.serialize.DataObjectReader;
+import org.scleropages.serialize.DataObjectWriter;
+import org.scleropages.serialize.SerialIdRegistry;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.netty.ByteBufSerializer;
+import org.scleropages.serialize.spi.CompositeSerializer;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.util.Set;
+
+/**
+ * msgpack {@link SerializerFactory} read from(write to) netty {@link ByteBuf} directly. class registry
+ * shared with given {@link MsgPackSerializerFactory}, data written by {@link ByteBufSerializer}.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class MsgPackByteBufSerializerFactory implements SerializerFactory<ByteBuf, ByteBuf>, ComponentId {
+
+    private final MsgPackSerializerFactory msgPackSerializerFactory;
+
+    public MsgPackByteBufSerializerFactory(MsgPackSerializerFactory msgPackSerializerFactory) {
+        Assert.notNull(msgPackSerializerFactory, "msgPackSerializerFactory must not be null.");
+        this.msgPackSerializerFactory = msgPackSerializerFactory;
+    }
+
+    @Override
+    public DataObjectReader<ByteBuf> deserialize(ByteBuf r) {
+        ByteBufSerializer dataSerializer = new ByteBufSerializer(r);
+        MsgPackBufferObjectSerializer<ByteBuf> objectSerializer = new MsgPackBufferObjectSerializer<>(r, new ByteBufInputStream(r), getMsgPackRegistry(), msgPackSerializerFactory.isStreaming());
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    @Override
+    public DataObjectWriter<ByteBuf> serialize(ByteBuf w) {
+        ByteBufSerializer dataSerializer = new ByteBufSerializer(w);
+        MsgPackBufferObjectSerializer<ByteBuf> objectSerializer = new MsgPackBufferObjectSerializer<>(w, new ByteBufOutputStream(w), getMsgPackRegistry(), msgPackSerializerFactory.isStreaming());
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    protected MsgPackIdRegistry getMsgPackRegistry() {
+        MsgPackIdRegistry msgPackRegistry = (MsgPackIdRegistry) msgPackSerializerFactory.getClassRegistry();
+        if (null == msgPackRegistry)
+            throw new IllegalStateException("call initFactory first.");
+        return msgPackRegistry;
+    }
+
+    @Override
+    public boolean supportSerialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(ByteBuf.class, clazz);
+    }
+
+    @Override
+    public boolean supportDeserialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(ByteBuf.class, clazz);
+    }
+
+    @Override
+    public Set<Class<?>> serializableClassesSet() {
+        return msgPackSerializerFactory.serializableClassesSet();
+    }
+
+    @Override
+    public byte factoryId() {
+        return msgPackSerializerFactory.factoryId();
+    }
+
+    @Override
+    public String id() {
+        return "msgpack-netty";
+    }
+
+    @Override
+    public SerialIdRegistry getClassRegistry() {
+        return msgPackSerializerFactory.getClassRegistry();
+    }
+}
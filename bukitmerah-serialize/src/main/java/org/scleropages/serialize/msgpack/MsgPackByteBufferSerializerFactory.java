@@ -0,0 +1,98 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.msgpack;
+
+import org.scleropages.core.ComponentId;
+import org.scleropages.serialize.DataObjectReader;
+import org.scleropages.serialize.DataObjectWriter;
+import org.scleropages.serialize.SerialIdRegistry;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.jdk.ByteBufferInputStream;
+import org.scleropages.serialize.jdk.ByteBufferOutputStream;
+import org.scleropages.serialize.jdk.ByteBufferSerializer;
+import org.scleropages.serialize.spi.CompositeSerializer;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * msgpack {@link SerializerFactory} read from(write to) {@link ByteBuffer} directly. class registry
+ * shared with given {@link MsgPackSerializerFactory}, data written by {@link ByteBufferSerializer}.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class MsgPackByteBufferSerializerFactory implements SerializerFactory<ByteBuffer, ByteBuffer>, ComponentId {
+
+    private final MsgPackSerializerFactory msgPackSerializerFactory;
+
+    public MsgPackByteBufferSerializerFactory(MsgPackSerializerFactory msgPackSerializerFactory) {
+        Assert.notNull(msgPackSerializerFactory, "msgPackSerializerFactory must not be null.");
+        this.msgPackSerializerFactory = msgPackSerializerFactory;
+    }
+
+    @Override
+    public DataObjectReader<ByteBuffer> deserialize(ByteBuffer r) {
+        ByteBufferSerializer dataSerializer = new ByteBufferSerializer(r);
+        MsgPackBufferObjectSerializer<ByteBuffer> objectSerializer = new MsgPackBufferObjectSerializer<>(r, new ByteBufferInputStream(r), getMsgPackRegistry(), msgPackSerializerFactory.isStreaming());
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    @Override
+    public DataObjectWriter<ByteBuffer> serialize(ByteBuffer w) {
+        ByteBufferSerializer dataSerializer = new ByteBufferSerializer(w);
+        MsgPackBufferObjectSerializer<ByteBuffer> objectSerializer = new MsgPackBufferObjectSerializer<>(w, new ByteBufferOutputStream(w), getMsgPackRegistry(), msgPackSerializerFactory.isStreaming());
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    protected MsgPackIdRegistry getMsgPackRegistry() {
+        MsgPackIdRegistry msgPackRegistry = (MsgPackIdRegistry) msgPackSerializerFactory.getClassRegistry();
+        if (null == msgPackRegistry)
+            throw new IllegalStateException("call initFactory first.");
+        return msgPackRegistry;
+    }
+
+    @Override
+    public boolean supportSerialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(ByteBuffer.class, clazz);
+    }
+
+    @Override
+    public boolean supportDeserialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(ByteBuffer.class, clazz);
+    }
+
+    @Override
+    public Set<Class<?>> serializableClassesSet() {
+        return msgPackSerializerFactory.serializableClassesSet();
+    }
+
+    @Override
+    public byte factoryId() {
+        return msgPackSerializerFactory.factoryId();
+    }
+
+    @Override
+    public String id() {
+        return "msgpack-nio";
+    }
+
+    @Override
+    public SerialIdRegistry getClassRegistry() {
+        return msgPackSerializerFactory.getClassRegistry();
+    }
+}
@@ -19,12 +19,35 @@ import org.scleropages.serialize.SerialIdRegistry;
 import org.springframework.util.Assert;
 
 import java.lang.annotation.Annotation;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public final class MsgPackIdRegistry extends SerialIdRegistry<Integer> {
 
+    private static final int MIN_SYSTEM_REGISTRATION_ID = 10;
+
+    /**
+     * register msgpack(0.6) template of registered class if true.
+     */
+    private final boolean packTemplates;
+
+    public MsgPackIdRegistry() {
+        this(true);
+    }
+
+    public MsgPackIdRegistry(boolean packTemplates) {
+        this.packTemplates = packTemplates;
+    }
 
     @Override
     protected Class<? extends Annotation> annotation() {
@@ -41,10 +64,83 @@ public final class MsgPackIdRegistry extends SerialIdRegistry<Integer> {
     @Override
     public void register(Class<?> clazz, Integer id) {
         super.register(clazz, id);
-        MsgPackSupport.register(clazz);
+        if (packTemplates)
+            MsgPackSupport.register(clazz);
     }
 
     public void registerWithoutPack(Class<?> clazz, Integer id) {
         super.register(clazz, id);
     }
+
+    /**
+     * register system default types. 0-100 reserved for system default.
+     */
+    public void registerSystemDefaults() {
+        int id = MIN_SYSTEM_REGISTRATION_ID;
+        registerWithoutPack(boolean.class, id++);
+        registerWithoutPack(Boolean.class, id++);
+        registerWithoutPack(byte.class, id++);
+        registerWithoutPack(Byte.class, id++);
+        registerWithoutPack(short.class, id++);
+        registerWithoutPack(Short.class, id++);
+        registerWithoutPack(int.class, id++);
+        registerWithoutPack(Integer.class, id++);
+        registerWithoutPack(long.class, id++);
+        registerWithoutPack(Long.class, id++);
+        registerWithoutPack(float.class, id++);
+        registerWithoutPack(Float.class, id++);
+        registerWithoutPack(double.class, id++);
+        registerWithoutPack(Double.class, id++);
+        registerWithoutPack(BigInteger.class, id++);
+        registerWithoutPack(char.class, id++);
+        registerWithoutPack(Character.class, id++);
+        registerWithoutPack(boolean[].class, id++);
+        registerWithoutPack(short[].class, id++);
+        registerWithoutPack(int[].class, id++);
+        registerWithoutPack(long[].class, id++);
+        registerWithoutPack(float[].class, id++);
+        registerWithoutPack(double[].class, id++);
+        registerWithoutPack(String.class, id++);
+        registerWithoutPack(byte[].class, id++);
+        registerWithoutPack(BigDecimal.class, id++);
+        registerWithoutPack(Date.class, id++);
+        /* collection types */
+        registerWithoutPack(Set.class, id++);
+        registerWithoutPack(Map.class, id++);
+        registerWithoutPack(List.class, id++);
+        registerWithoutPack(Collection.class, id++);
+    }
+
+    /**
+     * resolve id of given class. un-registered container class resolved as id of it's abstract type
+     * (iterator and stream sources as {@link List}).
+     *
+     * @param clazz
+     * @return
+     */
+    public Integer resolveId(Class<?> clazz) {
+        Integer id = get(clazz);
+        if (null != id)
+            return id;
+        Class<?> containerType = containerType(clazz);
+        Assert.notNull(containerType, "not found in msgpack registry by given class: " + clazz.getName()
+                + ". msgpack encoder must register customer types before use.");
+        return get(containerType);
+    }
+
+    /**
+     * @param clazz
+     * @return abstract container type of given class or null if not a container.
+     */
+    public static Class<?> containerType(Class<?> clazz) {
+        if (Map.class.isAssignableFrom(clazz))
+            return Map.class;
+        if (Set.class.isAssignableFrom(clazz))
+            return Set.class;
+        if (List.class.isAssignableFrom(clazz) || Iterator.class.isAssignableFrom(clazz) || Stream.class.isAssignableFrom(clazz))
+            return List.class;
+        if (Collection.class.isAssignableFrom(clazz))
+            return Collection.class;
+        return null;
+    }
 }
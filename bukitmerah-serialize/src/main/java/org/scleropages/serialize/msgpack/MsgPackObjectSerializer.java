@@ -21,6 +21,7 @@ import org.msgpack.template.Templates;
 import org.scleropages.core.util.Objects;
 import org.scleropages.core.util.Objects.CollectionInspection;
 import org.scleropages.core.util.Objects.MapInspection;
+import org.scleropages.serialize.spi.ClassDictionary;
 import org.scleropages.serialize.spi.ObjectSerializer;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
@@ -28,41 +29,104 @@ import org.springframework.util.ClassUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
+ * write registered id of object then object. collection and map require common element(key, value) type by default.
+ * <p>
+ * in streaming mode, container written as: size (-1 if unknown), elements (each map entry as key then value) and end mark.
+ * type of element tagged only if changed from previous one: nil followed by id of new type ({@link #NULL_ELEMENT} if null element).
+ * end mark is nil followed by {@link #END_OF_ELEMENTS}. {@link Iterator} and {@link Stream} source written as list.
+ * <p>
+ * in dictionary mode, each id above written as handle of a {@link ClassDictionary} instead.
+ * first use of a class defined by handle of definition then registered id or 0 followed by class name (unregistered types allowed if template available).
+ * class names resolved by {@link ClassDictionary#resolve(String)}, never loaded by name.
+ *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public class MsgPackObjectSerializer extends MsgPackSupport implements ObjectSerializer<InputStream, OutputStream> {
 
+    public static final int UNKNOWN_SIZE = -1;
+
+    public static final int END_OF_ELEMENTS = 0;
+
+    public static final int NULL_ELEMENT = -1;
+
     private final MsgPackIdRegistry msgPackRegistry;
 
+    private final boolean streaming;
+
+    private final ClassDictionary classDictionary;
+
 
     public MsgPackObjectSerializer(InputStream in, final MsgPackIdRegistry msgPackRegistry) {
+        this(in, msgPackRegistry, false);
+    }
+
+    public MsgPackObjectSerializer(OutputStream out, final MsgPackIdRegistry msgPackRegistry) {
+        this(out, msgPackRegistry, false);
+    }
+
+    public MsgPackObjectSerializer(InputStream in, final MsgPackIdRegistry msgPackRegistry, boolean streaming) {
+        this(in, msgPackRegistry, streaming, null);
+    }
+
+    public MsgPackObjectSerializer(OutputStream out, final MsgPackIdRegistry msgPackRegistry, boolean streaming) {
+        this(out, msgPackRegistry, streaming, null);
+    }
+
+    /**
+     * @param in
+     * @param msgPackRegistry
+     * @param streaming
+     * @param classDictionary class dictionary of stream. null if not in dictionary mode.
+     */
+    public MsgPackObjectSerializer(InputStream in, final MsgPackIdRegistry msgPackRegistry, boolean streaming, final ClassDictionary classDictionary) {
         super(in);
         this.msgPackRegistry = msgPackRegistry;
+        this.streaming = streaming;
+        this.classDictionary = classDictionary;
     }
 
-    public MsgPackObjectSerializer(OutputStream out, final MsgPackIdRegistry msgPackRegistry) {
+    /**
+     * @param out
+     * @param msgPackRegistry
+     * @param streaming
+     * @param classDictionary class dictionary of stream. null if not in dictionary mode.
+     */
+    public MsgPackObjectSerializer(OutputStream out, final MsgPackIdRegistry msgPackRegistry, boolean streaming, final ClassDictionary classDictionary) {
         super(out);
         this.msgPackRegistry = msgPackRegistry;
+        this.streaming = streaming;
+        this.classDictionary = classDictionary;
     }
 
     @Override
     public void writeObject(Object obj) throws IOException {
         assertPackMode();
-        if (obj instanceof Collection) {
+        if (streaming && null != MsgPackIdRegistry.containerType(obj.getClass())) {
+            Integer id = msgPackRegistry.resolveId(obj.getClass());
+            writeType(msgPackRegistry.get(id), id);
+            writeContainer(obj);
+        } else if (obj instanceof Iterator || obj instanceof Stream) {
+            throw new IllegalArgumentException("iterator or stream source only supported in streaming mode.");
+        } else if (obj instanceof Collection) {
             writeCollectionType((Collection<?>) obj);
         } else if (obj instanceof Map) {
             writeMapType((Map<?, ?>) obj);
         } else {
             Integer id = msgPackRegistry.get(obj.getClass());
-            Assert.notNull(id, "not found in msgpack registry by given class: " + obj.getClass().getName()
+            assertRegistered(id, "not found in msgpack registry by given class: " + obj.getClass().getName()
                     + ". msgpack encoder must register customer types before use.");
-            packer.write(id);
+            writeType(obj.getClass(), id);
             packer.write(obj);
         }
     }
@@ -72,11 +136,11 @@ public class MsgPackObjectSerializer extends MsgPackSupport implements ObjectSer
         if (inspection.commonElementType == null)
             throw new IllegalArgumentException("not allowed difference element type of collection.");
         Integer id = msgPackRegistry.get(inspection.abstractType);
-        Assert.notNull(id, inspection.abstractType + " must register before use.");
-        packer.write(id);
+        assertRegistered(id, inspection.abstractType + " must register before use.");
+        writeType(inspection.abstractType, id);
         id = msgPackRegistry.get(inspection.commonElementType);
-        Assert.notNull(id, inspection.commonElementType + " must register before use.");
-        packer.write(id);
+        assertRegistered(id, inspection.commonElementType + " must register before use.");
+        writeType(inspection.commonElementType, id);
         packer.write(obj);
     }
 
@@ -85,25 +149,217 @@ public class MsgPackObjectSerializer extends MsgPackSupport implements ObjectSer
         if (inspection.commonEntryType == null)
             throw new IllegalArgumentException("not allowed difference key or value type of map.");
         Integer id = msgPackRegistry.get(inspection.abstractType);
-        Assert.notNull(id, inspection.abstractType + " must register before use.");
-        packer.write(id);
+        assertRegistered(id, inspection.abstractType + " must register before use.");
+        writeType(inspection.abstractType, id);
         id = msgPackRegistry.get(inspection.commonEntryType.getKey());
-        Assert.notNull(id, inspection.commonEntryType.getKey() + " must register before use.");
-        packer.write(id);
+        assertRegistered(id, inspection.commonEntryType.getKey() + " must register before use.");
+        writeType(inspection.commonEntryType.getKey(), id);
         id = msgPackRegistry.get(inspection.commonEntryType.getValue());
-        Assert.notNull(id, inspection.commonEntryType.getValue() + " must register before use.");
-        packer.write(id);
+        assertRegistered(id, inspection.commonEntryType.getValue() + " must register before use.");
+        writeType(inspection.commonEntryType.getValue(), id);
         packer.write(map);
     }
 
+    /**
+     * unregistered types allowed in dictionary mode (defined by class name).
+     */
+    protected void assertRegistered(Integer id, String message) {
+        if (null == id && null == classDictionary)
+            throw new IllegalArgumentException(message);
+    }
+
+    /**
+     * write registered id of given type, or handle of given type if in dictionary mode.
+     *
+     * @param type
+     * @param id   registered id of type or null if not registered (dictionary mode only).
+     * @throws IOException
+     */
+    protected void writeType(Class<?> type, Integer id) throws IOException {
+        if (null == classDictionary) {
+            packer.write(id.intValue());
+            return;
+        }
+        int handle = classDictionary.handleOf(type);
+        if (handle > 0) {
+            packer.write(handle);
+            return;
+        }
+        packer.write(ClassDictionary.NEW_ENTRY);
+        packer.write(classDictionary.nextHandle());
+        if (null != id) {
+            packer.write(id.intValue());
+        } else {
+            packer.write(0);
+            packer.write(type.getName());
+        }
+        classDictionary.define(type);
+    }
+
+    /**
+     * resolve type by id (handle if in dictionary mode) written by {@link #writeType(Class, Integer)}.
+     *
+     * @param id
+     * @return resolved type or null if not found in registry.
+     * @throws IOException
+     */
+    protected Class<?> resolveType(int id) throws IOException {
+        if (null == classDictionary)
+            return msgPackRegistry.get(id);
+        if (id != ClassDictionary.NEW_ENTRY)
+            return classDictionary.classOf(id);
+        int definition = unpacker.readInt();
+        int registeredId = unpacker.readInt();
+        Class<?> type;
+        if (registeredId != 0) {
+            type = msgPackRegistry.get(registeredId);
+            Assert.notNull(type, registeredId + " not found from msgpack registry.");
+        } else
+            type = classDictionary.resolve(unpacker.readString());
+        classDictionary.define(type, definition);
+        return type;
+    }
+
+    protected void writeContainer(Object container) throws IOException {
+        if (container instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) container;
+            packer.write(map.size());
+            ElementWriter keyWriter = new ElementWriter();
+            ElementWriter valueWriter = new ElementWriter();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                keyWriter.write(entry.getKey());
+                valueWriter.write(entry.getValue());
+            }
+        } else {
+            Iterator<?> elements;
+            if (container instanceof Collection) {
+                packer.write(((Collection<?>) container).size());
+                elements = ((Collection<?>) container).iterator();
+            } else {
+                packer.write(UNKNOWN_SIZE);
+                elements = container instanceof Stream ? ((Stream<?>) container).iterator() : (Iterator<?>) container;
+            }
+            ElementWriter elementWriter = new ElementWriter();
+            while (elements.hasNext()) {
+                elementWriter.write(elements.next());
+            }
+        }
+        packer.writeNil();
+        packer.write(END_OF_ELEMENTS);
+    }
+
+    /**
+     * write elements of one sequence, type tag written only if element type changed.
+     */
+    private class ElementWriter {
+
+        private Class<?> lastType;
+
+        private Template lastTemplate;
+
+        private void write(Object element) throws IOException {
+            if (null == element) {
+                packer.writeNil();
+                packer.write(NULL_ELEMENT);
+                return;
+            }
+            Class<?> type = element.getClass();
+            if (type != lastType) {
+                Integer id = null;
+                Class<?> registered = type;
+                if (null == classDictionary || null != MsgPackIdRegistry.containerType(type) || null != msgPackRegistry.get(type)) {
+                    id = msgPackRegistry.resolveId(type);
+                    registered = msgPackRegistry.get(id);
+                }
+                packer.writeNil();
+                writeType(registered, id);
+                lastTemplate = MsgPackIdRegistry.containerType(registered) != null ? null : lookupTemplate(registered);
+                lastType = type;
+            }
+            if (null == lastTemplate)
+                writeContainer(element);
+            else
+                lastTemplate.write(packer, element);
+        }
+    }
+
+    protected Object readContainer(final Class<?> containerType) throws IOException {
+        int size = unpacker.readInt();
+        int initialCapacity = size < 0 ? 16 : size;
+        ElementReader elementReader = new ElementReader();
+        if (ClassUtils.isAssignable(Map.class, containerType)) {
+            Map<Object, Object> map = new HashMap<>(Math.max((int) (initialCapacity / .75f) + 1, 16));
+            ElementReader valueReader = new ElementReader();
+            while (elementReader.next()) {
+                Object key = elementReader.read();
+                valueReader.next();
+                map.put(key, valueReader.read());
+            }
+            return map;
+        }
+        Collection<Object> collection = ClassUtils.isAssignable(Set.class, containerType) ?
+                new HashSet<>(Math.max((int) (initialCapacity / .75f) + 1, 16)) : new ArrayList<>(initialCapacity);
+        while (elementReader.next()) {
+            collection.add(elementReader.read());
+        }
+        return collection;
+    }
+
+    /**
+     * read elements of one sequence written by {@link ElementWriter}.
+     */
+    private class ElementReader {
+
+        private Class<?> type;
+
+        private Template<?> template;
+
+        private boolean nullElement;
+
+        /**
+         * @return false if end of elements.
+         */
+        private boolean next() throws IOException {
+            nullElement = false;
+            if (!unpacker.trySkipNil())
+                return true;
+            int id = unpacker.readInt();
+            if (id == END_OF_ELEMENTS)
+                return false;
+            if (id == NULL_ELEMENT) {
+                nullElement = true;
+                return true;
+            }
+            type = resolveType(id);
+            Assert.notNull(type, id + " not found from msgpack registry.");
+            template = MsgPackIdRegistry.containerType(type) != null ? null : lookupTemplate(type);
+            return true;
+        }
+
+        private Object read() throws IOException {
+            if (nullElement)
+                return null;
+            Assert.notNull(type, "missing element type tag.");
+            return null == template ? readContainer(type) : unpacker.read(template);
+        }
+    }
+
+    protected Template lookupTemplate(Class<?> type) {
+        Template<?> template = messagePack.lookup(type);
+        Assert.notNull(template, "template not register by given type: " + type);
+        return template;
+    }
+
     @Override
     public Object readObject() throws IOException, ClassNotFoundException {
         assertUnPackMode();
         int id = unpacker.readInt();
-        Class<?> clazz = msgPackRegistry.get(id);
+        Class<?> clazz = resolveType(id);
         Assert.notNull(clazz, "clazz not found in msgpack registry by given id: " + id
                 + ". msgpack encoder must register customer types before use.");
-        if (ClassUtils.isAssignable(Collection.class, clazz)) {
+        if (streaming && null != MsgPackIdRegistry.containerType(clazz)) {
+            return readContainer(clazz);
+        } else if (ClassUtils.isAssignable(Collection.class, clazz)) {
             return readCollectionType(clazz);
         } else if (ClassUtils.isAssignable(Map.class, clazz)) {
             return readMapType(clazz);
@@ -134,7 +390,7 @@ public class MsgPackObjectSerializer extends MsgPackSupport implements ObjectSer
 
     protected Template<?> getElementTemplate() throws IOException {
         int id = unpacker.readInt();
-        Class<?> elementType = msgPackRegistry.get(id);
+        Class<?> elementType = resolveType(id);
         Assert.notNull(elementType, id + " not found from msgpack registry.");
         Template<?> elementTempate = messagePack.lookup(elementType);
         Assert.notNull(elementTempate, "elementTempate not register by given type: " + elementType);
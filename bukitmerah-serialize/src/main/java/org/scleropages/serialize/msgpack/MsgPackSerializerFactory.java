@@ -21,6 +21,7 @@ import org.scleropages.serialize.DataObjectReader;
 import org.scleropages.serialize.DataObjectWriter;
 import org.scleropages.serialize.SerialIdRegistry;
 import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.spi.ClassDictionary;
 import org.scleropages.serialize.spi.CompositeSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,12 +32,6 @@ import org.springframework.util.StringUtils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.util.Collection;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -52,6 +47,8 @@ public class MsgPackSerializerFactory implements SerializerFactory<InputStream,
 
     private MsgPackIdRegistry msgPackRegistry;
 
+    private boolean streaming = false;
+
     public MsgPackSerializerFactory() {
 
     }
@@ -85,51 +82,8 @@ public class MsgPackSerializerFactory implements SerializerFactory<InputStream,
         }
     }
 
-    private static final short MAX_SYSTEM_REGISTRATION_ID = 100;
-    private static final short MIN_SYSTEM_REGISTRATION_ID = 10;
-
-    private int x = MIN_SYSTEM_REGISTRATION_ID;
-
-    protected int nextId() {
-        if (x == MAX_SYSTEM_REGISTRATION_ID)
-            x = MIN_SYSTEM_REGISTRATION_ID;
-        return x++;
-    }
-
     private void registerSystemDefaults() {
-        /* 0-100 used for this method register system default. */
-        msgPackRegistry.registerWithoutPack(boolean.class, nextId());
-        msgPackRegistry.registerWithoutPack(Boolean.class, nextId());
-        msgPackRegistry.registerWithoutPack(byte.class, nextId());
-        msgPackRegistry.registerWithoutPack(Byte.class, nextId());
-        msgPackRegistry.registerWithoutPack(short.class, nextId());
-        msgPackRegistry.registerWithoutPack(Short.class, nextId());
-        msgPackRegistry.registerWithoutPack(int.class, nextId());
-        msgPackRegistry.registerWithoutPack(Integer.class, nextId());
-        msgPackRegistry.registerWithoutPack(long.class, nextId());
-        msgPackRegistry.registerWithoutPack(Long.class, nextId());
-        msgPackRegistry.registerWithoutPack(float.class, nextId());
-        msgPackRegistry.registerWithoutPack(Float.class, nextId());
-        msgPackRegistry.registerWithoutPack(double.class, nextId());
-        msgPackRegistry.registerWithoutPack(Double.class, nextId());
-        msgPackRegistry.registerWithoutPack(BigInteger.class, nextId());
-        msgPackRegistry.registerWithoutPack(char.class, nextId());
-        msgPackRegistry.registerWithoutPack(Character.class, nextId());
-        msgPackRegistry.registerWithoutPack(boolean[].class, nextId());
-        msgPackRegistry.registerWithoutPack(short[].class, nextId());
-        msgPackRegistry.registerWithoutPack(int[].class, nextId());
-        msgPackRegistry.registerWithoutPack(long[].class, nextId());
-        msgPackRegistry.registerWithoutPack(float[].class, nextId());
-        msgPackRegistry.registerWithoutPack(double[].class, nextId());
-        msgPackRegistry.registerWithoutPack(String.class, nextId());
-        msgPackRegistry.registerWithoutPack(byte[].class, nextId());
-        msgPackRegistry.registerWithoutPack(BigDecimal.class, nextId());
-        msgPackRegistry.registerWithoutPack(Date.class, nextId());
-        /* collection types */
-        msgPackRegistry.registerWithoutPack(Set.class, nextId());
-        msgPackRegistry.registerWithoutPack(Map.class, nextId());
-        msgPackRegistry.registerWithoutPack(List.class, nextId());
-        msgPackRegistry.registerWithoutPack(Collection.class, nextId());
+        msgPackRegistry.registerSystemDefaults();
     }
 
     @Override
@@ -138,7 +92,7 @@ public class MsgPackSerializerFactory implements SerializerFactory<InputStream,
             throw new IllegalStateException("call initFactory first.");
         // StreamSerializer dataSerializer = new StreamSerializer(r);
         MsgPackDataSerializer dataSerializer = new MsgPackDataSerializer(r);
-        MsgPackObjectSerializer msgPackObjectSerializer = new MsgPackObjectSerializer(r, msgPackRegistry);
+        MsgPackObjectSerializer msgPackObjectSerializer = new MsgPackObjectSerializer(r, msgPackRegistry, streaming);
         return new CompositeSerializer<>(dataSerializer, msgPackObjectSerializer);
     }
 
@@ -148,7 +102,40 @@ public class MsgPackSerializerFactory implements SerializerFactory<InputStream,
             throw new IllegalStateException("call initFactory first.");
         // StreamSerializer dataSerializer = new StreamSerializer(w);
         MsgPackDataSerializer dataSerializer = new MsgPackDataSerializer(w);
-        MsgPackObjectSerializer msgPackObjectSerializer = new MsgPackObjectSerializer(w, msgPackRegistry);
+        MsgPackObjectSerializer msgPackObjectSerializer = new MsgPackObjectSerializer(w, msgPackRegistry, streaming);
+        return new CompositeSerializer<>(dataSerializer, msgPackObjectSerializer);
+    }
+
+    /**
+     * same as {@link #deserialize(InputStream)} but object types resolved by given class dictionary of stream.
+     * dictionary must be kept by caller for whole life of stream (one per direction).
+     * unregistered types must be allowed by dictionary ({@link ClassDictionary#ClassDictionary(Class[])}).
+     *
+     * @param r
+     * @param classDictionary
+     * @return
+     */
+    public DataObjectReader<InputStream> deserialize(InputStream r, ClassDictionary classDictionary) {
+        if (!initFlag.get())
+            throw new IllegalStateException("call initFactory first.");
+        MsgPackDataSerializer dataSerializer = new MsgPackDataSerializer(r);
+        MsgPackObjectSerializer msgPackObjectSerializer = new MsgPackObjectSerializer(r, msgPackRegistry, streaming, classDictionary);
+        return new CompositeSerializer<>(dataSerializer, msgPackObjectSerializer);
+    }
+
+    /**
+     * same as {@link #serialize(OutputStream)} but object types written as handles of given class dictionary of stream.
+     * dictionary must be kept by caller for whole life of stream (one per direction).
+     *
+     * @param w
+     * @param classDictionary
+     * @return
+     */
+    public DataObjectWriter<OutputStream> serialize(OutputStream w, ClassDictionary classDictionary) {
+        if (!initFlag.get())
+            throw new IllegalStateException("call initFactory first.");
+        MsgPackDataSerializer dataSerializer = new MsgPackDataSerializer(w);
+        MsgPackObjectSerializer msgPackObjectSerializer = new MsgPackObjectSerializer(w, msgPackRegistry, streaming, classDictionary);
         return new CompositeSerializer<>(dataSerializer, msgPackObjectSerializer);
     }
 
@@ -166,6 +153,20 @@ public class MsgPackSerializerFactory implements SerializerFactory<InputStream,
         this.basePackageToScan = basePackageToScan;
     }
 
+    /**
+     * write collection and map elements directly with run-length type tags instead of inspecting common element type.
+     * not compatible with payloads written by non-streaming mode.
+     *
+     * @param streaming
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
     @Override
     public Set<Class<?>> serializableClassesSet() {
         return msgPackRegistry.classesSet();
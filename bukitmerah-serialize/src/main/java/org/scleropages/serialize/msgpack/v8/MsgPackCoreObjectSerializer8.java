@@ -0,0 +1,335 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.msgpack.v8;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.scleropages.serialize.msgpack.MsgPackIdRegistry;
+import org.scleropages.serialize.spi.ObjectSerializer;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.scleropages.serialize.msgpack.MsgPackObjectSerializer.END_OF_ELEMENTS;
+import static org.scleropages.serialize.msgpack.MsgPackObjectSerializer.NULL_ELEMENT;
+import static org.scleropages.serialize.msgpack.MsgPackObjectSerializer.UNKNOWN_SIZE;
+
+/**
+ * msgpack-core based object serializer. write registered id of object then object, containers always streamed with
+ * run-length type tags (same layout as streaming mode of {@link org.scleropages.serialize.msgpack.MsgPackObjectSerializer}).
+ * <p>
+ * primitive wrappers, {@link String}, {@link BigInteger} and byte[] packed as msgpack values, other types packed as
+ * binary encoded by jackson.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class MsgPackCoreObjectSerializer8 extends MsgPackSupport8 implements ObjectSerializer<InputStream, OutputStream> {
+
+    private static final int CONTAINER = 0;
+    private static final int BOOLEAN = 1;
+    private static final int BYTE = 2;
+    private static final int SHORT = 3;
+    private static final int INT = 4;
+    private static final int LONG = 5;
+    private static final int FLOAT = 6;
+    private static final int DOUBLE = 7;
+    private static final int BIG_INTEGER = 8;
+    private static final int CHAR = 9;
+    private static final int STRING = 10;
+    private static final int BYTES = 11;
+    private static final int JACKSON = 12;
+
+    private final MsgPackIdRegistry msgPackRegistry;
+
+    private final ObjectMapper objectMapper;
+
+
+    public MsgPackCoreObjectSerializer8(InputStream in, MessageUnpacker messageUnpacker, MsgPackIdRegistry msgPackRegistry, ObjectMapper objectMapper) {
+        super(in, messageUnpacker);
+        this.msgPackRegistry = msgPackRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    public MsgPackCoreObjectSerializer8(OutputStream out, MessagePacker messagePacker, MsgPackIdRegistry msgPackRegistry, ObjectMapper objectMapper) {
+        super(out, messagePacker);
+        this.msgPackRegistry = msgPackRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void writeObject(Object obj) throws IOException {
+        assertPackMode();
+        int id = msgPackRegistry.resolveId(obj.getClass());
+        messagePacker.packInt(id);
+        writeValue(codecOf(msgPackRegistry.get(id)), obj);
+    }
+
+    @Override
+    public Object readObject() throws IOException, ClassNotFoundException {
+        return readObject(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T readObject(Class<T> cls) throws IOException, ClassNotFoundException {
+        assertUnPackMode();
+        int id = messageUnpacker.unpackInt();
+        Class<?> clazz = msgPackRegistry.get(id);
+        Assert.notNull(clazz, "clazz not found in msgpack registry by given id: " + id
+                + ". msgpack encoder must register customer types before use.");
+        if (null != cls && !ClassUtils.isAssignable(cls, clazz))
+            throw new IllegalArgumentException("expected class type not match by given class: " + cls + " and actual is :" + clazz);
+        return (T) readValue(codecOf(clazz), clazz);
+    }
+
+    protected void writeContainer(Object container) throws IOException {
+        if (container instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) container;
+            messagePacker.packInt(map.size());
+            ElementWriter keyWriter = new ElementWriter();
+            ElementWriter valueWriter = new ElementWriter();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                keyWriter.write(entry.getKey());
+                valueWriter.write(entry.getValue());
+            }
+        } else {
+            Iterator<?> elements;
+            if (container instanceof Collection) {
+                messagePacker.packInt(((Collection<?>) container).size());
+                elements = ((Collection<?>) container).iterator();
+            } else {
+                messagePacker.packInt(UNKNOWN_SIZE);
+                elements = container instanceof Stream ? ((Stream<?>) container).iterator() : (Iterator<?>) container;
+            }
+            ElementWriter elementWriter = new ElementWriter();
+            while (elements.hasNext()) {
+                elementWriter.write(elements.next());
+            }
+        }
+        messagePacker.packNil();
+        messagePacker.packInt(END_OF_ELEMENTS);
+    }
+
+    protected Object readContainer(Class<?> containerType) throws IOException {
+        int size = messageUnpacker.unpackInt();
+        int initialCapacity = size < 0 ? 16 : size;
+        ElementReader elementReader = new ElementReader();
+        if (ClassUtils.isAssignable(Map.class, containerType)) {
+            Map<Object, Object> map = new HashMap<>(Math.max((int) (initialCapacity / .75f) + 1, 16));
+            ElementReader valueReader = new ElementReader();
+            while (elementReader.next()) {
+                Object key = elementReader.read();
+                valueReader.next();
+                map.put(key, valueReader.read());
+            }
+            return map;
+        }
+        Collection<Object> collection = ClassUtils.isAssignable(Set.class, containerType) ?
+                new HashSet<>(Math.max((int) (initialCapacity / .75f) + 1, 16)) : new ArrayList<>(initialCapacity);
+        while (elementReader.next()) {
+            collection.add(elementReader.read());
+        }
+        return collection;
+    }
+
+    /**
+     * write elements of one sequence, type tag written only if element type changed.
+     */
+    private class ElementWriter {
+
+        private Class<?> lastType;
+
+        private int codec;
+
+        private void write(Object element) throws IOException {
+            if (null == element) {
+                messagePacker.packNil();
+                messagePacker.packInt(NULL_ELEMENT);
+                return;
+            }
+            Class<?> type = element.getClass();
+            if (type != lastType) {
+                int id = msgPackRegistry.resolveId(type);
+                messagePacker.packNil();
+                messagePacker.packInt(id);
+                codec = codecOf(msgPackRegistry.get(id));
+                lastType = type;
+            }
+            writeValue(codec, element);
+        }
+    }
+
+    /**
+     * read elements of one sequence written by {@link ElementWriter}.
+     */
+    private class ElementReader {
+
+        private Class<?> type;
+
+        private int codec;
+
+        private boolean nullElement;
+
+        /**
+         * @return false if end of elements.
+         */
+        private boolean next() throws IOException {
+            nullElement = false;
+            if (messageUnpacker.getNextFormat() != MessageFormat.NIL)
+                return true;
+            messageUnpacker.unpackNil();
+            int id = messageUnpacker.unpackInt();
+            if (id == END_OF_ELEMENTS)
+                return false;
+            if (id == NULL_ELEMENT) {
+                nullElement = true;
+                return true;
+            }
+            type = msgPackRegistry.get(id);
+            Assert.notNull(type, id + " not found from msgpack registry.");
+            codec = codecOf(type);
+            return true;
+        }
+
+        private Object read() throws IOException {
+            if (nullElement)
+                return null;
+            Assert.notNull(type, "missing element type tag.");
+            return readValue(codec, type);
+        }
+    }
+
+    protected void writeValue(int codec, Object value) throws IOException {
+        switch (codec) {
+            case CONTAINER:
+                writeContainer(value);
+                break;
+            case BOOLEAN:
+                messagePacker.packBoolean((Boolean) value);
+                break;
+            case BYTE:
+                messagePacker.packByte((Byte) value);
+                break;
+            case SHORT:
+                messagePacker.packShort((Short) value);
+                break;
+            case INT:
+                messagePacker.packInt((Integer) value);
+                break;
+            case LONG:
+                messagePacker.packLong((Long) value);
+                break;
+            case FLOAT:
+                messagePacker.packFloat((Float) value);
+                break;
+            case DOUBLE:
+                messagePacker.packDouble((Double) value);
+                break;
+            case BIG_INTEGER:
+                messagePacker.packBigInteger((BigInteger) value);
+                break;
+            case CHAR:
+                messagePacker.packInt((Character) value);
+                break;
+            case STRING:
+                messagePacker.packString((String) value);
+                break;
+            case BYTES:
+                byte[] bytes = (byte[]) value;
+                messagePacker.packBinaryHeader(bytes.length);
+                messagePacker.writePayload(bytes);
+                break;
+            default:
+                bytes = objectMapper.writeValueAsBytes(value);
+                messagePacker.packBinaryHeader(bytes.length);
+                messagePacker.writePayload(bytes);
+        }
+    }
+
+    protected Object readValue(int codec, Class<?> type) throws IOException {
+        switch (codec) {
+            case CONTAINER:
+                return readContainer(type);
+            case BOOLEAN:
+                return messageUnpacker.unpackBoolean();
+            case BYTE:
+                return messageUnpacker.unpackByte();
+            case SHORT:
+                return messageUnpacker.unpackShort();
+            case INT:
+                return messageUnpacker.unpackInt();
+            case LONG:
+                return messageUnpacker.unpackLong();
+            case FLOAT:
+                return messageUnpacker.unpackFloat();
+            case DOUBLE:
+                return messageUnpacker.unpackDouble();
+            case BIG_INTEGER:
+                return messageUnpacker.unpackBigInteger();
+            case CHAR:
+                return (char) messageUnpacker.unpackInt();
+            case STRING:
+                return messageUnpacker.unpackString();
+            case BYTES:
+                return messageUnpacker.readPayload(messageUnpacker.unpackBinaryHeader());
+            default:
+                return objectMapper.readValue(messageUnpacker.readPayload(messageUnpacker.unpackBinaryHeader()), type);
+        }
+    }
+
+    private static int codecOf(Class<?> type) {
+        if (null != MsgPackIdRegistry.containerType(type))
+            return CONTAINER;
+        type = ClassUtils.resolvePrimitiveIfNecessary(type);
+        if (type == Boolean.class)
+            return BOOLEAN;
+        if (type == Byte.class)
+            return BYTE;
+        if (type == Short.class)
+            return SHORT;
+        if (type == Integer.class)
+            return INT;
+        if (type == Long.class)
+            return LONG;
+        if (type == Float.class)
+            return FLOAT;
+        if (type == Double.class)
+            return DOUBLE;
+        if (type == BigInteger.class)
+            return BIG_INTEGER;
+        if (type == Character.class)
+            return CHAR;
+        if (type == String.class)
+            return STRING;
+        if (type == byte[].class)
+            return BYTES;
+        return JACKSON;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.msgpack.v8;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.scleropages.core.ComponentId;
+import org.scleropages.core.util.ClassPathScanner;
+import org.scleropages.serialize.DataObjectReader;
+import org.scleropages.serialize.DataObjectWriter;
+import org.scleropages.serialize.SerialIdRegistry;
+import org.scleropages.serialize.SerializerFactory;
+import org.scleropages.serialize.msgpack.MsgPackId;
+import org.scleropages.serialize.msgpack.MsgPackIdRegistry;
+import org.scleropages.serialize.spi.CompositeSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * msgpack-core(0.8) based factory with {@link MsgPackId} registry. collections, maps and iterator(stream) sources streamed
+ * without inspecting elements. see {@link MsgPackCoreObjectSerializer8}.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class MsgPackCoreSerializerFactory8 implements SerializerFactory<InputStream, OutputStream>, ComponentId {
+
+    protected Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    private String basePackageToScan;
+
+    private MsgPackIdRegistry msgPackRegistry;
+
+    private AtomicBoolean initFlag = new AtomicBoolean(false);
+
+    public synchronized void initFactory() {
+        if (initFlag.compareAndSet(false, true)) {
+            msgPackRegistry = new MsgPackIdRegistry(false);
+            msgPackRegistry.registerSystemDefaults();
+            if (StringUtils.hasText(basePackageToScan)) {
+                try {
+                    ClassPathScanner.scanClasses(basePackageToScan, new ClassPathScanner.ScanListener() {
+                        @Override
+                        public void onMatch(MetadataReader metadataReader) {
+                            try {
+                                Entry<Integer, Class<?>> entry = msgPackRegistry
+                                        .register(metadataReader.getClassMetadata().getClassName());
+                                logger.debug("registered [{}] as [{}] to msgpack registry.", entry.getValue().getName(),
+                                        entry.getKey());
+                            } catch (ClassNotFoundException | LinkageError e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }
+                    }, MsgPackId.class, false);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public DataObjectReader<InputStream> deserialize(InputStream r) {
+        if (!initFlag.get())
+            throw new IllegalStateException("call initFactory first.");
+        MessageUnpacker messageUnpacker = MessagePack.newDefaultUnpacker(r);
+        MsgPackDataSerializer8 dataSerializer = new MsgPackDataSerializer8(r, messageUnpacker);
+        MsgPackCoreObjectSerializer8 objectSerializer = new MsgPackCoreObjectSerializer8(r, messageUnpacker, msgPackRegistry, objectMapper);
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    @Override
+    public DataObjectWriter<OutputStream> serialize(OutputStream w) {
+        if (!initFlag.get())
+            throw new IllegalStateException("call initFactory first.");
+        MessagePacker messagePacker = MessagePack.newDefaultPacker(w);
+        MsgPackDataSerializer8 dataSerializer = new MsgPackDataSerializer8(w, messagePacker);
+        MsgPackCoreObjectSerializer8 objectSerializer = new MsgPackCoreObjectSerializer8(w, messagePacker, msgPackRegistry, objectMapper);
+        return new CompositeSerializer<>(dataSerializer, objectSerializer);
+    }
+
+    @Override
+    public boolean supportSerialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(OutputStream.class, clazz);
+    }
+
+    @Override
+    public boolean supportDeserialize(Class<?> clazz) {
+        return ClassUtils.isAssignable(InputStream.class, clazz);
+    }
+
+    public void setBasePackageToScan(String basePackageToScan) {
+        this.basePackageToScan = basePackageToScan;
+    }
+
+    @Override
+    public Set<Class<?>> serializableClassesSet() {
+        return msgPackRegistry.classesSet();
+    }
+
+    @Override
+    public byte factoryId() {
+        return 0x06;
+    }
+
+    @Override
+    public String id() {
+        return "msgpack-core";
+    }
+
+    @Override
+    public SerialIdRegistry getClassRegistry() {
+        return msgPackRegistry;
+    }
+}
@@ -16,6 +16,8 @@
  */
 package org.scleropages.serialize.msgpack.v8;
 
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
 import org.scleropages.serialize.spi.DataSerializer;
 
 import java.io.IOException;
@@ -36,6 +38,14 @@ public class MsgPackDataSerializer8 extends MsgPackSupport8 implements DataSeria
 		super(out);
 	}
 
+	public MsgPackDataSerializer8(InputStream in, MessageUnpacker messageUnpacker) {
+		super(in, messageUnpacker);
+	}
+
+	public MsgPackDataSerializer8(OutputStream out, MessagePacker messagePacker) {
+		super(out, messagePacker);
+	}
+
 	@Override
 	public boolean readBool() throws IOException {
 		assertUnPackMode();
@@ -41,8 +41,18 @@ public class MsgPackSupport8 extends StreamSerializerSupport{
 	 * @param in
 	 */
 	public MsgPackSupport8(InputStream in) {
+		this(in, MessagePack.newDefaultUnpacker(in));
+	}
+
+	/**
+	 * perform deserialize. given unpacker may shared with other serializers of same stream.
+	 * 
+	 * @param in
+	 * @param messageUnpacker
+	 */
+	public MsgPackSupport8(InputStream in, MessageUnpacker messageUnpacker) {
 		super(in);
-		this.messageUnpacker = MessagePack.newDefaultUnpacker(in);
+		this.messageUnpacker = messageUnpacker;
 		this.messagePacker = null;
 	}
 
@@ -52,8 +62,18 @@ public class MsgPackSupport8 extends StreamSerializerSupport{
 	 * @param in
 	 */
 	public MsgPackSupport8(OutputStream out) {
+		this(out, MessagePack.newDefaultPacker(out));
+	}
+
+	/**
+	 * perform serialize. given packer may shared with other serializers of same stream.
+	 * 
+	 * @param out
+	 * @param messagePacker
+	 */
+	public MsgPackSupport8(OutputStream out, MessagePacker messagePacker) {
 		super(out);
-		this.messagePacker = MessagePack.newDefaultPacker(out);
+		this.messagePacker = messagePacker;
 		this.messageUnpacker = null;
 	}
 	
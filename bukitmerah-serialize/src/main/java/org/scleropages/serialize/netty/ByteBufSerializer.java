@@ -17,6 +17,8 @@
 package org.scleropages.serialize.netty;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.CharsetUtil;
 import org.scleropages.serialize.spi.DataSerializer;
 
 import java.io.IOException;
@@ -28,6 +30,8 @@ import java.io.IOException;
  */
 public class ByteBufSerializer implements DataSerializer<ByteBuf, ByteBuf> {
 
+	private static final int NULL_LENGTH = -1;
+
 	private final ByteBuf byteBuffer;
 
 	public ByteBufSerializer(ByteBuf byteBuffer) {
@@ -69,11 +73,15 @@ public class ByteBufSerializer implements DataSerializer<ByteBuf, ByteBuf> {
 		return byteBuffer.readDouble();
 	}
 
+	/**
+	 * read a length-prefixed(int) utf-8 string. -1 length as null.
+	 */
 	@Override
 	public String readUTF() throws IOException {
-		byte[] bytes = new byte[4];
-		byteBuffer.readBytes(bytes);
-		return new String(bytes, "utf-8");
+		int length = byteBuffer.readInt();
+		if (length == NULL_LENGTH)
+			return null;
+		return byteBuffer.readCharSequence(length, CharsetUtil.UTF_8).toString();
 	}
 
 	@Override
@@ -115,9 +123,17 @@ public class ByteBufSerializer implements DataSerializer<ByteBuf, ByteBuf> {
 	public void flushWrite() throws IOException {
 	}
 
+	/**
+	 * write a length-prefixed(int) utf-8 string. null written as -1 length.
+	 */
 	@Override
 	public void writeUTF(String v) throws IOException {
-		byteBuffer.writeBytes(v.getBytes("utf-8"));
+		if (v == null) {
+			byteBuffer.writeInt(NULL_LENGTH);
+			return;
+		}
+		byteBuffer.writeInt(ByteBufUtil.utf8Bytes(v));
+		ByteBufUtil.writeUtf8(byteBuffer, v);
 	}
 
 	public void close() throws IOException {
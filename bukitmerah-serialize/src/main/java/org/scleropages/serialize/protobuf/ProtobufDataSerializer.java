@@ -18,6 +18,8 @@ package org.scleropages.serialize.protobuf;
 
 import com.google.common.primitives.Chars;
 import com.google.common.primitives.Shorts;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import org.scleropages.serialize.spi.DataSerializer;
 
 import java.io.IOException;
@@ -41,6 +43,14 @@ public class ProtobufDataSerializer extends ProtobufSupport implements DataSeria
 		super(out);
 	}
 
+	public ProtobufDataSerializer(InputStream in, CodedInputStream input) {
+		super(in, input);
+	}
+
+	public ProtobufDataSerializer(OutputStream out, CodedOutputStream output) {
+		super(out, output);
+	}
+
 	@Override
 	public boolean readBool() throws IOException {
 		assertInReadMode();
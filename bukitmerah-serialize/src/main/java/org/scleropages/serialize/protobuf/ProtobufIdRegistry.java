@@ -16,18 +16,30 @@
  */
 package org.scleropages.serialize.protobuf;
 
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
 import org.scleropages.serialize.SerialIdRegistry;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
 
 /**
- * 
+ * resolve {@link Parser} of message type once when registering, and lookup by id when reading.
  *
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
 public class ProtobufIdRegistry extends SerialIdRegistry<Short> {
 
+	/**
+	 * indexed by id, grown by doubling and republished on each registration.
+	 */
+	private volatile Parser<?>[] parsers = new Parser<?>[0];
+
 	@Override
 	protected Class<? extends Annotation> annotation() {
 		return ProtobufId.class;
@@ -40,4 +52,37 @@ public class ProtobufIdRegistry extends SerialIdRegistry<Short> {
 		return id;
 	}
 
+	@Override
+	public synchronized void register(Class<?> clazz, Short id) {
+		Assert.isTrue(id >= 0, "protobuf id must not be negative.");
+		Parser<?> parser = resolveParser(clazz);
+		super.register(clazz, id);
+		Parser<?>[] current = parsers;
+		if (id >= current.length)
+			current = Arrays.copyOf(current, Math.max(id + 1, current.length << 1));
+		current[id] = parser;
+		parsers = current;// volatile write publishes the element
+	}
+
+	public Parser<?> getParser(short id) {
+		Parser<?>[] current = parsers;
+		return id >= 0 && id < current.length ? current[id] : null;
+	}
+
+	/**
+	 * generated message provide static parser(), older generated code only provide getDefaultInstance().
+	 *
+	 * @param clazz
+	 * @return
+	 */
+	protected Parser<?> resolveParser(Class<?> clazz) {
+		Assert.isTrue(ClassUtils.isAssignable(MessageLite.class, clazz), "not a protobuf message class: " + clazz.getName());
+		Method parser = ReflectionUtils.findMethod(clazz, "parser");
+		if (null != parser && Modifier.isStatic(parser.getModifiers())) {
+			return (Parser<?>) ReflectionUtils.invokeMethod(parser, null);
+		}
+		Method defaultInstance = ReflectionUtils.findMethod(clazz, "getDefaultInstance");
+		Assert.notNull(defaultInstance, "no parser() or getDefaultInstance() found from protobuf message class: " + clazz.getName());
+		return ((MessageLite) ReflectionUtils.invokeMethod(defaultInstance, null)).getParserForType();
+	}
 }
@@ -16,10 +16,10 @@
  */
 package org.scleropages.serialize.protobuf;
 
-import com.esotericsoftware.reflectasm.MethodAccess;
-import com.google.common.primitives.Shorts;
 import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
 import org.apache.shiro.util.Assert;
 import org.scleropages.serialize.spi.ObjectSerializer;
 import org.springframework.util.ClassUtils;
@@ -29,6 +29,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
+ * write 2 bytes id of registered message type then message. if length delimited, message prefixed by varint size, so
+ * multiple messages (or mixed with data) can be written to one stream.
  * 
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
@@ -36,16 +38,33 @@ import java.io.OutputStream;
 public class ProtobufObjectSerializer extends ProtobufSupport implements ObjectSerializer<InputStream, OutputStream> {
 
 	private final ProtobufIdRegistry registry;
+
+	private final boolean lengthDelimited;
 	
 	public ProtobufObjectSerializer(InputStream in, final ProtobufIdRegistry registry) {
 		super(in);
 		this.registry=registry;
+		this.lengthDelimited = false;
 	}
 
 	public ProtobufObjectSerializer(OutputStream out, final ProtobufIdRegistry registry) {
 		super(out);
 		this.registry=registry;
+		this.lengthDelimited = false;
+	}
+
+	public ProtobufObjectSerializer(InputStream in, CodedInputStream input, final ProtobufIdRegistry registry,
+			boolean lengthDelimited) {
+		super(in, input);
+		this.registry = registry;
+		this.lengthDelimited = lengthDelimited;
+	}
 
+	public ProtobufObjectSerializer(OutputStream out, CodedOutputStream output, final ProtobufIdRegistry registry,
+			boolean lengthDelimited) {
+		super(out, output);
+		this.registry = registry;
+		this.lengthDelimited = lengthDelimited;
 	}
 
 	@Override
@@ -56,29 +75,44 @@ public class ProtobufObjectSerializer extends ProtobufSupport implements ObjectS
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T readObject(Class<T> cls) throws IOException, ClassNotFoundException {
-		Short id = Shorts.fromByteArray(input.readRawBytes(2));
-		Class<?> clazz = registry.get(id);
-		Assert.notNull(clazz, "clazz not found from protobuf registry of id: " + id);
-		if (null == cls || ClassUtils.isAssignable(cls, clazz)) {
-			return (T) MethodAccess.get(clazz).invoke(null, "parseFrom", PARAM_TYPE, input);
+		short id = (short) ((input.readRawByte() & 0xff) << 8 | (input.readRawByte() & 0xff));
+		Parser<?> parser = registry.getParser(id);
+		Assert.notNull(parser, "clazz not found from protobuf registry of id: " + id);
+		if (null != cls) {
+			Class<?> clazz = registry.get(id);
+			if (!ClassUtils.isAssignable(cls, clazz))
+				throw new IllegalArgumentException(
+						"expected class type not match by given class: " + cls + " and actual is :" + clazz);
 		}
-		throw new IllegalArgumentException(
-				"expected class type not match by given class: " + cls + " and actual is :" + clazz);
+		if (!lengthDelimited) {
+			return (T) parser.parseFrom(input);
+		}
+		input.resetSizeCounter();
+		int oldLimit = input.pushLimit(input.readRawVarint32());
+		T message = (T) parser.parseFrom(input);
+		input.popLimit(oldLimit);
+		return message;
 	}
 
-	private static final Class<?>[] PARAM_TYPE = new Class[] { CodedInputStream.class };
-
 	@Override
 	public void writeObject(Object obj) throws IOException {
 		Short id = registry.get(obj.getClass());
 		Assert.notNull(id, "id not found from protobuf registry of class: " + obj.getClass());
-		output.writeRawBytes(Shorts.toByteArray(id));
+		output.writeRawByte((byte) (id >> 8));
+		output.writeRawByte((byte) id.shortValue());
+		MessageLite message = null;
 		if (obj instanceof MessageLite) {
-			((MessageLite) obj).writeTo(output);
+			message = (MessageLite) obj;
 		}
 		if (obj instanceof MessageLite.Builder) {
-			((MessageLite.Builder) obj).build().writeTo(output);
+			message = ((MessageLite.Builder) obj).build();
+		}
+		if (null == message)
+			return;
+		if (lengthDelimited) {
+			output.writeUInt32NoTag(message.getSerializedSize());
 		}
+		message.writeTo(output);
 	}
 
 }
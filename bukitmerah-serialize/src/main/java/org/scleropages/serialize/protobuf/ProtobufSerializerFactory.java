@@ -15,6 +15,8 @@
  */
 package org.scleropages.serialize.protobuf;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import org.scleropages.core.ComponentId;
 import org.scleropages.core.util.ClassPathScanner;
 import org.scleropages.serialize.DataObjectReader;
@@ -43,6 +45,8 @@ public class ProtobufSerializerFactory implements SerializerFactory<InputStream,
 
     private final ProtobufIdRegistry registry = new ProtobufIdRegistry();
 
+    private boolean lengthDelimited = false;
+
     public ProtobufSerializerFactory(final String basePackege) {
         try {
             ClassPathScanner.scanClasses(basePackege, new ScanListener() {
@@ -65,15 +69,17 @@ public class ProtobufSerializerFactory implements SerializerFactory<InputStream,
 
     @Override
     public DataObjectReader<InputStream> deserialize(InputStream r) {
-        ProtobufDataSerializer dataSerializer = new ProtobufDataSerializer(r);
-        ProtobufObjectSerializer objectSerializer = new ProtobufObjectSerializer(r, registry);
+        CodedInputStream input = CodedInputStream.newInstance(r);
+        ProtobufDataSerializer dataSerializer = new ProtobufDataSerializer(r, input);
+        ProtobufObjectSerializer objectSerializer = new ProtobufObjectSerializer(r, input, registry, lengthDelimited);
         return new CompositeSerializer<>(dataSerializer, objectSerializer);
     }
 
     @Override
     public DataObjectWriter<OutputStream> serialize(OutputStream w) {
-        ProtobufDataSerializer dataSerializer = new ProtobufDataSerializer(w);
-        ProtobufObjectSerializer objectSerializer = new ProtobufObjectSerializer(w, registry);
+        CodedOutputStream output = CodedOutputStream.newInstance(w);
+        ProtobufDataSerializer dataSerializer = new ProtobufDataSerializer(w, output);
+        ProtobufObjectSerializer objectSerializer = new ProtobufObjectSerializer(w, output, registry, lengthDelimited);
         return new CompositeSerializer<>(dataSerializer, objectSerializer);
     }
 
@@ -107,4 +113,14 @@ public class ProtobufSerializerFactory implements SerializerFactory<InputStream,
     public SerialIdRegistry getClassRegistry() {
         return registry;
     }
+
+    /**
+     * prefix each message with varint size, required if multiple messages (or mixed with data) read from one stream.
+     * default false (compatible with previous payloads).
+     *
+     * @param lengthDelimited
+     */
+    public void setLengthDelimited(boolean lengthDelimited) {
+        this.lengthDelimited = lengthDelimited;
+    }
 }
@@ -41,8 +41,18 @@ public class ProtobufSupport extends StreamSerializerSupport {
 	 * @param in
 	 */
 	public ProtobufSupport(InputStream in) {
+		this(in, CodedInputStream.newInstance(in));
+	}
+
+	/**
+	 * perform deserialize. given coded stream may shared with other serializers of same stream.
+	 * 
+	 * @param in
+	 * @param input
+	 */
+	public ProtobufSupport(InputStream in, CodedInputStream input) {
 		super(in);
-		input = CodedInputStream.newInstance(in);
+		this.input = input;
 		output = null;
 	}
 
@@ -52,8 +62,18 @@ public class ProtobufSupport extends StreamSerializerSupport {
 	 * @param in
 	 */
 	public ProtobufSupport(OutputStream out) {
+		this(out, CodedOutputStream.newInstance(out));
+	}
+
+	/**
+	 * perform serialize. given coded stream may shared with other serializers of same stream.
+	 * 
+	 * @param out
+	 * @param output
+	 */
+	public ProtobufSupport(OutputStream out, CodedOutputStream output) {
 		super(out);
-		output = CodedOutputStream.newInstance(out);
+		this.output = output;
 		input = null;
 	}
 
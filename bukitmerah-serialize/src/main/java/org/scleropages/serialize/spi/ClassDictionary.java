@@ -0,0 +1,167 @@
+/**
+ * Copyright 2001-2005 The Apache Software Foundation.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.scleropages.serialize.spi;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * session dictionary of classes for a long-lived stream (such as amqp channel, mqtt connection or file).
+ * <p>
+ * first time a class written to stream, {@link #NEW_ENTRY} followed by handle of definition and class descriptor
+ * (registered id or class name) written and class defined by that handle. subsequent writes refer to it by handle only.
+ * definitions sent once per stream, so stream must be delivered in order without loss: reader checks handle of each definition
+ * against its next handle ({@link #define(Class, int)}) and fails with {@link IllegalStateException} if definitions lost, reordered
+ * or dictionary reset by one side only, instead of decoding objects by wrong classes. after failure both sides must {@link #reset()}.
+ * <p>
+ * class names read from stream never loaded: resolved only against allowed classes of reader's dictionary
+ * (registered types are defined by their registered id instead of name).
+ * <p>
+ * one dictionary per stream direction: writer and reader of same stream must use their own instances.
+ * not thread safe, accessed by current reader(writer) of stream only.
+ *
+ * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
+ */
+public class ClassDictionary {
+
+    /**
+     * handle of null object.
+     */
+    public static final int NULL_HANDLE = 0;
+
+    /**
+     * marks a class definition followed by class descriptor.
+     */
+    public static final int NEW_ENTRY = 1;
+
+    private static final int FIRST_HANDLE = 2;
+
+    private final Map<String, Class<?>> allowedClasses;
+
+    private final Map<Class<?>, Integer> handles = new IdentityHashMap<>();
+
+    private Class<?>[] classes = new Class<?>[16];
+
+    private int nextHandle = FIRST_HANDLE;
+
+
+    /**
+     * only registered types can be read by this dictionary.
+     */
+    public ClassDictionary() {
+        this.allowedClasses = Collections.emptyMap();
+    }
+
+    /**
+     * @param allowedClasses unregistered types allowed to read by class name.
+     */
+    public ClassDictionary(Class<?>... allowedClasses) {
+        Map<String, Class<?>> allowed = new HashMap<>();
+        for (Class<?> allowedClass : allowedClasses) {
+            allowed.put(allowedClass.getName(), allowedClass);
+        }
+        this.allowedClasses = allowed;
+    }
+
+
+    /**
+     * @param clazz
+     * @return handle of given class or -1 if not defined.
+     */
+    public int handleOf(Class<?> clazz) {
+        Integer handle = handles.get(clazz);
+        return null != handle ? handle : -1;
+    }
+
+    /**
+     * @return handle of next definition.
+     */
+    public int nextHandle() {
+        return nextHandle;
+    }
+
+    /**
+     * define given class by handle of definition read from stream.
+     *
+     * @param clazz
+     * @param handle handle of definition read from stream.
+     * @throws IllegalStateException if given handle is not next handle of this dictionary.
+     */
+    public void define(Class<?> clazz, int handle) {
+        if (handle != nextHandle)
+            throw new IllegalStateException("class definition out of order: expected handle " + nextHandle + " but read " + handle
+                    + ". definitions lost, reordered or dictionary reset by one side only.");
+        define(clazz);
+    }
+
+    /**
+     * define given class by next handle.
+     *
+     * @param clazz
+     * @return handle of given class.
+     */
+    public int define(Class<?> clazz) {
+        int handle = nextHandle++;
+        handles.put(clazz, handle);
+        if (handle >= classes.length)
+            classes = Arrays.copyOf(classes, classes.length << 1);
+        classes[handle] = clazz;
+        return handle;
+    }
+
+    /**
+     * @param handle
+     * @return class of given handle.
+     * @throws IllegalStateException if given handle not defined in this dictionary.
+     */
+    public Class<?> classOf(int handle) {
+        Class<?> clazz = handle >= FIRST_HANDLE && handle < nextHandle ? classes[handle] : null;
+        if (null == clazz)
+            throw new IllegalStateException("class handle not defined: " + handle + ". stream may be out of sync with dictionary.");
+        return clazz;
+    }
+
+    /**
+     * @param className class name read from stream.
+     * @return allowed class of given name.
+     * @throws IllegalStateException if given class not allowed by this dictionary.
+     */
+    public Class<?> resolve(String className) {
+        Class<?> clazz = allowedClasses.get(className);
+        if (null == clazz)
+            throw new IllegalStateException("class not allowed by dictionary: " + className);
+        return clazz;
+    }
+
+    /**
+     * @return number of defined classes.
+     */
+    public int size() {
+        return nextHandle - FIRST_HANDLE;
+    }
+
+    /**
+     * clear all definitions. must be applied to both sides of stream at same position (such as stream reconnected).
+     */
+    public void reset() {
+        handles.clear();
+        Arrays.fill(classes, null);
+        nextHandle = FIRST_HANDLE;
+    }
+}
@@ -20,6 +20,7 @@ import org.scleropages.serialize.DataObjectReader;
 import org.scleropages.serialize.DataObjectWriter;
 import org.springframework.util.Assert;
 
+import java.io.Closeable;
 import java.io.IOException;
 
 /**
@@ -30,7 +31,7 @@ import java.io.IOException;
  * 
  * @author <a href="mailto:martinmao@icloud.com">Martin Mao</a>
  */
-public class CompositeSerializer<R, W> implements DataObjectReader<R>, DataObjectWriter<W> {
+public class CompositeSerializer<R, W> implements DataObjectReader<R>, DataObjectWriter<W>, Closeable {
 
 	private final DataSerializer<R, W> dataSerializer;
 
@@ -182,4 +183,19 @@ public class CompositeSerializer<R, W> implements DataObjectReader<R>, DataObjec
 		dataSerializer.readBytes(bytes);
 	}
 
+	/**
+	 * release resources held by data(object) serializer (such as pooled sessions). underlying read(write) source will
+	 * not be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (dataSerializer instanceof Closeable)
+				((Closeable) dataSerializer).close();
+		} finally {
+			if (objectSerializer instanceof Closeable)
+				((Closeable) objectSerializer).close();
+		}
+	}
+
 }